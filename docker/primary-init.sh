@@ -0,0 +1,4 @@
+#!/bin/sh
+# allows the replicas to stream the write-ahead log from the primary
+set -e
+echo "host replication all all scram-sha-256" >> "$PGDATA/pg_hba.conf"
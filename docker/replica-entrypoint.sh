@@ -0,0 +1,10 @@
+#!/bin/sh
+# clones the primary on first start and then runs as a hot standby that follows it
+set -e
+if [ ! -s "$PGDATA/PG_VERSION" ]; then
+  until pg_basebackup -h db -U "$POSTGRES_USER" -D "$PGDATA" -R -X stream; do
+    echo "waiting for the primary"
+    sleep 2
+  done
+fi
+exec docker-entrypoint.sh postgres
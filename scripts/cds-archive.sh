@@ -0,0 +1,51 @@
+#!/usr/bin/env bash
+# Builds a class data sharing archive for the fast-startup profile with a training run, then times cold starts
+# with and without it: time until /actuator/health answers, and the latency of the first api request.
+#
+#   docker compose up -d db
+#   scripts/cds-archive.sh [starts]
+#
+# Start the application the same way in production, from the extracted directory and with the same jvm:
+#   java -XX:SharedArchiveFile=application.jsa -Dspring.profiles.active=fast-startup -jar banking.jar
+set -euo pipefail
+
+STARTS="${1:-5}"
+PORT="${PORT:-8089}"
+APP_DIR=target/cds
+JAR="$APP_DIR/banking.jar"
+ARCHIVE="$APP_DIR/application.jsa"
+
+./mvnw -B -q -DskipTests package
+rm -rf "$APP_DIR"
+java -Djarmode=tools -jar target/banking-0.0.1-SNAPSHOT.jar extract --destination "$APP_DIR"
+mv "$APP_DIR/banking-0.0.1-SNAPSHOT.jar" "$JAR"
+
+# the training run starts the context and exits once it is refreshed, recording the classes it loaded
+java -XX:ArchiveClassesAtExit="$ARCHIVE" -Dspring.context.exit=onRefresh -Dspring.profiles.active=fast-startup \
+  -Dserver.port="$PORT" -jar "$JAR" > "$APP_DIR/training.log"
+
+now_millis() {
+  date +%s%3N
+}
+
+measure() {
+  local name="$1"
+  shift
+  for i in $(seq "$STARTS"); do
+    local start ready first pid
+    start=$(now_millis)
+    java "$@" -Dspring.profiles.active=fast-startup -Dserver.port="$PORT" -jar "$JAR" > "$APP_DIR/$name-$i.log" 2>&1 &
+    pid=$!
+    until curl -sf "http://localhost:$PORT/actuator/health" > /dev/null; do
+      sleep 0.05
+    done
+    ready=$(now_millis)
+    first=$(curl -s -o /dev/null -w '%{time_total}' "http://localhost:$PORT/api/customers?page=0&size=1")
+    echo "$name start=$i ready_ms=$((ready - start)) first_request_s=$first"
+    kill "$pid"
+    wait "$pid" || true
+  done
+}
+
+measure without-cds
+measure with-cds "-XX:SharedArchiveFile=$ARCHIVE"
@@ -0,0 +1,66 @@
+package tech.kitucode.banking;
+
+import org.openjdk.jmh.annotations.*;
+import tech.kitucode.banking.service.journal.PostingJournal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Durable postings per second through the {@link PostingJournal} from 16 threads, each waiting for its posting to
+ * be on disk as the posting endpoint does. Segments are released after every iteration, as checkpoints would.
+ * The journal lives in {@code target/posting-benchmark}; put it on the disk the journal will use in production,
+ * a tmpfs makes the syncs free.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Threads(16)
+@Fork(1)
+public class PostingJournalBenchmark {
+    private static final Path DIRECTORY = Path.of("target", "posting-benchmark");
+
+    private PostingJournal journal;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        delete();
+        journal = new PostingJournal(DIRECTORY, 64 * 1024 * 1024);
+    }
+
+    @TearDown(Level.Iteration)
+    public void release() {
+        journal.release(journal.durableSequence());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        journal.close();
+        delete();
+    }
+
+    @Benchmark
+    public long durablePost() {
+        long sequence = journal.append(ThreadLocalRandom.current().nextLong(1, 1_000_000), 100, System.currentTimeMillis());
+        journal.sync(sequence);
+        return sequence;
+    }
+
+
+    private static void delete() throws IOException {
+        if (Files.exists(DIRECTORY)) {
+            try (Stream<Path> files = Files.walk(DIRECTORY)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+}
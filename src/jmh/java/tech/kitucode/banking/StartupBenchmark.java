@@ -0,0 +1,91 @@
+package tech.kitucode.banking;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a cold start of the application, once until it is ready and once until it has answered its first
+ * request, with the default configuration and with the {@code fast-startup} profile. Every measurement runs in a
+ * fresh JVM. An in-memory H2 database with the schema and one customer stands in for postgres, so the numbers
+ * track the application rather than the network; compare them between releases, not with production start times.
+ * <p>
+ * The class data sharing archive needs the packaged jar and is measured by {@code scripts/cds-archive.sh}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(5)
+public class StartupBenchmark {
+    private static final String DATABASE_URL = "jdbc:h2:mem:startup;DB_CLOSE_DELAY=-1";
+
+    @Param({"default", "fast-startup"})
+    private String profile;
+
+    private Connection database;
+    private ConfigurableApplicationContext context;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        database = DriverManager.getConnection(DATABASE_URL, "sa", "");
+        database.createStatement().execute("runscript from 'classpath:startup-schema.sql'");
+    }
+
+    @TearDown(Level.Iteration)
+    public void stop() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        database.close();
+    }
+
+    @Benchmark
+    public ConfigurableApplicationContext timeToReady() {
+        context = start();
+        return context;
+    }
+
+    @Benchmark
+    public int timeToFirstResponse() throws Exception {
+        context = start();
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        HttpURLConnection connection = (HttpURLConnection) URI.create("http://localhost:" + port + "/api/customers/1").toURL().openConnection();
+        try {
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private ConfigurableApplicationContext start() {
+        SpringApplicationBuilder builder = new SpringApplicationBuilder(BankingApplication.class);
+        if (!profile.equals("default")) {
+            builder.profiles(profile);
+        }
+        // arguments rather than default properties, which application.yaml would override
+        return builder.run(
+                "--spring.datasource.url=" + DATABASE_URL,
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.jpa.database=H2",
+                // the migrations are written for postgres; the schema script has already created the tables
+                "--spring.flyway.enabled=false",
+                "--server.port=0",
+                "--application.outbox-file=target/startup-benchmark/events.ndjson",
+                "--logging.level.root=WARN",
+                "--spring.main.banner-mode=off");
+    }
+}
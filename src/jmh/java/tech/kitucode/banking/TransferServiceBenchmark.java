@@ -0,0 +1,113 @@
+package tech.kitucode.banking;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import tech.kitucode.banking.error.ValidationException;
+import tech.kitucode.banking.service.TransferService;
+import tech.kitucode.banking.service.dto.CreateTransferDTO;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transfers per second from eight threads through {@link TransferService}, on an in-memory H2 database:
+ * <ul>
+ *     <li>{@code randomTransfers} between any two of the payer accounts;</li>
+ *     <li>{@code hotAccountCredits} from the payers to a merchant account listed in {@code application.hot-accounts};</li>
+ *     <li>{@code contendedAccountCredits} from the payers to a merchant account that is not, so every credit waits
+ *     for the lock on its row.</li>
+ * </ul>
+ * After each trial the pending credits are swept and the trial fails if the accounts do not hold exactly the money
+ * they were opened with.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Threads(8)
+@Fork(1)
+public class TransferServiceBenchmark {
+    private static final int PAYERS = 1000;
+    private static final long HOT_MERCHANT_ID = PAYERS + 1;
+    private static final long MERCHANT_ID = PAYERS + 2;
+    private static final BigDecimal OPENING_BALANCE = new BigDecimal("1000000000.00");
+    private static final BigDecimal AMOUNT = new BigDecimal("1.00");
+
+    private ConfigurableApplicationContext context;
+    private TransferService transferService;
+    private JdbcTemplate jdbcTemplate;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(BankingApplication.class).run(
+                "--spring.datasource.url=jdbc:h2:mem:transfers;LOCK_TIMEOUT=60000;DB_CLOSE_DELAY=-1",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.datasource.hikari.maximum-pool-size=16",
+                "--spring.jpa.database=H2",
+                // the migrations are written for postgres
+                "--spring.flyway.enabled=false",
+                "--spring.jpa.hibernate.ddl-auto=create",
+                "--application.hot-accounts=" + HOT_MERCHANT_ID,
+                "--application.admission-enabled=false",
+                "--server.port=0",
+                "--application.outbox-file=target/transfer-benchmark/events.ndjson",
+                "--logging.level.root=WARN",
+                "--spring.main.banner-mode=off");
+        transferService = context.getBean(TransferService.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+
+        jdbcTemplate.update("insert into tbl_accounts (account_id, iban, bic_swift, customer_id, created_on, version, card_count, balance) " +
+                "select x, 'DTKEKENA465' || lpad(x, 10, '0'), 'DTKEKENA465', 1, current_date, 0, 0, ? from system_range(1, ?)", OPENING_BALANCE, MERCHANT_ID);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        try {
+            while (transferService.sweep(HOT_MERCHANT_ID) > 0) {
+            }
+
+            BigDecimal total = jdbcTemplate.queryForObject("select sum(balance) from tbl_accounts", BigDecimal.class);
+            BigDecimal expected = OPENING_BALANCE.multiply(BigDecimal.valueOf(MERCHANT_ID));
+            if (total.compareTo(expected) != 0) {
+                throw new IllegalStateException("Accounts hold " + total + " instead of " + expected);
+            }
+        } finally {
+            context.close();
+        }
+    }
+
+    @Benchmark
+    public Object randomTransfers() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long from = random.nextLong(1, PAYERS + 1);
+        long to = random.nextLong(1, PAYERS);
+        return transfer(from, to >= from ? to + 1 : to);
+    }
+
+    @Benchmark
+    public Object hotAccountCredits() {
+        return transfer(ThreadLocalRandom.current().nextLong(1, PAYERS + 1), HOT_MERCHANT_ID);
+    }
+
+    @Benchmark
+    public Object contendedAccountCredits() {
+        return transfer(ThreadLocalRandom.current().nextLong(1, PAYERS + 1), MERCHANT_ID);
+    }
+
+    private Object transfer(long from, long to) {
+        CreateTransferDTO createTransferDTO = new CreateTransferDTO();
+        createTransferDTO.setFromAccountId(from);
+        createTransferDTO.setToAccountId(to);
+        createTransferDTO.setAmount(AMOUNT);
+        try {
+            return transferService.transfer(createTransferDTO);
+        } catch (ValidationException e) {
+            return e;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package tech.kitucode.banking;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import tech.kitucode.banking.domain.Customer;
+import tech.kitucode.banking.service.CustomerService;
+import tech.kitucode.banking.service.WriteCoalescer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Customers created per second from 32 threads, as concurrent POSTs to {@code /api/customers} create them, with and
+ * without {@link WriteCoalescer}. An in-memory H2 database commits for free, so the coalescer only pays off here
+ * against a database that flushes its log on commit:
+ * <pre>
+ * -p jdbcUrl=jdbc:postgresql://localhost:5432/banking -p username=... -p password=...
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Threads(32)
+@Fork(1)
+public class WriteCoalescerBenchmark {
+    @Param({"false", "true"})
+    private boolean coalescing;
+
+    @Param({"jdbc:h2:mem:writes;DB_CLOSE_DELAY=-1"})
+    private String jdbcUrl;
+
+    @Param({"sa"})
+    private String username;
+
+    @Param({""})
+    private String password;
+
+    private ConfigurableApplicationContext context;
+    private CustomerService customerService;
+    private WriteCoalescer writeCoalescer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<String> args = new ArrayList<>(List.of(
+                "--spring.datasource.url=" + jdbcUrl,
+                "--spring.datasource.username=" + username,
+                "--spring.datasource.password=" + password,
+                "--application.write-coalescing-enabled=" + coalescing,
+                "--application.admission-enabled=false",
+                "--server.port=0",
+                "--application.outbox-file=target/write-benchmark/events.ndjson",
+                "--logging.level.root=WARN",
+                "--spring.main.banner-mode=off"));
+        if (jdbcUrl.startsWith("jdbc:h2:")) {
+            args.add("--spring.jpa.database=H2");
+            // the migrations are written for postgres
+            args.add("--spring.flyway.enabled=false");
+            args.add("--spring.jpa.hibernate.ddl-auto=create");
+        }
+
+        context = new SpringApplicationBuilder(BankingApplication.class).run(args.toArray(String[]::new));
+        customerService = context.getBean(CustomerService.class);
+        writeCoalescer = context.getBean(WriteCoalescer.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Customer createCustomer() {
+        Customer customer = new Customer();
+        customer.setFirstName("Brian");
+        customer.setLastName("Kitunda");
+        return writeCoalescer.write(() -> customerService.save(customer));
+    }
+}
@@ -0,0 +1,74 @@
+package tech.kitucode.banking.service;
+
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.factory.ObjectProvider;
+import tech.kitucode.banking.ApplicationProperties;
+import tech.kitucode.banking.domain.enumerations.CardType;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Authorization lookups against an index holding {@code cards} cards, sampled so the report carries the p50, p99
+ * and p99.9 latencies next to the mean. The churn group runs the lookups while another thread issues and deletes
+ * cards, as the card endpoints do, to show what the write lock costs the readers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class CardAuthorizationIndexBenchmark {
+    private static final long FIRST_PAN = 4_000_000_000_000_000L;
+
+    @Param({"1000000"})
+    private int cards;
+
+    private CardAuthorizationIndex cardAuthorizationIndex;
+    private String[] pans;
+    private long nextCardId;
+
+    @Setup
+    public void setUp() {
+        cardAuthorizationIndex = new CardAuthorizationIndex(null, null, new ApplicationProperties(), Mockito.mock(ObjectProvider.class));
+        pans = new String[cards];
+        for (int i = 0; i < cards; i++) {
+            pans[i] = String.valueOf(FIRST_PAN + i);
+            cardAuthorizationIndex.put(pans[i], i + 1, i / 2 + 1, CardType.values()[i % 2]);
+        }
+        nextCardId = cards + 1;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public CardAuthorizationIndex.Entry knownCard() {
+        return cardAuthorizationIndex.find(pans[ThreadLocalRandom.current().nextInt(cards)]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public CardAuthorizationIndex.Entry unknownCard() {
+        // pans past the loaded ones are never issued
+        return cardAuthorizationIndex.find(String.valueOf(FIRST_PAN + cards + ThreadLocalRandom.current().nextInt(cards)));
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(3)
+    public CardAuthorizationIndex.Entry knownCardDuringChurn() {
+        return knownCard();
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(1)
+    public void issueAndDeleteCard() {
+        // only one thread writes, so the card ids need no coordination
+        long cardId = nextCardId++;
+        String pan = String.valueOf(FIRST_PAN + 2L * cards + cardId);
+        cardAuthorizationIndex.put(pan, cardId, cardId, CardType.VIRTUAL);
+        cardAuthorizationIndex.remove(pan, cardId);
+    }
+}
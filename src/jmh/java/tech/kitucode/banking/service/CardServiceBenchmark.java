@@ -0,0 +1,49 @@
+package tech.kitucode.banking.service;
+
+import org.openjdk.jmh.annotations.*;
+import tech.kitucode.banking.domain.Card;
+import tech.kitucode.banking.domain.enumerations.CardType;
+import tech.kitucode.banking.service.dto.MaskedCardDTO;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CardServiceBenchmark {
+    private CardService cardService;
+    private Card card;
+
+    @Setup
+    public void setUp() {
+        cardService = new CardService(null, null, null, null, null, null, null);
+
+        card = new Card();
+        card.setCardId(1L);
+        card.setCardAlias("Brian Kitunda Kathukya");
+        card.setAccountId(1L);
+        card.setCardType(CardType.VIRTUAL);
+        card.setPan("1882738818773737");
+        card.setCvv("390");
+        card.setCreatedOn(LocalDate.now());
+    }
+
+    @Benchmark
+    public String maskPan() {
+        return cardService.maskPan(card);
+    }
+
+    @Benchmark
+    public Card maskCardDetails() {
+        return cardService.maskCardDetails(card);
+    }
+
+    @Benchmark
+    public MaskedCardDTO maskedCardView() {
+        return MaskedCardDTO.of(card);
+    }
+}
@@ -0,0 +1,58 @@
+package tech.kitucode.banking.service;
+
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Typeahead lookups against a name index holding {@code customers} synthetic customers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CustomerNameIndexBenchmark {
+    private static final String[] FIRST_NAMES = {"Brian", "Brenda", "Jane", "John", "Mary", "Peter", "Grace", "James", "Faith", "David"};
+    private static final String[] LAST_NAMES = {"Kitunda", "Otieno", "Wanjiru", "Mwangi", "Kamau", "Achieng", "Njoroge", "Mutua", "Kiptoo", "Wafula"};
+
+    @Param({"200000"})
+    private int customers;
+
+    private CustomerNameIndex customerNameIndex;
+
+    @Setup
+    public void setUp() {
+        customerNameIndex = new CustomerNameIndex(null, null, Mockito.mock(ObjectProvider.class));
+
+        Random random = new Random(42);
+        for (long id = 1; id <= customers; id++) {
+            // a random suffix gives the other names a realistic spread of distinct tokens
+            customerNameIndex.index(id, FIRST_NAMES[random.nextInt(FIRST_NAMES.length)], LAST_NAMES[random.nextInt(LAST_NAMES.length)],
+                    "K" + Integer.toString(random.nextInt(1 << 20), 36));
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public List<Long> shortPrefix() {
+        return customerNameIndex.search("br", 10);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public List<Long> twoTokensAnyOrder() {
+        return customerNameIndex.search("kit bri", 10);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public List<Long> selectivePrefix() {
+        return customerNameIndex.search("k2a", 10);
+    }
+}
@@ -0,0 +1,59 @@
+package tech.kitucode.banking.service;
+
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.openjdk.jmh.annotations.*;
+import tech.kitucode.banking.domain.Customer;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the customer search name splitting and predicate building against hibernate's real criteria builder.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CustomerServiceBenchmark {
+    private CustomerService customerService;
+    private SessionFactory sessionFactory;
+    private CriteriaBuilder criteriaBuilder;
+    private Root<Customer> root;
+
+    @Setup
+    public void setUp() {
+        customerService = new CustomerService(null, null, null, null);
+
+        sessionFactory = new Configuration()
+                .addAnnotatedClass(Customer.class)
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:benchmark")
+                .setProperty("hibernate.hbm2ddl.auto", "none")
+                .buildSessionFactory();
+        criteriaBuilder = sessionFactory.getCriteriaBuilder();
+        CriteriaQuery<Customer> query = criteriaBuilder.createQuery(Customer.class);
+        root = query.from(Customer.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        sessionFactory.close();
+    }
+
+    @Benchmark
+    public String[] splitName() {
+        return customerService.splitName("Brian Kitunda Kathukya");
+    }
+
+    @Benchmark
+    public Predicate buildPredicates() {
+        String[] names = customerService.splitName("Brian Kitunda Kathukya");
+        return customerService.buildPredicates(root, criteriaBuilder, names[0], names[1], names[2], LocalDate.of(2025, 1, 1), LocalDate.of(2025, 12, 31));
+    }
+}
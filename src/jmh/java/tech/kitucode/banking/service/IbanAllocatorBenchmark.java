@@ -0,0 +1,52 @@
+package tech.kitucode.banking.service;
+
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.transaction.PlatformTransactionManager;
+import tech.kitucode.banking.ApplicationProperties;
+import tech.kitucode.banking.domain.IbanBlock;
+import tech.kitucode.banking.repository.AccountRepository;
+import tech.kitucode.banking.repository.IbanBlockRepository;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+/**
+ * Measures IBAN allocation with block reservations stubbed out, i.e. the in-memory path taken by all but one in
+ * every {@code iban-block-size} accounts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IbanAllocatorBenchmark {
+    private IbanAllocator ibanAllocator;
+
+    @Setup
+    public void setUp() {
+        IbanBlock ibanBlock = new IbanBlock();
+        ibanBlock.setBranchCode("465");
+        ibanBlock.setNextAccountNumber(IbanAllocator.FIRST_ACCOUNT_NUMBER);
+
+        IbanBlockRepository ibanBlockRepository = Mockito.mock(IbanBlockRepository.class);
+        when(ibanBlockRepository.findOneByBranchCode("465")).thenReturn(Optional.of(ibanBlock));
+        when(ibanBlockRepository.saveAndFlush(any(IbanBlock.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.setIbanPrefix("DTKEKENA");
+        applicationProperties.setIbanBlockSize(1_000_000);
+
+        ibanAllocator = new IbanAllocator(ibanBlockRepository, Mockito.mock(AccountRepository.class), applicationProperties, Mockito.mock(PlatformTransactionManager.class));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String nextIban() {
+        return ibanAllocator.nextIban("465");
+    }
+}
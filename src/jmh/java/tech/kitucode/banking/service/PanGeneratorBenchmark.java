@@ -0,0 +1,59 @@
+package tech.kitucode.banking.service;
+
+import org.mockito.Mockito;
+import org.springframework.beans.factory.ObjectProvider;
+import org.openjdk.jmh.annotations.*;
+import tech.kitucode.banking.ApplicationProperties;
+import tech.kitucode.banking.domain.enumerations.CardType;
+import tech.kitucode.banking.repository.CardRepository;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pans generated per microsecond with {@code cards} cards already issued under the same BIN. Pans the authorization
+ * index does not know are not looked up, so the rate should not depend on the number of cards.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class PanGeneratorBenchmark {
+    @Param({"0", "1000000"})
+    private int cards;
+
+    private PanGenerator panGenerator;
+
+    @Setup
+    public void setUp() {
+        CardAuthorizationIndex cardAuthorizationIndex = new CardAuthorizationIndex(null, null, new ApplicationProperties(), Mockito.mock(ObjectProvider.class)) {
+            @Override
+            public boolean isLoaded() {
+                return true;
+            }
+        };
+
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.setVirtualCardBins(List.of("459876"));
+        applicationProperties.setPhysicalCardBins(List.of("459877"));
+        panGenerator = new PanGenerator(applicationProperties, Mockito.mock(CardRepository.class), cardAuthorizationIndex);
+
+        for (long cardId = 1; cardId <= cards; cardId++) {
+            cardAuthorizationIndex.put(panGenerator.nextPan(CardType.VIRTUAL), cardId, cardId, CardType.VIRTUAL);
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String nextPan() {
+        return panGenerator.nextPan(CardType.VIRTUAL);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String nextCvv() {
+        return panGenerator.nextCvv();
+    }
+}
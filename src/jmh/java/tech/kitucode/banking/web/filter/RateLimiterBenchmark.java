@@ -0,0 +1,44 @@
+package tech.kitucode.banking.web.filter;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures the cost of admitting a request: eight threads taking permits for their own clients, and eight threads
+ * contending for the bucket of a single client. The rate is high enough that every request is admitted, so every
+ * call goes through the compare-and-set.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class RateLimiterBenchmark {
+    private static final AtomicInteger CLIENTS = new AtomicInteger();
+
+    private RateLimiter rateLimiter;
+
+    @State(Scope.Thread)
+    public static class Client {
+        private final String clientId = "client-" + CLIENTS.incrementAndGet();
+    }
+
+    @Setup
+    public void setUp() {
+        rateLimiter = new RateLimiter(1e9, 1_000_000);
+    }
+
+    @Benchmark
+    public long distinctClients(Client client) {
+        return rateLimiter.tryAcquire(client.clientId);
+    }
+
+    @Benchmark
+    public long sameClient() {
+        return rateLimiter.tryAcquire("partner");
+    }
+}
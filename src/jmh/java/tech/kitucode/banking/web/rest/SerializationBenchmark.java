@@ -0,0 +1,61 @@
+package tech.kitucode.banking.web.rest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.*;
+import tech.kitucode.banking.domain.Account;
+import tech.kitucode.banking.domain.enumerations.CardType;
+import tech.kitucode.banking.service.dto.MaskedCardDTO;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures jackson serialization of a default sized (20 item) page of cards and accounts, as written by the list
+ * endpoints.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+    private static final int PAGE_SIZE = 20;
+
+    private ObjectMapper objectMapper;
+    private List<MaskedCardDTO> cards;
+    private List<Account> accounts;
+
+    @Setup
+    public void setUp() {
+        objectMapper = new ObjectMapper().findAndRegisterModules().disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+        cards = new ArrayList<>();
+        accounts = new ArrayList<>();
+        for (long i = 0; i < PAGE_SIZE; i++) {
+            cards.add(new MaskedCardDTO(i, "Brian Kitunda Kathukya", i, CardType.VIRTUAL, "1882738818773737", LocalDate.now(), null, 0L));
+
+            Account account = new Account();
+            account.setAccountId(i);
+            account.setIban("DTKEKENA465" + (1000000000L + i));
+            account.setBicSwift("DTKEKENA465");
+            account.setCustomerId(i);
+            account.setCreatedOn(LocalDate.now());
+            accounts.add(account);
+        }
+    }
+
+    @Benchmark
+    public byte[] serializeCards() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(cards);
+    }
+
+    @Benchmark
+    public byte[] serializeAccounts() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(accounts);
+    }
+}
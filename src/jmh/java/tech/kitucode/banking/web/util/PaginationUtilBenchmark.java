@@ -0,0 +1,30 @@
+package tech.kitucode.banking.web.util;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PaginationUtilBenchmark {
+    private Page<Object> page;
+
+    @Setup
+    public void setUp() {
+        page = new PageImpl<>(Collections.nCopies(20, new Object()), PageRequest.of(5, 20), 10_000);
+    }
+
+    @Benchmark
+    public HttpHeaders generatePaginationHttpHeaders() {
+        return PaginationUtil.generatePaginationHttpHeaders(page, "/api/customers");
+    }
+}
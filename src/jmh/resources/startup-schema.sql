@@ -0,0 +1,60 @@
+-- H2 stand-in for the schema, created before the application starts in StartupBenchmark
+create sequence tbl_accounts_seq start with 1 increment by 50;
+
+create sequence tbl_outbox_seq start with 1 increment by 50;
+
+create table tbl_accounts (
+    card_count integer default 0 not null,
+    created_on date,
+    updated_on date,
+    account_id bigint not null,
+    customer_id bigint,
+    version bigint default 0 not null,
+    bic_swift varchar(255),
+    iban varchar(255) unique,
+    primary key (account_id)
+);
+
+create table tbl_cards (
+    created_on date,
+    updated_on date,
+    account_id bigint,
+    card_id bigint generated by default as identity,
+    version bigint default 0 not null,
+    card_alias varchar(255),
+    cvv varchar(255),
+    pan varchar(255),
+    card_type enum ('PHYSICAL','VIRTUAL'),
+    primary key (card_id),
+    constraint uk_cards_account_id_card_type unique (account_id, card_type)
+);
+
+create table tbl_customers (
+    created_on date,
+    updated_on date,
+    customer_id bigint generated by default as identity,
+    version bigint default 0 not null,
+    first_name varchar(255),
+    last_name varchar(255),
+    other_name varchar(255),
+    primary key (customer_id)
+);
+
+create table tbl_iban_blocks (
+    next_account_number bigint,
+    branch_code varchar(255) not null,
+    primary key (branch_code)
+);
+
+create table tbl_outbox (
+    aggregate_id bigint not null,
+    created_at timestamp(6) not null,
+    event_id bigint not null,
+    payload text,
+    aggregate_type enum ('ACCOUNT','CARD','CUSTOMER') not null,
+    change_type enum ('CREATED','DELETED','UPDATED') not null,
+    primary key (event_id)
+);
+
+insert into tbl_customers (customer_id, first_name, last_name, other_name, created_on, version)
+values (1, 'Brian', 'Kitunda', 'Kathukya', date '2025-01-01', 0);
@@ -1,11 +1,60 @@
 package tech.kitucode.banking;
 
+import com.zaxxer.hikari.HikariConfig;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Data
 @ConfigurationProperties(prefix = "application")
 public class ApplicationProperties {
     private String ibanPrefix;
     private Integer maxCardsPerAccount;
+    private List<String> virtualCardBins = new ArrayList<>();
+    private List<String> physicalCardBins = new ArrayList<>();
+    private Integer ibanBlockSize;
+    private Integer maxBulkAccounts;
+    private Integer importBatchSize;
+    private Integer importWorkers;
+    private Integer importQueueCapacity;
+    private Integer importConcurrentJobs;
+    private Integer importQueuedJobs;
+    private Long importJobRetentionMinutes;
+    private List<HikariConfig> readReplicas = new ArrayList<>();
+    private Long readYourWritesWindowMillis;
+    private Long maxReplicaLagMillis;
+    private Long replicaLagCheckMillis;
+    private String outboxSink;
+    private Integer outboxBatchSize;
+    private Long outboxLingerMillis;
+    private String outboxFile;
+    private String outboxHttpUrl;
+    private Integer changeFeedCapacity;
+    private Integer changeFeedDispatchers;
+    private Long changeFeedPollTimeoutMillis;
+    private Long changeFeedStreamTimeoutMillis;
+    private Boolean admissionEnabled;
+    private Double admissionReadRate;
+    private Integer admissionReadBurst;
+    private Double admissionWriteRate;
+    private Integer admissionWriteBurst;
+    private Integer admissionMaxConcurrentReads;
+    private Integer admissionMaxConcurrentWrites;
+    private Integer admissionMaxConcurrentBulk;
+    private Integer admissionShedPoolWaiters;
+    private List<Long> hotAccounts = new ArrayList<>();
+    private Long hotAccountSweepMillis;
+    private Integer hotAccountSweepBatchSize;
+    private Boolean journalEnabled;
+    private String journalDirectory;
+    private Integer journalSegmentBytes;
+    private Long journalCheckpointMillis;
+    private Integer journalCheckpointBatchSize;
+    private Boolean writeCoalescingEnabled;
+    private Long writeCoalescingLingerMicros;
+    private Integer writeCoalescingMaxBatch;
+    private Boolean clusterNotificationsEnabled;
+    private Long cardIndexSeed;
 }
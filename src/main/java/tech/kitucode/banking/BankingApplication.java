@@ -3,9 +3,11 @@ package tech.kitucode.banking;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @EnableConfigurationProperties(ApplicationProperties.class)
+@EnableScheduling
 public class BankingApplication {
     public static void main(String[] args) {
         SpringApplication.run(BankingApplication.class, args);
@@ -0,0 +1,61 @@
+package tech.kitucode.banking.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import tech.kitucode.banking.ApplicationProperties;
+import tech.kitucode.banking.web.filter.AdmissionFilter;
+import tech.kitucode.banking.web.filter.AdmissionFilter.EndpointClass;
+import tech.kitucode.banking.web.filter.RateLimiter;
+
+import java.util.Map;
+import java.util.function.IntSupplier;
+
+/**
+ * Puts the {@link AdmissionFilter} in front of the customer, account, card and transfer endpoints. Load is shed on the
+ * number of requests waiting for a connection of the primary pool, which takes every write. Turn it off with
+ * {@code application.admission-enabled: false}.
+ */
+@Configuration
+@ConditionalOnProperty(name = "application.admission-enabled", havingValue = "true", matchIfMissing = true)
+public class AdmissionConfiguration {
+
+    @Bean
+    public FilterRegistrationBean<AdmissionFilter> admissionFilter(ApplicationProperties applicationProperties, ObjectProvider<HikariDataSource> hikariDataSource,
+                                                                   ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        AdmissionFilter admissionFilter = new AdmissionFilter(
+                new RateLimiter(applicationProperties.getAdmissionReadRate(), applicationProperties.getAdmissionReadBurst()),
+                new RateLimiter(applicationProperties.getAdmissionWriteRate(), applicationProperties.getAdmissionWriteBurst()),
+                Map.of(EndpointClass.READ, applicationProperties.getAdmissionMaxConcurrentReads(),
+                        EndpointClass.WRITE, applicationProperties.getAdmissionMaxConcurrentWrites(),
+                        EndpointClass.BULK, applicationProperties.getAdmissionMaxConcurrentBulk()),
+                poolWaiters(hikariDataSource.getIfUnique()),
+                applicationProperties.getAdmissionShedPoolWaiters(),
+                objectMapper,
+                meterRegistry);
+
+        FilterRegistrationBean<AdmissionFilter> registration = new FilterRegistrationBean<>(admissionFilter);
+        registration.addUrlPatterns("/api/customers/*", "/api/accounts/*", "/api/cards/*", "/api/transfers/*");
+        // turn requests away before any other filter does work for them
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 10);
+        return registration;
+    }
+
+    private IntSupplier poolWaiters(HikariDataSource primary) {
+        if (primary == null) {
+            return () -> 0;
+        }
+        return () -> {
+            HikariPoolMXBean pool = primary.getHikariPoolMXBean();
+            // the pool is created with the first connection
+            return pool != null ? pool.getThreadsAwaitingConnection() : 0;
+        };
+    }
+}
@@ -0,0 +1,58 @@
+package tech.kitucode.banking.config;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.cache.CacheProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheManagerProxy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
+import tech.kitucode.banking.service.cluster.ClusterNotifications;
+
+/**
+ * Entity caches in front of the repository id lookups. Size, ttl and statistics are set through
+ * {@code spring.cache.caffeine.spec}; hit, miss and eviction counts are published by the actuator under
+ * {@code cache.*}.
+ * <p>
+ * The caches are transaction-aware: an eviction made in a transaction is applied once the transaction commits, so a
+ * lookup running between the eviction and the commit cannot put the old row back. With
+ * {@link ClusterNotifications} enabled, evictions are also applied by every other instance once the transaction
+ * commits.
+ */
+@Configuration
+@EnableCaching
+@EnableConfigurationProperties(CacheProperties.class)
+public class CacheConfiguration {
+    public static final String CUSTOMERS = "customers";
+    public static final String ACCOUNTS = "accounts";
+    public static final String CARDS = "cards";
+    static final String EVICTIONS_TOPIC = "cache";
+
+    @Bean
+    public CacheManager cacheManager(CacheProperties cacheProperties, ObjectProvider<ClusterNotifications> clusterNotifications) {
+        CaffeineCacheManager caffeineCacheManager = new CaffeineCacheManager();
+        if (StringUtils.hasText(cacheProperties.getCaffeine().getSpec())) {
+            caffeineCacheManager.setCacheSpecification(cacheProperties.getCaffeine().getSpec());
+        }
+        caffeineCacheManager.setCacheNames(cacheProperties.getCacheNames());
+
+        ClusterNotifications notifications = clusterNotifications.getIfAvailable();
+        if (notifications == null) {
+            return new TransactionAwareCacheManagerProxy(caffeineCacheManager);
+        }
+
+        // <cache name>:<id>, ids are the only cache keys
+        notifications.subscribe(EVICTIONS_TOPIC, message -> {
+            int separator = message.indexOf(':');
+            Cache cache = caffeineCacheManager.getCache(message.substring(0, separator));
+            if (cache != null) {
+                cache.evict(Long.valueOf(message.substring(separator + 1)));
+            }
+        }, () -> caffeineCacheManager.getCacheNames().forEach(name -> caffeineCacheManager.getCache(name).clear()));
+        return new ClusterCacheManager(caffeineCacheManager, notifications);
+    }
+}
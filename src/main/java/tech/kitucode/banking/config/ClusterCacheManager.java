@@ -0,0 +1,55 @@
+package tech.kitucode.banking.config;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
+import tech.kitucode.banking.service.cluster.ClusterNotifications;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Transaction-aware caches that also send their evictions to the other instances through
+ * {@link ClusterNotifications}, in the transaction that makes them, so they are applied everywhere once that
+ * transaction commits. Clearing a cache, as the actuator caches endpoint does, only clears it on this instance.
+ */
+class ClusterCacheManager implements CacheManager {
+    private final Map<String, Cache> caches = new ConcurrentHashMap<>();
+    private final CacheManager cacheManager;
+    private final ClusterNotifications clusterNotifications;
+
+    ClusterCacheManager(CacheManager cacheManager, ClusterNotifications clusterNotifications) {
+        this.cacheManager = cacheManager;
+        this.clusterNotifications = clusterNotifications;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        Cache cache = caches.get(name);
+        if (cache != null) {
+            return cache;
+        }
+
+        Cache target = cacheManager.getCache(name);
+        return target == null ? null : caches.computeIfAbsent(name, key -> new ClusterCache(target));
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return cacheManager.getCacheNames();
+    }
+
+    private class ClusterCache extends TransactionAwareCacheDecorator {
+
+        private ClusterCache(Cache target) {
+            super(target);
+        }
+
+        @Override
+        public void evict(Object key) {
+            clusterNotifications.publish(CacheConfiguration.EVICTIONS_TOPIC, getName() + ':' + key);
+            super.evict(key);
+        }
+    }
+}
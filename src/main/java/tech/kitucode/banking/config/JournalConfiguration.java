@@ -0,0 +1,24 @@
+package tech.kitucode.banking.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import tech.kitucode.banking.ApplicationProperties;
+import tech.kitucode.banking.service.journal.PostingJournal;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Opens the posting journal in {@code application.journal-directory} when {@code application.journal-enabled} is
+ * set. The journal is local to this instance, so only one instance may have it enabled.
+ */
+@Configuration
+@ConditionalOnProperty(name = "application.journal-enabled", havingValue = "true")
+public class JournalConfiguration {
+
+    @Bean(destroyMethod = "close")
+    public PostingJournal postingJournal(ApplicationProperties applicationProperties) throws IOException {
+        return new PostingJournal(Path.of(applicationProperties.getJournalDirectory()), applicationProperties.getJournalSegmentBytes());
+    }
+}
@@ -0,0 +1,18 @@
+package tech.kitucode.banking.config;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Enables {@code @Timed} on the services. Repository, connection pool, cache, hibernate and http metrics are
+ * registered by the actuator; all of them are scraped from {@code /actuator/prometheus}.
+ */
+@Configuration
+public class MetricsConfiguration {
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry meterRegistry) {
+        return new TimedAspect(meterRegistry);
+    }
+}
@@ -0,0 +1,32 @@
+package tech.kitucode.banking.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.client.RestClient;
+import tech.kitucode.banking.ApplicationProperties;
+import tech.kitucode.banking.service.outbox.FileOutboxSink;
+import tech.kitucode.banking.service.outbox.HttpOutboxSink;
+import tech.kitucode.banking.service.outbox.OutboxSink;
+
+import java.nio.file.Path;
+
+/**
+ * Picks the outbox sink with {@code application.outbox-sink}: {@code file} (the default) or {@code http}.
+ */
+@Configuration
+public class OutboxConfiguration {
+
+    @Bean
+    @ConditionalOnProperty(name = "application.outbox-sink", havingValue = "file", matchIfMissing = true)
+    public OutboxSink fileOutboxSink(ApplicationProperties applicationProperties, ObjectMapper objectMapper) {
+        return new FileOutboxSink(Path.of(applicationProperties.getOutboxFile()), objectMapper);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "application.outbox-sink", havingValue = "http")
+    public OutboxSink httpOutboxSink(ApplicationProperties applicationProperties, RestClient.Builder restClientBuilder) {
+        return new HttpOutboxSink(applicationProperties.getOutboxHttpUrl(), restClientBuilder);
+    }
+}
@@ -0,0 +1,87 @@
+package tech.kitucode.banking.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import tech.kitucode.banking.ApplicationProperties;
+import tech.kitucode.banking.web.filter.ReadYourWritesFilter;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read replica routing, active when at least one {@code application.read-replicas} entry is configured.
+ * <p>
+ * The primary pool is built from {@code spring.datasource}; every replica gets its own Hikari pool, configured
+ * under {@code application.read-replicas[n]} and published under {@code hikaricp.*} with its pool name. Read-only
+ * service transactions (the listings, typeahead and exports) go to the replicas. Lookups by id are served from the
+ * entity caches and stay on the primary, so that a lagging replica never puts a stale row in a cache.
+ */
+@Configuration
+@ConditionalOnProperty("application.read-replicas[0].jdbc-url")
+public class ReadReplicaConfiguration {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties dataSourceProperties) {
+        HikariDataSource primary = dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        primary.setPoolName("primary");
+        return primary;
+    }
+
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(HikariDataSource primaryDataSource, ApplicationProperties applicationProperties, MeterRegistry meterRegistry) {
+        List<HikariConfig> replicaConfigs = applicationProperties.getReadReplicas();
+
+        Map<String, HikariDataSource> replicas = new LinkedHashMap<>();
+        for (int i = 0; i < replicaConfigs.size(); i++) {
+            HikariConfig replicaConfig = replicaConfigs.get(i);
+            if (replicaConfig.getPoolName() == null) {
+                replicaConfig.setPoolName("replica-" + (i + 1));
+            }
+            // credentials and driver settings default to those of the primary
+            if (replicaConfig.getUsername() == null) {
+                replicaConfig.setUsername(primaryDataSource.getUsername());
+                replicaConfig.setPassword(primaryDataSource.getPassword());
+            }
+            if (replicaConfig.getDataSourceProperties().isEmpty()) {
+                replicaConfig.setDataSourceProperties(primaryDataSource.getDataSourceProperties());
+            }
+            replicaConfig.setReadOnly(true);
+            // a replica that is down must not stop the application; it stays out of the rotation until it is reachable
+            replicaConfig.setInitializationFailTimeout(-1);
+            replicaConfig.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+
+            replicas.put(replicaConfig.getPoolName(), new HikariDataSource(replicaConfig));
+        }
+
+        return new ReplicaRoutingDataSource(primaryDataSource, replicas);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+
+    @Bean
+    public ReplicaLagMonitor replicaLagMonitor(ReplicaRoutingDataSource replicaRoutingDataSource, ApplicationProperties applicationProperties, MeterRegistry meterRegistry) {
+        return new ReplicaLagMonitor(replicaRoutingDataSource, applicationProperties, meterRegistry);
+    }
+
+    @Bean
+    public ReadYourWritesFilter readYourWritesFilter(ApplicationProperties applicationProperties) {
+        return new ReadYourWritesFilter(Duration.ofMillis(applicationProperties.getReadYourWritesWindowMillis()));
+    }
+}
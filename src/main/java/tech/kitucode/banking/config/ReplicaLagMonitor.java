@@ -0,0 +1,79 @@
+package tech.kitucode.banking.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import tech.kitucode.banking.ApplicationProperties;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how far each read replica is behind the primary and takes replicas that lag by more than
+ * {@code application.max-replica-lag-millis}, or cannot be reached, out of the read rotation. The lag is published
+ * as {@code banking.datasource.replica.lag}, -1 while a replica is unreachable or its lag is unknown.
+ * <p>
+ * A replica counts as up to date only once it has replayed the WAL the primary had written when the check started,
+ * so a replica that has replayed all it received but stopped receiving is not taken for one. A replica without a
+ * WAL receiver, because it lost its connection to the primary, counts as unreachable, and so does one that is behind
+ * but has not replayed a transaction since it started, as there is nothing to measure its lag by.
+ */
+@Slf4j
+public class ReplicaLagMonitor {
+    private static final String PRIMARY_LSN_SQL = "select cast(pg_current_wal_lsn() as text)";
+    // a replica that has replayed the primary's WAL is up to date, however old the last transaction is; the receiver
+    // status is only visible with pg_read_all_stats, without it a running receiver is taken to be streaming
+    private static final String LAG_SQL = "select case when not pg_is_in_recovery() then 0 " +
+            "when not exists (select 1 from pg_stat_wal_receiver where coalesce(status, 'streaming') = 'streaming') then -1 " +
+            "when pg_last_wal_replay_lsn() >= cast(? as pg_lsn) then 0 " +
+            "else cast(coalesce(extract(epoch from now() - pg_last_xact_replay_timestamp()) * 1000, -1) as bigint) end";
+
+    private final ReplicaRoutingDataSource routingDataSource;
+    private final ApplicationProperties applicationProperties;
+    private final Map<String, AtomicLong> lagMillis = new ConcurrentHashMap<>();
+
+    public ReplicaLagMonitor(ReplicaRoutingDataSource routingDataSource, ApplicationProperties applicationProperties, MeterRegistry meterRegistry) {
+        this.routingDataSource = routingDataSource;
+        this.applicationProperties = applicationProperties;
+
+        for (String replica : routingDataSource.getReplicas().keySet()) {
+            AtomicLong lag = new AtomicLong();
+            lagMillis.put(replica, lag);
+            Gauge.builder("banking.datasource.replica.lag", lag, AtomicLong::get)
+                    .description("Replication lag of a read replica in milliseconds")
+                    .baseUnit("milliseconds")
+                    .tag("pool", replica)
+                    .register(meterRegistry);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${application.replica-lag-check-millis:1000}")
+    public void checkLag() {
+        String primaryLsn;
+        try {
+            primaryLsn = new JdbcTemplate(routingDataSource.getPrimary()).queryForObject(PRIMARY_LSN_SQL, String.class);
+        } catch (RuntimeException e) {
+            // the replicas are still measured by the age of their last replayed transaction
+            log.debug("Could not read the WAL position of the primary", e);
+            primaryLsn = null;
+        }
+
+        for (Map.Entry<String, HikariDataSource> replica : routingDataSource.getReplicas().entrySet()) {
+            long lag;
+            try {
+                Long measured = new JdbcTemplate(replica.getValue()).queryForObject(LAG_SQL, Long.class, primaryLsn);
+                lag = measured == null ? 0 : measured;
+            } catch (RuntimeException e) {
+                log.debug("Could not measure lag of read replica: {}", replica.getKey(), e);
+                lag = -1;
+            }
+
+            lagMillis.get(replica.getKey()).set(lag);
+            routingDataSource.setLagging(replica.getKey(), lag < 0 || lag > applicationProperties.getMaxReplicaLagMillis());
+        }
+    }
+}
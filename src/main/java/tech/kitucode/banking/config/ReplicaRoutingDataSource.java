@@ -0,0 +1,99 @@
+package tech.kitucode.banking.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends read-only transactions to the read replicas, round robin, and everything else to the primary.
+ * <p>
+ * Reads stay on the primary while the current thread is pinned to it (see {@link #pinToPrimary()}) and skip
+ * replicas that are marked as lagging; when every replica lags they go to the primary as well. The routing key is
+ * resolved when a connection is first used, so this data source must sit behind a
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy} for the read-only flag of the
+ * transaction to be visible.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+    static final String PRIMARY = "primary";
+    private static final ThreadLocal<Boolean> PINNED_TO_PRIMARY = new ThreadLocal<>();
+
+    private final HikariDataSource primary;
+    private final Map<String, HikariDataSource> replicas;
+    private final List<String> replicaNames;
+    private final Set<String> laggingReplicas = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    public ReplicaRoutingDataSource(HikariDataSource primary, Map<String, HikariDataSource> replicas) {
+        this.primary = primary;
+        this.replicas = replicas;
+        this.replicaNames = new ArrayList<>(replicas.keySet());
+
+        Map<Object, Object> targets = new HashMap<>(replicas);
+        targets.put(PRIMARY, primary);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+
+        // replicas join the rotation once their lag has been measured
+        laggingReplicas.addAll(replicaNames);
+    }
+
+    public static void pinToPrimary() {
+        PINNED_TO_PRIMARY.set(Boolean.TRUE);
+    }
+
+    public static void unpin() {
+        PINNED_TO_PRIMARY.remove();
+    }
+
+    public HikariDataSource getPrimary() {
+        return primary;
+    }
+
+    public Map<String, HikariDataSource> getReplicas() {
+        return replicas;
+    }
+
+    public void setLagging(String replica, boolean lagging) {
+        boolean changed = lagging ? laggingReplicas.add(replica) : laggingReplicas.remove(replica);
+        if (changed && lagging) {
+            log.warn("Read replica: {} is lagging or unreachable, reads will skip it", replica);
+        } else if (changed) {
+            log.info("Read replica: {} is in the read rotation", replica);
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly() || PINNED_TO_PRIMARY.get() != null) {
+            return PRIMARY;
+        }
+
+        int size = replicaNames.size();
+        int start = Math.floorMod(nextReplica.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            String replica = replicaNames.get((start + i) % size);
+            if (!laggingReplicas.contains(replica)) {
+                return replica;
+            }
+        }
+
+        return PRIMARY;
+    }
+
+    @Override
+    public void close() {
+        replicas.values().forEach(HikariDataSource::close);
+    }
+}
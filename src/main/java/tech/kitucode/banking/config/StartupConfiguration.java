@@ -0,0 +1,24 @@
+package tech.kitucode.banking.config;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.orm.jpa.AbstractEntityManagerFactoryBean;
+
+import javax.sql.DataSource;
+
+/**
+ * Keeps the persistence layer eager when {@code spring.main.lazy-initialization} is on, as in the
+ * {@code fast-startup} profile. Otherwise the first request would pay for the connection pool and the hibernate
+ * metamodel, and a schema that does not match the mappings would only be noticed after the instance reports ready.
+ * Beans with {@code @Scheduled} methods are kept eager by spring boot itself.
+ */
+@Configuration
+public class StartupConfiguration {
+
+    @Bean
+    public static LazyInitializationExcludeFilter eagerPersistence() {
+        return LazyInitializationExcludeFilter.forBeanTypes(DataSource.class, EntityManagerFactory.class, AbstractEntityManagerFactoryBean.class);
+    }
+}
@@ -1,8 +1,10 @@
 package tech.kitucode.banking.domain;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.Data;
 
+import java.math.BigDecimal;
 import java.time.LocalDate;
 
 @Data
@@ -10,10 +12,11 @@ import java.time.LocalDate;
 @Table(name = "tbl_accounts")
 public class Account {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "account_id_seq")
+    @SequenceGenerator(name = "account_id_seq", sequenceName = "tbl_accounts_seq", allocationSize = 50)
     private Long accountId;
 
-    @Column(name = "iban")
+    @Column(name = "iban", unique = true)
     private String iban;
 
     @Column(name = "bic_swift")
@@ -22,9 +25,33 @@ public class Account {
     @Column(name = "customer_id")
     private Long customerId;
 
-    @Column(name = "created_on")
+    @Column(name = "created_on", nullable = false, updatable = false)
     private LocalDate createdOn;
 
     @Column(name = "updated_on")
     private LocalDate updatedOn;
+
+    /**
+     * Incremented by every update; sent as the etag of the entity.
+     */
+    @Version
+    @Column(name = "version", nullable = false, columnDefinition = "bigint default 0")
+    private Long version;
+
+    /**
+     * Number of cards issued against this account. Card issuance reserves a slot with a conditional update on this
+     * column, which also locks the account row until the card has been inserted.
+     */
+    @JsonIgnore
+    @Column(name = "card_count", nullable = false, columnDefinition = "integer default 0")
+    private Integer cardCount = 0;
+
+    /**
+     * The settled balance. It is only changed by the conditional updates of {@code TransferService}, never by saving
+     * the entity, so a cached account cannot write back a stale balance. Credits to hot accounts are kept as pending
+     * credits until they are swept into it; read the balance through {@code TransferService#findBalance}.
+     */
+    @JsonIgnore
+    @Column(name = "balance", nullable = false, updatable = false, precision = 19, scale = 2)
+    private BigDecimal balance = BigDecimal.ZERO;
 }
@@ -8,7 +8,7 @@ import java.time.LocalDate;
 
 @Data
 @Entity
-@Table(name = "tbl_cards")
+@Table(name = "tbl_cards", uniqueConstraints = @UniqueConstraint(name = "uk_cards_account_id_card_type", columnNames = {"account_id", "card_type"}))
 public class Card {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -30,9 +30,16 @@ public class Card {
     @Column(name = "cvv")
     private String cvv;
 
-    @Column(name = "created_on")
+    @Column(name = "created_on", nullable = false, updatable = false)
     private LocalDate createdOn;
 
     @Column(name = "updated_on")
     private LocalDate updatedOn;
+
+    /**
+     * Incremented by every update; sent as the etag of the entity.
+     */
+    @Version
+    @Column(name = "version", nullable = false, columnDefinition = "bigint default 0")
+    private Long version;
 }
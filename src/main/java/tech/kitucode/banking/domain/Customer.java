@@ -22,9 +22,16 @@ public class Customer {
     @Column(name = "other_name")
     private String otherName;
 
-    @Column(name = "created_on")
+    @Column(name = "created_on", nullable = false, updatable = false)
     private LocalDate createdOn;
 
     @Column(name = "updated_on")
     private LocalDate updatedOn;
+
+    /**
+     * Incremented by every update; sent as the etag of the entity.
+     */
+    @Version
+    @Column(name = "version", nullable = false, columnDefinition = "bigint default 0")
+    private Long version;
 }
@@ -0,0 +1,23 @@
+package tech.kitucode.banking.domain;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Data;
+
+/**
+ * High-water mark of the account numbers handed out for a branch. Nodes reserve numbers in blocks by advancing
+ * {@code nextAccountNumber} under a row lock, so two nodes never hand out the same number.
+ */
+@Data
+@Entity
+@Table(name = "tbl_iban_blocks")
+public class IbanBlock {
+    @Id
+    @Column(name = "branch_code")
+    private String branchCode;
+
+    @Column(name = "next_account_number")
+    private Long nextAccountNumber;
+}
@@ -0,0 +1,25 @@
+package tech.kitucode.banking.domain;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * The last sequence of a posting journal whose postings have been added to the account balances. It is written in
+ * the same transaction as the balances, so replaying the journal after it never applies a posting twice.
+ */
+@Data
+@Entity
+@Table(name = "tbl_journal_checkpoints")
+public class JournalCheckpoint {
+    @Id
+    @Column(name = "journal_name")
+    private String journalName;
+
+    @Column(name = "sequence", nullable = false)
+    private Long sequence;
+
+    @Column(name = "checkpointed_at", nullable = false)
+    private LocalDateTime checkpointedAt;
+}
@@ -0,0 +1,44 @@
+package tech.kitucode.banking.domain;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import jakarta.persistence.*;
+import lombok.Data;
+import tech.kitucode.banking.domain.enumerations.AggregateType;
+import tech.kitucode.banking.domain.enumerations.ChangeType;
+
+import java.time.LocalDateTime;
+
+/**
+ * A change to a customer, account or card, written in the same transaction as the change itself and removed once
+ * the outbox relay has delivered it.
+ */
+@Data
+@Entity
+@Table(name = "tbl_outbox")
+public class OutboxEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "outbox_id_seq")
+    @SequenceGenerator(name = "outbox_id_seq", sequenceName = "tbl_outbox_seq", allocationSize = 50)
+    private Long eventId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "aggregate_type", nullable = false)
+    private AggregateType aggregateType;
+
+    @Column(name = "aggregate_id", nullable = false)
+    private Long aggregateId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "change_type", nullable = false)
+    private ChangeType changeType;
+
+    /**
+     * The changed customer, account or masked card as json; empty for deletes.
+     */
+    @JsonRawValue
+    @Column(name = "payload", columnDefinition = "text")
+    private String payload;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,34 @@
+package tech.kitucode.banking.domain;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * A credit to a hot account that has not been added to its balance yet. Credits are inserted instead of updating
+ * the balance row, so concurrent transfers to the account do not wait for each other; they are swept into the
+ * balance in batches.
+ */
+@Data
+@Entity
+@Table(name = "tbl_pending_credits")
+public class PendingCredit {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "pending_credit_id_seq")
+    @SequenceGenerator(name = "pending_credit_id_seq", sequenceName = "tbl_pending_credits_seq", allocationSize = 50)
+    private Long creditId;
+
+    @Column(name = "account_id", nullable = false)
+    private Long accountId;
+
+    @Column(name = "amount", nullable = false, precision = 19, scale = 2)
+    private BigDecimal amount;
+
+    @Column(name = "transfer_id", nullable = false)
+    private Long transferId;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
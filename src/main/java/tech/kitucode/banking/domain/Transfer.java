@@ -0,0 +1,38 @@
+package tech.kitucode.banking.domain;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * A completed movement of money between two accounts of the bank.
+ */
+@Data
+@Entity
+@Table(name = "tbl_transfers")
+public class Transfer {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "transfer_id_seq")
+    @SequenceGenerator(name = "transfer_id_seq", sequenceName = "tbl_transfers_seq", allocationSize = 50)
+    private Long transferId;
+
+    /**
+     * Set by the client to make retries safe: a second transfer with the same reference returns the first one.
+     */
+    @Column(name = "reference", unique = true)
+    private String reference;
+
+    @Column(name = "from_account_id", nullable = false)
+    private Long fromAccountId;
+
+    @Column(name = "to_account_id", nullable = false)
+    private Long toAccountId;
+
+    @Column(name = "amount", nullable = false, precision = 19, scale = 2)
+    private BigDecimal amount;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
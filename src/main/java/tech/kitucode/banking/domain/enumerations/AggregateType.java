@@ -0,0 +1,5 @@
+package tech.kitucode.banking.domain.enumerations;
+
+public enum AggregateType {
+    CUSTOMER, ACCOUNT, CARD
+}
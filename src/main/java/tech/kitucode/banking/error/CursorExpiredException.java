@@ -0,0 +1,22 @@
+package tech.kitucode.banking.error;
+
+public class CursorExpiredException extends RuntimeException {
+    public CursorExpiredException() {
+    }
+
+    public CursorExpiredException(String message) {
+        super(message);
+    }
+
+    public CursorExpiredException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public CursorExpiredException(Throwable cause) {
+        super(cause);
+    }
+
+    public CursorExpiredException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
@@ -0,0 +1,22 @@
+package tech.kitucode.banking.error;
+
+public class DuplicatePanException extends RuntimeException {
+    public DuplicatePanException() {
+    }
+
+    public DuplicatePanException(String message) {
+        super(message);
+    }
+
+    public DuplicatePanException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public DuplicatePanException(Throwable cause) {
+        super(cause);
+    }
+
+    public DuplicatePanException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
@@ -1,10 +1,95 @@
 package tech.kitucode.banking.repository;
 
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import tech.kitucode.banking.config.CacheConfiguration;
 import tech.kitucode.banking.domain.Account;
+import tech.kitucode.banking.service.dto.BalanceDTO;
 
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface AccountRepository extends JpaRepository<Account, Long> {
+    @Override
+    @Cacheable(cacheNames = CacheConfiguration.ACCOUNTS, key = "#p0", unless = "#result == null")
+    Optional<Account> findById(Long accountId);
+
+    @Override
+    @CacheEvict(cacheNames = CacheConfiguration.ACCOUNTS, key = "#p0.accountId", condition = "#p0.accountId != null")
+    <S extends Account> S save(S account);
+
+    @Override
+    @CacheEvict(cacheNames = CacheConfiguration.ACCOUNTS, key = "#p0")
+    void deleteById(Long accountId);
+
+    @Override
+    @CacheEvict(cacheNames = CacheConfiguration.ACCOUNTS, key = "#p0.accountId")
+    void delete(Account account);
+
     Optional<Account> findOneByIban(String iban);
+
+    @Modifying
+    @CacheEvict(cacheNames = CacheConfiguration.ACCOUNTS, key = "#p0")
+    @Query("update Account a set a.cardCount = a.cardCount + 1 where a.accountId = :accountId and a.cardCount < :maxCards")
+    int incrementCardCount(Long accountId, Integer maxCards);
+
+    @Modifying
+    @CacheEvict(cacheNames = CacheConfiguration.ACCOUNTS, key = "#p0")
+    @Query("update Account a set a.cardCount = a.cardCount - 1 where a.accountId = :accountId and a.cardCount > 0")
+    int decrementCardCount(Long accountId);
+
+    @QueryHints({
+            @QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = AvailableHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select a from Account a")
+    Stream<Account> streamAll();
+
+    @Query("select a.version from Account a where a.accountId = :accountId")
+    Optional<Long> findVersionById(Long accountId);
+
+    List<Account> findAllByIbanIn(Collection<String> ibans);
+
+    @Query("select a.iban from Account a where a.iban between :from and :to")
+    List<String> findIbansBetween(String from, String to);
+
+    /**
+     * Takes the amount from the balance if it covers it. The update locks the row until the end of the transaction;
+     * 0 means the account does not exist or has too little money.
+     */
+    @Modifying
+    @Query("update Account a set a.balance = a.balance - :amount where a.accountId = :accountId and a.balance >= :amount")
+    int debit(Long accountId, BigDecimal amount);
+
+    @Modifying
+    @Query("update Account a set a.balance = a.balance + :amount where a.accountId = :accountId")
+    int credit(Long accountId, BigDecimal amount);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select a.accountId from Account a where a.accountId = :accountId")
+    Optional<Long> lockById(Long accountId);
+
+    @Query("select a.balance from Account a where a.accountId = :accountId")
+    Optional<BigDecimal> findBalanceById(Long accountId);
+
+    /**
+     * The balance with the pending credits added, and the pending credits on their own. Both are read by one
+     * statement, so a sweep that commits while it runs cannot move credits from one to the other unseen.
+     */
+    @Query("select new tech.kitucode.banking.service.dto.BalanceDTO(a.accountId, " +
+            "a.balance + (select coalesce(sum(p.amount), 0) from PendingCredit p where p.accountId = a.accountId), " +
+            "(select coalesce(sum(p.amount), 0) from PendingCredit p where p.accountId = a.accountId)) " +
+            "from Account a where a.accountId = :accountId")
+    Optional<BalanceDTO> findBalanceWithPendingCreditsById(Long accountId);
 }
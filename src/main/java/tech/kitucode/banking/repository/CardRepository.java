@@ -1,15 +1,113 @@
 package tech.kitucode.banking.repository;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import tech.kitucode.banking.config.CacheConfiguration;
 import tech.kitucode.banking.domain.Card;
 import tech.kitucode.banking.domain.enumerations.CardType;
+import tech.kitucode.banking.service.dto.MaskedCardDTO;
 
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface CardRepository extends JpaRepository<Card, Long> {
+    /**
+     * Selects only the columns of the masked view; the cvv column is never read.
+     */
+    String MASKED_CARD = "new tech.kitucode.banking.service.dto.MaskedCardDTO(c.cardId, c.cardAlias, c.accountId, c.cardType, c.pan, c.createdOn, c.updatedOn, c.version)";
+    String SELECT_MASKED_CARD = "select " + MASKED_CARD + " from Card c ";
+    String CARD_FILTER = "where (:cardAlias is null or c.cardAlias = :cardAlias) and (:cardType is null or c.cardType = :cardType) and (:pan is null or c.pan = :pan) ";
+
+    /**
+     * Cards are cached unmasked; masking is applied to a copy when the card is returned to a client.
+     */
+    @Override
+    @Cacheable(cacheNames = CacheConfiguration.CARDS, key = "#p0", unless = "#result == null")
+    Optional<Card> findById(Long cardId);
+
+    @Override
+    @CacheEvict(cacheNames = CacheConfiguration.CARDS, key = "#p0.cardId", condition = "#p0.cardId != null")
+    <S extends Card> S save(S card);
+
+    @Override
+    @CacheEvict(cacheNames = CacheConfiguration.CARDS, key = "#p0.cardId", condition = "#p0.cardId != null")
+    <S extends Card> S saveAndFlush(S card);
+
+    @Override
+    @CacheEvict(cacheNames = CacheConfiguration.CARDS, key = "#p0")
+    void deleteById(Long cardId);
+
+    @Override
+    @CacheEvict(cacheNames = CacheConfiguration.CARDS, key = "#p0.cardId")
+    void delete(Card card);
+
     Optional<Card> findOneByPan(String pan);
 
+    boolean existsByPan(String pan);
+
     Optional<Card> findOneByCardTypeAndAccountId(CardType cardType, Long accountId);
 
     Integer countByAccountId(Long accountId);
+
+    @QueryHints({
+            @QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = AvailableHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select c from Card c")
+    Stream<Card> streamAll();
+
+    /**
+     * Pan, id, account id and type of every card, for loading the authorization index without whole entities.
+     */
+    @QueryHints({
+            @QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = AvailableHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select c.pan, c.cardId, c.accountId, c.cardType from Card c")
+    Stream<Object[]> streamAuthorizationEntries();
+
+    @Query("select c.pan, c.cardId, c.accountId, c.cardType from Card c where c.cardId = :cardId")
+    List<Object[]> findAuthorizationEntryById(Long cardId);
+
+    @Query(value = SELECT_MASKED_CARD + CARD_FILTER, countQuery = "select count(c) from Card c " + CARD_FILTER)
+    Page<MaskedCardDTO> findAllMasked(String cardAlias, CardType cardType, String pan, Pageable pageable);
+
+    /**
+     * Keyset page of masked cards ordered by created on date and id, starting after the given keys. Null keys start
+     * from the first card.
+     */
+    @Query(SELECT_MASKED_CARD + CARD_FILTER +
+            "and (cast(:createdOn as LocalDate) is null or c.createdOn > :createdOn or (c.createdOn = :createdOn and c.cardId > :cardId)) " +
+            "order by c.createdOn, c.cardId")
+    List<MaskedCardDTO> findAllMaskedAfter(String cardAlias, CardType cardType, String pan, LocalDate createdOn, Long cardId, Limit limit);
+
+    @QueryHints({
+            @QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = AvailableHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query(SELECT_MASKED_CARD)
+    Stream<MaskedCardDTO> streamAllMasked();
+
+    @Query("select c.version from Card c where c.cardId = :cardId")
+    Optional<Long> findVersionById(Long cardId);
+
+    @Query(SELECT_MASKED_CARD + "where c.cardId in :cardIds")
+    List<MaskedCardDTO> findAllMaskedByCardIdIn(Collection<Long> cardIds);
+
+    /**
+     * Masked cards by pan, each paired with its unmasked pan so the caller can match them to the pans asked for.
+     */
+    @Query("select c.pan, " + MASKED_CARD + " from Card c where c.pan in :pans")
+    List<Object[]> findAllMaskedByPanIn(Collection<String> pans);
 }
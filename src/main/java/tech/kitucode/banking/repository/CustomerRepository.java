@@ -1,8 +1,77 @@
 package tech.kitucode.banking.repository;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import tech.kitucode.banking.config.CacheConfiguration;
 import tech.kitucode.banking.domain.Customer;
+import tech.kitucode.banking.service.dto.CustomerNameDTO;
+import tech.kitucode.banking.service.dto.CustomerOverviewRowDTO;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 public interface CustomerRepository extends JpaRepository<Customer, Long>, JpaSpecificationExecutor<Customer> {
+    @Override
+    @Cacheable(cacheNames = CacheConfiguration.CUSTOMERS, key = "#p0", unless = "#result == null")
+    Optional<Customer> findById(Long customerId);
+
+    @Override
+    @CacheEvict(cacheNames = CacheConfiguration.CUSTOMERS, key = "#p0.customerId", condition = "#p0.customerId != null")
+    <S extends Customer> S save(S customer);
+
+    @Override
+    @CacheEvict(cacheNames = CacheConfiguration.CUSTOMERS, key = "#p0")
+    void deleteById(Long customerId);
+
+    @Override
+    @CacheEvict(cacheNames = CacheConfiguration.CUSTOMERS, key = "#p0.customerId")
+    void delete(Customer customer);
+
+    @Query("select c.customerId from Customer c where c.customerId in :customerIds")
+    Set<Long> findExistingIds(Collection<Long> customerIds);
+
+    @QueryHints({
+            @QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = AvailableHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select c from Customer c")
+    Stream<Customer> streamAll();
+
+    /**
+     * Names of the customers with an id greater than the given one, used to build the name index. Only the name
+     * columns are read and nothing is added to the persistence context.
+     */
+    @QueryHints({
+            @QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = AvailableHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select new tech.kitucode.banking.service.dto.CustomerNameDTO(c.customerId, c.firstName, c.lastName, c.otherName) from Customer c where c.customerId > :customerId")
+    Stream<CustomerNameDTO> streamNamesAfter(Long customerId);
+
+    /**
+     * The customer joined with its accounts and their cards, one row per card, ordered by account and card. There
+     * are no mapped associations between the entities, so the joins are on the id columns.
+     */
+    @Query("select new tech.kitucode.banking.service.dto.CustomerOverviewRowDTO(" +
+            "c.customerId, c.firstName, c.lastName, c.otherName, c.createdOn, c.updatedOn, c.version, " +
+            "a.accountId, a.iban, a.bicSwift, a.createdOn, a.updatedOn, a.version, " +
+            "k.cardId, k.cardAlias, k.cardType, k.pan, k.createdOn, k.updatedOn, k.version) " +
+            "from Customer c left join Account a on a.customerId = c.customerId left join Card k on k.accountId = a.accountId " +
+            "where c.customerId = :customerId order by a.accountId, k.cardId")
+    List<CustomerOverviewRowDTO> findOverviewRows(Long customerId);
+
+    /**
+     * Reads only the version column, for conditional requests that must not load the whole row.
+     */
+    @Query("select c.version from Customer c where c.customerId = :customerId")
+    Optional<Long> findVersionById(Long customerId);
 }
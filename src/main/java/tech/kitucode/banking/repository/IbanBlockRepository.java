@@ -0,0 +1,13 @@
+package tech.kitucode.banking.repository;
+
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import tech.kitucode.banking.domain.IbanBlock;
+
+import java.util.Optional;
+
+public interface IbanBlockRepository extends JpaRepository<IbanBlock, String> {
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<IbanBlock> findOneByBranchCode(String branchCode);
+}
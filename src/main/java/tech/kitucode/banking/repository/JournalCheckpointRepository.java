@@ -0,0 +1,7 @@
+package tech.kitucode.banking.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import tech.kitucode.banking.domain.JournalCheckpoint;
+
+public interface JournalCheckpointRepository extends JpaRepository<JournalCheckpoint, String> {
+}
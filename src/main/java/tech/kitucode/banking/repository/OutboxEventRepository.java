@@ -0,0 +1,24 @@
+package tech.kitucode.banking.repository;
+
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import tech.kitucode.banking.domain.OutboxEvent;
+
+import java.util.List;
+
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+    /**
+     * Oldest undelivered events, locked until the end of the transaction. Rows locked by another relay are skipped
+     * (a lock timeout of -2 is {@code for update skip locked}), so several nodes can drain the outbox in parallel.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_SPEC_LOCK_TIMEOUT, value = "-2"))
+    @Query("select e from OutboxEvent e order by e.eventId")
+    List<OutboxEvent> findNextBatch(Limit limit);
+}
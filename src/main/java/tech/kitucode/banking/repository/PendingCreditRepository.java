@@ -0,0 +1,23 @@
+package tech.kitucode.banking.repository;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import tech.kitucode.banking.domain.PendingCredit;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface PendingCreditRepository extends JpaRepository<PendingCredit, Long> {
+    /**
+     * Oldest pending credits of an account. Only a sweep, which holds the lock on the account row, reads them for
+     * removal, so they do not need a lock of their own.
+     */
+    @Query("select p from PendingCredit p where p.accountId = :accountId order by p.creditId")
+    List<PendingCredit> findOldest(Long accountId, Limit limit);
+
+    @Modifying
+    @Query("delete from PendingCredit p where p.creditId in :creditIds")
+    int deleteAllByCreditIdIn(Collection<Long> creditIds);
+}
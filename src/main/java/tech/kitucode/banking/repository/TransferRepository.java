@@ -0,0 +1,10 @@
+package tech.kitucode.banking.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import tech.kitucode.banking.domain.Transfer;
+
+import java.util.Optional;
+
+public interface TransferRepository extends JpaRepository<Transfer, Long> {
+    Optional<Transfer> findOneByReference(String reference);
+}
@@ -1,54 +1,152 @@
 package tech.kitucode.banking.service;
 
+import io.micrometer.core.annotation.Timed;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Example;
 import org.springframework.data.domain.ExampleMatcher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import tech.kitucode.banking.ApplicationProperties;
 import tech.kitucode.banking.domain.Account;
 import tech.kitucode.banking.domain.Customer;
+import tech.kitucode.banking.domain.enumerations.AggregateType;
+import tech.kitucode.banking.domain.enumerations.ChangeType;
 import tech.kitucode.banking.error.ValidationException;
 import tech.kitucode.banking.repository.AccountRepository;
 import tech.kitucode.banking.repository.CustomerRepository;
+import tech.kitucode.banking.service.dto.BatchLookupDTO;
+import tech.kitucode.banking.service.dto.BulkAccountResultDTO;
 import tech.kitucode.banking.service.dto.CreateAccountDTO;
+import tech.kitucode.banking.service.util.BatchLookupUtil;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.LocalDate;
-import java.util.Optional;
-import java.util.Random;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
+@Timed(value = "banking.service", description = "Time taken by service methods")
 public class AccountService {
-    private final Random random = new Random();
+    private static final Sort KEYSET_SORT = Sort.by("createdOn", "accountId");
     private final AccountRepository accountRepository;
     private final CustomerRepository customerRepository;
     private final ApplicationProperties applicationProperties;
+    private final IbanAllocator ibanAllocator;
+    private final NdjsonExporter ndjsonExporter;
+    private final OutboxService outboxService;
+    private final TransactionTemplate transactionTemplate;
 
-    public AccountService(AccountRepository accountRepository, CustomerRepository customerRepository, ApplicationProperties applicationProperties) {
+    public AccountService(AccountRepository accountRepository, CustomerRepository customerRepository, ApplicationProperties applicationProperties, IbanAllocator ibanAllocator,
+                          NdjsonExporter ndjsonExporter, OutboxService outboxService, PlatformTransactionManager transactionManager) {
         this.accountRepository = accountRepository;
         this.customerRepository = customerRepository;
         this.applicationProperties = applicationProperties;
+        this.ibanAllocator = ibanAllocator;
+        this.ndjsonExporter = ndjsonExporter;
+        this.outboxService = outboxService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
-    public Account save(CreateAccountDTO createAccountDTO) {
-        log.debug("Request to save account: {}", createAccountDTO);
+    /**
+     * Allocates the iban of an account to be opened at the branch. Call it before the transaction that saves the
+     * account starts: it may wait for a block of account numbers to be reserved, and a caller in a transaction would
+     * hold a pooled connection all that time.
+     */
+    public String allocateIban(String branchCode) {
+        return ibanAllocator.nextIban(branchCode);
+    }
 
-        Customer customer = customerRepository.findById(createAccountDTO.getCustomerId()).orElse(null);
-        if (customer == null) {
-            throw new ValidationException("Customer with the specified id : " + createAccountDTO.getCustomerId() + " does not exist");
-        }
+    @Transactional
+    public Account save(CreateAccountDTO createAccountDTO, String iban) {
+        log.debug("Request to save account: {} with iban: {}", createAccountDTO, iban);
 
-        validateCreateAccountRequest(createAccountDTO);
+        validateCreation(createAccountDTO);
 
         Account account = new Account();
         account.setCustomerId(createAccountDTO.getCustomerId());
         account.setBicSwift(generateBicSwift(createAccountDTO.getBranchCode()));
-        account.setIban(generateIban(createAccountDTO.getBranchCode()));
+        account.setIban(iban);
         account.setCreatedOn(LocalDate.now());
 
-        return save(account);
+        Account savedAccount = save(account);
+        outboxService.record(AggregateType.ACCOUNT, savedAccount.getAccountId(), ChangeType.CREATED, savedAccount);
+        return savedAccount;
+    }
+
+    /**
+     * Opens the accounts that pass validation and reports a result for each request. The ibans are allocated before the
+     * accounts are saved in one transaction, for the reason given at {@link #allocateIban(String)}.
+     */
+    public List<BulkAccountResultDTO> saveAll(List<CreateAccountDTO> createAccountDTOs) {
+        log.debug("Request to save {} accounts in bulk", createAccountDTOs == null ? 0 : createAccountDTOs.size());
+
+        if (createAccountDTOs == null || createAccountDTOs.isEmpty()) {
+            throw new ValidationException("At least one account is required");
+        }
+
+        if (createAccountDTOs.size() > applicationProperties.getMaxBulkAccounts()) {
+            throw new ValidationException("A maximum of " + applicationProperties.getMaxBulkAccounts() + " accounts can be created in one request");
+        }
+
+        // validate customers once for the whole batch
+        Set<Long> customerIds = createAccountDTOs.stream()
+                .map(CreateAccountDTO::getCustomerId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Set<Long> existingCustomerIds = customerIds.isEmpty() ? Set.of() : customerRepository.findExistingIds(customerIds);
+
+        List<BulkAccountResultDTO> results = new ArrayList<>(createAccountDTOs.size());
+        List<Account> accounts = new ArrayList<>();
+        List<BulkAccountResultDTO> pending = new ArrayList<>();
+        for (int i = 0; i < createAccountDTOs.size(); i++) {
+            CreateAccountDTO createAccountDTO = createAccountDTOs.get(i);
+            BulkAccountResultDTO result = new BulkAccountResultDTO(i, null, null);
+            results.add(result);
+
+            try {
+                validateCreateAccountRequest(createAccountDTO);
+            } catch (ValidationException e) {
+                result.setError(e.getMessage());
+                continue;
+            }
+
+            if (!existingCustomerIds.contains(createAccountDTO.getCustomerId())) {
+                result.setError("Customer with the specified id : " + createAccountDTO.getCustomerId() + " does not exist");
+                continue;
+            }
+
+            Account account = new Account();
+            account.setCustomerId(createAccountDTO.getCustomerId());
+            account.setBicSwift(generateBicSwift(createAccountDTO.getBranchCode()));
+            account.setIban(ibanAllocator.nextIban(createAccountDTO.getBranchCode()));
+            account.setCreatedOn(LocalDate.now());
+            accounts.add(account);
+            pending.add(result);
+        }
+
+        // saveAll runs in a single transaction so hibernate can send the inserts as jdbc batches
+        transactionTemplate.executeWithoutResult(status -> {
+            List<Account> savedAccounts = accountRepository.saveAll(accounts);
+            for (int i = 0; i < savedAccounts.size(); i++) {
+                pending.get(i).setAccount(savedAccounts.get(i));
+                outboxService.record(AggregateType.ACCOUNT, savedAccounts.get(i).getAccountId(), ChangeType.CREATED, savedAccounts.get(i));
+            }
+        });
+
+        return results;
     }
 
     public Account save(Account account) {
@@ -57,6 +155,7 @@ public class AccountService {
         return accountRepository.save(account);
     }
 
+    @Transactional(readOnly = true)
     public Page<Account> findAll(String iban, String bicSwift, Long accountId, Pageable pageable) {
         log.debug("Request to find accounts by iban: {}, bicSwift: {}, accountId: {}", iban, bicSwift, accountId);
 
@@ -70,25 +169,66 @@ public class AccountService {
         return accountRepository.findAll(example, pageable);
     }
 
+    @Transactional(readOnly = true)
+    public Window<Account> findAll(String iban, String bicSwift, Long accountId, ScrollPosition position, int size) {
+        log.debug("Request to scroll accounts by iban: {}, bicSwift: {}, accountId: {}, position: {}", iban, bicSwift, accountId, position);
+
+        Account probe = getProbe(iban, bicSwift, accountId);
+
+        ExampleMatcher matcher = ExampleMatcher.matching()
+                .withStringMatcher(ExampleMatcher.StringMatcher.EXACT);
+
+        Example<Account> example = Example.of(probe, matcher);
+
+        return accountRepository.findBy(example, query -> query.sortBy(KEYSET_SORT).limit(size).scroll(position));
+    }
+
+    @Transactional(readOnly = true)
+    public void export(OutputStream outputStream) throws IOException {
+        log.debug("Request to export all accounts");
+        ndjsonExporter.export(accountRepository.streamAll(), Function.identity(), outputStream);
+    }
+
     public Account findById(Long id) {
         log.debug("Request to find account by id: {}", id);
 
         return accountRepository.findById(id).orElse(null);
     }
 
+    @Transactional(readOnly = true)
+    public BatchLookupDTO<Account, Long> findAllByIds(List<Long> ids) {
+        log.debug("Request to find accounts by ids: {}", ids);
+        return BatchLookupUtil.lookup(ids, accountRepository::findAllById, Account::getAccountId);
+    }
+
+    @Transactional(readOnly = true)
+    public BatchLookupDTO<Account, String> findAllByIbans(List<String> ibans) {
+        log.debug("Request to find accounts by ibans: {}", ibans);
+        return BatchLookupUtil.lookup(ibans, accountRepository::findAllByIbanIn, Account::getIban);
+    }
+
     public Account update(Account account) {
         log.debug("Request to update account: {}", account);
 
         return null;
     }
 
+    @Transactional
     public void delete(Long id) {
         log.debug("Request to delete account by id : {}", id);
+        if (accountRepository.findById(id).isEmpty()) {
+            return;
+        }
+
         accountRepository.deleteById(id);
+        outboxService.record(AggregateType.ACCOUNT, id, ChangeType.DELETED, null);
     }
 
     private Account getProbe(String iban, String bicSwift, Long accountId) {
         Account account = new Account();
+        // a new account starts with no cards and a zero balance, which would otherwise only match accounts like it
+        account.setCardCount(null);
+        account.setBalance(null);
 
         if (iban != null && !iban.isEmpty()) {
             account.setIban(iban);
@@ -105,6 +245,18 @@ public class AccountService {
         return account;
     }
 
+    /**
+     * The checks {@link #save(CreateAccountDTO, String)} makes before it writes anything.
+     */
+    public void validateCreation(CreateAccountDTO createAccountDTO) {
+        Customer customer = customerRepository.findById(createAccountDTO.getCustomerId()).orElse(null);
+        if (customer == null) {
+            throw new ValidationException("Customer with the specified id : " + createAccountDTO.getCustomerId() + " does not exist");
+        }
+
+        validateCreateAccountRequest(createAccountDTO);
+    }
+
     private void validateCreateAccountRequest(CreateAccountDTO createAccountDTO) {
         if (createAccountDTO.getCustomerId() == null) {
             throw new ValidationException("Customer id cannot be null");
@@ -118,20 +270,4 @@ public class AccountService {
     private String generateBicSwift(String branchCode) {
         return applicationProperties.getIbanPrefix() + branchCode;
     }
-
-    private String generateIban(String branchCode) {
-        String ibanPrefix = applicationProperties.getIbanPrefix() + branchCode;
-
-        long accountNumber = random.nextLong(1000000000L, 9999999999L);
-
-        String iban = ibanPrefix + accountNumber;
-
-        Optional<Account> optionalAccount = accountRepository.findOneByIban(iban);
-        if (optionalAccount.isPresent()) {
-            // recursive call to generate iban if the iban already exists in the accounts table
-            return generateIban(branchCode);
-        }
-
-        return iban;
-    }
 }
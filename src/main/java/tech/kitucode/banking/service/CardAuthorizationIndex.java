@@ -0,0 +1,422 @@
+package tech.kitucode.banking.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import tech.kitucode.banking.ApplicationProperties;
+import tech.kitucode.banking.domain.Card;
+import tech.kitucode.banking.domain.enumerations.CardType;
+import tech.kitucode.banking.repository.CardRepository;
+import tech.kitucode.banking.service.cluster.ClusterNotifications;
+
+import java.security.SecureRandom;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.StampedLock;
+import java.util.stream.Stream;
+
+/**
+ * In-memory index of every card by pan, so authorizations are answered without a database round trip.
+ * <p>
+ * The index is an open-addressing hash table with linear probing, held in a single {@code long[]} of four longs per
+ * slot: a 64-bit hash of the pan, the card id, the account id and the card type. Tens of millions of cards are one
+ * array rather than tens of millions of objects; with at most three quarters of the slots in use a card takes 43 to
+ * 85 bytes. Pans themselves are not kept: they are hashed with a secret seed, and two pans that end up with the same
+ * hash share a slot that is marked as collided, for the caller to look those pans up in the database. The seed is
+ * random on a single instance and {@code application.card-index-seed} on several.
+ * <p>
+ * Lookups read under an optimistic {@link StampedLock} stamp and only take the read lock when a change got in
+ * between. Changes take the write lock; removals shift the entries that follow back into place, so there are no
+ * tombstones and probe lengths do not grow with churn.
+ * <p>
+ * The index is loaded when the application is ready and kept up to date by {@link CardService}. With
+ * {@link ClusterNotifications} enabled, cards issued and deleted on other instances are applied here once their
+ * transaction commits, and the index is loaded again after notifications may have been missed. Pans never go into
+ * the notifications: an issued card is sent as its id and read from the database here, a deleted one as its id and
+ * hash, which is why every instance needs the same seed.
+ */
+@Slf4j
+@Component
+public class CardAuthorizationIndex {
+    static final int SLOT = 4;
+    static final String TOPIC = "cards";
+    private static final int INITIAL_SLOTS = 1024;
+    private static final long EMPTY = 0;
+    private static final long COLLIDED = 1L << 8;
+    private static final long TYPE_MASK = 0xff;
+    private static final CardType[] CARD_TYPES = CardType.values();
+
+    private final StampedLock lock = new StampedLock();
+    private final long seed;
+    private final Set<Long> removedWhileLoading = new HashSet<>();
+    private final CardRepository cardRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ClusterNotifications clusterNotifications;
+    private long[] table = new long[INITIAL_SLOTS * SLOT];
+    private int size;
+    private boolean loading;
+    private volatile boolean loaded;
+
+    public CardAuthorizationIndex(CardRepository cardRepository, PlatformTransactionManager transactionManager, ApplicationProperties applicationProperties,
+                                  ObjectProvider<ClusterNotifications> clusterNotifications) {
+        this.cardRepository = cardRepository;
+        // read the primary, a replica may not have the cards issued just before the load started
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.clusterNotifications = clusterNotifications.getIfAvailable();
+        Long seed = applicationProperties.getCardIndexSeed();
+        if (seed == null && this.clusterNotifications != null) {
+            throw new IllegalStateException("application.card-index-seed must be set, to the same value on every instance, when cluster notifications are enabled");
+        }
+        this.seed = seed != null ? seed : new SecureRandom().nextLong();
+        if (this.clusterNotifications != null) {
+            this.clusterNotifications.subscribe(TOPIC, this::apply, this::reload);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void load() {
+        long start = System.currentTimeMillis();
+        long stamp = lock.writeLock();
+        try {
+            loading = true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+        try {
+            long loadedCards = transactionTemplate.execute(status -> {
+                long expected = cardRepository.count();
+                // puts from committed issuances write into the table while it is loaded
+                long reserveStamp = lock.writeLock();
+                try {
+                    reserve(expected);
+                } finally {
+                    lock.unlockWrite(reserveStamp);
+                }
+
+                long count = 0;
+                try (Stream<Object[]> rows = cardRepository.streamAuthorizationEntries()) {
+                    Iterator<Object[]> iterator = rows.iterator();
+                    while (iterator.hasNext()) {
+                        Object[] card = iterator.next();
+                        if (putIfAbsent((String) card[0], (Long) card[1], (Long) card[2], (CardType) card[3])) {
+                            count++;
+                        }
+                    }
+                }
+                return count;
+            });
+            loaded = true;
+            log.info("Loaded {} cards into the authorization index in {} ms", loadedCards, System.currentTimeMillis() - start);
+        } finally {
+            stamp = lock.writeLock();
+            try {
+                loading = false;
+                removedWhileLoading.clear();
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * Drops every card and loads them again. Until the load is done, pans that are not found are looked up in the
+     * database.
+     */
+    public synchronized void reload() {
+        long stamp = lock.writeLock();
+        try {
+            loaded = false;
+            table = new long[INITIAL_SLOTS * SLOT];
+            size = 0;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        load();
+    }
+
+    /**
+     * Whether every card has been loaded. Until then a pan that is not found may still be a card.
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public void index(Card card) {
+        put(card.getPan(), card.getCardId(), card.getAccountId(), card.getCardType());
+    }
+
+    public void put(String pan, long cardId, long accountId, CardType cardType) {
+        long hash = hash(pan);
+        long stamp = lock.writeLock();
+        try {
+            put(hash, cardId, accountId, cardType, false);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes the card with the given pan and id. A collided slot stays as it is, the pan that is left is still
+     * looked up in the database.
+     */
+    public void remove(String pan, long cardId) {
+        remove(hash(pan), cardId);
+    }
+
+    private void remove(long hash, long cardId) {
+        long stamp = lock.writeLock();
+        try {
+            if (loading) {
+                // the load may still read the deleted row and must not add it back
+                removedWhileLoading.add(cardId);
+            }
+
+            int slot = slotOf(table, hash);
+            if (slot >= 0 && (table[slot + 3] & COLLIDED) == 0 && table[slot + 1] == cardId) {
+                delete(slot);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Tells the other instances to index the card once the current transaction commits. Does nothing on a single
+     * instance.
+     */
+    public void publishIndexed(Card card) {
+        if (clusterNotifications != null) {
+            clusterNotifications.publish(TOPIC, "put:" + card.getCardId());
+        }
+    }
+
+    /**
+     * Tells the other instances to remove the card once the current transaction commits. Does nothing on a single
+     * instance.
+     */
+    public void publishRemoved(String pan, long cardId) {
+        if (clusterNotifications != null) {
+            clusterNotifications.publish(TOPIC, "remove:" + cardId + ':' + hash(pan));
+        }
+    }
+
+    /**
+     * The card with the given pan, or null if there is none. An entry that is {@link Entry#collided()} has no card
+     * details; the pan shares its hash with another card and must be looked up in the database.
+     */
+    public Entry find(String pan) {
+        long hash = hash(pan);
+
+        long stamp = lock.tryOptimisticRead();
+        long[] slots = table;
+        int slot = slotOf(slots, hash);
+        long cardId = 0;
+        long accountId = 0;
+        long flags = 0;
+        if (slot >= 0) {
+            cardId = slots[slot + 1];
+            accountId = slots[slot + 2];
+            flags = slots[slot + 3];
+        }
+
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                slots = table;
+                slot = slotOf(slots, hash);
+                if (slot >= 0) {
+                    cardId = slots[slot + 1];
+                    accountId = slots[slot + 2];
+                    flags = slots[slot + 3];
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        if (slot < 0) {
+            return null;
+        }
+        if ((flags & COLLIDED) != 0) {
+            return Entry.COLLIDED;
+        }
+        return new Entry(cardId, accountId, CARD_TYPES[(int) (flags & TYPE_MASK)], false);
+    }
+
+    /**
+     * 64-bit FNV-1a of the pan, seeded, with the murmur3 finalizer to spread the bits. Zero marks an empty slot, so
+     * it is never returned.
+     */
+    long hash(String pan) {
+        long hash = seed;
+        for (int i = 0; i < pan.length(); i++) {
+            hash ^= pan.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash == EMPTY ? 1 : hash;
+    }
+
+    /**
+     * Applies a change published by another instance, {@code put:<card id>} or {@code remove:<card id>:<hash>}.
+     */
+    private void apply(String message) {
+        String[] fields = message.split(":");
+        switch (fields[0]) {
+            case "put" -> putFromDatabase(Long.parseLong(fields[1]));
+            case "remove" -> remove(Long.parseLong(fields[2]), Long.parseLong(fields[1]));
+            default -> log.warn("Unknown card authorization index change: {}", fields[0]);
+        }
+    }
+
+    /**
+     * Indexes the card as it is on the primary. A card deleted since it was issued is not found, its removal follows.
+     */
+    private void putFromDatabase(long cardId) {
+        List<Object[]> cards = transactionTemplate.execute(status -> cardRepository.findAuthorizationEntryById(cardId));
+        for (Object[] card : cards) {
+            put((String) card[0], (Long) card[1], (Long) card[2], (CardType) card[3]);
+        }
+    }
+
+    private boolean putIfAbsent(String pan, long cardId, long accountId, CardType cardType) {
+        long hash = hash(pan);
+        long stamp = lock.writeLock();
+        try {
+            if (removedWhileLoading.contains(cardId)) {
+                return false;
+            }
+            return put(hash, cardId, accountId, cardType, true);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private boolean put(long hash, long cardId, long accountId, CardType cardType, boolean ifAbsent) {
+        reserve(size + 1L);
+
+        int mask = table.length / SLOT - 1;
+        int slot = (int) (hash & mask) * SLOT;
+        while (table[slot] != EMPTY) {
+            if (table[slot] == hash) {
+                if (table[slot + 1] == cardId) {
+                    if (ifAbsent) {
+                        return false;
+                    }
+                    // the copy being written is the latest
+                    table[slot + 2] = accountId;
+                    table[slot + 3] = (table[slot + 3] & COLLIDED) | cardType.ordinal();
+                } else {
+                    table[slot + 3] |= COLLIDED;
+                }
+                return true;
+            }
+            slot = (slot + SLOT) & (table.length - 1);
+        }
+
+        table[slot] = hash;
+        table[slot + 1] = cardId;
+        table[slot + 2] = accountId;
+        table[slot + 3] = cardType.ordinal();
+        size++;
+        return true;
+    }
+
+    /**
+     * Clears the slot and moves back the entries after it that would otherwise no longer be found from their home
+     * slot.
+     */
+    private void delete(int slot) {
+        int mask = table.length - 1;
+        int hole = slot;
+        int next = (hole + SLOT) & mask;
+        while (table[next] != EMPTY) {
+            int home = (int) (table[next] & (mask / SLOT)) * SLOT;
+            // the entry can fill the hole unless its home slot lies cyclically after the hole and at or before it
+            boolean movable = hole <= next ? home <= hole || home > next : home <= hole && home > next;
+            if (movable) {
+                System.arraycopy(table, next, table, hole, SLOT);
+                hole = next;
+            }
+            next = (next + SLOT) & mask;
+        }
+
+        table[hole] = EMPTY;
+        table[hole + 1] = 0;
+        table[hole + 2] = 0;
+        table[hole + 3] = 0;
+        size--;
+    }
+
+    /**
+     * Grows the table so it holds the given number of cards with at most three quarters of the slots in use.
+     */
+    private void reserve(long cards) {
+        int slots = table.length / SLOT;
+        if (cards * 4 <= slots * 3L) {
+            return;
+        }
+
+        long needed = Long.highestOneBit(cards * 4 / 3 + 1) << 1;
+        if (needed * SLOT > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("The card authorization index cannot hold " + cards + " cards");
+        }
+
+        long[] grown = new long[(int) needed * SLOT];
+        int mask = (int) needed - 1;
+        for (int slot = 0; slot < table.length; slot += SLOT) {
+            if (table[slot] != EMPTY) {
+                int target = (int) (table[slot] & mask) * SLOT;
+                while (grown[target] != EMPTY) {
+                    target = (target + SLOT) & (grown.length - 1);
+                }
+                System.arraycopy(table, slot, grown, target, SLOT);
+            }
+        }
+        table = grown;
+    }
+
+    /**
+     * The index of the slot holding the hash, or -1. Also used without a lock, so it stops after one pass over the
+     * table in case a concurrent change left it without an empty slot to stop at.
+     */
+    private static int slotOf(long[] slots, long hash) {
+        int mask = slots.length / SLOT - 1;
+        int slot = (int) (hash & mask) * SLOT;
+        for (int probes = 0; probes <= mask; probes++) {
+            long current = slots[slot];
+            if (current == hash) {
+                return slot;
+            }
+            if (current == EMPTY) {
+                return -1;
+            }
+            slot = (slot + SLOT) & (slots.length - 1);
+        }
+        return -1;
+    }
+
+    public record Entry(long cardId, long accountId, CardType cardType, boolean collided) {
+        static final Entry COLLIDED = new Entry(0, 0, null, true);
+    }
+}
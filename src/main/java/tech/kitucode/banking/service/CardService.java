@@ -1,58 +1,90 @@
 package tech.kitucode.banking.service;
 
+import io.micrometer.core.annotation.Timed;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Example;
 import org.springframework.data.domain.ExampleMatcher;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import tech.kitucode.banking.ApplicationProperties;
-import tech.kitucode.banking.domain.Account;
 import tech.kitucode.banking.domain.Card;
+import tech.kitucode.banking.domain.enumerations.AggregateType;
 import tech.kitucode.banking.domain.enumerations.CardType;
+import tech.kitucode.banking.domain.enumerations.ChangeType;
+import tech.kitucode.banking.error.DuplicatePanException;
 import tech.kitucode.banking.error.ValidationException;
 import tech.kitucode.banking.repository.AccountRepository;
 import tech.kitucode.banking.repository.CardRepository;
+import tech.kitucode.banking.service.dto.AuthorizeCardDTO;
+import tech.kitucode.banking.service.dto.BatchLookupDTO;
+import tech.kitucode.banking.service.dto.CardAuthorizationDTO;
 import tech.kitucode.banking.service.dto.CreateCardDTO;
+import tech.kitucode.banking.service.dto.MaskedCardDTO;
 import tech.kitucode.banking.service.dto.UpdateCardDTO;
+import tech.kitucode.banking.service.util.BatchLookupUtil;
+import tech.kitucode.banking.service.util.MaskingUtil;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.LocalDate;
-import java.util.Optional;
-import java.util.Random;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
 
 @Slf4j
 @Service
+@Timed(value = "banking.service", description = "Time taken by service methods")
 public class CardService {
-    private final Random random = new Random();
+    private static final Sort KEYSET_SORT = Sort.by("createdOn", "cardId");
+    private static final String CARD_TYPE_CONSTRAINT = "uk_cards_account_id_card_type";
+    private static final String PAN_CONSTRAINT = "ux_cards_pan";
     private final CardRepository cardRepository;
     private final AccountRepository accountRepository;
     private final ApplicationProperties applicationProperties;
+    private final NdjsonExporter ndjsonExporter;
+    private final OutboxService outboxService;
+    private final CardAuthorizationIndex cardAuthorizationIndex;
+    private final PanGenerator panGenerator;
 
-    public CardService(CardRepository cardRepository, AccountRepository accountRepository, ApplicationProperties applicationProperties) {
+    public CardService(CardRepository cardRepository, AccountRepository accountRepository, ApplicationProperties applicationProperties, NdjsonExporter ndjsonExporter,
+                       OutboxService outboxService, CardAuthorizationIndex cardAuthorizationIndex, PanGenerator panGenerator) {
         this.cardRepository = cardRepository;
         this.accountRepository = accountRepository;
         this.applicationProperties = applicationProperties;
+        this.ndjsonExporter = ndjsonExporter;
+        this.outboxService = outboxService;
+        this.cardAuthorizationIndex = cardAuthorizationIndex;
+        this.panGenerator = panGenerator;
     }
 
+    @Transactional
     public Card save(CreateCardDTO createCardDTO) {
         log.debug("Request to create card : {}", createCardDTO);
 
         validateCardCreationRequest(createCardDTO);
 
-        Account account = accountRepository.findById(createCardDTO.getAccountId()).orElse(null);
-        if(account == null){
-            throw new ValidationException("Account with id " + createCardDTO.getAccountId() + " does not exist");
-        }
-
-        Optional<Card> cardByCardTypeAndAccountId = cardRepository.findOneByCardTypeAndAccountId(createCardDTO.getCardType(), createCardDTO.getAccountId());
-        if (cardByCardTypeAndAccountId.isPresent()) {
-            throw new ValidationException("Card of type: " + createCardDTO.getCardType() + " and account id: " + createCardDTO.getAccountId() + " already exists");
-        }
-
-        // proceed to create card
-        Integer cardsByAccountCount = cardRepository.countByAccountId(createCardDTO.getAccountId());
-        if (cardsByAccountCount.equals(applicationProperties.getMaxCardsPerAccount())) {
-            throw new ValidationException("A maximum of " + applicationProperties.getMaxCardsPerAccount() + " accounts is allowed for each account.");
+        // reserve a card slot on the account. the update locks the account row until commit, so concurrent
+        // requests for the same account are serialized and cannot go past the limit
+        int reserved = accountRepository.incrementCardCount(createCardDTO.getAccountId(), applicationProperties.getMaxCardsPerAccount());
+        if (reserved == 0) {
+            // only the failure path pays for working out which check failed
+            if (!accountRepository.existsById(createCardDTO.getAccountId())) {
+                throw new ValidationException("Account with id " + createCardDTO.getAccountId() + " does not exist");
+            }
+            throw new ValidationException("A maximum of " + applicationProperties.getMaxCardsPerAccount() + " cards is allowed for each account.");
         }
 
         Card card = new Card();
@@ -60,20 +92,69 @@ public class CardService {
         card.setAccountId(createCardDTO.getAccountId());
         card.setCardType(createCardDTO.getCardType());
 
-        card.setPan(generatePAN());
-        card.setCvv(generateCVV());
+        card.setPan(panGenerator.nextPan(createCardDTO.getCardType()));
+        card.setCvv(panGenerator.nextCvv());
         card.setCreatedOn(LocalDate.now());
 
-        return save(card);
+        try {
+            // the unique constraint on (account_id, card_type) rejects a second card of the same type
+            card = cardRepository.saveAndFlush(card);
+        } catch (DataIntegrityViolationException e) {
+            if (violates(e, CARD_TYPE_CONSTRAINT)) {
+                throw new ValidationException("Card of type: " + createCardDTO.getCardType() + " and account id: " + createCardDTO.getAccountId() + " already exists");
+            }
+            if (violates(e, PAN_CONSTRAINT)) {
+                // issued by another instance that this one's index has not heard of yet. the failed insert has aborted
+                // the transaction, so the caller issues the card again with a new pan
+                throw new DuplicatePanException("Generated pan is already issued", e);
+            }
+            throw e;
+        }
+
+        outboxService.record(AggregateType.CARD, card.getCardId(), ChangeType.CREATED, MaskedCardDTO.of(card));
+        cardAuthorizationIndex.publishIndexed(card);
+        Card issuedCard = card;
+        afterCommit(() -> cardAuthorizationIndex.index(issuedCard));
+        return maskCardDetails(card);
     }
 
     public Card save(Card card) {
         log.debug("Request to save card: {}", card);
 
-        return maskCardDetails(cardRepository.save(card));
+        Card savedCard = cardRepository.save(card);
+        cardAuthorizationIndex.publishIndexed(savedCard);
+        afterCommit(() -> cardAuthorizationIndex.index(savedCard));
+        return maskCardDetails(savedCard);
     }
 
-    public Page<Card> findAll(String cardAlias, CardType cardType, String pan, Boolean masked, Pageable pageable) {
+    /**
+     * Authorizes a card by pan from the {@link CardAuthorizationIndex}. The database is only read for pans the index
+     * cannot answer for: pans sharing a hash with another card, and pans not found before the index has loaded.
+     */
+    public CardAuthorizationDTO authorize(AuthorizeCardDTO authorizeCardDTO) {
+        // the pan is not logged
+        log.debug("Request to authorize card");
+
+        if (authorizeCardDTO.getPan() == null || authorizeCardDTO.getPan().isEmpty()) {
+            throw new ValidationException("Pan is required");
+        }
+
+        CardAuthorizationIndex.Entry entry = cardAuthorizationIndex.find(authorizeCardDTO.getPan());
+        if (entry != null && !entry.collided()) {
+            return CardAuthorizationDTO.approved(entry.cardId(), entry.accountId(), entry.cardType());
+        }
+
+        if (entry == null && cardAuthorizationIndex.isLoaded()) {
+            return CardAuthorizationDTO.declined(CardAuthorizationDTO.UNKNOWN_CARD);
+        }
+
+        return cardRepository.findOneByPan(authorizeCardDTO.getPan())
+                .map(card -> CardAuthorizationDTO.approved(card.getCardId(), card.getAccountId(), card.getCardType()))
+                .orElseGet(() -> CardAuthorizationDTO.declined(CardAuthorizationDTO.UNKNOWN_CARD));
+    }
+
+    @Transactional(readOnly = true)
+    public Page<Card> findAll(String cardAlias, CardType cardType, String pan, Pageable pageable) {
         log.debug("Request to find cards by cardAlias: {}, cardType: {}, pan: {}", cardAlias, cardType, pan);
 
         Card probe = getProbe(cardAlias, cardType, pan);
@@ -82,50 +163,191 @@ public class CardService {
 
         Example<Card> example = Example.of(probe, matcher);
 
-        Page<Card> page = cardRepository.findAll(example, pageable);
-        if (masked) {
-            page.getContent().forEach(this::maskCardDetails);
-        }
+        return cardRepository.findAll(example, pageable);
+    }
 
-        return page;
+    @Transactional(readOnly = true)
+    public Page<MaskedCardDTO> findAllMasked(String cardAlias, CardType cardType, String pan, Pageable pageable) {
+        log.debug("Request to find masked cards by cardAlias: {}, cardType: {}, pan: {}", cardAlias, cardType, pan);
+
+        return cardRepository.findAllMasked(emptyToNull(cardAlias), cardType, emptyToNull(pan), pageable);
     }
 
-    public Card findById(Long id, Boolean masked) {
-        log.debug("Request to find card by id : {}", id);
+    @Transactional(readOnly = true)
+    public Window<Card> findAll(String cardAlias, CardType cardType, String pan, ScrollPosition position, int size) {
+        log.debug("Request to scroll cards by cardAlias: {}, cardType: {}, pan: {}, position: {}", cardAlias, cardType, pan, position);
 
-        Card card = cardRepository.findById(id).orElse(null);
+        Card probe = getProbe(cardAlias, cardType, pan);
+        ExampleMatcher matcher = ExampleMatcher.matching()
+                .withStringMatcher(ExampleMatcher.StringMatcher.EXACT);
+
+        Example<Card> example = Example.of(probe, matcher);
+
+        return cardRepository.findBy(example, query -> query.sortBy(KEYSET_SORT).limit(size).scroll(position));
+    }
+
+    @Transactional(readOnly = true)
+    public Window<MaskedCardDTO> findAllMasked(String cardAlias, CardType cardType, String pan, KeysetScrollPosition position, int size) {
+        log.debug("Request to scroll masked cards by cardAlias: {}, cardType: {}, pan: {}, position: {}", cardAlias, cardType, pan, position);
+
+        Map<String, Object> keys = position.getKeys();
+        // one row more than the page size tells whether there is a next window
+        List<MaskedCardDTO> rows = cardRepository.findAllMaskedAfter(emptyToNull(cardAlias), cardType, emptyToNull(pan),
+                (LocalDate) keys.get("createdOn"), (Long) keys.get("cardId"), Limit.of(size + 1));
+
+        boolean hasNext = rows.size() > size;
+        List<MaskedCardDTO> content = hasNext ? rows.subList(0, size) : rows;
+
+        return Window.from(content, index -> {
+            Map<String, Object> next = new LinkedHashMap<>();
+            next.put("createdOn", content.get(index).getCreatedOn());
+            next.put("cardId", content.get(index).getCardId());
+            return ScrollPosition.forward(next);
+        }, hasNext);
+    }
+
+    @Transactional(readOnly = true)
+    public void export(Boolean masked, OutputStream outputStream) throws IOException {
+        log.debug("Request to export all cards");
 
         if (masked) {
-            return maskCardDetails(card);
+            ndjsonExporter.export(cardRepository.streamAllMasked(), Function.identity(), outputStream);
+        } else {
+            ndjsonExporter.export(cardRepository.streamAll(), Function.identity(), outputStream);
         }
+    }
 
-        return card;
+    public Card findById(Long id) {
+        log.debug("Request to find card by id : {}", id);
+
+        return cardRepository.findById(id).orElse(null);
     }
 
+    public MaskedCardDTO findMaskedById(Long id) {
+        log.debug("Request to find masked card by id : {}", id);
+
+        // served from the card cache, so there is no separate projection query
+        return MaskedCardDTO.of(cardRepository.findById(id).orElse(null));
+    }
+
+    @Transactional(readOnly = true)
+    public BatchLookupDTO<MaskedCardDTO, Long> findAllMaskedByIds(List<Long> ids) {
+        log.debug("Request to find masked cards by ids: {}", ids);
+        return BatchLookupUtil.lookup(ids, cardRepository::findAllMaskedByCardIdIn, MaskedCardDTO::getCardId);
+    }
+
+    /**
+     * Resolves pans to masked cards. Pans that are not found are reported back as they were sent.
+     */
+    @Transactional(readOnly = true)
+    public BatchLookupDTO<MaskedCardDTO, String> findAllMaskedByPans(List<String> pans) {
+        log.debug("Request to find masked cards by {} pans", pans == null ? 0 : pans.size());
+        // the masked card only has the masked pan, so each row carries the pan it was found by
+        BatchLookupDTO<Object[], String> rows = BatchLookupUtil.lookup(pans, cardRepository::findAllMaskedByPanIn, row -> (String) row[0]);
+        List<MaskedCardDTO> cards = rows.getFound().stream().map(row -> (MaskedCardDTO) row[1]).toList();
+        return new BatchLookupDTO<>(cards, rows.getMissing());
+    }
+
+    @Transactional
     public Card update(UpdateCardDTO cardUpdateDTO) {
         log.debug("Request to update card: {}", cardUpdateDTO);
 
-        Card card = findById(cardUpdateDTO.getCardId(), false);
+        Card cachedCard = findById(cardUpdateDTO.getCardId());
 
-        if (card == null) {
+        if (cachedCard == null) {
             throw new ValidationException("Card with id " + cardUpdateDTO.getCardId() + " not found");
         }
 
+        if (cardUpdateDTO.getVersion() != null && !cardUpdateDTO.getVersion().equals(cachedCard.getVersion())) {
+            throw new ObjectOptimisticLockingFailureException(Card.class, cardUpdateDTO.getCardId());
+        }
+
+        // never change the cached instance, other requests may be reading it
+        Card card = copyOf(cachedCard);
+
         if (cardUpdateDTO.getCardAlias() != null) {
             card.setCardAlias(cardUpdateDTO.getCardAlias());
             card.setUpdatedOn(LocalDate.now());
-            return maskCardDetails(cardRepository.save(card));
+            card = cardRepository.save(card);
+            // the version is incremented on flush, flush now so the outbox payload and the response carry the new one
+            cardRepository.flush();
+            outboxService.record(AggregateType.CARD, card.getCardId(), ChangeType.UPDATED, MaskedCardDTO.of(card));
+            return maskCardDetails(card);
         }
 
         return maskCardDetails(card);
     }
 
+    @Transactional
     public void delete(Long id) {
         log.debug("Request to delete card by id : {}", id);
-        cardRepository.deleteById(id);
+
+        Card card = cardRepository.findById(id).orElse(null);
+        if (card == null) {
+            return;
+        }
+
+        cardRepository.delete(card);
+        accountRepository.decrementCardCount(card.getAccountId());
+        outboxService.record(AggregateType.CARD, id, ChangeType.DELETED, null);
+        cardAuthorizationIndex.publishRemoved(card.getPan(), id);
+        afterCommit(() -> cardAuthorizationIndex.remove(card.getPan(), id));
+    }
+
+    /**
+     * Runs the action after the current transaction commits, if there is one. A card that is rolled back never
+     * reaches the authorization index, and a deleted card stays authorizable until its delete is committed. The
+     * other instances get the same change through {@link CardAuthorizationIndex#publishIndexed} and
+     * {@link CardAuthorizationIndex#publishRemoved}, which are sent in the transaction.
+     */
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
 
 
+    /**
+     * Whether the exception, or one of its causes, names the constraint. Databases differ in case and in what they
+     * add around the name.
+     */
+    private static boolean violates(DataIntegrityViolationException e, String constraint) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && cause.getMessage().toLowerCase(Locale.ROOT).contains(constraint)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The checks {@link #save(CreateCardDTO)} makes before it writes anything, made with plain reads: the account must
+     * exist, have room for another card and no card of the type yet. The save makes them again under the account lock.
+     */
+    @Transactional(readOnly = true)
+    public void validateCreation(CreateCardDTO createCardDTO) {
+        validateCardCreationRequest(createCardDTO);
+
+        if (cardRepository.findOneByCardTypeAndAccountId(createCardDTO.getCardType(), createCardDTO.getAccountId()).isPresent()) {
+            throw new ValidationException("Card of type: " + createCardDTO.getCardType() + " and account id: " + createCardDTO.getAccountId() + " already exists");
+        }
+        int cards = cardRepository.countByAccountId(createCardDTO.getAccountId());
+        if (cards >= applicationProperties.getMaxCardsPerAccount()) {
+            throw new ValidationException("A maximum of " + applicationProperties.getMaxCardsPerAccount() + " cards is allowed for each account.");
+        }
+        if (cards == 0 && !accountRepository.existsById(createCardDTO.getAccountId())) {
+            throw new ValidationException("Account with id " + createCardDTO.getAccountId() + " does not exist");
+        }
+    }
+
     private void validateCardCreationRequest(CreateCardDTO createCardDTO) {
         if (createCardDTO.getAccountId() == null) {
             throw new ValidationException("Account id is required");
@@ -140,20 +362,6 @@ public class CardService {
         }
     }
 
-    private String generateCVV() {
-        // create a random 3 digit number
-        int cvv = random.nextInt(100, 999);
-
-        return String.valueOf(cvv);
-    }
-
-    private String generatePAN() {
-        // create a random 16 digit number
-        long pan = random.nextLong(1000000000000000L, 9999999999999999L);
-
-        return String.valueOf(pan);
-    }
-
     private Card getProbe(String cardAlias, CardType cardType, String pan) {
         Card card = new Card();
 
@@ -172,23 +380,40 @@ public class CardService {
         return card;
     }
 
-    private Card maskCardDetails(Card card) {
+    /**
+     * Returns a masked copy of a card that has just been written. The card itself is left untouched because it may
+     * be a managed entity or the cached instance. Reads use {@link MaskedCardDTO} instead.
+     */
+    Card maskCardDetails(Card card) {
         if (card == null) {
             return null;
         }
 
-        card.setCvv("***");
-        card.setPan(maskPan(card));
-        return card;
+        Card maskedCard = copyOf(card);
+        maskedCard.setCvv(MaskingUtil.MASKED_CVV);
+        maskedCard.setPan(maskPan(card));
+        return maskedCard;
     }
 
-    private String maskPan(Card card) {
-        String pan = card.getPan();
+    private Card copyOf(Card card) {
+        Card copy = new Card();
+        copy.setCardId(card.getCardId());
+        copy.setCardAlias(card.getCardAlias());
+        copy.setAccountId(card.getAccountId());
+        copy.setCardType(card.getCardType());
+        copy.setPan(card.getPan());
+        copy.setCvv(card.getCvv());
+        copy.setCreatedOn(card.getCreatedOn());
+        copy.setUpdatedOn(card.getUpdatedOn());
+        copy.setVersion(card.getVersion());
+        return copy;
+    }
 
-        String firstSix = pan.substring(0, 6);
-        String lastFour = pan.substring(pan.length() - 4);
-        String maskedMiddle = "*".repeat(pan.length() - 10);
+    String maskPan(Card card) {
+        return MaskingUtil.maskPan(card.getPan());
+    }
 
-        return firstSix + maskedMiddle + lastFour;
+    private String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
     }
 }
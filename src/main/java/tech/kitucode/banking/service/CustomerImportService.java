@@ -0,0 +1,401 @@
+package tech.kitucode.banking.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+import tech.kitucode.banking.ApplicationProperties;
+import tech.kitucode.banking.domain.Customer;
+import tech.kitucode.banking.domain.enumerations.AggregateType;
+import tech.kitucode.banking.domain.enumerations.ChangeType;
+import tech.kitucode.banking.domain.enumerations.ImportJobStatus;
+import tech.kitucode.banking.error.ValidationException;
+import tech.kitucode.banking.service.dto.ImportJobDTO;
+import tech.kitucode.banking.service.util.CsvUtil;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Imports customers from csv files with the columns first_name, last_name and other_name.
+ * <p>
+ * Each job is a pipeline: one reader parses the file line by line, a pool of workers runs the customer validation
+ * rules and one writer inserts valid customers in fixed-size jdbc batches. The stages are joined by bounded queues,
+ * so a slow stage blocks the one before it and heap use does not depend on the file size. Rejected rows go to an
+ * error report file.
+ * <p>
+ * Each batch is inserted in its own transaction together with the outbox events of its customers, keyed by the ids
+ * the insert generated, and the customers are added to the name index once that transaction has committed.
+ * <p>
+ * At most {@code application.import-concurrent-jobs} jobs run at once and {@code application.import-queued-jobs}
+ * more wait for a turn; further files are refused. The upload is deleted once it has been read, and finished jobs
+ * are forgotten, with their error reports, {@code application.import-job-retention-minutes} after they finish.
+ */
+@Slf4j
+@Service
+public class CustomerImportService {
+    private static final String INSERT_SQL = "insert into tbl_customers (first_name, last_name, other_name, created_on, version) values (?, ?, ?, ?, 0)";
+    private static final Row END_OF_ROWS = new Row(-1, null);
+    private static final Customer END_OF_CUSTOMERS = new Customer();
+    private static final long POLL_TIMEOUT_MILLIS = 100;
+
+    private final Map<String, ImportJob> jobs = new ConcurrentHashMap<>();
+    private final ExecutorService jobExecutor;
+    private final ExecutorService stageExecutor;
+    private final CustomerService customerService;
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationProperties applicationProperties;
+    private final CustomerNameIndex customerNameIndex;
+    private final OutboxService outboxService;
+    private final TransactionTemplate transactionTemplate;
+
+    public CustomerImportService(CustomerService customerService, JdbcTemplate jdbcTemplate, ApplicationProperties applicationProperties,
+                                 CustomerNameIndex customerNameIndex, OutboxService outboxService, PlatformTransactionManager transactionManager) {
+        this.customerService = customerService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.applicationProperties = applicationProperties;
+        this.customerNameIndex = customerNameIndex;
+        this.outboxService = outboxService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+
+        int concurrentJobs = applicationProperties.getImportConcurrentJobs();
+        this.jobExecutor = new ThreadPoolExecutor(concurrentJobs, concurrentJobs, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(applicationProperties.getImportQueuedJobs()), new CustomizableThreadFactory("customer-import-"));
+        // the validators and the writer of every job that can run at once
+        this.stageExecutor = Executors.newFixedThreadPool(concurrentJobs * (applicationProperties.getImportWorkers() + 1),
+                new CustomizableThreadFactory("customer-import-stage-"));
+    }
+
+    public ImportJobDTO submit(MultipartFile file) throws IOException {
+        log.debug("Request to import customers from file: {}", file == null ? null : file.getOriginalFilename());
+
+        if (file == null || file.isEmpty()) {
+            throw new ValidationException("A non-empty csv file is required");
+        }
+
+        String jobId = UUID.randomUUID().toString();
+        Path upload = Files.createTempFile("customer-import-" + jobId, ".csv");
+        file.transferTo(upload);
+
+        ImportJob job = new ImportJob(jobId, upload, Files.createTempFile("customer-import-" + jobId + "-errors", ".csv"));
+        jobs.put(jobId, job);
+        try {
+            jobExecutor.execute(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(jobId);
+            deleteQuietly(job.upload);
+            deleteQuietly(job.errorReport);
+            throw new ValidationException("Too many customer imports are in progress, try again later");
+        }
+
+        return job.toDTO();
+    }
+
+    public ImportJobDTO findJob(String jobId) {
+        log.debug("Request to find import job: {}", jobId);
+
+        ImportJob job = jobs.get(jobId);
+        return job == null ? null : job.toDTO();
+    }
+
+    public Path findErrorReport(String jobId) {
+        log.debug("Request to find error report of import job: {}", jobId);
+
+        ImportJob job = jobs.get(jobId);
+        return job == null ? null : job.errorReport;
+    }
+
+    /**
+     * Forgets the jobs that finished more than {@code application.import-job-retention-minutes} ago and deletes their
+     * error reports.
+     */
+    @Scheduled(fixedDelayString = "${application.import-job-expiry-check-millis:60000}")
+    public void expireFinishedJobs() {
+        LocalDateTime finishedBefore = LocalDateTime.now().minusMinutes(applicationProperties.getImportJobRetentionMinutes());
+        jobs.values().removeIf(job -> {
+            if (job.finishedOn == null || !job.finishedOn.isBefore(finishedBefore)) {
+                return false;
+            }
+            deleteQuietly(job.errorReport);
+            log.debug("Expired import job: {}", job.jobId);
+            return true;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobExecutor.shutdownNow();
+        stageExecutor.shutdownNow();
+    }
+
+    private void run(ImportJob job) {
+        BlockingQueue<Row> rows = new ArrayBlockingQueue<>(applicationProperties.getImportQueueCapacity());
+        BlockingQueue<Customer> customers = new ArrayBlockingQueue<>(applicationProperties.getImportQueueCapacity());
+        int workers = applicationProperties.getImportWorkers();
+
+        try (BufferedWriter errorWriter = Files.newBufferedWriter(job.errorReport, StandardCharsets.UTF_8)) {
+            errorWriter.write("line,error,record");
+            errorWriter.newLine();
+
+            List<Future<?>> validators = new ArrayList<>();
+            for (int i = 0; i < workers; i++) {
+                validators.add(stageExecutor.submit(() -> job.abortOnFailure(() -> validate(job, rows, customers, errorWriter))));
+            }
+            Future<?> writer = stageExecutor.submit(() -> job.abortOnFailure(() -> write(job, customers)));
+
+            read(job, rows, workers);
+            for (Future<?> validator : validators) {
+                await(validator);
+            }
+            put(job, customers, END_OF_CUSTOMERS);
+            await(writer);
+
+            job.finish(ImportJobStatus.COMPLETED, null);
+        } catch (Exception e) {
+            // batches written before the failure stay committed, with their outbox events
+            log.error("Customer import job: {} failed", job.jobId, e);
+            Exception failure = job.failure != null ? job.failure : e;
+            job.finish(ImportJobStatus.FAILED, failure.getMessage());
+        } finally {
+            // already gone unless reading failed
+            deleteQuietly(job.upload);
+        }
+
+        log.info("Customer import job: {} finished with status: {}, read: {}, imported: {}, rejected: {}",
+                job.jobId, job.status, job.rowsRead, job.rowsImported, job.rowsRejected);
+    }
+
+    private void read(ImportJob job, BlockingQueue<Row> rows, int workers) throws IOException, InterruptedException {
+        try (BufferedReader reader = Files.newBufferedReader(job.upload, StandardCharsets.UTF_8)) {
+            String line;
+            long lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || (lineNumber == 1 && line.toLowerCase().startsWith("first_name"))) {
+                    continue;
+                }
+
+                job.rowsRead.incrementAndGet();
+                put(job, rows, new Row(lineNumber, line));
+            }
+        }
+        // the rows are in the queues now, so the copy of the file is not needed while the job finishes
+        deleteQuietly(job.upload);
+
+        // one end marker per worker so that every worker stops
+        for (int i = 0; i < workers; i++) {
+            put(job, rows, END_OF_ROWS);
+        }
+    }
+
+    private Void validate(ImportJob job, BlockingQueue<Row> rows, BlockingQueue<Customer> customers, BufferedWriter errorWriter) throws IOException, InterruptedException {
+        LocalDate createdOn = LocalDate.now();
+
+        while (true) {
+            Row row = take(job, rows);
+            if (row == END_OF_ROWS) {
+                return null;
+            }
+
+            List<String> fields = CsvUtil.parseLine(row.line);
+            Customer customer = new Customer();
+            customer.setFirstName(fields.get(0));
+            customer.setLastName(fields.size() > 1 ? fields.get(1) : null);
+            customer.setOtherName(fields.size() > 2 && !fields.get(2).isEmpty() ? fields.get(2) : null);
+            customer.setCreatedOn(createdOn);
+
+            try {
+                customerService.validateCustomer(customer);
+            } catch (ValidationException e) {
+                job.rowsRejected.incrementAndGet();
+                synchronized (errorWriter) {
+                    errorWriter.write(row.lineNumber + "," + CsvUtil.escape(e.getMessage()) + "," + CsvUtil.escape(row.line));
+                    errorWriter.newLine();
+                }
+                continue;
+            }
+
+            put(job, customers, customer);
+        }
+    }
+
+    private Void write(ImportJob job, BlockingQueue<Customer> customers) throws InterruptedException {
+        int batchSize = applicationProperties.getImportBatchSize();
+        List<Customer> batch = new ArrayList<>(batchSize);
+
+        while (true) {
+            Customer customer = take(job, customers);
+            if (customer != END_OF_CUSTOMERS) {
+                batch.add(customer);
+            }
+
+            if (batch.size() == batchSize || (customer == END_OF_CUSTOMERS && !batch.isEmpty())) {
+                insert(batch);
+                job.rowsImported.addAndGet(batch.size());
+                batch.forEach(customerNameIndex::index);
+                batch.clear();
+            }
+
+            if (customer == END_OF_CUSTOMERS) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Inserts the batch and records a created event for each customer, keyed by the id the insert generated, in one
+     * transaction. The other instances are told to index the batch when it commits.
+     */
+    private void insert(List<Customer> batch) {
+        transactionTemplate.executeWithoutResult(status -> {
+            KeyHolder keyHolder = new GeneratedKeyHolder();
+            jdbcTemplate.batchUpdate(connection -> connection.prepareStatement(INSERT_SQL, new String[]{"customer_id"}), new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement statement, int i) throws SQLException {
+                    Customer customer = batch.get(i);
+                    statement.setString(1, customer.getFirstName());
+                    statement.setString(2, customer.getLastName());
+                    statement.setString(3, customer.getOtherName());
+                    statement.setDate(4, Date.valueOf(customer.getCreatedOn()));
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return batch.size();
+                }
+            }, keyHolder);
+
+            List<Map<String, Object>> keys = keyHolder.getKeyList();
+            if (keys.size() != batch.size()) {
+                throw new IllegalStateException("Inserted " + batch.size() + " customers but got " + keys.size() + " ids");
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                Customer customer = batch.get(i);
+                // the only key asked for, whatever case the driver gives its name
+                customer.setCustomerId(((Number) keys.get(i).values().iterator().next()).longValue());
+                customer.setVersion(0L);
+                outboxService.record(AggregateType.CUSTOMER, customer.getCustomerId(), ChangeType.CREATED, customer);
+            }
+            customerNameIndex.publishIndexed(batch);
+        });
+    }
+
+    private <T> void put(ImportJob job, BlockingQueue<T> queue, T item) throws InterruptedException {
+        while (!queue.offer(item, POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+            job.checkNotAborted();
+        }
+    }
+
+    private <T> T take(ImportJob job, BlockingQueue<T> queue) throws InterruptedException {
+        T item;
+        while ((item = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+            job.checkNotAborted();
+        }
+        return item;
+    }
+
+    private void await(Future<?> future) throws Exception {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            throw (Exception) e.getCause();
+        }
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete file: {}", path, e);
+        }
+    }
+
+    private record Row(long lineNumber, String line) {
+    }
+
+    private static class ImportJob {
+        private final String jobId;
+        private final Path upload;
+        private final Path errorReport;
+        private final LocalDateTime startedOn = LocalDateTime.now();
+        private final AtomicLong rowsRead = new AtomicLong();
+        private final AtomicLong rowsImported = new AtomicLong();
+        private final AtomicLong rowsRejected = new AtomicLong();
+        private volatile ImportJobStatus status = ImportJobStatus.RUNNING;
+        private volatile String error;
+        private volatile LocalDateTime finishedOn;
+        private volatile boolean aborted;
+        private volatile Exception failure;
+
+        private ImportJob(String jobId, Path upload, Path errorReport) {
+            this.jobId = jobId;
+            this.upload = upload;
+            this.errorReport = errorReport;
+        }
+
+        /**
+         * Runs a pipeline stage. If the stage fails the whole job is aborted so that the other stages stop waiting
+         * on their queues.
+         */
+        private <T> T abortOnFailure(Callable<T> stage) throws Exception {
+            try {
+                return stage.call();
+            } catch (Exception e) {
+                if (!aborted) {
+                    failure = e;
+                    aborted = true;
+                }
+                throw e;
+            }
+        }
+
+        private void checkNotAborted() {
+            if (aborted) {
+                throw new CancellationException("Import job " + jobId + " was aborted");
+            }
+        }
+
+        private void finish(ImportJobStatus status, String error) {
+            this.aborted = status == ImportJobStatus.FAILED;
+            this.error = error;
+            this.finishedOn = LocalDateTime.now();
+            this.status = status;
+        }
+
+        private ImportJobDTO toDTO() {
+            ImportJobDTO importJobDTO = new ImportJobDTO();
+            importJobDTO.setJobId(jobId);
+            importJobDTO.setStatus(status);
+            importJobDTO.setRowsRead(rowsRead.get());
+            importJobDTO.setRowsImported(rowsImported.get());
+            importJobDTO.setRowsRejected(rowsRejected.get());
+            importJobDTO.setError(error);
+            importJobDTO.setStartedOn(startedOn);
+            importJobDTO.setFinishedOn(finishedOn);
+            return importJobDTO;
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package tech.kitucode.banking.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import tech.kitucode.banking.domain.Customer;
+import tech.kitucode.banking.repository.CustomerRepository;
+import tech.kitucode.banking.service.cluster.ClusterNotifications;
+import tech.kitucode.banking.service.dto.CustomerNameDTO;
+
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * In-memory prefix index over customer names for typeahead search.
+ * <p>
+ * First, last and other names are normalized (lower case, accents removed) and split into tokens. A sorted map from
+ * token to customer ids answers prefix lookups with a range scan, and a map from customer id to its tokens is used to
+ * check the remaining query tokens and to remove a customer's old tokens on update or delete. Searches do not lock;
+ * changes are serialized.
+ * <p>
+ * The index is loaded when the application is ready and kept up to date by {@link CustomerService} and
+ * {@link CustomerImportService}. With {@link ClusterNotifications} enabled, the tokens of customers created, renamed
+ * and deleted on other instances are applied here once their transaction commits, and the index is loaded again
+ * after notifications may have been missed.
+ */
+@Slf4j
+@Component
+public class CustomerNameIndex {
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{Nd}]+");
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final String[] NO_TOKENS = new String[0];
+    static final String TOPIC = "customer-names";
+    // postgres takes notification payloads of less than 8000 bytes, this leaves room for the origin and the topic
+    private static final int MAX_MESSAGE_BYTES = 7000;
+    private static final String INDEX_CHANGE = "index:";
+    private static final String REMOVE_CHANGE = "remove:";
+
+    private final ConcurrentNavigableMap<String, Set<Long>> idsByToken = new ConcurrentSkipListMap<>();
+    private final Map<Long, String[]> tokensById = new ConcurrentHashMap<>();
+    private final Set<Long> removedWhileLoading = new HashSet<>();
+    private final CustomerRepository customerRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ClusterNotifications clusterNotifications;
+    private int loadsInProgress;
+
+    public CustomerNameIndex(CustomerRepository customerRepository, PlatformTransactionManager transactionManager, ObjectProvider<ClusterNotifications> clusterNotifications) {
+        this.customerRepository = customerRepository;
+        // not read-only: loads must read the primary, a replica may not have the customers created just before
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.clusterNotifications = clusterNotifications.getIfAvailable();
+        if (this.clusterNotifications != null) {
+            this.clusterNotifications.subscribe(TOPIC, this::apply, this::reload);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        long start = System.currentTimeMillis();
+        long loaded = loadAfter(0L);
+        log.info("Loaded {} customers into the name index in {} ms", loaded, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Adds the customers with an id greater than the given one. Customers that are already indexed are skipped,
+     * because the copy in the index was written by a later change than the row that was just read.
+     */
+    public long loadAfter(Long customerId) {
+        synchronized (this) {
+            loadsInProgress++;
+        }
+
+        try {
+            return transactionTemplate.execute(status -> {
+                long count = 0;
+                try (Stream<CustomerNameDTO> names = customerRepository.streamNamesAfter(customerId)) {
+                    Iterator<CustomerNameDTO> iterator = names.iterator();
+                    while (iterator.hasNext()) {
+                        CustomerNameDTO name = iterator.next();
+                        if (indexIfAbsent(name.getCustomerId(), name.getFirstName(), name.getLastName(), name.getOtherName())) {
+                            count++;
+                        }
+                    }
+                }
+                return count;
+            });
+        } finally {
+            synchronized (this) {
+                if (--loadsInProgress == 0) {
+                    removedWhileLoading.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops every customer and loads them again. Searches made before the load is done may miss customers.
+     */
+    public void reload() {
+        synchronized (this) {
+            idsByToken.clear();
+            tokensById.clear();
+        }
+        load();
+    }
+
+    public void index(Customer customer) {
+        index(customer.getCustomerId(), customer.getFirstName(), customer.getLastName(), customer.getOtherName());
+    }
+
+    public synchronized void index(Long customerId, String... names) {
+        removeTokens(customerId);
+        addTokens(customerId, tokenize(names));
+    }
+
+    public synchronized void remove(Long customerId) {
+        removeTokens(customerId);
+        if (loadsInProgress > 0) {
+            // a load may still read the deleted row and must not add it back
+            removedWhileLoading.add(customerId);
+        }
+    }
+
+    /**
+     * Tells the other instances to index the customers once the current transaction commits. The tokens are sent,
+     * packed into as few notifications as fit, so an import batch is a handful of them. Does nothing on a single
+     * instance.
+     */
+    public void publishIndexed(Collection<Customer> customers) {
+        if (clusterNotifications == null) {
+            return;
+        }
+
+        // index:<id>=<token> <token>;<id>=<token>...; tokens are letters and digits only
+        StringBuilder message = new StringBuilder(INDEX_CHANGE);
+        int bytes = INDEX_CHANGE.length();
+        for (Customer customer : customers) {
+            String entry = customer.getCustomerId() + "=" + String.join(" ", tokenize(customer.getFirstName(), customer.getLastName(), customer.getOtherName()));
+            int entryBytes = entry.getBytes(StandardCharsets.UTF_8).length + 1;
+            if (message.length() > INDEX_CHANGE.length() && bytes + entryBytes > MAX_MESSAGE_BYTES) {
+                clusterNotifications.publish(TOPIC, message.toString());
+                message.setLength(INDEX_CHANGE.length());
+                bytes = INDEX_CHANGE.length();
+            }
+            if (message.length() > INDEX_CHANGE.length()) {
+                message.append(';');
+            }
+            message.append(entry);
+            bytes += entryBytes;
+        }
+        if (message.length() > INDEX_CHANGE.length()) {
+            clusterNotifications.publish(TOPIC, message.toString());
+        }
+    }
+
+    /**
+     * Tells the other instances to remove the customer once the current transaction commits. Does nothing on a single
+     * instance.
+     */
+    public void publishRemoved(Long customerId) {
+        if (clusterNotifications != null) {
+            clusterNotifications.publish(TOPIC, REMOVE_CHANGE + customerId);
+        }
+    }
+
+    /**
+     * Ids of the customers that have, for every token of the query, a name token starting with it. Tokens may be
+     * given in any order. At most {@code limit} ids are returned, ordered by the matched name token.
+     */
+    public List<Long> search(String query, int limit) {
+        String[] prefixes = tokenize(query);
+        if (prefixes.length == 0 || limit <= 0) {
+            return List.of();
+        }
+
+        // the longest prefix matches the fewest tokens, so it drives the scan and the rest are checked per customer
+        String driver = prefixes[0];
+        for (String prefix : prefixes) {
+            if (prefix.length() > driver.length()) {
+                driver = prefix;
+            }
+        }
+
+        Set<Long> ids = new LinkedHashSet<>();
+        for (Set<Long> candidates : idsByToken.subMap(driver, true, driver + Character.MAX_VALUE, false).values()) {
+            for (Long candidate : candidates) {
+                if (!ids.contains(candidate) && matchesAll(candidate, prefixes)) {
+                    ids.add(candidate);
+                    if (ids.size() == limit) {
+                        return new ArrayList<>(ids);
+                    }
+                }
+            }
+        }
+
+        return new ArrayList<>(ids);
+    }
+
+    public int size() {
+        return tokensById.size();
+    }
+
+    static String[] tokenize(String... values) {
+        List<String> tokens = new ArrayList<>();
+        for (String value : values) {
+            if (value == null || value.isBlank()) {
+                continue;
+            }
+
+            String normalized = COMBINING_MARKS.matcher(Normalizer.normalize(value, Normalizer.Form.NFD)).replaceAll("");
+            for (String token : TOKEN_SEPARATOR.split(normalized.toLowerCase(Locale.ROOT))) {
+                if (!token.isEmpty() && !tokens.contains(token)) {
+                    tokens.add(token);
+                }
+            }
+        }
+
+        return tokens.isEmpty() ? NO_TOKENS : tokens.toArray(NO_TOKENS);
+    }
+
+    /**
+     * Applies a change published by another instance, see {@link #publishIndexed} and {@link #publishRemoved}.
+     */
+    private void apply(String message) {
+        if (message.startsWith(INDEX_CHANGE)) {
+            for (String entry : message.substring(INDEX_CHANGE.length()).split(";")) {
+                int tokens = entry.indexOf('=');
+                // the tokens tokenize to themselves
+                index(Long.valueOf(entry.substring(0, tokens)), entry.substring(tokens + 1));
+            }
+        } else if (message.startsWith(REMOVE_CHANGE)) {
+            remove(Long.valueOf(message.substring(REMOVE_CHANGE.length())));
+        } else {
+            log.warn("Unknown customer name index change: {}", message.substring(0, message.indexOf(':') + 1));
+        }
+    }
+
+    private synchronized boolean indexIfAbsent(Long customerId, String... names) {
+        if (tokensById.containsKey(customerId) || removedWhileLoading.contains(customerId)) {
+            return false;
+        }
+
+        addTokens(customerId, tokenize(names));
+        return true;
+    }
+
+    private boolean matchesAll(Long customerId, String[] prefixes) {
+        String[] tokens = tokensById.get(customerId);
+        if (tokens == null) {
+            // removed after the range scan started
+            return false;
+        }
+
+        for (String prefix : prefixes) {
+            if (!startsAny(tokens, prefix)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean startsAny(String[] tokens, String prefix) {
+        for (String token : tokens) {
+            if (token.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void addTokens(Long customerId, String[] tokens) {
+        for (String token : tokens) {
+            idsByToken.computeIfAbsent(token, key -> ConcurrentHashMap.newKeySet()).add(customerId);
+        }
+        tokensById.put(customerId, tokens);
+    }
+
+    private void removeTokens(Long customerId) {
+        String[] tokens = tokensById.remove(customerId);
+        if (tokens == null) {
+            return;
+        }
+
+        for (String token : tokens) {
+            Set<Long> ids = idsByToken.get(token);
+            if (ids != null) {
+                ids.remove(customerId);
+                if (ids.isEmpty()) {
+                    idsByToken.remove(token, ids);
+                }
+            }
+        }
+    }
+}
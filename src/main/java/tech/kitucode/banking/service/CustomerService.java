@@ -3,64 +3,130 @@ package tech.kitucode.banking.service;
 import jakarta.persistence.criteria.CriteriaBuilder;
 import jakarta.persistence.criteria.Predicate;
 import jakarta.persistence.criteria.Root;
+import io.micrometer.core.annotation.Timed;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import tech.kitucode.banking.domain.Customer;
+import tech.kitucode.banking.domain.enumerations.AggregateType;
+import tech.kitucode.banking.domain.enumerations.ChangeType;
 import tech.kitucode.banking.error.ValidationException;
 import tech.kitucode.banking.repository.CustomerRepository;
+import tech.kitucode.banking.service.dto.AccountOverviewDTO;
+import tech.kitucode.banking.service.dto.BatchLookupDTO;
+import tech.kitucode.banking.service.dto.CustomerOverviewDTO;
+import tech.kitucode.banking.service.dto.CustomerOverviewRowDTO;
+import tech.kitucode.banking.service.dto.MaskedCardDTO;
+import tech.kitucode.banking.service.util.BatchLookupUtil;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 
 @Slf4j
 @Service
+@Timed(value = "banking.service", description = "Time taken by service methods")
 public class CustomerService {
+    private static final Sort KEYSET_SORT = Sort.by("createdOn", "customerId");
+    private static final int MAX_TYPEAHEAD_RESULTS = 50;
     private final CustomerRepository customerRepository;
+    private final NdjsonExporter ndjsonExporter;
+    private final CustomerNameIndex customerNameIndex;
+    private final OutboxService outboxService;
 
-    public CustomerService(CustomerRepository customerRepository) {
+    public CustomerService(CustomerRepository customerRepository, NdjsonExporter ndjsonExporter, CustomerNameIndex customerNameIndex, OutboxService outboxService) {
         this.customerRepository = customerRepository;
+        this.ndjsonExporter = ndjsonExporter;
+        this.customerNameIndex = customerNameIndex;
+        this.outboxService = outboxService;
     }
 
+    @Transactional
     public Customer save(Customer customer) {
         log.debug("Request to save customer: {}", customer);
         validateCustomer(customer);
         customer.setCreatedOn(LocalDate.now());
-        return customerRepository.save(customer);
+        customer.setCustomerId(null);
+        customer.setVersion(null);
+        Customer savedCustomer = customerRepository.save(customer);
+        outboxService.record(AggregateType.CUSTOMER, savedCustomer.getCustomerId(), ChangeType.CREATED, savedCustomer);
+        customerNameIndex.publishIndexed(List.of(savedCustomer));
+        afterCommit(() -> customerNameIndex.index(savedCustomer));
+        return savedCustomer;
     }
 
+    @Transactional(readOnly = true)
     public Page<Customer> findAll(String name, LocalDate startDate, LocalDate endDate, Pageable pageable) {
-        String firstName = null;
-        String lastName = null;
-        String otherName = null;
-        if (name != null) {
-            name = name.trim();
-            String[] nameArray = name.split(" ");
-            int length = nameArray.length;
-            if (length == 1) {
-                firstName = nameArray[0];
-            }
+        String[] names = splitName(name);
 
-            if (length == 2) {
-                firstName = nameArray[0];
-                lastName = nameArray[1];
-            }
+        log.info("Request to find customers with firstName: {}, lastName: {}, otherName: {}, startDate: {}, endDate: {}", names[0], names[1], names[2], startDate, endDate);
 
-            if (length == 3) {
-                firstName = nameArray[0];
-                lastName = nameArray[1];
-                otherName = nameArray[2];
-            }
+        Specification<Customer> customerSpecification = createSpecification(names[0], names[1], names[2], startDate, endDate);
+
+        return customerRepository.findAll(customerSpecification, pageable);
+    }
+
+    @Transactional(readOnly = true)
+    public Window<Customer> findAll(String name, LocalDate startDate, LocalDate endDate, ScrollPosition position, int size) {
+        String[] names = splitName(name);
+
+        log.info("Request to scroll customers with firstName: {}, lastName: {}, otherName: {}, startDate: {}, endDate: {}, position: {}", names[0], names[1], names[2], startDate, endDate, position);
+
+        Specification<Customer> customerSpecification = createSpecification(names[0], names[1], names[2], startDate, endDate);
+
+        return customerRepository.findBy(customerSpecification, query -> query.sortBy(KEYSET_SORT).limit(size).scroll(position));
+    }
+
+    /**
+     * Customers whose names start with every token of the query, in any order, e.g. {@code "kit bri"} finds
+     * Brian Kitunda. Matching ids come from {@link CustomerNameIndex} and are loaded in one query.
+     */
+    @Transactional(readOnly = true)
+    public List<Customer> typeahead(String query, int limit) {
+        log.debug("Request to find customers by name prefix: {}", query);
+
+        if (limit < 1 || limit > MAX_TYPEAHEAD_RESULTS) {
+            throw new ValidationException("limit must be between 1 and " + MAX_TYPEAHEAD_RESULTS);
         }
 
-        log.info("Request to find customers with firstName: {}, lastName: {}, otherName: {}, startDate: {}, endDate: {}", firstName, lastName, otherName, startDate, endDate);
+        List<Long> ids = customerNameIndex.search(query, limit);
+        if (ids.isEmpty()) {
+            return List.of();
+        }
 
-        Specification<Customer> customerSpecification = createSpecification(firstName, lastName, otherName, startDate, endDate);
+        Map<Long, Customer> customers = new HashMap<>();
+        for (Customer customer : customerRepository.findAllById(ids)) {
+            customers.put(customer.getCustomerId(), customer);
+        }
 
-        return customerRepository.findAll(customerSpecification, pageable);
+        // keep the order of the index and drop customers deleted since the search
+        List<Customer> result = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Customer customer = customers.get(id);
+            if (customer != null) {
+                result.add(customer);
+            }
+        }
+        return result;
+    }
+
+    @Transactional(readOnly = true)
+    public void export(OutputStream outputStream) throws IOException {
+        log.debug("Request to export all customers");
+        ndjsonExporter.export(customerRepository.streamAll(), Function.identity(), outputStream);
     }
 
     public Customer findOne(Long id) {
@@ -68,23 +134,123 @@ public class CustomerService {
         return customerRepository.findById(id).orElse(null);
     }
 
+    @Transactional(readOnly = true)
+    public BatchLookupDTO<Customer, Long> findAllByIds(List<Long> ids) {
+        log.debug("Request to find customers by ids: {}", ids);
+        return BatchLookupUtil.lookup(ids, customerRepository::findAllById, Customer::getCustomerId);
+    }
+
+    /**
+     * The customer with all of its accounts and masked cards, read with a single join query however many accounts
+     * the customer has. Returns null if the customer does not exist.
+     */
+    @Transactional(readOnly = true)
+    public CustomerOverviewDTO findOverview(Long id) {
+        log.debug("Request to find overview of customer with id: {}", id);
+        List<CustomerOverviewRowDTO> rows = customerRepository.findOverviewRows(id);
+        if (rows.isEmpty()) {
+            return null;
+        }
+
+        CustomerOverviewRowDTO first = rows.get(0);
+        CustomerOverviewDTO overview = new CustomerOverviewDTO(first.getCustomerId(), first.getFirstName(), first.getLastName(), first.getOtherName(),
+                first.getCustomerCreatedOn(), first.getCustomerUpdatedOn(), first.getCustomerVersion(), new ArrayList<>());
+
+        // rows are ordered by account, so the cards of an account are next to each other
+        AccountOverviewDTO account = null;
+        for (CustomerOverviewRowDTO row : rows) {
+            if (row.getAccountId() == null) {
+                continue;
+            }
+            if (account == null || !account.getAccountId().equals(row.getAccountId())) {
+                account = new AccountOverviewDTO(row.getAccountId(), row.getIban(), row.getBicSwift(), row.getAccountCreatedOn(),
+                        row.getAccountUpdatedOn(), row.getAccountVersion(), new ArrayList<>());
+                overview.getAccounts().add(account);
+            }
+            if (row.getCardId() != null) {
+                account.getCards().add(new MaskedCardDTO(row.getCardId(), row.getCardAlias(), row.getAccountId(), row.getCardType(), row.getPan(),
+                        row.getCardCreatedOn(), row.getCardUpdatedOn(), row.getCardVersion()));
+            }
+        }
+
+        return overview;
+    }
+
+    @Transactional
     public Customer update(Customer customer) {
         log.debug("Request to update customer : {}", customer);
         if (customer.getCustomerId() == null) {
             throw new ValidationException("customer id is required");
         }
         validateCustomer(customer);
+        // the created on date is set once, on create; a body that leaves it out must not clear it
+        customer.setCreatedOn(customerRepository.findById(customer.getCustomerId())
+                .orElseThrow(() -> new ValidationException("Customer with id " + customer.getCustomerId() + " not found"))
+                .getCreatedOn());
+        if (customer.getVersion() == null) {
+            // the client did not say which version it changed, so the last write wins
+            customer.setVersion(customerRepository.findVersionById(customer.getCustomerId())
+                    .orElseThrow(() -> new ValidationException("Customer with id " + customer.getCustomerId() + " not found")));
+        }
         customer.setUpdatedOn(LocalDate.now());
-        customer = customerRepository.save(customer);
-        return customer;
+        Customer savedCustomer = customerRepository.save(customer);
+        // the version is incremented on flush, flush now so the outbox payload and the response carry the new one
+        customerRepository.flush();
+        outboxService.record(AggregateType.CUSTOMER, savedCustomer.getCustomerId(), ChangeType.UPDATED, savedCustomer);
+        customerNameIndex.publishIndexed(List.of(savedCustomer));
+        afterCommit(() -> customerNameIndex.index(savedCustomer));
+        return savedCustomer;
     }
 
+    @Transactional
     public void delete(Long id) {
         log.debug("Request to delete customer with id : {}", id);
+        if (customerRepository.findById(id).isEmpty()) {
+            return;
+        }
+
         customerRepository.deleteById(id);
+        outboxService.record(AggregateType.CUSTOMER, id, ChangeType.DELETED, null);
+        customerNameIndex.publishRemoved(id);
+        afterCommit(() -> customerNameIndex.remove(id));
+    }
+
+    /**
+     * Splits a search name into first, last and other name. Names with more than three parts are not split.
+     */
+    String[] splitName(String name) {
+        String[] names = new String[3];
+        if (name != null) {
+            name = name.trim();
+            String[] nameArray = name.split(" ");
+            if (nameArray.length <= names.length) {
+                System.arraycopy(nameArray, 0, names, 0, nameArray.length);
+            }
+        }
+
+        return names;
+    }
+
+    /**
+     * Runs the action once the current transaction has committed, so the name index never shows a change that was
+     * rolled back. The other instances get the change through {@link CustomerNameIndex#publishIndexed} and
+     * {@link CustomerNameIndex#publishRemoved}, which are sent in the transaction.
+     */
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
 
-    private void validateCustomer(Customer customer) {
+    public void validateCustomer(Customer customer) {
         if (customer.getFirstName() == null || customer.getFirstName().isEmpty()) {
             throw new ValidationException("customer first name is required");
         }
@@ -0,0 +1,60 @@
+package tech.kitucode.banking.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+import tech.kitucode.banking.config.CacheConfiguration;
+import tech.kitucode.banking.domain.Account;
+import tech.kitucode.banking.domain.Card;
+import tech.kitucode.banking.domain.Customer;
+import tech.kitucode.banking.repository.AccountRepository;
+import tech.kitucode.banking.repository.CardRepository;
+import tech.kitucode.banking.repository.CustomerRepository;
+
+import java.util.function.Function;
+
+/**
+ * Current versions of customers, accounts and cards for conditional requests. The version is taken from the entity
+ * cache when the entity is cached, otherwise only the version column is read; a miss does not fill the cache, so
+ * polling clients do not push out entities that are actually being read.
+ */
+@Slf4j
+@Service
+public class EntityVersionService {
+    private final CacheManager cacheManager;
+    private final CustomerRepository customerRepository;
+    private final AccountRepository accountRepository;
+    private final CardRepository cardRepository;
+
+    public EntityVersionService(CacheManager cacheManager, CustomerRepository customerRepository, AccountRepository accountRepository, CardRepository cardRepository) {
+        this.cacheManager = cacheManager;
+        this.customerRepository = customerRepository;
+        this.accountRepository = accountRepository;
+        this.cardRepository = cardRepository;
+    }
+
+    public Long findCustomerVersion(Long customerId) {
+        log.debug("Request to find version of customer with id: {}", customerId);
+        Long version = cachedVersion(CacheConfiguration.CUSTOMERS, customerId, Customer.class, Customer::getVersion);
+        return version != null ? version : customerRepository.findVersionById(customerId).orElse(null);
+    }
+
+    public Long findAccountVersion(Long accountId) {
+        log.debug("Request to find version of account with id: {}", accountId);
+        Long version = cachedVersion(CacheConfiguration.ACCOUNTS, accountId, Account.class, Account::getVersion);
+        return version != null ? version : accountRepository.findVersionById(accountId).orElse(null);
+    }
+
+    public Long findCardVersion(Long cardId) {
+        log.debug("Request to find version of card with id: {}", cardId);
+        Long version = cachedVersion(CacheConfiguration.CARDS, cardId, Card.class, Card::getVersion);
+        return version != null ? version : cardRepository.findVersionById(cardId).orElse(null);
+    }
+
+    private <T> Long cachedVersion(String cacheName, Long id, Class<T> type, Function<T, Long> version) {
+        Cache cache = cacheManager.getCache(cacheName);
+        T entity = cache != null ? cache.get(id, type) : null;
+        return entity != null ? version.apply(entity) : null;
+    }
+}
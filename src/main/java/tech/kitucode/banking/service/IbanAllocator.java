@@ -0,0 +1,229 @@
+package tech.kitucode.banking.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import tech.kitucode.banking.ApplicationProperties;
+import tech.kitucode.banking.domain.IbanBlock;
+import tech.kitucode.banking.error.ValidationException;
+import tech.kitucode.banking.repository.AccountRepository;
+import tech.kitucode.banking.repository.IbanBlockRepository;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out unique IBANs per branch code without querying the accounts table.
+ * <p>
+ * Account numbers are reserved from {@code tbl_iban_blocks} in blocks of {@code application.iban-block-size}
+ * and then handed out from memory. Only reserving a new block touches the database: it reads the ibans already in the
+ * block's range, which accounts opened before blocks were reserved took at random, and the block skips them.
+ * <p>
+ * Blocks are reserved by a small pool of reserver threads. Once half of a branch's block is handed out, the next one is
+ * reserved in the background, so callers only wait for the first block of a branch or when accounts are opened faster
+ * than a block is reserved. Each branch refills on its own. A caller that waits holds no connection of its own only if
+ * it is not in a transaction yet, so ibans are allocated before the transaction that saves the account starts.
+ */
+@Slf4j
+@Service
+public class IbanAllocator {
+    static final long FIRST_ACCOUNT_NUMBER = 1000000000L;
+    static final long LAST_ACCOUNT_NUMBER = 9999999999L;
+    private static final int MAX_RESERVE_ATTEMPTS = 3;
+    private static final int RESERVER_THREADS = 2;
+
+    private final Map<String, Branch> branches = new ConcurrentHashMap<>();
+    private final IbanBlockRepository ibanBlockRepository;
+    private final AccountRepository accountRepository;
+    private final ApplicationProperties applicationProperties;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService reservers;
+
+    public IbanAllocator(IbanBlockRepository ibanBlockRepository, AccountRepository accountRepository, ApplicationProperties applicationProperties,
+                         PlatformTransactionManager transactionManager) {
+        this.ibanBlockRepository = ibanBlockRepository;
+        this.accountRepository = accountRepository;
+        this.applicationProperties = applicationProperties;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        AtomicInteger threads = new AtomicInteger();
+        this.reservers = Executors.newFixedThreadPool(RESERVER_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "iban-reserver-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        reservers.shutdownNow();
+    }
+
+    public String nextIban(String branchCode) {
+        return applicationProperties.getIbanPrefix() + branchCode + nextAccountNumber(branchCode);
+    }
+
+    long nextAccountNumber(String branchCode) {
+        return branches.computeIfAbsent(branchCode, Branch::new).nextAccountNumber();
+    }
+
+    private class Branch {
+        private final String branchCode;
+        private volatile Block current;
+        // guarded by this
+        private CompletableFuture<Block> next;
+
+        private Branch(String branchCode) {
+            this.branchCode = branchCode;
+        }
+
+        private long nextAccountNumber() {
+            while (true) {
+                Block block = current;
+                if (block != null) {
+                    long accountNumber = block.next();
+                    if (accountNumber == block.prefetchAt) {
+                        prefetch();
+                    }
+                    if (accountNumber != -1) {
+                        return accountNumber;
+                    }
+                }
+
+                advance(block);
+            }
+        }
+
+        private synchronized CompletableFuture<Block> prefetch() {
+            if (next == null) {
+                next = CompletableFuture.supplyAsync(() -> reserveBlock(branchCode), reservers);
+            }
+            return next;
+        }
+
+        /**
+         * Replaces the exhausted block with the reserved next one, waiting for the reservation without holding the
+         * branch's lock.
+         */
+        private void advance(Block exhausted) {
+            CompletableFuture<Block> reservation;
+            synchronized (this) {
+                if (current != exhausted) {
+                    // another thread has already moved on to a fresh block
+                    return;
+                }
+                reservation = prefetch();
+            }
+
+            Block reserved;
+            try {
+                reserved = reservation.join();
+            } catch (CompletionException e) {
+                synchronized (this) {
+                    if (next == reservation) {
+                        // the next caller tries again
+                        next = null;
+                    }
+                }
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                throw e;
+            }
+
+            synchronized (this) {
+                if (current == exhausted) {
+                    current = reserved;
+                    next = null;
+                }
+            }
+        }
+    }
+
+    private Block reserveBlock(String branchCode) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> doReserveBlock(branchCode));
+            } catch (DataIntegrityViolationException e) {
+                // another node created the first block for this branch at the same time
+                if (attempt == MAX_RESERVE_ATTEMPTS) {
+                    throw e;
+                }
+                log.debug("Retrying block reservation for branch: {}", branchCode);
+            }
+        }
+    }
+
+    private Block doReserveBlock(String branchCode) {
+        IbanBlock ibanBlock = ibanBlockRepository.findOneByBranchCode(branchCode).orElse(null);
+        if (ibanBlock == null) {
+            ibanBlock = new IbanBlock();
+            ibanBlock.setBranchCode(branchCode);
+            ibanBlock.setNextAccountNumber(FIRST_ACCOUNT_NUMBER);
+        }
+
+        long start = ibanBlock.getNextAccountNumber();
+        if (start > LAST_ACCOUNT_NUMBER) {
+            throw new ValidationException("Account numbers for branch code " + branchCode + " have been exhausted");
+        }
+
+        long end = Math.min(start + applicationProperties.getIbanBlockSize(), LAST_ACCOUNT_NUMBER + 1);
+        ibanBlock.setNextAccountNumber(end);
+        ibanBlockRepository.saveAndFlush(ibanBlock);
+
+        Set<Long> taken = findTakenAccountNumbers(branchCode, start, end);
+        log.debug("Reserved account numbers [{}, {}) for branch: {}, {} of them already taken", start, end, branchCode, taken.size());
+        return new Block(start, end, taken);
+    }
+
+    private Set<Long> findTakenAccountNumbers(String branchCode, long start, long end) {
+        String prefix = applicationProperties.getIbanPrefix() + branchCode;
+        Set<Long> taken = new HashSet<>();
+        for (String iban : accountRepository.findIbansBetween(prefix + start, prefix + (end - 1))) {
+            // the range also holds ibans of branch codes that start with this one
+            String accountNumber = iban.substring(prefix.length());
+            if (accountNumber.length() == String.valueOf(start).length()) {
+                taken.add(Long.parseLong(accountNumber));
+            }
+        }
+        return taken;
+    }
+
+    private static class Block {
+        private final AtomicLong cursor;
+        private final long end;
+        private final Set<Long> taken;
+        private final long prefetchAt;
+
+        private Block(long start, long end, Set<Long> taken) {
+            this.cursor = new AtomicLong(start);
+            this.end = end;
+            this.taken = taken;
+            long prefetchAt = start + (end - start) / 2;
+            while (taken.contains(prefetchAt)) {
+                prefetchAt++;
+            }
+            this.prefetchAt = prefetchAt;
+        }
+
+        private long next() {
+            long accountNumber;
+            do {
+                accountNumber = cursor.getAndIncrement();
+            } while (taken.contains(accountNumber));
+            return accountNumber < end ? accountNumber : -1;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package tech.kitucode.banking.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Adds the journaled postings to the balances every {@code application.journal-checkpoint-millis}.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "application.journal-enabled", havingValue = "true")
+public class JournalCheckpointer {
+    private final PostingService postingService;
+
+    public JournalCheckpointer(PostingService postingService) {
+        this.postingService = postingService;
+    }
+
+    @Scheduled(fixedDelayString = "${application.journal-checkpoint-millis:1000}")
+    public void checkpoint() {
+        try {
+            postingService.checkpoint();
+        } catch (RuntimeException e) {
+            log.warn("Could not checkpoint the posting journal, it will be retried", e);
+        }
+    }
+}
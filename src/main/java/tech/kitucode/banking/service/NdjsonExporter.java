@@ -0,0 +1,71 @@
+package tech.kitucode.banking.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Writes a stream of entities or projections as newline-delimited JSON. Each entity is detached once it has been read
+ * so the persistence context does not grow with the size of the export.
+ */
+@Slf4j
+@Component
+public class NdjsonExporter {
+    private static final int FLUSH_INTERVAL = 500;
+
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter objectWriter;
+    private final EntityManager entityManager;
+
+    public NdjsonExporter(ObjectMapper objectMapper, EntityManager entityManager) {
+        this.objectMapper = objectMapper;
+        // flushing is done every FLUSH_INTERVAL rows instead of after every row
+        this.objectWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.entityManager = entityManager;
+    }
+
+    public <T> long export(Stream<T> rows, Function<T, ?> view, OutputStream outputStream) throws IOException {
+        long count = 0;
+
+        try (rows; JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+            // rows are separated by the new line written below, not by jackson's default space
+            generator.setRootValueSeparator(null);
+
+            Iterator<T> iterator = rows.iterator();
+            Boolean entities = null;
+            while (iterator.hasNext()) {
+                T row = iterator.next();
+                if (entities == null) {
+                    // projections are not managed, so there is nothing to detach
+                    entities = row.getClass().isAnnotationPresent(Entity.class);
+                }
+
+                if (entities) {
+                    // detach before building the view so that changes made by the view are never flushed
+                    entityManager.detach(row);
+                }
+
+                objectWriter.writeValue(generator, view.apply(row));
+                generator.writeRaw('\n');
+
+                if (++count % FLUSH_INTERVAL == 0) {
+                    generator.flush();
+                }
+            }
+        }
+
+        log.debug("Exported {} rows", count);
+        return count;
+    }
+}
@@ -0,0 +1,59 @@
+package tech.kitucode.banking.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import tech.kitucode.banking.domain.OutboxEvent;
+import tech.kitucode.banking.domain.enumerations.AggregateType;
+import tech.kitucode.banking.domain.enumerations.ChangeType;
+import tech.kitucode.banking.repository.OutboxEventRepository;
+import tech.kitucode.banking.service.changefeed.ChangeFeed;
+
+import java.time.LocalDateTime;
+
+/**
+ * Records changes in the outbox. Events must be recorded in the transaction that makes the change, so they are
+ * committed or rolled back together with it; the insert is batched by hibernate and sent with the commit. Committed
+ * events are also appended to the {@link ChangeFeed}.
+ */
+@Slf4j
+@Service
+public class OutboxService {
+    private final OutboxEventRepository outboxEventRepository;
+    private final ObjectMapper objectMapper;
+    private final ChangeFeed changeFeed;
+
+    public OutboxService(OutboxEventRepository outboxEventRepository, ObjectMapper objectMapper, ChangeFeed changeFeed) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.objectMapper = objectMapper;
+        this.changeFeed = changeFeed;
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(AggregateType aggregateType, Long aggregateId, ChangeType changeType, Object payload) {
+        OutboxEvent outboxEvent = new OutboxEvent();
+        outboxEvent.setAggregateType(aggregateType);
+        outboxEvent.setAggregateId(aggregateId);
+        outboxEvent.setChangeType(changeType);
+        outboxEvent.setPayload(toJson(payload));
+        outboxEvent.setCreatedAt(LocalDateTime.now());
+
+        outboxEventRepository.save(outboxEvent);
+        changeFeed.appendAfterCommit(outboxEvent);
+    }
+
+    private String toJson(Object payload) {
+        if (payload == null) {
+            return null;
+        }
+
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize outbox payload", e);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package tech.kitucode.banking.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import tech.kitucode.banking.ApplicationProperties;
+import tech.kitucode.banking.domain.enumerations.CardType;
+import tech.kitucode.banking.repository.CardRepository;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generates 16 digit pans that pass the Luhn check, under the BINs configured for each card type in
+ * {@code application.virtual-card-bins} and {@code application.physical-card-bins}.
+ * <p>
+ * A new pan must not belong to another card. The {@link CardAuthorizationIndex} already holds a hash of every pan,
+ * so it serves as the membership filter: a pan it has no entry for is free, and only a pan it may know is checked in
+ * the database. The unique index on the pan column still rejects the pan another instance has just issued; the card
+ * is then issued again with a new pan.
+ */
+@Slf4j
+@Component
+public class PanGenerator {
+    static final int PAN_LENGTH = 16;
+    private static final int MAX_ATTEMPTS = 10;
+
+    private final Map<CardType, String[]> bins = new EnumMap<>(CardType.class);
+    private final CardRepository cardRepository;
+    private final CardAuthorizationIndex cardAuthorizationIndex;
+
+    public PanGenerator(ApplicationProperties applicationProperties, CardRepository cardRepository, CardAuthorizationIndex cardAuthorizationIndex) {
+        this.cardRepository = cardRepository;
+        this.cardAuthorizationIndex = cardAuthorizationIndex;
+        bins.put(CardType.VIRTUAL, validBins(CardType.VIRTUAL, applicationProperties.getVirtualCardBins()));
+        bins.put(CardType.PHYSICAL, validBins(CardType.PHYSICAL, applicationProperties.getPhysicalCardBins()));
+    }
+
+    /**
+     * A pan no other card has, under one of the card type's BINs.
+     */
+    public String nextPan(CardType cardType) {
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            String pan = randomPan(cardType);
+            if (!isIssued(pan)) {
+                return pan;
+            }
+            log.debug("Generated pan is already issued, attempt {}", attempt + 1);
+        }
+
+        throw new IllegalStateException("No free pan found in " + MAX_ATTEMPTS + " attempts, the " + cardType + " BINs are close to full");
+    }
+
+    public String nextCvv() {
+        // three digits, leading zeros included
+        return String.valueOf(1000 + ThreadLocalRandom.current().nextInt(1000)).substring(1);
+    }
+
+    String randomPan(CardType cardType) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String[] typeBins = bins.get(cardType);
+        String bin = typeBins[random.nextInt(typeBins.length)];
+
+        char[] pan = new char[PAN_LENGTH];
+        bin.getChars(0, bin.length(), pan, 0);
+        for (int i = bin.length(); i < PAN_LENGTH - 1; i++) {
+            pan[i] = (char) ('0' + random.nextInt(10));
+        }
+        pan[PAN_LENGTH - 1] = checkDigit(pan, PAN_LENGTH - 1);
+        return new String(pan);
+    }
+
+    private boolean isIssued(String pan) {
+        if (cardAuthorizationIndex.isLoaded() && cardAuthorizationIndex.find(pan) == null) {
+            return false;
+        }
+        return cardRepository.existsByPan(pan);
+    }
+
+    /**
+     * The Luhn check digit for the first {@code length} digits: from the right, every other digit is doubled, with
+     * nine taken off a double of more than nine.
+     */
+    static char checkDigit(char[] digits, int length) {
+        int sum = 0;
+        boolean doubled = true;
+        for (int i = length - 1; i >= 0; i--) {
+            int digit = digits[i] - '0';
+            if (doubled) {
+                digit *= 2;
+                if (digit > 9) {
+                    digit -= 9;
+                }
+            }
+            sum += digit;
+            doubled = !doubled;
+        }
+        return (char) ('0' + (10 - sum % 10) % 10);
+    }
+
+    static boolean isLuhnValid(String pan) {
+        char[] digits = pan.toCharArray();
+        return digits.length > 1 && checkDigit(digits, digits.length - 1) == digits[digits.length - 1];
+    }
+
+    private static String[] validBins(CardType cardType, List<String> configured) {
+        if (configured == null || configured.isEmpty()) {
+            throw new IllegalStateException("No BINs are configured for " + cardType + " cards");
+        }
+
+        for (String bin : configured) {
+            if (bin == null || !bin.matches("[1-9][0-9]{5,7}")) {
+                throw new IllegalStateException("BIN " + bin + " for " + cardType + " cards is not 6 to 8 digits");
+            }
+        }
+        return configured.toArray(String[]::new);
+    }
+}
@@ -0,0 +1,40 @@
+package tech.kitucode.banking.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import tech.kitucode.banking.ApplicationProperties;
+
+/**
+ * Settles the pending credits of the hot accounts.
+ * <p>
+ * Every {@code application.hot-account-sweep-millis} each hot account gets its pending credits added to its balance,
+ * one batch per transaction so the account row is only locked briefly, until fewer than a full batch is left.
+ */
+@Slf4j
+@Component
+public class PendingCreditSweeper {
+    private final TransferService transferService;
+    private final ApplicationProperties applicationProperties;
+
+    public PendingCreditSweeper(TransferService transferService, ApplicationProperties applicationProperties) {
+        this.transferService = transferService;
+        this.applicationProperties = applicationProperties;
+    }
+
+    @Scheduled(fixedDelayString = "${application.hot-account-sweep-millis:1000}")
+    public void sweep() {
+        int batchSize = applicationProperties.getHotAccountSweepBatchSize();
+
+        for (Long accountId : applicationProperties.getHotAccounts()) {
+            try {
+                int swept;
+                do {
+                    swept = transferService.sweep(accountId);
+                } while (swept == batchSize);
+            } catch (RuntimeException e) {
+                log.warn("Could not sweep pending credits of account with id: {}, they will be retried", accountId, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package tech.kitucode.banking.service;
+
+import io.micrometer.core.annotation.Timed;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import tech.kitucode.banking.ApplicationProperties;
+import tech.kitucode.banking.domain.JournalCheckpoint;
+import tech.kitucode.banking.error.ValidationException;
+import tech.kitucode.banking.repository.AccountRepository;
+import tech.kitucode.banking.repository.JournalCheckpointRepository;
+import tech.kitucode.banking.service.dto.PostingDTO;
+import tech.kitucode.banking.service.journal.PostingJournal;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * Credits accounts through the {@link PostingJournal} instead of updating their rows.
+ * <p>
+ * A posting is acknowledged once the journal has it on disk. Checkpoints add up the postings since the previous
+ * checkpoint per account and apply the sums to {@code tbl_accounts} in batched updates, in the same transaction
+ * that records the last sequence applied in {@code tbl_journal_checkpoints}. On startup the journal is replayed
+ * from that sequence, so a posting is applied exactly once whether the instance stopped before or after a
+ * checkpoint committed.
+ * <p>
+ * Postings that are not checkpointed yet are kept per account in memory and reported as pending in the balance.
+ * A checkpoint commits and takes its postings out of memory while balance reads wait, so a read never counts a
+ * posting twice or not at all.
+ */
+@Slf4j
+@Service
+@Timed(value = "banking.service", description = "Time taken by service methods")
+@ConditionalOnProperty(name = "application.journal-enabled", havingValue = "true")
+public class PostingService {
+    static final String JOURNAL_NAME = "postings";
+    private static final String CREDIT_SQL = "update tbl_accounts set balance = balance + ? where account_id = ?";
+
+    private final PostingJournal postingJournal;
+    private final AccountRepository accountRepository;
+    private final JournalCheckpointRepository journalCheckpointRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationProperties applicationProperties;
+    private final Map<Long, Long> unflushedCents = new ConcurrentHashMap<>();
+    private final ReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+    private long checkpointedSequence;
+
+    public PostingService(PostingJournal postingJournal, AccountRepository accountRepository, JournalCheckpointRepository journalCheckpointRepository,
+                          JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager, ApplicationProperties applicationProperties) {
+        this.postingJournal = postingJournal;
+        this.accountRepository = accountRepository;
+        this.journalCheckpointRepository = journalCheckpointRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.applicationProperties = applicationProperties;
+    }
+
+    /**
+     * Replays the postings after the last checkpoint and checkpoints them.
+     */
+    @PostConstruct
+    public synchronized void recover() {
+        long checkpointed = journalCheckpointRepository.findById(JOURNAL_NAME).map(JournalCheckpoint::getSequence).orElse(0L);
+        postingJournal.startAfter(checkpointed);
+        checkpointedSequence = checkpointed;
+
+        long[] replayed = new long[1];
+        postingJournal.replay(checkpointed, postingJournal.durableSequence(), (sequence, accountId, amount, timestamp) -> {
+            unflushedCents.merge(accountId, amount, PostingService::addCents);
+            replayed[0]++;
+        });
+        log.info("Replayed {} postings after checkpoint {}", replayed[0], checkpointed);
+
+        checkpoint();
+    }
+
+    public PostingDTO post(Long accountId, BigDecimal amount) {
+        log.debug("Request to post {} to account with id: {}", amount, accountId);
+
+        validateAmount(amount);
+
+        if (accountRepository.findById(accountId).isEmpty()) {
+            throw new ValidationException("Account with id " + accountId + " does not exist");
+        }
+
+        long cents = amount.movePointRight(2).longValueExact();
+        long timestamp = System.currentTimeMillis();
+
+        // counted before it is appended, so a checkpoint that applies it always finds it to take out
+        unflushedCents.merge(accountId, cents, PostingService::addCents);
+        long sequence;
+        try {
+            sequence = postingJournal.append(accountId, cents, timestamp);
+        } catch (RuntimeException e) {
+            unflushedCents.merge(accountId, -cents, PostingService::addCents);
+            throw e;
+        }
+        postingJournal.sync(sequence);
+
+        return new PostingDTO(sequence, accountId, BigDecimal.valueOf(cents, 2),
+                LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault()));
+    }
+
+    /**
+     * Applies the durable postings since the last checkpoint to the balances and returns how many there were.
+     */
+    public synchronized int checkpoint() {
+        long upTo = postingJournal.durableSequence();
+        if (upTo <= checkpointedSequence) {
+            return 0;
+        }
+
+        // ascending account ids, the order transfers lock accounts in
+        Map<Long, Long> cents = new TreeMap<>();
+        postingJournal.replay(checkpointedSequence, upTo, (sequence, accountId, amount, timestamp) -> cents.merge(accountId, amount, Long::sum));
+
+        Lock lock = checkpointLock.writeLock();
+        lock.lock();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                applyBalances(cents);
+                saveCheckpoint(upTo);
+            });
+            cents.forEach((accountId, amount) -> unflushedCents.merge(accountId, -amount, PostingService::addCents));
+        } finally {
+            lock.unlock();
+        }
+
+        int postings = (int) (upTo - checkpointedSequence);
+        checkpointedSequence = upTo;
+        postingJournal.release(upTo);
+
+        log.debug("Checkpointed {} postings to {} accounts up to posting {}", postings, cents.size(), upTo);
+        return postings;
+    }
+
+    /**
+     * Runs a read of the balance of an account with the sum of its postings that are not checkpointed yet. No
+     * checkpoint commits while the read runs.
+     */
+    public <T> T readWithUnflushed(Long accountId, Function<BigDecimal, T> read) {
+        Lock lock = checkpointLock.readLock();
+        lock.lock();
+        try {
+            return read.apply(BigDecimal.valueOf(unflushedCents.getOrDefault(accountId, 0L), 2));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void applyBalances(Map<Long, Long> cents) {
+        int batchSize = applicationProperties.getJournalCheckpointBatchSize();
+        List<Object[]> batch = new ArrayList<>(batchSize);
+
+        for (Map.Entry<Long, Long> entry : cents.entrySet()) {
+            batch.add(new Object[]{BigDecimal.valueOf(entry.getValue(), 2), entry.getKey()});
+            if (batch.size() == batchSize) {
+                executeBatch(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            executeBatch(batch);
+        }
+    }
+
+    private void executeBatch(List<Object[]> batch) {
+        int[] counts = jdbcTemplate.batchUpdate(CREDIT_SQL, batch);
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) {
+                // the account was deleted after the posting was accepted
+                log.error("Could not apply {} to account with id: {}, the account does not exist", batch.get(i)[0], batch.get(i)[1]);
+            }
+        }
+    }
+
+    private void saveCheckpoint(long sequence) {
+        JournalCheckpoint checkpoint = journalCheckpointRepository.findById(JOURNAL_NAME).orElseGet(() -> {
+            JournalCheckpoint first = new JournalCheckpoint();
+            first.setJournalName(JOURNAL_NAME);
+            return first;
+        });
+        checkpoint.setSequence(sequence);
+        checkpoint.setCheckpointedAt(LocalDateTime.now());
+        journalCheckpointRepository.save(checkpoint);
+    }
+
+    private void validateAmount(BigDecimal amount) {
+        if (amount == null || amount.signum() <= 0) {
+            throw new ValidationException("Amount must be greater than zero");
+        }
+
+        if (amount.stripTrailingZeros().scale() > 2) {
+            throw new ValidationException("Amount cannot have more than 2 decimal places");
+        }
+
+        // the journal keeps amounts in cents in a long
+        if (amount.precision() - amount.scale() > 16) {
+            throw new ValidationException("Amount is too large");
+        }
+    }
+
+    private static Long addCents(Long current, Long cents) {
+        long sum = current + cents;
+        // drop accounts without unflushed postings so the map does not keep every account ever credited
+        return sum == 0 ? null : sum;
+    }
+}
@@ -0,0 +1,239 @@
+package tech.kitucode.banking.service;
+
+import io.micrometer.core.annotation.Timed;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import tech.kitucode.banking.ApplicationProperties;
+import tech.kitucode.banking.domain.PendingCredit;
+import tech.kitucode.banking.domain.Transfer;
+import tech.kitucode.banking.error.ValidationException;
+import tech.kitucode.banking.repository.AccountRepository;
+import tech.kitucode.banking.repository.PendingCreditRepository;
+import tech.kitucode.banking.repository.TransferRepository;
+import tech.kitucode.banking.service.dto.BalanceDTO;
+import tech.kitucode.banking.service.dto.CreateTransferDTO;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Moves money between accounts of the bank.
+ * <p>
+ * A transfer debits and credits the balances with conditional updates, each of which locks its account row until
+ * commit. The rows are always locked in ascending account id order, so transfers crossing the same accounts in
+ * opposite directions wait for each other instead of deadlocking.
+ * <p>
+ * Accounts listed in {@code application.hot-accounts}, such as merchant settlement accounts, take too many credits
+ * to serialize them on one row. A credit to a hot account inserts a {@link PendingCredit} and locks nothing on the
+ * account; the {@link PendingCreditSweeper} adds pending credits to the balance in batches, and a debit that the
+ * settled balance does not cover sweeps them first. Sweeps lock the account row before its pending credits, which
+ * keeps the lock order.
+ */
+@Slf4j
+@Service
+@Timed(value = "banking.service", description = "Time taken by service methods")
+public class TransferService {
+    private final AccountRepository accountRepository;
+    private final TransferRepository transferRepository;
+    private final PendingCreditRepository pendingCreditRepository;
+    private final ApplicationProperties applicationProperties;
+    private final ObjectProvider<PostingService> postingService;
+    private final Set<Long> hotAccounts;
+
+    public TransferService(AccountRepository accountRepository, TransferRepository transferRepository, PendingCreditRepository pendingCreditRepository,
+                           ApplicationProperties applicationProperties, ObjectProvider<PostingService> postingService) {
+        this.accountRepository = accountRepository;
+        this.transferRepository = transferRepository;
+        this.pendingCreditRepository = pendingCreditRepository;
+        this.applicationProperties = applicationProperties;
+        this.postingService = postingService;
+        this.hotAccounts = Set.copyOf(applicationProperties.getHotAccounts());
+    }
+
+    @Transactional
+    public Transfer transfer(CreateTransferDTO createTransferDTO) {
+        log.debug("Request to transfer: {}", createTransferDTO);
+
+        validateTransferRequest(createTransferDTO);
+
+        if (createTransferDTO.getReference() != null) {
+            Optional<Transfer> existing = transferRepository.findOneByReference(createTransferDTO.getReference());
+            if (existing.isPresent()) {
+                return sameTransfer(existing.get(), createTransferDTO);
+            }
+        }
+
+        Long fromAccountId = createTransferDTO.getFromAccountId();
+        Long toAccountId = createTransferDTO.getToAccountId();
+        BigDecimal amount = createTransferDTO.getAmount();
+
+        Transfer transfer = new Transfer();
+        transfer.setReference(createTransferDTO.getReference());
+        transfer.setFromAccountId(fromAccountId);
+        transfer.setToAccountId(toAccountId);
+        transfer.setAmount(amount);
+        transfer.setCreatedAt(LocalDateTime.now());
+
+        try {
+            // inserted before any account is locked, so a concurrent retry with the same reference fails here
+            transfer = transferRepository.saveAndFlush(transfer);
+        } catch (DataIntegrityViolationException e) {
+            throw new ValidationException("Transfer with reference: " + createTransferDTO.getReference() + " already exists");
+        }
+
+        if (hotAccounts.contains(toAccountId)) {
+            debit(fromAccountId, amount);
+            addPendingCredit(toAccountId, amount, transfer.getTransferId());
+        } else if (fromAccountId < toAccountId) {
+            debit(fromAccountId, amount);
+            credit(toAccountId, amount);
+        } else {
+            credit(toAccountId, amount);
+            debit(fromAccountId, amount);
+        }
+
+        return transfer;
+    }
+
+    @Transactional(readOnly = true)
+    public Transfer findById(Long id) {
+        log.debug("Request to find transfer with id: {}", id);
+
+        return transferRepository.findById(id).orElse(null);
+    }
+
+    /**
+     * The balance of an account with the credits that are still pending, read from the primary like other lookups
+     * by id. Journaled postings that are not checkpointed yet count as pending.
+     */
+    public BalanceDTO findBalance(Long accountId) {
+        log.debug("Request to find balance of account with id: {}", accountId);
+
+        PostingService journal = postingService.getIfAvailable();
+        if (journal == null) {
+            return findBalance(accountId, BigDecimal.ZERO);
+        }
+        return journal.readWithUnflushed(accountId, unflushed -> findBalance(accountId, unflushed));
+    }
+
+    /**
+     * Adds up to {@code application.hot-account-sweep-batch-size} of the oldest pending credits of the account to
+     * its balance and returns how many there were.
+     */
+    @Transactional
+    public int sweep(Long accountId) {
+        if (accountRepository.lockById(accountId).isEmpty()) {
+            return 0;
+        }
+        return sweepLocked(accountId);
+    }
+
+    private BalanceDTO findBalance(Long accountId, BigDecimal unflushed) {
+        if (!hotAccounts.contains(accountId)) {
+            return accountRepository.findBalanceById(accountId)
+                    .map(settled -> new BalanceDTO(accountId, settled.add(unflushed), unflushed))
+                    .orElse(null);
+        }
+
+        // the settled balance and the pending credits come from one statement, a separate sum would miss the credits
+        // a sweep moves into the balance after the balance was read
+        return accountRepository.findBalanceWithPendingCreditsById(accountId)
+                .map(balance -> new BalanceDTO(accountId, balance.getBalance().add(unflushed), balance.getPendingCredits().add(unflushed)))
+                .orElse(null);
+    }
+
+    private void debit(Long accountId, BigDecimal amount) {
+        if (accountRepository.debit(accountId, amount) == 1) {
+            return;
+        }
+
+        if (hotAccounts.contains(accountId) && accountRepository.lockById(accountId).isPresent()) {
+            while (sweepLocked(accountId) > 0) {
+                if (accountRepository.debit(accountId, amount) == 1) {
+                    return;
+                }
+            }
+        }
+
+        if (!accountRepository.existsById(accountId)) {
+            throw new ValidationException("Account with id " + accountId + " does not exist");
+        }
+        throw new ValidationException("Insufficient funds in account with id " + accountId);
+    }
+
+    private void credit(Long accountId, BigDecimal amount) {
+        if (accountRepository.credit(accountId, amount) == 0) {
+            throw new ValidationException("Account with id " + accountId + " does not exist");
+        }
+    }
+
+    private void addPendingCredit(Long accountId, BigDecimal amount, Long transferId) {
+        PendingCredit pendingCredit = new PendingCredit();
+        pendingCredit.setAccountId(accountId);
+        pendingCredit.setAmount(amount);
+        pendingCredit.setTransferId(transferId);
+        pendingCredit.setCreatedAt(LocalDateTime.now());
+        pendingCreditRepository.save(pendingCredit);
+    }
+
+    /**
+     * Moves a batch of pending credits into the balance. The caller holds the lock on the account row, so no other
+     * sweep can take the same credits; the balance is credited with the sum of exactly the credits that are deleted.
+     */
+    private int sweepLocked(Long accountId) {
+        List<PendingCredit> pendingCredits = pendingCreditRepository.findOldest(accountId, Limit.of(applicationProperties.getHotAccountSweepBatchSize()));
+        if (pendingCredits.isEmpty()) {
+            return 0;
+        }
+
+        BigDecimal total = BigDecimal.ZERO;
+        for (PendingCredit pendingCredit : pendingCredits) {
+            total = total.add(pendingCredit.getAmount());
+        }
+
+        pendingCreditRepository.deleteAllByCreditIdIn(pendingCredits.stream().map(PendingCredit::getCreditId).toList());
+        accountRepository.credit(accountId, total);
+
+        log.debug("Swept {} pending credits of {} into account with id: {}", pendingCredits.size(), total, accountId);
+        return pendingCredits.size();
+    }
+
+    private Transfer sameTransfer(Transfer existing, CreateTransferDTO createTransferDTO) {
+        if (!existing.getFromAccountId().equals(createTransferDTO.getFromAccountId())
+                || !existing.getToAccountId().equals(createTransferDTO.getToAccountId())
+                || existing.getAmount().compareTo(createTransferDTO.getAmount()) != 0) {
+            throw new ValidationException("Transfer with reference: " + createTransferDTO.getReference() + " already exists with different details");
+        }
+        return existing;
+    }
+
+    private void validateTransferRequest(CreateTransferDTO createTransferDTO) {
+        if (createTransferDTO.getFromAccountId() == null || createTransferDTO.getToAccountId() == null) {
+            throw new ValidationException("From and to account ids are required");
+        }
+
+        if (createTransferDTO.getFromAccountId().equals(createTransferDTO.getToAccountId())) {
+            throw new ValidationException("Cannot transfer to the same account");
+        }
+
+        BigDecimal amount = createTransferDTO.getAmount();
+        if (amount == null || amount.signum() <= 0) {
+            throw new ValidationException("Amount must be greater than zero");
+        }
+
+        if (amount.stripTrailingZeros().scale() > 2) {
+            throw new ValidationException("Amount cannot have more than 2 decimal places");
+        }
+
+        if (amount.precision() - amount.scale() > 17) {
+            throw new ValidationException("Amount is too large");
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package tech.kitucode.banking.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import tech.kitucode.banking.ApplicationProperties;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Commits concurrent create requests together, so a burst of them pays for one commit instead of one each.
+ * <p>
+ * Callers queue their write and wait for it. A single thread takes the first queued write, waits up to
+ * {@code application.write-coalescing-linger-micros} for more, and runs up to
+ * {@code application.write-coalescing-max-batch} of them in one transaction; the transactional service methods the
+ * writes call join it. A write can be checked on the calling thread before it is queued, so an invalid request fails
+ * alone; a write that still throws in the batch rolls it back and gets its own exception, the rest of the batch is run
+ * again without it. If the commit itself fails each write is retried in a transaction of its own.
+ * <p>
+ * Writes run in a transaction that may be rolled back and retried, so they must not change their arguments in a way
+ * that breaks a second attempt. With {@code application.write-coalescing-enabled: false} writes are simply run on the
+ * calling thread.
+ */
+@Slf4j
+@Component
+public class WriteCoalescer {
+    // writes that lock a row take their locks in ascending order, as transfers do
+    private static final Comparator<Write<?>> LOCK_ORDER = Comparator.comparing(write -> write.lockKey, Comparator.nullsFirst(Comparator.naturalOrder()));
+    private static final long POLL_MILLIS = 100;
+    private static final Runnable NO_VALIDATION = () -> {
+    };
+
+    private final boolean enabled;
+    private final long lingerNanos;
+    private final int maxBatch;
+    private final TransactionTemplate transactionTemplate;
+    private final DistributionSummary batchSize;
+    private final BlockingQueue<Write<?>> queue = new LinkedBlockingQueue<>();
+    private final Thread writer = new Thread(this::run, "write-coalescer");
+    private volatile boolean running;
+
+    public WriteCoalescer(PlatformTransactionManager transactionManager, ApplicationProperties applicationProperties, MeterRegistry meterRegistry) {
+        this.enabled = Boolean.TRUE.equals(applicationProperties.getWriteCoalescingEnabled());
+        this.lingerNanos = TimeUnit.MICROSECONDS.toNanos(applicationProperties.getWriteCoalescingLingerMicros());
+        this.maxBatch = applicationProperties.getWriteCoalescingMaxBatch();
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = DistributionSummary.builder("banking.writes.batch.size")
+                .description("Create requests committed in one transaction")
+                .register(meterRegistry);
+        writer.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (enabled) {
+            running = true;
+            writer.start();
+        }
+    }
+
+    /**
+     * Stops the writer once the queued writes are committed; later writes run on the calling thread.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        writer.join();
+    }
+
+    /**
+     * Runs the write in a shared transaction and returns its result once that transaction has committed.
+     */
+    public <T> T write(Supplier<T> work) {
+        return write(null, work);
+    }
+
+    /**
+     * Runs the write in a shared transaction and returns its result once that transaction has committed.
+     *
+     * @param lockKey the id of the row the write locks, if any; writes of a batch run in ascending order of it so
+     *                batches take their locks in the same order as everything else
+     */
+    public <T> T write(Long lockKey, Supplier<T> work) {
+        return write(lockKey, NO_VALIDATION, work);
+    }
+
+    /**
+     * Checks the write on the calling thread and then runs it in a shared transaction, returning its result once that
+     * transaction has committed.
+     *
+     * @param lockKey    the id of the row the write locks, if any
+     * @param validation the checks the write would make before changing anything. a request they reject is failed
+     *                   before it joins a batch, so it does not roll back and re-run the writes of others; the write
+     *                   makes them again, for a request that became invalid while it was queued. they run on the
+     *                   request thread, which is pinned to the primary for writes
+     */
+    public <T> T write(Long lockKey, Runnable validation, Supplier<T> work) {
+        if (!running) {
+            return work.get();
+        }
+
+        validation.run();
+
+        Write<T> write = new Write<>(lockKey, work);
+        queue.add(write);
+        if (!running && queue.remove(write)) {
+            // the writer has already taken what was left in the queue
+            return work.get();
+        }
+
+        try {
+            return write.future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+    private void run() {
+        while (running) {
+            List<Write<?>> batch = new ArrayList<>();
+            try {
+                Write<?> first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                linger(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+
+            if (!batch.isEmpty()) {
+                flush(batch);
+            }
+        }
+
+        // writes queued while the last batch was committed
+        List<Write<?>> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            flush(remaining);
+        }
+    }
+
+    private void linger(List<Write<?>> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + lingerNanos;
+        while (batch.size() < maxBatch) {
+            queue.drainTo(batch, maxBatch - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= maxBatch || remaining <= 0) {
+                return;
+            }
+
+            Write<?> next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void flush(List<Write<?>> batch) {
+        batch.sort(LOCK_ORDER);
+        batchSize.record(batch.size());
+
+        List<Write<?>> pending = new ArrayList<>(batch);
+        while (!pending.isEmpty()) {
+            Write<?> failed;
+            try {
+                failed = transactionTemplate.execute(status -> {
+                    for (Write<?> write : pending) {
+                        try {
+                            write.run();
+                        } catch (RuntimeException | Error e) {
+                            // hibernate cannot go on after a failed statement, so the whole batch is rolled back
+                            write.failure = e;
+                            status.setRollbackOnly();
+                            return write;
+                        }
+                    }
+                    return null;
+                });
+            } catch (RuntimeException e) {
+                log.warn("Commit of {} coalesced writes failed, writing them one by one: {}", pending.size(), e.getMessage());
+                pending.forEach(this::writeAlone);
+                return;
+            }
+
+            if (failed == null) {
+                pending.forEach(Write::complete);
+                return;
+            }
+            failed.fail();
+            pending.remove(failed);
+        }
+    }
+
+    private void writeAlone(Write<?> write) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> write.run());
+            write.complete();
+        } catch (RuntimeException | Error e) {
+            write.failure = e;
+            write.fail();
+        }
+    }
+
+    private static class Write<T> {
+        private final Long lockKey;
+        private final Supplier<T> work;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private T result;
+        private Throwable failure;
+
+        private Write(Long lockKey, Supplier<T> work) {
+            this.lockKey = lockKey;
+            this.work = work;
+        }
+
+        private void run() {
+            result = work.get();
+        }
+
+        private void complete() {
+            future.complete(result);
+        }
+
+        private void fail() {
+            future.completeExceptionally(failure);
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package tech.kitucode.banking.service.changefeed;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import tech.kitucode.banking.ApplicationProperties;
+import tech.kitucode.banking.domain.OutboxEvent;
+import tech.kitucode.banking.domain.enumerations.AggregateType;
+import tech.kitucode.banking.domain.enumerations.ChangeType;
+import tech.kitucode.banking.error.CursorExpiredException;
+import tech.kitucode.banking.error.ValidationException;
+import tech.kitucode.banking.service.cluster.ClusterNotifications;
+import tech.kitucode.banking.service.dto.ChangeBatchDTO;
+import tech.kitucode.banking.service.dto.ChangeEventDTO;
+
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The most recent committed changes, held in a ring buffer of {@code application.change-feed-capacity} events and
+ * shared by every subscriber, so the number of subscribers does not change the load on the database.
+ * <p>
+ * Changes get a sequence number in commit order. With {@link ClusterNotifications} every instance's changes, this
+ * one's included, are relayed to all of them and appended in the order postgres delivers them, which is the commit
+ * order and the same everywhere; without them the feed holds this instance's changes only.
+ * <p>
+ * Cursors are {@code <epoch>-<sequence>-<event id>}, where the epoch identifies this buffer. A cursor from another
+ * instance resumes after the change with its event id, waiting briefly for that change to arrive here. A cursor from
+ * before a restart, one that has fallen out of the buffer, or one from before changes were missed because the
+ * listening connection was lost, is rejected with {@link CursorExpiredException} and the client has to re-read the
+ * current state.
+ * <p>
+ * Appends are serialized; reads take no lock and detect slots overwritten while they were reading. Subscribers are
+ * signalled on a small dispatcher pool, never on the committing thread, and never run concurrently with themselves.
+ */
+@Slf4j
+@Component
+public class ChangeFeed {
+    public static final int MAX_CHANGES_PER_READ = 1000;
+    static final String TOPIC = "changes";
+    private static final long FOREIGN_CURSOR_WAIT_MILLIS = 1000;
+
+    private final ChangeEventDTO[] ring;
+    private final int mask;
+    private final String epoch;
+    private final ClusterNotifications clusterNotifications;
+    private final ExecutorService dispatcher;
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private volatile long lastSequence;
+    // changes after this sequence may have been missed, so cursors up to it have expired
+    private volatile long missedAfter = -1;
+
+    public ChangeFeed(ApplicationProperties applicationProperties, MeterRegistry meterRegistry, ObjectProvider<ClusterNotifications> clusterNotifications) {
+        int capacity = Integer.highestOneBit(Math.max(applicationProperties.getChangeFeedCapacity(), 2) - 1) << 1;
+        this.ring = new ChangeEventDTO[capacity];
+        this.mask = capacity - 1;
+        // random rather than the start time, so two instances never take each other's cursors for their own
+        this.epoch = Long.toString(new SecureRandom().nextLong() & Long.MAX_VALUE, 36);
+        this.clusterNotifications = clusterNotifications.getIfAvailable();
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("change-feed-");
+        threadFactory.setDaemon(true);
+        this.dispatcher = Executors.newFixedThreadPool(applicationProperties.getChangeFeedDispatchers(), threadFactory);
+
+        Gauge.builder("banking.changefeed.subscribers", subscriptions, Set::size)
+                .description("Open change feed subscriptions")
+                .register(meterRegistry);
+
+        if (this.clusterNotifications != null) {
+            this.clusterNotifications.subscribeIncludingOwn(TOPIC, this::appendFromCluster, this::changesMissed);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.shutdownNow();
+    }
+
+    /**
+     * Adds the event to the feed once the current transaction commits; events of a rolled back transaction are
+     * dropped. All events of one transaction are appended together, or relayed to every instance in one notification
+     * statement.
+     */
+    public void appendAfterCommit(OutboxEvent event) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            if (clusterNotifications != null) {
+                relay(List.of(event));
+            } else {
+                append(List.of(event));
+            }
+            return;
+        }
+
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronization instanceof PendingChanges pendingChanges) {
+                pendingChanges.events.add(event);
+                return;
+            }
+        }
+
+        PendingChanges pendingChanges = new PendingChanges();
+        pendingChanges.events.add(event);
+        TransactionSynchronizationManager.registerSynchronization(pendingChanges);
+    }
+
+    synchronized void append(List<OutboxEvent> events) {
+        long sequence = lastSequence;
+        for (OutboxEvent event : events) {
+            sequence++;
+            ring[(int) (sequence & mask)] = new ChangeEventDTO(sequence, event.getEventId(), event.getAggregateType(), event.getAggregateId(),
+                    event.getChangeType(), event.getPayload(), event.getCreatedAt());
+        }
+        // readers only look at slots up to lastSequence, so the volatile write publishes the whole batch at once
+        lastSequence = sequence;
+        // cursors from other instances waiting for their change
+        notifyAll();
+
+        signalSubscribers();
+    }
+
+    private void relay(List<OutboxEvent> events) {
+        clusterNotifications.publish(TOPIC, events.stream().map(ChangeFeed::encode).toList());
+    }
+
+    // <event id> <aggregate type> <aggregate id> <change type> <created at>[ <payload>]
+    static String encode(OutboxEvent event) {
+        String message = event.getEventId() + " " + event.getAggregateType() + " " + event.getAggregateId() + " " + event.getChangeType()
+                + " " + event.getCreatedAt();
+        return event.getPayload() != null ? message + " " + event.getPayload() : message;
+    }
+
+    private void appendFromCluster(String message) {
+        OutboxEvent event = new OutboxEvent();
+        try {
+            String[] fields = message.split(" ", 6);
+            event.setEventId(Long.valueOf(fields[0]));
+            event.setAggregateType(AggregateType.valueOf(fields[1]));
+            event.setAggregateId(Long.valueOf(fields[2]));
+            event.setChangeType(ChangeType.valueOf(fields[3]));
+            event.setCreatedAt(LocalDateTime.parse(fields[4]));
+            event.setPayload(fields.length > 5 ? fields[5] : null);
+        } catch (RuntimeException e) {
+            changesMissed();
+            throw e;
+        }
+        append(List.of(event));
+    }
+
+    /**
+     * Expires every cursor issued so far: changes committed while the listening connection was lost never arrive.
+     */
+    private synchronized void changesMissed() {
+        missedAfter = lastSequence;
+        log.warn("Change feed may have missed changes, cursors up to {} have expired", cursorAt(missedAfter));
+        signalSubscribers();
+    }
+
+    private void signalSubscribers() {
+        for (Subscription subscription : subscriptions) {
+            subscription.signal();
+        }
+    }
+
+    /**
+     * Returns up to {@code limit} changes after the cursor, or after the latest change if the cursor is null.
+     * Changes whose aggregate type is not in {@code aggregateTypes} are skipped; null or empty means all types.
+     */
+    public ChangeBatchDTO read(String cursor, Set<AggregateType> aggregateTypes, int limit) {
+        if (limit < 1 || limit > MAX_CHANGES_PER_READ) {
+            throw new ValidationException("Limit must be between 1 and " + MAX_CHANGES_PER_READ);
+        }
+
+        long after = parseCursor(cursor);
+        long last = lastSequence;
+        List<ChangeEventDTO> events = new ArrayList<>(Math.min(limit, (int) Math.min(last - after, 64)));
+
+        long sequence = after;
+        ChangeEventDTO lastRead = null;
+        while (sequence < last && events.size() < limit) {
+            ChangeEventDTO event = ring[(int) (++sequence & mask)];
+            if (event == null || event.getSequence() != sequence) {
+                // the writer has lapped this reader
+                throw expired(cursor);
+            }
+            lastRead = event;
+            if (aggregateTypes == null || aggregateTypes.isEmpty() || aggregateTypes.contains(event.getAggregateType())) {
+                events.add(event);
+            }
+        }
+
+        return new ChangeBatchDTO(events, lastRead != null ? cursorOf(lastRead) : cursorAt(after));
+    }
+
+    /**
+     * Checks the cursor and returns this instance's cursor for the same place, or the cursor of the latest change if
+     * it is null.
+     */
+    public String resolveCursor(String cursor) {
+        return cursorAt(parseCursor(cursor));
+    }
+
+    public String cursorOf(ChangeEventDTO event) {
+        return event.getEventId() != null ? epoch + "-" + event.getSequence() + "-" + event.getEventId() : epoch + "-" + event.getSequence();
+    }
+
+    private String cursorAt(long sequence) {
+        ChangeEventDTO event = ring[(int) (sequence & mask)];
+        return event != null && event.getSequence() == sequence ? cursorOf(event) : epoch + "-" + sequence;
+    }
+
+    /**
+     * Calls the listener on a dispatcher thread once straight away and again after every append, until the
+     * subscription is cancelled. Signals that arrive while the listener is running are coalesced into one more call.
+     */
+    public Subscription subscribe(Runnable listener) {
+        Subscription subscription = new Subscription(listener);
+        subscriptions.add(subscription);
+        subscription.signal();
+        return subscription;
+    }
+
+    private long parseCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return lastSequence;
+        }
+
+        String[] parts = cursor.split("-", -1);
+        if (parts.length < 2 || parts.length > 3 || parts[0].isEmpty()) {
+            throw new ValidationException("Invalid change feed cursor " + cursor);
+        }
+        long sequence;
+        Long eventId;
+        try {
+            sequence = Long.parseLong(parts[1]);
+            eventId = parts.length == 3 ? Long.valueOf(parts[2]) : null;
+        } catch (NumberFormatException e) {
+            throw new ValidationException("Invalid change feed cursor " + cursor);
+        }
+        if (sequence < 0) {
+            throw new ValidationException("Invalid change feed cursor " + cursor);
+        }
+
+        if (!epoch.equals(parts[0])) {
+            if (clusterNotifications == null || eventId == null) {
+                throw expired(cursor);
+            }
+            sequence = locate(cursor, eventId);
+        }
+
+        long last = lastSequence;
+        if (sequence > last || sequence < last - ring.length || sequence <= missedAfter) {
+            throw expired(cursor);
+        }
+        return sequence;
+    }
+
+    /**
+     * Finds the change with the event id, for a cursor from another instance. The change may not have reached this
+     * instance yet, so appends are waited for up to {@value #FOREIGN_CURSOR_WAIT_MILLIS} milliseconds.
+     */
+    private long locate(String cursor, long eventId) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(FOREIGN_CURSOR_WAIT_MILLIS);
+        long searched = 0;
+        while (true) {
+            long last = lastSequence;
+            for (long sequence = last; sequence > Math.max(searched, last - ring.length); sequence--) {
+                ChangeEventDTO event = ring[(int) (sequence & mask)];
+                if (event == null || event.getSequence() != sequence) {
+                    break;
+                }
+                if (event.getEventId() != null && event.getEventId() == eventId) {
+                    return sequence;
+                }
+            }
+            searched = last;
+
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw expired(cursor);
+            }
+            synchronized (this) {
+                if (lastSequence == last) {
+                    try {
+                        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw expired(cursor);
+                    }
+                }
+            }
+        }
+    }
+
+    private CursorExpiredException expired(String cursor) {
+        return new CursorExpiredException("Change feed cursor " + cursor + " has expired, re-read the current state and resume from " + cursorAt(lastSequence));
+    }
+
+    private class PendingChanges implements TransactionSynchronization {
+        private final List<OutboxEvent> events = new ArrayList<>();
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            if (clusterNotifications != null) {
+                // delivered to every instance when the transaction commits
+                relay(events);
+            }
+        }
+
+        @Override
+        public void afterCommit() {
+            if (clusterNotifications == null) {
+                append(events);
+            }
+        }
+    }
+
+    public class Subscription {
+        private final Runnable listener;
+        private final AtomicInteger signals = new AtomicInteger();
+
+        private Subscription(Runnable listener) {
+            this.listener = listener;
+        }
+
+        public void cancel() {
+            subscriptions.remove(this);
+        }
+
+        private void signal() {
+            if (signals.getAndIncrement() == 0) {
+                try {
+                    dispatcher.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    log.debug("Change feed is shutting down, dropping signal");
+                }
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                if (subscriptions.contains(this)) {
+                    try {
+                        listener.run();
+                    } catch (RuntimeException e) {
+                        log.warn("Change feed subscriber failed, cancelling it", e);
+                        cancel();
+                    }
+                }
+                missed = signals.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+}
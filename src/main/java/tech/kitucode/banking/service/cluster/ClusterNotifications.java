@@ -0,0 +1,213 @@
+package tech.kitucode.banking.service.cluster;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Tells the other instances about changes to what they hold in memory: the entity caches, the card authorization
+ * index, the customer name index and the change feed. Notifications go through postgres {@code LISTEN}/{@code NOTIFY} on the {@value #CHANNEL} channel. Active
+ * when {@code application.cluster-notifications-enabled} is true, which every deployment of more than one instance
+ * needs.
+ * <p>
+ * A notification sent in a transaction is delivered when the transaction commits and dropped when it rolls back, so
+ * no instance acts on a change before the change is visible to it. Each instance listens on a connection of its own,
+ * outside the pool, and ignores its own notifications unless the topic asks for them. Postgres delivers notifications
+ * in the order their transactions committed, the same order on every instance. It does not keep notifications for a
+ * listener that is not connected, so after the listening connection is lost and opened again every topic's resync
+ * callback is run to drop whatever may have gone stale in between.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "application.cluster-notifications-enabled", havingValue = "true")
+public class ClusterNotifications {
+    static final String CHANNEL = "banking_changes";
+    private static final int POLL_TIMEOUT_MILLIS = 1000;
+    private static final long RECONNECT_DELAY_MILLIS = 1000;
+
+    private final String origin = UUID.randomUUID().toString();
+    private final Map<String, Topic> topics = new ConcurrentHashMap<>();
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSourceProperties dataSourceProperties;
+    private final Thread listener;
+    private volatile boolean running = true;
+    private volatile Connection connection;
+
+    public ClusterNotifications(JdbcTemplate jdbcTemplate, DataSourceProperties dataSourceProperties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dataSourceProperties = dataSourceProperties;
+        this.listener = new Thread(this::listen, "cluster-notifications");
+        this.listener.setDaemon(true);
+    }
+
+    /**
+     * Starts listening before the caches and indexes that subscribe are loaded, so no change made while they load is
+     * missed.
+     */
+    @PostConstruct
+    public void start() {
+        try {
+            connection = connect();
+        } catch (SQLException e) {
+            // the listener keeps trying and resyncs once it is connected
+            log.warn("Could not listen for cluster notifications", e);
+        }
+        listener.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        listener.interrupt();
+        closeQuietly(connection);
+    }
+
+    /**
+     * Calls the handler with the messages other instances publish on the topic. The resync callback is run instead
+     * when messages may have been missed.
+     */
+    public void subscribe(String topic, Consumer<String> handler, Runnable resync) {
+        topics.put(topic, new Topic(handler, resync, false));
+    }
+
+    /**
+     * Like {@link #subscribe}, but the handler also gets the messages this instance publishes, in commit order with
+     * those of the others.
+     */
+    public void subscribeIncludingOwn(String topic, Consumer<String> handler, Runnable resync) {
+        topics.put(topic, new Topic(handler, resync, true));
+    }
+
+    /**
+     * Sends the message to the other instances when the current transaction commits, or straight away outside a
+     * transaction.
+     */
+    public void publish(String topic, String message) {
+        jdbcTemplate.query("select pg_notify(?, ?)", resultSet -> {
+        }, CHANNEL, origin + ':' + topic + ':' + message);
+    }
+
+    /**
+     * Sends the messages in order, with one statement, as {@link #publish(String, String)} does for one.
+     */
+    public void publish(String topic, List<String> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+
+        String[] payloads = messages.stream().map(message -> origin + ':' + topic + ':' + message).toArray(String[]::new);
+        jdbcTemplate.query("select pg_notify(?, m.payload) from unnest(?) with ordinality as m(payload, n) order by m.n", statement -> {
+            statement.setString(1, CHANNEL);
+            statement.setArray(2, statement.getConnection().createArrayOf("text", payloads));
+        }, resultSet -> {
+        });
+    }
+
+    private void listen() {
+        boolean resync = connection == null;
+        while (running) {
+            try {
+                if (connection == null) {
+                    connection = connect();
+                }
+                if (resync) {
+                    resync();
+                    resync = false;
+                }
+
+                PGNotification[] notifications = connection.unwrap(PGConnection.class).getNotifications(POLL_TIMEOUT_MILLIS);
+                if (notifications != null) {
+                    for (PGNotification notification : notifications) {
+                        dispatch(notification.getParameter());
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Lost the cluster notifications connection, reconnecting", e);
+                closeQuietly(connection);
+                connection = null;
+                resync = true;
+                try {
+                    Thread.sleep(RECONNECT_DELAY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private Connection connect() throws SQLException {
+        Connection listening = DriverManager.getConnection(dataSourceProperties.determineUrl(), dataSourceProperties.determineUsername(),
+                dataSourceProperties.determinePassword());
+        try (Statement statement = listening.createStatement()) {
+            statement.execute("listen " + CHANNEL);
+        } catch (SQLException e) {
+            closeQuietly(listening);
+            throw e;
+        }
+        return listening;
+    }
+
+    private void dispatch(String payload) {
+        // <origin>:<topic>:<message>
+        int topicStart = payload.indexOf(':');
+        int messageStart = payload.indexOf(':', topicStart + 1);
+        if (topicStart < 0 || messageStart < 0) {
+            return;
+        }
+
+        String name = payload.substring(topicStart + 1, messageStart);
+        Topic topic = topics.get(name);
+        if (topic == null || (!topic.own && payload.startsWith(origin + ':'))) {
+            return;
+        }
+        try {
+            topic.handler.accept(payload.substring(messageStart + 1));
+        } catch (RuntimeException e) {
+            // not the payload, it may hold customer names
+            log.warn("Could not apply a cluster notification on topic: {}", name, e);
+        }
+    }
+
+    private void resync() {
+        for (Map.Entry<String, Topic> topic : topics.entrySet()) {
+            try {
+                topic.getValue().resync.run();
+            } catch (RuntimeException e) {
+                log.warn("Could not resync {} after missing cluster notifications", topic.getKey(), e);
+            }
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            log.debug("Could not close the cluster notifications connection", e);
+        }
+    }
+
+    private record Topic(Consumer<String> handler, Runnable resync, boolean own) {
+    }
+}
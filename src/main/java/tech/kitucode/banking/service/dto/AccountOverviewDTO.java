@@ -0,0 +1,22 @@
+package tech.kitucode.banking.service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class AccountOverviewDTO {
+    private Long accountId;
+    private String iban;
+    private String bicSwift;
+    private LocalDate createdOn;
+    private LocalDate updatedOn;
+    private Long version;
+    private List<MaskedCardDTO> cards = new ArrayList<>();
+}
@@ -0,0 +1,16 @@
+package tech.kitucode.banking.service.dto;
+
+import lombok.Data;
+
+@Data
+public class AuthorizeCardDTO {
+    private String pan;
+
+    /**
+     * The pan is left out, so the request can be logged.
+     */
+    @Override
+    public String toString() {
+        return "AuthorizeCardDTO{pan=****}";
+    }
+}
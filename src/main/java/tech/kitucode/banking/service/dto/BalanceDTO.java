@@ -0,0 +1,20 @@
+package tech.kitucode.banking.service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * The balance of an account including credits that have not been swept into it yet, which are also reported
+ * separately.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BalanceDTO {
+    private Long accountId;
+    private BigDecimal balance;
+    private BigDecimal pendingCredits;
+}
@@ -0,0 +1,18 @@
+package tech.kitucode.banking.service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Result of a batch lookup: the values found, in the order they were asked for, and the keys that were not found.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class BatchLookupDTO<T, K> {
+    private List<T> found;
+    private List<K> missing;
+}
@@ -0,0 +1,16 @@
+package tech.kitucode.banking.service.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Keys to look up in one request. Customers are looked up by id, accounts by id or iban and cards by id or pan;
+ * exactly one kind of key is given.
+ */
+@Data
+public class BatchLookupRequestDTO {
+    private List<Long> ids;
+    private List<String> ibans;
+    private List<String> pans;
+}
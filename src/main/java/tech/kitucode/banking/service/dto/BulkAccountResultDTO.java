@@ -0,0 +1,15 @@
+package tech.kitucode.banking.service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import tech.kitucode.banking.domain.Account;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class BulkAccountResultDTO {
+    private Integer index;
+    private Account account;
+    private String error;
+}
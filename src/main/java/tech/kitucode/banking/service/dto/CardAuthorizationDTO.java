@@ -0,0 +1,30 @@
+package tech.kitucode.banking.service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import tech.kitucode.banking.domain.enumerations.CardType;
+
+/**
+ * The outcome of authorizing a card: the card and its account when it is approved, the reason otherwise.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CardAuthorizationDTO {
+    public static final String UNKNOWN_CARD = "UNKNOWN_CARD";
+
+    private boolean approved;
+    private Long cardId;
+    private Long accountId;
+    private CardType cardType;
+    private String declineReason;
+
+    public static CardAuthorizationDTO approved(Long cardId, Long accountId, CardType cardType) {
+        return new CardAuthorizationDTO(true, cardId, accountId, cardType, null);
+    }
+
+    public static CardAuthorizationDTO declined(String declineReason) {
+        return new CardAuthorizationDTO(false, null, null, null, declineReason);
+    }
+}
@@ -0,0 +1,19 @@
+package tech.kitucode.banking.service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * A page of the change feed. {@code cursor} is where the next read resumes; it moves past filtered out changes too,
+ * so it can be newer than the last event in the list.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class ChangeBatchDTO {
+    private List<ChangeEventDTO> events;
+    private String cursor;
+}
@@ -0,0 +1,42 @@
+package tech.kitucode.banking.service.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import lombok.Getter;
+import lombok.ToString;
+import tech.kitucode.banking.domain.enumerations.AggregateType;
+import tech.kitucode.banking.domain.enumerations.ChangeType;
+
+import java.time.LocalDateTime;
+
+/**
+ * A committed change as served by the change feed. Instances are shared by every subscriber, so they are immutable.
+ */
+@Getter
+@ToString
+@JsonPropertyOrder({"sequence", "aggregateType", "aggregateId", "changeType", "payload", "changedAt"})
+public class ChangeEventDTO {
+    private final long sequence;
+    /**
+     * The outbox event id, which is the same on every instance; cursors carry it to be resumed on another instance.
+     */
+    @JsonIgnore
+    private final Long eventId;
+    private final AggregateType aggregateType;
+    private final Long aggregateId;
+    private final ChangeType changeType;
+    @JsonRawValue
+    private final String payload;
+    private final LocalDateTime changedAt;
+
+    public ChangeEventDTO(long sequence, Long eventId, AggregateType aggregateType, Long aggregateId, ChangeType changeType, String payload, LocalDateTime changedAt) {
+        this.sequence = sequence;
+        this.eventId = eventId;
+        this.aggregateType = aggregateType;
+        this.aggregateId = aggregateId;
+        this.changeType = changeType;
+        this.payload = payload;
+        this.changedAt = changedAt;
+    }
+}
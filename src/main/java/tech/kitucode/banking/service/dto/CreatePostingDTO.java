@@ -0,0 +1,10 @@
+package tech.kitucode.banking.service.dto;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+@Data
+public class CreatePostingDTO {
+    private BigDecimal amount;
+}
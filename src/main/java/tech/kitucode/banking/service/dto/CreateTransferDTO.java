@@ -0,0 +1,13 @@
+package tech.kitucode.banking.service.dto;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+@Data
+public class CreateTransferDTO {
+    private Long fromAccountId;
+    private Long toAccountId;
+    private BigDecimal amount;
+    private String reference;
+}
@@ -0,0 +1,15 @@
+package tech.kitucode.banking.service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class CustomerNameDTO {
+    private Long customerId;
+    private String firstName;
+    private String lastName;
+    private String otherName;
+}
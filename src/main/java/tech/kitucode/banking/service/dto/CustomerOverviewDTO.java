@@ -0,0 +1,26 @@
+package tech.kitucode.banking.service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A customer with all of its accounts and their masked cards.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class CustomerOverviewDTO {
+    private Long customerId;
+    private String firstName;
+    private String lastName;
+    private String otherName;
+    private LocalDate createdOn;
+    private LocalDate updatedOn;
+    private Long version;
+    private List<AccountOverviewDTO> accounts = new ArrayList<>();
+}
@@ -0,0 +1,39 @@
+package tech.kitucode.banking.service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import tech.kitucode.banking.domain.enumerations.CardType;
+
+import java.time.LocalDate;
+
+/**
+ * One row of the customer overview join: the customer, one of its accounts and one card of that account. The
+ * account and card columns are null when the customer has no accounts or the account has no cards. The cvv is
+ * never selected.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class CustomerOverviewRowDTO {
+    private Long customerId;
+    private String firstName;
+    private String lastName;
+    private String otherName;
+    private LocalDate customerCreatedOn;
+    private LocalDate customerUpdatedOn;
+    private Long customerVersion;
+    private Long accountId;
+    private String iban;
+    private String bicSwift;
+    private LocalDate accountCreatedOn;
+    private LocalDate accountUpdatedOn;
+    private Long accountVersion;
+    private Long cardId;
+    private String cardAlias;
+    private CardType cardType;
+    private String pan;
+    private LocalDate cardCreatedOn;
+    private LocalDate cardUpdatedOn;
+    private Long cardVersion;
+}
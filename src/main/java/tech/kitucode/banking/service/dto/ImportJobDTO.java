@@ -0,0 +1,18 @@
+package tech.kitucode.banking.service.dto;
+
+import lombok.Data;
+import tech.kitucode.banking.domain.enumerations.ImportJobStatus;
+
+import java.time.LocalDateTime;
+
+@Data
+public class ImportJobDTO {
+    private String jobId;
+    private ImportJobStatus status;
+    private Long rowsRead;
+    private Long rowsImported;
+    private Long rowsRejected;
+    private String error;
+    private LocalDateTime startedOn;
+    private LocalDateTime finishedOn;
+}
@@ -0,0 +1,54 @@
+package tech.kitucode.banking.service.dto;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import lombok.Getter;
+import lombok.ToString;
+import tech.kitucode.banking.domain.Card;
+import tech.kitucode.banking.domain.enumerations.CardType;
+import tech.kitucode.banking.service.util.MaskingUtil;
+
+import java.time.LocalDate;
+
+/**
+ * Read model of a card as shown to clients by default. The pan is masked when the view is built and the cvv is
+ * never read, so list queries select this class directly instead of loading {@link Card} entities.
+ */
+@Getter
+@ToString
+@JsonPropertyOrder({"cardId", "cardAlias", "accountId", "cardType", "pan", "cvv", "createdOn", "updatedOn", "version"})
+public class MaskedCardDTO {
+    private final Long cardId;
+    private final String cardAlias;
+    private final Long accountId;
+    private final CardType cardType;
+    private final String pan;
+    private final LocalDate createdOn;
+    private final LocalDate updatedOn;
+    private final Long version;
+
+    public MaskedCardDTO(Long cardId, String cardAlias, Long accountId, CardType cardType, String pan, LocalDate createdOn, LocalDate updatedOn, Long version) {
+        this.cardId = cardId;
+        this.cardAlias = cardAlias;
+        this.accountId = accountId;
+        this.cardType = cardType;
+        this.pan = MaskingUtil.maskPan(pan);
+        this.createdOn = createdOn;
+        this.updatedOn = updatedOn;
+        this.version = version;
+    }
+
+    public static MaskedCardDTO of(Card card) {
+        if (card == null) {
+            return null;
+        }
+
+        return new MaskedCardDTO(card.getCardId(), card.getCardAlias(), card.getAccountId(), card.getCardType(), card.getPan(), card.getCreatedOn(), card.getUpdatedOn(), card.getVersion());
+    }
+
+    /**
+     * Kept so that masked cards have the same shape as unmasked ones.
+     */
+    public String getCvv() {
+        return MaskingUtil.MASKED_CVV;
+    }
+}
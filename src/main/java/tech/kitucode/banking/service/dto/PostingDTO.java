@@ -0,0 +1,22 @@
+package tech.kitucode.banking.service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * A credit that is durable in the posting journal. It shows in the balance at once and is added to the settled
+ * balance by the next checkpoint.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PostingDTO {
+    private Long sequence;
+    private Long accountId;
+    private BigDecimal amount;
+    private LocalDateTime postedAt;
+}
@@ -6,4 +6,8 @@ import lombok.Data;
 public class UpdateCardDTO {
     private Long cardId;
     private String cardAlias;
+    /**
+     * The version the update is based on; the update fails if the card has changed since.
+     */
+    private Long version;
 }
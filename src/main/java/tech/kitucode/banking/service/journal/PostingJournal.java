@@ -0,0 +1,377 @@
+package tech.kitucode.banking.service.journal;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * An append-only journal of postings, kept in memory-mapped segment files of {@code segmentBytes} each.
+ * <p>
+ * A posting is a fixed-size record of 40 bytes: sequence, account id, amount in cents and timestamp as longs,
+ * followed by a CRC32C of those 32 bytes and 4 bytes of padding. Sequences start at 1 and have no gaps; a segment
+ * file is named after the sequence of its first record and is followed by the next one once it is full.
+ * <p>
+ * {@link #append} only copies the record into the mapping. {@link #sync} makes it durable with a group commit: one
+ * caller at a time forces every record appended so far to disk, while the others park until it is done and then
+ * find their records covered, or force the ones that arrived in the meantime. One force therefore serves all the
+ * postings that arrived while the previous one ran, and waiters are woken together rather than one by one.
+ * <p>
+ * On opening, the segments are read up to the first record that is missing, out of sequence or fails its checksum.
+ * That record and everything after it is a write that never completed and is zeroed, so it cannot be mistaken for
+ * a posting after later appends. Segments are forced in order, so the records after it were never acknowledged,
+ * even when they are in a later segment: after a power loss the next segment may exist while the tail of the one
+ * before it never reached the disk. Such later segments are deleted. Records found on disk are considered durable.
+ */
+@Slf4j
+public class PostingJournal implements Closeable {
+    static final int RECORD_BYTES = 40;
+    private static final int CHECKSUMMED_BYTES = 32;
+    private static final String SUFFIX = ".journal";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final List<Segment> unsyncedSegments = new ArrayList<>();
+    private final CRC32C checksum = new CRC32C();
+    private final AtomicBoolean syncing = new AtomicBoolean();
+    private final Queue<Thread> syncWaiters = new ConcurrentLinkedQueue<>();
+    private Segment current;
+    private volatile long lastSequence;
+    private volatile long durableSequence;
+
+    public PostingJournal(Path directory, int segmentBytes) throws IOException {
+        if (segmentBytes < RECORD_BYTES) {
+            throw new IllegalArgumentException("Journal segments must hold at least one record");
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes - segmentBytes % RECORD_BYTES;
+
+        Files.createDirectories(directory);
+        open();
+    }
+
+    /**
+     * Adds a posting to the journal and returns its sequence. The posting is not durable until {@link #sync} has
+     * been called with that sequence.
+     */
+    public synchronized long append(long accountId, long amount, long timestamp) {
+        if (current.position == current.buffer.capacity()) {
+            unsyncedSegments.add(current);
+            current = createSegment(lastSequence + 1);
+        }
+
+        long sequence = lastSequence + 1;
+        MappedByteBuffer buffer = current.buffer;
+        int position = current.position;
+        buffer.putLong(position, sequence);
+        buffer.putLong(position + 8, accountId);
+        buffer.putLong(position + 16, amount);
+        buffer.putLong(position + 24, timestamp);
+        checksum.reset();
+        checksum.update(buffer.slice(position, CHECKSUMMED_BYTES));
+        buffer.putInt(position + CHECKSUMMED_BYTES, (int) checksum.getValue());
+
+        current.position = position + RECORD_BYTES;
+        lastSequence = sequence;
+        return sequence;
+    }
+
+    /**
+     * Returns once the posting with the given sequence, and every posting before it, is on disk.
+     */
+    public void sync(long sequence) {
+        while (durableSequence < sequence) {
+            if (syncing.compareAndSet(false, true)) {
+                try {
+                    if (durableSequence < sequence) {
+                        force();
+                    }
+                } finally {
+                    syncing.set(false);
+                    Thread waiter;
+                    while ((waiter = syncWaiters.poll()) != null) {
+                        LockSupport.unpark(waiter);
+                    }
+                }
+            } else {
+                // queued before checking again, so a force that ends in between still wakes this thread
+                syncWaiters.add(Thread.currentThread());
+                if (syncing.get() && durableSequence < sequence) {
+                    LockSupport.park(this);
+                }
+            }
+        }
+    }
+
+    /**
+     * Hands the postings after {@code afterSequence} up to and including {@code upToSequence} to the consumer in
+     * sequence order. Only durable postings can be read.
+     */
+    public void replay(long afterSequence, long upToSequence, PostingConsumer consumer) {
+        if (upToSequence > durableSequence) {
+            throw new IllegalArgumentException("Postings after " + durableSequence + " are not durable yet");
+        }
+
+        long sequence = afterSequence + 1;
+        while (sequence <= upToSequence) {
+            Map.Entry<Long, Segment> entry = segments.floorEntry(sequence);
+            if (entry == null) {
+                throw new IllegalStateException("Posting " + sequence + " is no longer in the journal");
+            }
+
+            Segment segment = entry.getValue();
+            int position = (int) (sequence - segment.firstSequence) * RECORD_BYTES;
+            if (position >= segment.buffer.capacity()) {
+                throw new IllegalStateException("Posting " + sequence + " is no longer in the journal");
+            }
+            for (; sequence <= upToSequence && position < segment.buffer.capacity(); sequence++, position += RECORD_BYTES) {
+                MappedByteBuffer buffer = segment.buffer;
+                if (buffer.getLong(position) != sequence) {
+                    throw new IllegalStateException("Journal segment " + segment.path + " is damaged at posting " + sequence);
+                }
+                consumer.accept(sequence, buffer.getLong(position + 8), buffer.getLong(position + 16), buffer.getLong(position + 24));
+            }
+        }
+    }
+
+    /**
+     * Deletes the segments that only hold postings up to {@code sequence}. The segment being written is kept.
+     */
+    public synchronized void release(long sequence) {
+        for (Segment segment : segments.values()) {
+            Long next = segments.higherKey(segment.firstSequence);
+            if (segment == current || next == null || next - 1 > sequence || next - 1 > durableSequence) {
+                break;
+            }
+
+            segments.remove(segment.firstSequence);
+            try {
+                segment.channel.close();
+                Files.delete(segment.path);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            log.debug("Released journal segment {}", segment.path);
+        }
+    }
+
+    /**
+     * Continues an empty journal after the given sequence, for when postings up to it have already been applied and
+     * their journal is gone.
+     */
+    public synchronized void startAfter(long sequence) {
+        if (lastSequence >= sequence) {
+            return;
+        }
+        if (current.position > 0 || segments.size() > 1) {
+            throw new IllegalStateException("Journal in " + directory + " ends at posting " + lastSequence + ", before " + sequence);
+        }
+
+        Segment empty = current;
+        current = createSegment(sequence + 1);
+        segments.remove(empty.firstSequence);
+        try {
+            empty.channel.close();
+            Files.delete(empty.path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        lastSequence = sequence;
+        durableSequence = sequence;
+    }
+
+    public long lastSequence() {
+        return lastSequence;
+    }
+
+    public long durableSequence() {
+        return durableSequence;
+    }
+
+    /**
+     * Forces everything appended so far. Only the thread that won {@link #syncing} calls it.
+     */
+    private void force() {
+        long target;
+        List<Segment> toForce;
+        int position;
+        synchronized (this) {
+            target = lastSequence;
+            toForce = new ArrayList<>(unsyncedSegments);
+            unsyncedSegments.clear();
+            toForce.add(current);
+            position = current.position;
+        }
+
+        for (Segment segment : toForce) {
+            int end = segment == toForce.get(toForce.size() - 1) ? position : segment.buffer.capacity();
+            if (end > segment.syncedPosition) {
+                segment.buffer.force(segment.syncedPosition, end - segment.syncedPosition);
+                segment.syncedPosition = end;
+            }
+        }
+        durableSequence = target;
+    }
+
+    @Override
+    public void close() throws IOException {
+        sync(lastSequence);
+        for (Segment segment : segments.values()) {
+            segment.channel.close();
+        }
+    }
+
+    private void open() throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(file -> file.getFileName().toString().endsWith(SUFFIX)).sorted().toList();
+        }
+
+        if (files.isEmpty()) {
+            current = createSegment(1);
+            return;
+        }
+
+        long expected = firstSequence(files.get(0));
+        for (int i = 0; i < files.size(); i++) {
+            Path file = files.get(i);
+            if (firstSequence(file) != expected) {
+                throw new IllegalStateException("Journal segment " + file + " does not start at posting " + expected);
+            }
+
+            boolean last = i == files.size() - 1;
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            // the last segment may have been created but not extended before a crash
+            long size = last ? Math.max(channel.size(), segmentBytes) : channel.size();
+            Segment segment = new Segment(expected, file, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            segments.put(segment.firstSequence, segment);
+
+            while (segment.position + RECORD_BYTES <= segment.buffer.capacity() && isValid(segment.buffer, segment.position, expected)) {
+                segment.position += RECORD_BYTES;
+                expected++;
+            }
+            segment.syncedPosition = segment.position;
+
+            if (last || segment.position + RECORD_BYTES <= segment.buffer.capacity()) {
+                // the first record that is not valid ends the journal
+                zeroTail(segment);
+                current = segment;
+                discard(files.subList(i + 1, files.size()));
+                break;
+            }
+        }
+
+        lastSequence = expected - 1;
+        durableSequence = lastSequence;
+        log.info("Opened posting journal in {} at posting {}", directory, lastSequence);
+    }
+
+    private boolean isValid(MappedByteBuffer buffer, int position, long sequence) {
+        if (buffer.getLong(position) != sequence) {
+            return false;
+        }
+        checksum.reset();
+        checksum.update(buffer.slice(position, CHECKSUMMED_BYTES));
+        return buffer.getInt(position + CHECKSUMMED_BYTES) == (int) checksum.getValue();
+    }
+
+    /**
+     * Clears whatever follows the last complete record of the segment. Pages of records that were never synced
+     * may have reached the disk in any order, so a stale record further on could otherwise look valid once the
+     * postings before it are written again.
+     */
+    private void zeroTail(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        boolean zeroed = false;
+        for (int position = segment.position; position + Long.BYTES <= buffer.capacity(); position += Long.BYTES) {
+            if (buffer.getLong(position) != 0) {
+                buffer.putLong(position, 0);
+                zeroed = true;
+            }
+        }
+        if (zeroed) {
+            buffer.force();
+            log.warn("Discarded an incomplete posting at the end of journal segment {}", segment.path);
+        }
+    }
+
+    /**
+     * Deletes segments that follow the end of the journal. The deletions are made durable before anything is
+     * appended, otherwise a segment that comes back after a crash could hold stale postings with the very sequences
+     * that are written again.
+     */
+    private void discard(List<Path> files) throws IOException {
+        if (files.isEmpty()) {
+            return;
+        }
+
+        for (Path file : files) {
+            Files.delete(file);
+            log.warn("Discarded journal segment {}, which follows an incomplete posting", file);
+        }
+        try (FileChannel directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            directoryChannel.force(true);
+        }
+    }
+
+    private Segment createSegment(long firstSequence) {
+        Path file = directory.resolve(String.format("%020d%s", firstSequence, SUFFIX));
+        try {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Segment segment = new Segment(firstSequence, file, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes));
+            // the new file name must survive a crash for the segment to be found again
+            try (FileChannel directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+                directoryChannel.force(true);
+            }
+            segments.put(firstSequence, segment);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long firstSequence(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    @FunctionalInterface
+    public interface PostingConsumer {
+        void accept(long sequence, long accountId, long amount, long timestamp);
+    }
+
+    private static class Segment {
+        private final long firstSequence;
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        // guarded by the journal for the current segment
+        private int position;
+        // only used by the syncing thread
+        private int syncedPosition;
+
+        private Segment(long firstSequence, Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.firstSequence = firstSequence;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+}
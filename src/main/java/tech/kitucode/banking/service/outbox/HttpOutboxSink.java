@@ -0,0 +1,43 @@
+package tech.kitucode.banking.service.outbox;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestClient;
+import tech.kitucode.banking.domain.OutboxEvent;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Posts each batch of events as a json array to a webhook. Any response other than 2xx fails the batch.
+ */
+@Slf4j
+public class HttpOutboxSink implements OutboxSink {
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration READ_TIMEOUT = Duration.ofSeconds(30);
+
+    private final String url;
+    private final RestClient restClient;
+
+    public HttpOutboxSink(String url, RestClient.Builder restClientBuilder) {
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(CONNECT_TIMEOUT);
+        requestFactory.setReadTimeout(READ_TIMEOUT);
+
+        this.url = url;
+        this.restClient = restClientBuilder.requestFactory(requestFactory).build();
+    }
+
+    @Override
+    public void publish(List<OutboxEvent> events) {
+        restClient.post()
+                .uri(url)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(events)
+                .retrieve()
+                .toBodilessEntity();
+
+        log.debug("Posted {} outbox events to {}", events.size(), url);
+    }
+}
@@ -0,0 +1,78 @@
+package tech.kitucode.banking.service.outbox;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import tech.kitucode.banking.ApplicationProperties;
+import tech.kitucode.banking.domain.OutboxEvent;
+import tech.kitucode.banking.repository.OutboxEventRepository;
+
+import java.util.List;
+
+/**
+ * Drains the outbox into the {@link OutboxSink}.
+ * <p>
+ * Every {@code application.outbox-linger-millis} the relay takes up to {@code application.outbox-batch-size} of the
+ * oldest events, publishes them and deletes them in the same transaction. Full batches are sent straight away, one
+ * after the other, until the outbox is drained; a partial batch waits for the next run. If publishing fails the
+ * transaction rolls back and the batch is sent again on the next run (at-least-once delivery).
+ */
+@Slf4j
+@Component
+public class OutboxRelay {
+    private final OutboxEventRepository outboxEventRepository;
+    private final OutboxSink outboxSink;
+    private final ApplicationProperties applicationProperties;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter publishedEvents;
+
+    public OutboxRelay(OutboxEventRepository outboxEventRepository, OutboxSink outboxSink, ApplicationProperties applicationProperties,
+                       PlatformTransactionManager transactionManager, MeterRegistry meterRegistry) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.outboxSink = outboxSink;
+        this.applicationProperties = applicationProperties;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.publishedEvents = Counter.builder("banking.outbox.published")
+                .description("Outbox events delivered to the sink")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${application.outbox-linger-millis:200}")
+    public void relay() {
+        int batchSize = applicationProperties.getOutboxBatchSize();
+
+        try {
+            Integer published;
+            do {
+                published = transactionTemplate.execute(status -> publishBatch(batchSize));
+            } while (published != null && published == batchSize);
+        } catch (RuntimeException e) {
+            log.warn("Could not publish outbox events, they will be retried", e);
+        }
+    }
+
+    private int publishBatch(int batchSize) {
+        List<OutboxEvent> events = outboxEventRepository.findNextBatch(Limit.of(batchSize));
+        if (events.isEmpty()) {
+            return 0;
+        }
+
+        try {
+            outboxSink.publish(events);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Outbox sink failed", e);
+        }
+
+        outboxEventRepository.deleteAllInBatch(events);
+        publishedEvents.increment(events.size());
+        log.debug("Published {} outbox events", events.size());
+        return events.size();
+    }
+}
@@ -0,0 +1,13 @@
+package tech.kitucode.banking.service.outbox;
+
+import tech.kitucode.banking.domain.OutboxEvent;
+
+import java.util.List;
+
+/**
+ * Destination of the outbox relay. A batch counts as delivered when {@link #publish(List)} returns; if it throws,
+ * the whole batch is delivered again later, so receivers must tolerate duplicates.
+ */
+public interface OutboxSink {
+    void publish(List<OutboxEvent> events) throws Exception;
+}
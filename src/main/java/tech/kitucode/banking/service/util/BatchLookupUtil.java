@@ -0,0 +1,61 @@
+package tech.kitucode.banking.service.util;
+
+import tech.kitucode.banking.error.ValidationException;
+import tech.kitucode.banking.service.dto.BatchLookupDTO;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+public class BatchLookupUtil {
+    public static final int MAX_KEYS = 1000;
+
+    /**
+     * Keys per query. Hibernate pads in-lists to the next power of two, so with chunks of at most 256 keys each
+     * lookup query has at most nine shapes in the prepared statement cache.
+     */
+    static final int CHUNK_SIZE = 256;
+
+    /**
+     * Looks up the values for the keys with one in-list query per chunk of keys. Found values are returned in the
+     * order of their keys and the keys without a value are reported as missing; repeated keys are looked up once.
+     */
+    public static <K, V> BatchLookupDTO<V, K> lookup(List<K> keys, Function<List<K>, ? extends Collection<V>> query, Function<V, K> keyOf) {
+        if (keys == null || keys.isEmpty()) {
+            throw new ValidationException("At least one key is required");
+        }
+
+        List<K> distinctKeys = new ArrayList<>(new LinkedHashSet<>(keys));
+        if (distinctKeys.size() > MAX_KEYS) {
+            throw new ValidationException("At most " + MAX_KEYS + " keys can be looked up at once");
+        }
+        if (distinctKeys.contains(null)) {
+            throw new ValidationException("Keys must not be null");
+        }
+
+        Map<K, V> valuesByKey = new HashMap<>(distinctKeys.size() * 2);
+        for (int from = 0; from < distinctKeys.size(); from += CHUNK_SIZE) {
+            List<K> chunk = distinctKeys.subList(from, Math.min(from + CHUNK_SIZE, distinctKeys.size()));
+            for (V value : query.apply(chunk)) {
+                valuesByKey.put(keyOf.apply(value), value);
+            }
+        }
+
+        List<V> found = new ArrayList<>(valuesByKey.size());
+        List<K> missing = new ArrayList<>();
+        for (K key : distinctKeys) {
+            V value = valuesByKey.get(key);
+            if (value != null) {
+                found.add(value);
+            } else {
+                missing.add(key);
+            }
+        }
+
+        return new BatchLookupDTO<>(found, missing);
+    }
+}
@@ -0,0 +1,25 @@
+package tech.kitucode.banking.service.util;
+
+import java.util.Arrays;
+
+public class MaskingUtil {
+    public static final String MASKED_CVV = "***";
+
+    /**
+     * Keeps the first six and last four digits of a pan and masks the rest. Pans too short to keep both ends are
+     * masked completely.
+     */
+    public static String maskPan(String pan) {
+        if (pan == null) {
+            return null;
+        }
+
+        char[] masked = pan.toCharArray();
+        if (masked.length <= 10) {
+            Arrays.fill(masked, '*');
+        } else {
+            Arrays.fill(masked, 6, masked.length - 4, '*');
+        }
+        return new String(masked);
+    }
+}
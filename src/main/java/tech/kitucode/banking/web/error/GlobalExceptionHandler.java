@@ -1,10 +1,13 @@
 package tech.kitucode.banking.web.error;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import tech.kitucode.banking.error.CursorExpiredException;
 import tech.kitucode.banking.error.EntityNotFoundException;
 import tech.kitucode.banking.error.ValidationException;
 import tech.kitucode.banking.web.vm.ErrorResponse;
@@ -12,8 +15,18 @@ import tech.kitucode.banking.web.vm.ErrorResponse;
 @Slf4j
 @ControllerAdvice
 public class GlobalExceptionHandler {
+    private static final String BASE_PACKAGE = "tech.kitucode.banking.";
+
+    private final MeterRegistry meterRegistry;
+
+    public GlobalExceptionHandler(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
     @ExceptionHandler(ValidationException.class)
     public ResponseEntity<ErrorResponse> handleValidationException(ValidationException ex) {
+        meterRegistry.counter("banking.validation.failures", "source", failureSource(ex)).increment();
+
         ErrorResponse errorResponse = new ErrorResponse(HttpStatus.BAD_REQUEST.value(), ex.getMessage());
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
     }
@@ -24,9 +37,38 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.NOT_FOUND).body(errorResponse);
     }
 
+    @ExceptionHandler(CursorExpiredException.class)
+    public ResponseEntity<ErrorResponse> handleCursorExpiredException(CursorExpiredException ex) {
+        ErrorResponse errorResponse = new ErrorResponse(HttpStatus.GONE.value(), ex.getMessage());
+        return ResponseEntity.status(HttpStatus.GONE).body(errorResponse);
+    }
+
+    /**
+     * The entity was changed after the version the client sent, in {@code If-Match} or in the body.
+     */
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<ErrorResponse> handleOptimisticLockingFailureException(OptimisticLockingFailureException ex) {
+        ErrorResponse errorResponse = new ErrorResponse(HttpStatus.PRECONDITION_FAILED.value(), "The entity has been modified, fetch it again and retry");
+        return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).body(errorResponse);
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<ErrorResponse> handleException(Exception ex) {
         ErrorResponse errorResponse = new ErrorResponse(HttpStatus.INTERNAL_SERVER_ERROR.value(), "An unexpected error occurred");
         return new ResponseEntity<>(errorResponse, HttpStatus.INTERNAL_SERVER_ERROR);
     }
+
+    /**
+     * The class and method that threw the exception, e.g. {@code CardService.save}. The validation messages carry
+     * ids, so they cannot be used as tags without blowing up the number of time series.
+     */
+    static String failureSource(Throwable ex) {
+        for (StackTraceElement element : ex.getStackTrace()) {
+            String className = element.getClassName();
+            if (className.startsWith(BASE_PACKAGE) && !className.contains("$$")) {
+                return className.substring(className.lastIndexOf('.') + 1) + "." + element.getMethodName();
+            }
+        }
+        return "unknown";
+    }
 }
@@ -0,0 +1,153 @@
+package tech.kitucode.banking.web.filter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+import tech.kitucode.banking.web.vm.ErrorResponse;
+
+import java.io.IOException;
+import java.security.Principal;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * Admits requests to the customer, account and card endpoints before they reach a resource, answering
+ * {@code 429 Too Many Requests} with a {@code Retry-After} header instead of letting them queue for a connection.
+ * <ol>
+ *     <li>Load shedding: when requests are already waiting for a database connection, bulk and read requests are
+ *     turned away, and writes too once the wait queue is twice as long.</li>
+ *     <li>Per-client rate limits, with separate quotas for reads and writes. Clients are identified by their
+ *     authenticated principal, or else by their address; never by a header the client chooses, which would let it
+ *     take a fresh quota with every request.</li>
+ *     <li>A limit on the requests of each endpoint class in flight at once. Streamed exports hold their permit
+ *     until the response is complete.</li>
+ * </ol>
+ */
+public class AdmissionFilter extends OncePerRequestFilter {
+    private static final long SHED_RETRY_AFTER_SECONDS = 1;
+
+    public enum EndpointClass {
+        READ, WRITE, BULK
+    }
+
+    private final RateLimiter readLimiter;
+    private final RateLimiter writeLimiter;
+    private final Map<EndpointClass, Semaphore> inFlight = new EnumMap<>(EndpointClass.class);
+    private final IntSupplier poolWaiters;
+    private final int shedPoolWaiters;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    public AdmissionFilter(RateLimiter readLimiter, RateLimiter writeLimiter, Map<EndpointClass, Integer> maxInFlight,
+                           IntSupplier poolWaiters, int shedPoolWaiters, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.readLimiter = readLimiter;
+        this.writeLimiter = writeLimiter;
+        for (EndpointClass endpointClass : EndpointClass.values()) {
+            inFlight.put(endpointClass, new Semaphore(maxInFlight.get(endpointClass)));
+        }
+        this.poolWaiters = poolWaiters;
+        this.shedPoolWaiters = shedPoolWaiters;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        boolean write = ReadYourWritesFilter.isWrite(request);
+        EndpointClass endpointClass = classify(request.getRequestURI(), write);
+
+        int waiters = poolWaiters.getAsInt();
+        if (waiters >= shedPoolWaiters && (endpointClass != EndpointClass.WRITE || waiters >= 2 * shedPoolWaiters)) {
+            reject(response, endpointClass, "overload", TimeUnit.SECONDS.toNanos(SHED_RETRY_AFTER_SECONDS));
+            return;
+        }
+
+        long wait = (write ? writeLimiter : readLimiter).tryAcquire(clientOf(request));
+        if (wait > 0) {
+            reject(response, endpointClass, "rate", wait);
+            return;
+        }
+
+        Semaphore permits = inFlight.get(endpointClass);
+        if (!permits.tryAcquire()) {
+            reject(response, endpointClass, "concurrency", TimeUnit.SECONDS.toNanos(SHED_RETRY_AFTER_SECONDS));
+            return;
+        }
+
+        boolean async = false;
+        try {
+            filterChain.doFilter(request, response);
+            if (isAsyncStarted(request)) {
+                request.getAsyncContext().addListener(new ReleaseOnComplete(permits));
+                async = true;
+            }
+        } finally {
+            if (!async) {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * Behind a proxy, the address is the client's only when {@code server.forward-headers-strategy} trusts the
+     * proxy's forwarded headers.
+     */
+    static String clientOf(HttpServletRequest request) {
+        Principal principal = request.getUserPrincipal();
+        return principal != null ? "principal:" + principal.getName() : request.getRemoteAddr();
+    }
+
+    static EndpointClass classify(String uri, boolean write) {
+        if (uri.endsWith("/_export") || uri.endsWith("/_import") || uri.endsWith("/_bulk")) {
+            return EndpointClass.BULK;
+        }
+        return write ? EndpointClass.WRITE : EndpointClass.READ;
+    }
+
+    private void reject(HttpServletResponse response, EndpointClass endpointClass, String reason, long retryAfterNanos) throws IOException {
+        meterRegistry.counter("banking.admission.rejected", "reason", reason, "class", endpointClass.name().toLowerCase()).increment();
+
+        long retryAfterSeconds = Math.max(1, (retryAfterNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), new ErrorResponse(HttpStatus.TOO_MANY_REQUESTS.value(), "Too many requests, retry after " + retryAfterSeconds + "s"));
+    }
+
+    private static class ReleaseOnComplete implements AsyncListener {
+        private final Semaphore permits;
+
+        private ReleaseOnComplete(Semaphore permits) {
+            this.permits = permits;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            permits.release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package tech.kitucode.banking.web.filter;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-client token bucket, implemented as the generic cell rate algorithm: each client has a single
+ * "theoretical arrival time" that moves forward by one emission interval per admitted request, and a request is
+ * rejected when that time would run more than the burst ahead of now. The state is one {@link AtomicLong} per
+ * client updated with compare-and-set, so admitting a request takes no lock.
+ */
+public class RateLimiter {
+    private static final int MAX_TRACKED_CLIENTS = 100_000;
+
+    private final long emissionIntervalNanos;
+    private final long burstNanos;
+    private final Cache<String, AtomicLong> arrivals;
+
+    /**
+     * @param permitsPerSecond sustained rate per client
+     * @param burst            requests a client may make at once after being idle
+     */
+    public RateLimiter(double permitsPerSecond, int burst) {
+        this.emissionIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        this.burstNanos = emissionIntervalNanos * burst;
+        // an idle client is back to a full burst once burstNanos have passed, so its state can be dropped
+        this.arrivals = Caffeine.newBuilder()
+                .expireAfterAccess(Duration.ofNanos(Math.max(burstNanos, TimeUnit.SECONDS.toNanos(1))))
+                .maximumSize(MAX_TRACKED_CLIENTS)
+                .build();
+    }
+
+    /**
+     * Takes a permit for the client.
+     *
+     * @return 0 if the request is admitted, otherwise the nanoseconds until the client's next permit
+     */
+    public long tryAcquire(String client) {
+        return tryAcquire(client, System.nanoTime());
+    }
+
+    long tryAcquire(String client, long now) {
+        AtomicLong arrival = arrivals.get(client, key -> new AtomicLong(now - burstNanos));
+        while (true) {
+            long current = arrival.get();
+            long next = Math.max(current, now - burstNanos) + emissionIntervalNanos;
+            long wait = next - now;
+            if (wait > 0) {
+                return wait;
+            }
+            if (arrival.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package tech.kitucode.banking.web.filter;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+import tech.kitucode.banking.config.ReplicaRoutingDataSource;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * Keeps the reads of a client on the primary for a short window after that client wrote something, so that it sees
+ * its own writes even while the replicas catch up. Clients are identified by the {@code X-Client-Id} header, or by
+ * their address when the header is missing.
+ * <p>
+ * Streamed responses (the exports) are written on another thread and are not pinned.
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+    public static final String CLIENT_ID_HEADER = "X-Client-Id";
+    private static final Set<String> READ_METHODS = Set.of("GET", "HEAD", "OPTIONS");
+    private static final int MAX_TRACKED_CLIENTS = 100_000;
+
+    private final Cache<String, Boolean> recentWriters;
+
+    public ReadYourWritesFilter(Duration window) {
+        this.recentWriters = Caffeine.newBuilder()
+                .expireAfterWrite(window)
+                .maximumSize(MAX_TRACKED_CLIENTS)
+                .build();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        String client = clientOf(request);
+        boolean write = isWrite(request);
+
+        if (write || recentWriters.getIfPresent(client) != null) {
+            ReplicaRoutingDataSource.pinToPrimary();
+        }
+
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            ReplicaRoutingDataSource.unpin();
+            if (write) {
+                // the window starts once the write has been committed
+                recentWriters.put(client, Boolean.TRUE);
+            }
+        }
+    }
+
+    /**
+     * Batch lookups and card authorizations are posted but only read.
+     */
+    static boolean isWrite(HttpServletRequest request) {
+        String uri = request.getRequestURI();
+        return !READ_METHODS.contains(request.getMethod()) && !uri.endsWith("/_batch") && !uri.endsWith("/_authorize");
+    }
+
+    static String clientOf(HttpServletRequest request) {
+        String clientId = request.getHeader(CLIENT_ID_HEADER);
+        return clientId != null && !clientId.isBlank() ? clientId : request.getRemoteAddr();
+    }
+}
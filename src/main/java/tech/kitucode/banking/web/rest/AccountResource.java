@@ -3,14 +3,27 @@ package tech.kitucode.banking.web.rest;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Window;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import tech.kitucode.banking.domain.Account;
 import tech.kitucode.banking.error.EntityNotFoundException;
+import tech.kitucode.banking.error.ValidationException;
 import tech.kitucode.banking.service.AccountService;
+import tech.kitucode.banking.service.EntityVersionService;
+import tech.kitucode.banking.service.TransferService;
+import tech.kitucode.banking.service.WriteCoalescer;
+import tech.kitucode.banking.service.dto.BalanceDTO;
+import tech.kitucode.banking.service.dto.BatchLookupDTO;
+import tech.kitucode.banking.service.dto.BatchLookupRequestDTO;
+import tech.kitucode.banking.service.dto.BulkAccountResultDTO;
 import tech.kitucode.banking.service.dto.CreateAccountDTO;
+import tech.kitucode.banking.web.util.ETagUtil;
 import tech.kitucode.banking.web.util.PaginationUtil;
 import tech.kitucode.banking.web.vm.ErrorResponse;
 
@@ -23,45 +36,115 @@ import java.util.List;
 public class AccountResource {
     private final String BASE_URL = "/api/accounts";
     private final AccountService accountService;
+    private final EntityVersionService entityVersionService;
+    private final TransferService transferService;
+    private final WriteCoalescer writeCoalescer;
 
-    public AccountResource(AccountService accountService) {
+    public AccountResource(AccountService accountService, EntityVersionService entityVersionService, TransferService transferService,
+                           WriteCoalescer writeCoalescer) {
         this.accountService = accountService;
+        this.entityVersionService = entityVersionService;
+        this.transferService = transferService;
+        this.writeCoalescer = writeCoalescer;
     }
 
     @PostMapping("/accounts")
     public ResponseEntity<Account> create(@RequestBody CreateAccountDTO createAccountDTO) {
         log.info("REST request to save account: {}", createAccountDTO);
 
-        Account savedAccount = accountService.save(createAccountDTO);
+        // the iban is allocated before the write joins a transaction, so waiting for account numbers holds no connection
+        accountService.validateCreation(createAccountDTO);
+        String iban = accountService.allocateIban(createAccountDTO.getBranchCode());
+        Account savedAccount = writeCoalescer.write(() -> accountService.save(createAccountDTO, iban));
 
         return ResponseEntity.created(URI.create(BASE_URL + "/" + savedAccount.getAccountId())).body(savedAccount);
     }
 
+    @PostMapping("/accounts/_bulk")
+    public ResponseEntity<List<BulkAccountResultDTO>> createAll(@RequestBody List<CreateAccountDTO> createAccountDTOs) {
+        log.info("REST request to save {} accounts in bulk", createAccountDTOs.size());
+
+        List<BulkAccountResultDTO> results = accountService.saveAll(createAccountDTOs);
+
+        return ResponseEntity.ok(results);
+    }
+
     @GetMapping("/accounts")
     public ResponseEntity<List<Account>> findAll(
             @RequestParam(name = "iban", required = false) String iban,
             @RequestParam(name = "bicSwift", required = false) String bicSwift,
             @RequestParam(name = "accountId", required = false) Long accountId,
+            @RequestParam(name = "after", required = false) String after,
             Pageable pageable
     ) {
         log.info("REST request to find accounts by iban: {}, bicSwift: {}, accountId: {}", iban, bicSwift, accountId);
 
+        if (after != null) {
+            // cursor mode - keyset pagination without a count query
+            Window<Account> window = accountService.findAll(iban, bicSwift, accountId, PaginationUtil.decodeCursor(after, "accountId"), pageable.getPageSize());
+            HttpHeaders headers = PaginationUtil.generateCursorHttpHeaders(window, "accountId", pageable.getPageSize());
+            return new ResponseEntity<>(window.getContent(), headers, HttpStatus.OK);
+        }
+
         Page page = accountService.findAll(iban, bicSwift, accountId, pageable);
         HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(page, BASE_URL);
         return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
     }
 
+    @GetMapping(value = "/accounts/_export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> export() {
+        log.info("REST request to export all accounts");
+
+        StreamingResponseBody body = accountService::export;
+
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    @PostMapping("/accounts/_batch")
+    public ResponseEntity<BatchLookupDTO<Account, ?>> findAllByKeys(@RequestBody BatchLookupRequestDTO batchLookupRequestDTO) {
+        log.info("REST request to find accounts by ids or ibans");
+
+        if (batchLookupRequestDTO.getIbans() != null) {
+            if (batchLookupRequestDTO.getIds() != null) {
+                throw new ValidationException("Look up accounts either by ids or by ibans");
+            }
+            return ResponseEntity.ok(accountService.findAllByIbans(batchLookupRequestDTO.getIbans()));
+        }
+
+        return ResponseEntity.ok(accountService.findAllByIds(batchLookupRequestDTO.getIds()));
+    }
+
     @GetMapping("/accounts/{id}")
-    public ResponseEntity<Account> findById(@PathVariable Long id) {
+    public ResponseEntity<Account> findById(@PathVariable Long id, WebRequest webRequest) {
         log.info("REST request to find account by id : {}", id);
 
+        if (webRequest.getHeader(HttpHeaders.IF_NONE_MATCH) != null) {
+            Long version = entityVersionService.findAccountVersion(id);
+            if (version != null && webRequest.checkNotModified(ETagUtil.etag(version))) {
+                return null;
+            }
+        }
+
         Account account = accountService.findById(id);
 
         if (account == null) {
             throw new EntityNotFoundException("Account with id: " + id + " does not exist");
         }
 
-        return ResponseEntity.ok(account);
+        return ResponseEntity.ok().eTag(ETagUtil.etag(account.getVersion())).body(account);
+    }
+
+    @GetMapping("/accounts/{id}/balance")
+    public ResponseEntity<BalanceDTO> findBalance(@PathVariable Long id) {
+        log.info("REST request to find balance of account with id: {}", id);
+
+        BalanceDTO balance = transferService.findBalance(id);
+
+        if (balance == null) {
+            throw new EntityNotFoundException("Account with id: " + id + " does not exist");
+        }
+
+        return ResponseEntity.ok(balance);
     }
 
     @PutMapping("/accounts")
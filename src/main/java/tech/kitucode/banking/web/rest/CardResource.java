@@ -1,18 +1,33 @@
 package tech.kitucode.banking.web.rest;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.KeysetScrollPosition;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Window;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import tech.kitucode.banking.domain.Card;
 import tech.kitucode.banking.domain.enumerations.CardType;
+import tech.kitucode.banking.error.DuplicatePanException;
 import tech.kitucode.banking.error.EntityNotFoundException;
+import tech.kitucode.banking.error.ValidationException;
 import tech.kitucode.banking.service.CardService;
+import tech.kitucode.banking.service.EntityVersionService;
+import tech.kitucode.banking.service.WriteCoalescer;
+import tech.kitucode.banking.service.dto.AuthorizeCardDTO;
+import tech.kitucode.banking.service.dto.BatchLookupDTO;
+import tech.kitucode.banking.service.dto.BatchLookupRequestDTO;
+import tech.kitucode.banking.service.dto.CardAuthorizationDTO;
 import tech.kitucode.banking.service.dto.CreateCardDTO;
+import tech.kitucode.banking.service.dto.MaskedCardDTO;
 import tech.kitucode.banking.service.dto.UpdateCardDTO;
+import tech.kitucode.banking.web.util.ETagUtil;
 import tech.kitucode.banking.web.util.PaginationUtil;
 
 import java.net.URI;
@@ -23,27 +38,48 @@ import java.util.List;
 @RequestMapping("/api")
 public class CardResource {
     private final String BASE_URL = "/api/cards";
+    private static final String UNMASKED = "unmasked";
+    private static final int MAX_PAN_ATTEMPTS = 3;
+
     private final CardService cardService;
+    private final EntityVersionService entityVersionService;
+    private final WriteCoalescer writeCoalescer;
 
-    public CardResource(CardService cardService) {
+    public CardResource(CardService cardService, EntityVersionService entityVersionService, WriteCoalescer writeCoalescer) {
         this.cardService = cardService;
+        this.entityVersionService = entityVersionService;
+        this.writeCoalescer = writeCoalescer;
     }
 
     @PostMapping("/cards")
     public ResponseEntity<Card> create(@RequestBody CreateCardDTO createCardDTO) {
         log.info("REST request to create card: {}", createCardDTO);
 
-        Card savedCard = cardService.save(createCardDTO);
+        // issuing a card locks its account row. a pan another instance has just issued rolls the issuance back, it is
+        // issued again in a new transaction with a new pan
+        Card savedCard = null;
+        for (int attempt = 1; savedCard == null; attempt++) {
+            try {
+                savedCard = writeCoalescer.write(createCardDTO.getAccountId(), () -> cardService.validateCreation(createCardDTO),
+                        () -> cardService.save(createCardDTO));
+            } catch (DuplicatePanException e) {
+                if (attempt == MAX_PAN_ATTEMPTS) {
+                    throw e;
+                }
+                log.debug("Generated pan was issued by another instance, issuing the card again");
+            }
+        }
 
         return ResponseEntity.created(URI.create(BASE_URL + "/" + savedCard.getCardId())).body(savedCard);
     }
 
     @GetMapping("/cards")
-    public ResponseEntity<List<Card>> findAll(
+    public ResponseEntity<List<?>> findAll(
             @RequestParam(name = "cardAlias", required = false) String cardAlias,
             @RequestParam(name = "cardType", required = false) CardType cardType,
             @RequestParam(name = "pan", required = false) String pan,
             @RequestParam(name = "masked", required = false) Boolean masked,
+            @RequestParam(name = "after", required = false) String after,
             Pageable pageable
     ) {
         log.info("REST request to find cards by cardAlias: {}, cardType: {}, pan: {}", cardAlias, cardType, pan);
@@ -52,35 +88,96 @@ public class CardResource {
             masked = true;
         }
 
-        Page page = cardService.findAll(cardAlias, cardType, pan, masked, pageable);
+        if (after != null) {
+            // cursor mode - keyset pagination without a count query
+            KeysetScrollPosition position = PaginationUtil.decodeCursor(after, "cardId");
+            Window<?> window = masked
+                    ? cardService.findAllMasked(cardAlias, cardType, pan, position, pageable.getPageSize())
+                    : cardService.findAll(cardAlias, cardType, pan, position, pageable.getPageSize());
+            HttpHeaders headers = PaginationUtil.generateCursorHttpHeaders(window, "cardId", pageable.getPageSize());
+            return new ResponseEntity<>(window.getContent(), headers, HttpStatus.OK);
+        }
+
+        Page<?> page = masked
+                ? cardService.findAllMasked(cardAlias, cardType, pan, pageable)
+                : cardService.findAll(cardAlias, cardType, pan, pageable);
         HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(page, BASE_URL);
         return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
     }
 
+    @GetMapping(value = "/cards/_export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam(name = "masked", required = false) Boolean masked) {
+        log.info("REST request to export all cards");
+
+        boolean maskCards = masked == null || masked;
+        StreamingResponseBody body = outputStream -> cardService.export(maskCards, outputStream);
+
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    @PostMapping("/cards/_batch")
+    public ResponseEntity<BatchLookupDTO<MaskedCardDTO, ?>> findAllByKeys(@RequestBody BatchLookupRequestDTO batchLookupRequestDTO) {
+        log.info("REST request to find cards by ids or pans");
+
+        if (batchLookupRequestDTO.getPans() != null) {
+            if (batchLookupRequestDTO.getIds() != null) {
+                throw new ValidationException("Look up cards either by ids or by pans");
+            }
+            return ResponseEntity.ok(cardService.findAllMaskedByPans(batchLookupRequestDTO.getPans()));
+        }
+
+        return ResponseEntity.ok(cardService.findAllMaskedByIds(batchLookupRequestDTO.getIds()));
+    }
+
+    @PostMapping("/cards/_authorize")
+    public ResponseEntity<CardAuthorizationDTO> authorize(@RequestBody AuthorizeCardDTO authorizeCardDTO) {
+        log.info("REST request to authorize card");
+
+        return ResponseEntity.ok(cardService.authorize(authorizeCardDTO));
+    }
+
     @GetMapping("/cards/{id}")
-    public ResponseEntity<Card> findById(@PathVariable Long id, @RequestParam(name = "masked", required = false) Boolean masked) {
+    public ResponseEntity<?> findById(@PathVariable Long id, @RequestParam(name = "masked", required = false) Boolean masked, WebRequest webRequest) {
         log.info("REST request to find card by id : {}", id);
 
         if (masked == null) {
             masked = true;
         }
 
-        Card card = cardService.findById(id, masked);
+        if (webRequest.getHeader(HttpHeaders.IF_NONE_MATCH) != null) {
+            Long version = entityVersionService.findCardVersion(id);
+            if (version != null && webRequest.checkNotModified(masked ? ETagUtil.etag(version) : ETagUtil.etag(version, UNMASKED))) {
+                return null;
+            }
+        }
 
+        if (masked) {
+            MaskedCardDTO card = cardService.findMaskedById(id);
+            if (card == null) {
+                throw new EntityNotFoundException("Card with id: " + id + " does not exist");
+            }
+            return ResponseEntity.ok().eTag(ETagUtil.etag(card.getVersion())).body(card);
+        }
+
+        Card card = cardService.findById(id);
         if (card == null) {
             throw new EntityNotFoundException("Card with id: " + id + " does not exist");
         }
-
-        return ResponseEntity.ok(card);
+        return ResponseEntity.ok().eTag(ETagUtil.etag(card.getVersion(), UNMASKED)).body(card);
     }
 
     @PutMapping("/cards")
-    public ResponseEntity<Card> update(@RequestBody UpdateCardDTO updateCardDTO) {
+    public ResponseEntity<Card> update(@RequestBody UpdateCardDTO updateCardDTO, @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         log.info("REST request to update card : {}", updateCardDTO);
 
+        Long expectedVersion = ETagUtil.parseIfMatch(ifMatch);
+        if (expectedVersion != null) {
+            updateCardDTO.setVersion(expectedVersion);
+        }
+
         Card updatedCard = cardService.update(updateCardDTO);
 
-        return ResponseEntity.ok(updatedCard);
+        return ResponseEntity.ok().eTag(ETagUtil.etag(updatedCard.getVersion())).body(updatedCard);
     }
 
     @DeleteMapping("/cards/{id}")
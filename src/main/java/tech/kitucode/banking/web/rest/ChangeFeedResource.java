@@ -0,0 +1,202 @@
+package tech.kitucode.banking.web.rest;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import tech.kitucode.banking.ApplicationProperties;
+import tech.kitucode.banking.domain.enumerations.AggregateType;
+import tech.kitucode.banking.error.CursorExpiredException;
+import tech.kitucode.banking.service.changefeed.ChangeFeed;
+import tech.kitucode.banking.service.dto.ChangeBatchDTO;
+import tech.kitucode.banking.service.dto.ChangeEventDTO;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+@Slf4j
+@RestController
+@RequestMapping("/api")
+public class ChangeFeedResource {
+    private static final int STREAM_BATCH_SIZE = 500;
+
+    private final ChangeFeed changeFeed;
+    private final ApplicationProperties applicationProperties;
+    private final ExecutorService streamSenders;
+
+    public ChangeFeedResource(ChangeFeed changeFeed, ApplicationProperties applicationProperties) {
+        this.changeFeed = changeFeed;
+        this.applicationProperties = applicationProperties;
+
+        // a thread per stream that has changes to send, so a client that reads slowly only holds up its own stream
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("change-feed-stream-");
+        threadFactory.setDaemon(true);
+        this.streamSenders = Executors.newCachedThreadPool(threadFactory);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        streamSenders.shutdownNow();
+    }
+
+    /**
+     * Long-poll: answers straight away when there are changes after the cursor, otherwise waits for the next one
+     * for up to {@code application.change-feed-poll-timeout-millis} and then answers with an empty batch.
+     */
+    @GetMapping("/changes")
+    public DeferredResult<ResponseEntity<ChangeBatchDTO>> poll(
+            @RequestParam(name = "after", required = false) String after,
+            @RequestParam(name = "types", required = false) Set<AggregateType> types,
+            @RequestParam(name = "limit", required = false, defaultValue = "100") Integer limit) {
+        log.info("REST request to poll changes after : {}", after);
+        ChangeBatchDTO batch = changeFeed.read(after, types, limit);
+
+        DeferredResult<ResponseEntity<ChangeBatchDTO>> result = new DeferredResult<>(applicationProperties.getChangeFeedPollTimeoutMillis());
+        if (!batch.getEvents().isEmpty()) {
+            result.setResult(ResponseEntity.ok(batch));
+            return result;
+        }
+
+        AtomicReference<String> cursor = new AtomicReference<>(batch.getCursor());
+        ChangeFeed.Subscription subscription = changeFeed.subscribe(() -> {
+            try {
+                ChangeBatchDTO next = changeFeed.read(cursor.get(), types, limit);
+                cursor.set(next.getCursor());
+                if (!next.getEvents().isEmpty()) {
+                    result.setResult(ResponseEntity.ok(next));
+                }
+            } catch (CursorExpiredException e) {
+                result.setErrorResult(e);
+            }
+        });
+        result.onTimeout(() -> result.setResult(ResponseEntity.ok(new ChangeBatchDTO(List.of(), cursor.get()))));
+        result.onCompletion(subscription::cancel);
+        return result;
+    }
+
+    /**
+     * Server-sent events: every change after the cursor, then each new change as it commits. The event id is the
+     * cursor of the change, so reconnecting clients resume through {@code Last-Event-ID}. A cursor that has expired
+     * gets an {@code expired} event and the stream is closed.
+     * <p>
+     * The dispatcher thread only hands the stream over to a sender of its own, which reads the changes from the feed
+     * and writes them to the client. The feed's ring buffer is the stream's buffer: a client that falls more than
+     * {@code application.change-feed-capacity} changes behind gets the {@code expired} event.
+     */
+    @GetMapping(value = "/changes/_stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(
+            @RequestParam(name = "after", required = false) String after,
+            @RequestHeader(name = "Last-Event-ID", required = false) String lastEventId,
+            @RequestParam(name = "types", required = false) Set<AggregateType> types) {
+        log.info("REST request to stream changes after : {}", lastEventId != null ? lastEventId : after);
+        SseEmitter emitter = createEmitter(applicationProperties.getChangeFeedStreamTimeoutMillis());
+
+        AtomicReference<String> cursor = new AtomicReference<>();
+        try {
+            cursor.set(changeFeed.resolveCursor(lastEventId != null ? lastEventId : after));
+        } catch (CursorExpiredException e) {
+            sendExpired(emitter, e);
+            return emitter;
+        }
+
+        ChangeStream stream = new ChangeStream(emitter, cursor, types);
+        ChangeFeed.Subscription subscription = changeFeed.subscribe(stream::signal);
+        stream.subscription = subscription;
+        emitter.onCompletion(subscription::cancel);
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(e -> subscription.cancel());
+        return emitter;
+    }
+
+    SseEmitter createEmitter(long timeoutMillis) {
+        return new SseEmitter(timeoutMillis);
+    }
+
+    private void sendExpired(SseEmitter emitter, CursorExpiredException e) {
+        try {
+            emitter.send(SseEmitter.event().name("expired").data(e.getMessage()));
+            emitter.complete();
+        } catch (IOException | IllegalStateException ex) {
+            emitter.completeWithError(ex);
+        }
+    }
+
+    /**
+     * Sends a stream's changes on a sender thread. Signals that arrive while it is sending are coalesced into one more
+     * pass, as the feed does for its subscribers.
+     */
+    private class ChangeStream {
+        private final SseEmitter emitter;
+        private final AtomicReference<String> cursor;
+        private final Set<AggregateType> types;
+        private final AtomicInteger signals = new AtomicInteger();
+        private volatile ChangeFeed.Subscription subscription;
+
+        private ChangeStream(SseEmitter emitter, AtomicReference<String> cursor, Set<AggregateType> types) {
+            this.emitter = emitter;
+            this.cursor = cursor;
+            this.types = types;
+        }
+
+        /**
+         * Called on a dispatcher thread, so it must not block.
+         */
+        private void signal() {
+            if (signals.getAndIncrement() == 0) {
+                try {
+                    streamSenders.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    log.debug("Change feed streams are shutting down, dropping signal");
+                }
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                send();
+                missed = signals.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void send() {
+            try {
+                ChangeBatchDTO batch;
+                do {
+                    batch = changeFeed.read(cursor.get(), types, STREAM_BATCH_SIZE);
+                    for (ChangeEventDTO event : batch.getEvents()) {
+                        emitter.send(SseEmitter.event()
+                                .id(changeFeed.cursorOf(event))
+                                .name("change")
+                                .data(event, MediaType.APPLICATION_JSON));
+                    }
+                    cursor.set(batch.getCursor());
+                } while (batch.getEvents().size() == STREAM_BATCH_SIZE);
+            } catch (CursorExpiredException e) {
+                cancel();
+                sendExpired(emitter, e);
+            } catch (IOException | IllegalStateException e) {
+                // the client went away or the emitter already completed
+                cancel();
+                emitter.completeWithError(e);
+            }
+        }
+
+        private void cancel() {
+            ChangeFeed.Subscription current = subscription;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+    }
+}
@@ -1,18 +1,35 @@
 package tech.kitucode.banking.web.rest;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Window;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import tech.kitucode.banking.domain.Customer;
 import tech.kitucode.banking.error.EntityNotFoundException;
+import tech.kitucode.banking.service.CustomerImportService;
 import tech.kitucode.banking.service.CustomerService;
+import tech.kitucode.banking.service.EntityVersionService;
+import tech.kitucode.banking.service.WriteCoalescer;
+import tech.kitucode.banking.service.dto.BatchLookupDTO;
+import tech.kitucode.banking.service.dto.BatchLookupRequestDTO;
+import tech.kitucode.banking.service.dto.CustomerOverviewDTO;
+import tech.kitucode.banking.service.dto.ImportJobDTO;
+import tech.kitucode.banking.web.util.ETagUtil;
 import tech.kitucode.banking.web.util.PaginationUtil;
 
+import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.util.List;
 
@@ -22,45 +39,132 @@ import java.util.List;
 public class CustomerResource {
     private final String BASE_URL = "/api/customers";
     private final CustomerService customerService;
+    private final CustomerImportService customerImportService;
+    private final EntityVersionService entityVersionService;
+    private final WriteCoalescer writeCoalescer;
 
-    public CustomerResource(CustomerService customerService) {
+    public CustomerResource(CustomerService customerService, CustomerImportService customerImportService, EntityVersionService entityVersionService,
+                            WriteCoalescer writeCoalescer) {
         this.customerService = customerService;
+        this.customerImportService = customerImportService;
+        this.entityVersionService = entityVersionService;
+        this.writeCoalescer = writeCoalescer;
     }
 
     @PostMapping("/customers")
     public ResponseEntity<Customer> create(@RequestBody Customer customer) {
         log.info("REST request to create customer : {}", customer);
-        Customer savedCustomer = customerService.save(customer);
+        Customer savedCustomer = writeCoalescer.write(null, () -> customerService.validateCustomer(customer), () -> customerService.save(customer));
         return ResponseEntity.created(URI.create(BASE_URL + "/" + savedCustomer.getCustomerId())).body(savedCustomer);
     }
 
+    @PostMapping(value = "/customers/_import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<ImportJobDTO> importCustomers(@RequestParam("file") MultipartFile file) throws IOException {
+        log.info("REST request to import customers from file : {}", file.getOriginalFilename());
+        ImportJobDTO importJobDTO = customerImportService.submit(file);
+        return ResponseEntity.accepted().location(URI.create(BASE_URL + "/_import/" + importJobDTO.getJobId())).body(importJobDTO);
+    }
+
+    @GetMapping("/customers/_import/{jobId}")
+    public ResponseEntity<ImportJobDTO> findImportJob(@PathVariable String jobId) {
+        log.info("REST request to find customer import job : {}", jobId);
+        ImportJobDTO importJobDTO = customerImportService.findJob(jobId);
+        if (importJobDTO == null) {
+            throw new EntityNotFoundException("Import job " + jobId + " not found");
+        }
+        return ResponseEntity.ok(importJobDTO);
+    }
+
+    @GetMapping(value = "/customers/_import/{jobId}/errors", produces = "text/csv")
+    public ResponseEntity<Resource> findImportErrors(@PathVariable String jobId) {
+        log.info("REST request to find errors of customer import job : {}", jobId);
+        Path errorReport = customerImportService.findErrorReport(jobId);
+        if (errorReport == null) {
+            throw new EntityNotFoundException("Import job " + jobId + " not found");
+        }
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + jobId + "-errors.csv\"")
+                .body(new FileSystemResource(errorReport));
+    }
+
     @GetMapping("/customers")
     public ResponseEntity<List<Customer>> findAll(
             @RequestParam(name = "name", required = false) String name,
             @RequestParam(name = "startDate", required = false) LocalDate startDate,
             @RequestParam(name = "endDate", required = false) LocalDate endDate,
+            @RequestParam(name = "after", required = false) String after,
             Pageable pageable) {
         log.info("REST request to find all customers");
+        if (after != null) {
+            // cursor mode - keyset pagination without a count query
+            Window<Customer> window = customerService.findAll(name, startDate, endDate, PaginationUtil.decodeCursor(after, "customerId"), pageable.getPageSize());
+            HttpHeaders headers = PaginationUtil.generateCursorHttpHeaders(window, "customerId", pageable.getPageSize());
+            return new ResponseEntity<>(window.getContent(), headers, HttpStatus.OK);
+        }
         Page<Customer> page = customerService.findAll(name, startDate, endDate, pageable);
         HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(page, BASE_URL);
         return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
     }
 
+    @PostMapping("/customers/_batch")
+    public ResponseEntity<BatchLookupDTO<Customer, Long>> findAllByIds(@RequestBody BatchLookupRequestDTO batchLookupRequestDTO) {
+        log.info("REST request to find customers by ids : {}", batchLookupRequestDTO.getIds());
+        return ResponseEntity.ok(customerService.findAllByIds(batchLookupRequestDTO.getIds()));
+    }
+
+    @GetMapping("/customers/_typeahead")
+    public ResponseEntity<List<Customer>> typeahead(
+            @RequestParam(name = "q") String query,
+            @RequestParam(name = "limit", required = false, defaultValue = "10") Integer limit) {
+        log.info("REST request to find customers by name prefix : {}", query);
+        List<Customer> customers = customerService.typeahead(query, limit);
+        return ResponseEntity.ok(customers);
+    }
+
+    @GetMapping(value = "/customers/_export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> export() {
+        log.info("REST request to export all customers");
+        StreamingResponseBody body = customerService::export;
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
     @GetMapping("/customers/{id}")
-    public ResponseEntity<Customer> findOne(@PathVariable Long id) {
+    public ResponseEntity<Customer> findOne(@PathVariable Long id, WebRequest webRequest) {
         log.info("REST request to find customer by customer id: {}", id);
+        // revalidation is answered from the version alone, without loading or serializing the customer
+        if (webRequest.getHeader(HttpHeaders.IF_NONE_MATCH) != null) {
+            Long version = entityVersionService.findCustomerVersion(id);
+            if (version != null && webRequest.checkNotModified(ETagUtil.etag(version))) {
+                return null;
+            }
+        }
+
         Customer customer = customerService.findOne(id);
         if (customer == null) {
             throw new EntityNotFoundException("Customer with id " + id + " not found");
         }
-        return ResponseEntity.ok(customer);
+        return ResponseEntity.ok().eTag(ETagUtil.etag(customer.getVersion())).body(customer);
+    }
+
+    @GetMapping("/customers/{id}/overview")
+    public ResponseEntity<CustomerOverviewDTO> findOverview(@PathVariable Long id) {
+        log.info("REST request to find overview of customer with id: {}", id);
+        CustomerOverviewDTO overview = customerService.findOverview(id);
+        if (overview == null) {
+            throw new EntityNotFoundException("Customer with id " + id + " not found");
+        }
+        return ResponseEntity.ok(overview);
     }
 
     @PutMapping("/customers")
-    public ResponseEntity<Customer> update(@RequestBody Customer customer) {
+    public ResponseEntity<Customer> update(@RequestBody Customer customer, @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         log.info("REST request to update customer : {}", customer);
+        Long expectedVersion = ETagUtil.parseIfMatch(ifMatch);
+        if (expectedVersion != null) {
+            customer.setVersion(expectedVersion);
+        }
         Customer updatedCustomer = customerService.update(customer);
-        return ResponseEntity.ok(updatedCustomer);
+        return ResponseEntity.ok().eTag(ETagUtil.etag(updatedCustomer.getVersion())).body(updatedCustomer);
     }
 
     @DeleteMapping("/customers/{id}")
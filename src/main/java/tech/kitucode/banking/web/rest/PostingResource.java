@@ -0,0 +1,31 @@
+package tech.kitucode.banking.web.rest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import tech.kitucode.banking.service.PostingService;
+import tech.kitucode.banking.service.dto.CreatePostingDTO;
+import tech.kitucode.banking.service.dto.PostingDTO;
+
+@Slf4j
+@RestController
+@RequestMapping("/api")
+@ConditionalOnProperty(name = "application.journal-enabled", havingValue = "true")
+public class PostingResource {
+    private final PostingService postingService;
+
+    public PostingResource(PostingService postingService) {
+        this.postingService = postingService;
+    }
+
+    @PostMapping("/accounts/{id}/postings")
+    public ResponseEntity<PostingDTO> create(@PathVariable Long id, @RequestBody CreatePostingDTO createPostingDTO) {
+        log.info("REST request to post {} to account with id: {}", createPostingDTO.getAmount(), id);
+
+        PostingDTO posting = postingService.post(id, createPostingDTO.getAmount());
+
+        return ResponseEntity.status(HttpStatus.CREATED).body(posting);
+    }
+}
@@ -0,0 +1,45 @@
+package tech.kitucode.banking.web.rest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import tech.kitucode.banking.domain.Transfer;
+import tech.kitucode.banking.error.EntityNotFoundException;
+import tech.kitucode.banking.service.TransferService;
+import tech.kitucode.banking.service.dto.CreateTransferDTO;
+
+import java.net.URI;
+
+@Slf4j
+@RestController
+@RequestMapping("/api")
+public class TransferResource {
+    private final String BASE_URL = "/api/transfers";
+    private final TransferService transferService;
+
+    public TransferResource(TransferService transferService) {
+        this.transferService = transferService;
+    }
+
+    @PostMapping("/transfers")
+    public ResponseEntity<Transfer> create(@RequestBody CreateTransferDTO createTransferDTO) {
+        log.info("REST request to transfer: {}", createTransferDTO);
+
+        Transfer transfer = transferService.transfer(createTransferDTO);
+
+        return ResponseEntity.created(URI.create(BASE_URL + "/" + transfer.getTransferId())).body(transfer);
+    }
+
+    @GetMapping("/transfers/{id}")
+    public ResponseEntity<Transfer> findById(@PathVariable Long id) {
+        log.info("REST request to find transfer by id : {}", id);
+
+        Transfer transfer = transferService.findById(id);
+
+        if (transfer == null) {
+            throw new EntityNotFoundException("Transfer with id: " + id + " does not exist");
+        }
+
+        return ResponseEntity.ok(transfer);
+    }
+}
@@ -0,0 +1,45 @@
+package tech.kitucode.banking.web.util;
+
+import tech.kitucode.banking.error.ValidationException;
+
+/**
+ * Strong etags built from entity versions, e.g. {@code "3"}. A resource with more than one representation adds a
+ * suffix per representation, e.g. {@code "3-unmasked"}, so a cached masked card never validates an unmasked one.
+ */
+public class ETagUtil {
+
+    public static String etag(Long version) {
+        return "\"" + version + "\"";
+    }
+
+    public static String etag(Long version, String representation) {
+        return "\"" + version + "-" + representation + "\"";
+    }
+
+    /**
+     * The version a client expects in an {@code If-Match} header, or null when there is no header or it is
+     * {@code *}. Only a single strong etag is accepted.
+     */
+    public static Long parseIfMatch(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+
+        String etag = ifMatch.trim();
+        if (etag.length() < 3 || etag.charAt(0) != '"' || etag.charAt(etag.length() - 1) != '"') {
+            throw new ValidationException("If-Match must be a single strong etag");
+        }
+
+        String value = etag.substring(1, etag.length() - 1);
+        if (value.indexOf('"') != -1) {
+            // a list of etags, e.g. "3", "4"
+            throw new ValidationException("If-Match must be a single strong etag");
+        }
+        int suffix = value.indexOf('-');
+        try {
+            return Long.parseLong(suffix == -1 ? value : value.substring(0, suffix));
+        } catch (NumberFormatException e) {
+            throw new ValidationException("Invalid etag " + etag);
+        }
+    }
+}
@@ -1,10 +1,23 @@
 package tech.kitucode.banking.web.util;
 
+import org.springframework.data.domain.KeysetScrollPosition;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
 import org.springframework.http.HttpHeaders;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 import org.springframework.web.util.UriComponentsBuilder;
+import tech.kitucode.banking.error.ValidationException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class PaginationUtil {
+    public static final String CURSOR_SORT_PROPERTY = "createdOn";
+
     public static HttpHeaders generatePaginationHttpHeaders(Page page, String baseUrl) {
         HttpHeaders httpHeaders = new HttpHeaders();
         httpHeaders.add("X-Total-Items", String.valueOf(page.getTotalElements()));
@@ -31,6 +44,62 @@ public class PaginationUtil {
         return httpHeaders;
     }
 
+    /**
+     * Headers for a cursor (keyset) page. There is no total count; the next link carries an opaque {@code after}
+     * token holding the created on date and id of the last row. The link is the current request with only
+     * {@code after} and {@code size} replaced, so the next page keeps the request's filters.
+     */
+    public static HttpHeaders generateCursorHttpHeaders(Window<?> window, String idProperty, int size) {
+        return generateCursorHttpHeaders(window, ServletUriComponentsBuilder.fromCurrentRequest(), idProperty, size);
+    }
+
+    static HttpHeaders generateCursorHttpHeaders(Window<?> window, UriComponentsBuilder request, String idProperty, int size) {
+        HttpHeaders httpHeaders = new HttpHeaders();
+
+        // not the last window - add uri for next window
+        if (window.hasNext() && !window.isEmpty()) {
+            KeysetScrollPosition position = (KeysetScrollPosition) window.positionAt(window.size() - 1);
+            String next = request.replaceQueryParam("after", encodeCursor(position, idProperty))
+                    .replaceQueryParam("size", size)
+                    .toUriString();
+            httpHeaders.add(HttpHeaders.LINK, "<" + next + ">; rel=\"next\",");
+        }
+
+        return httpHeaders;
+    }
+
+    /**
+     * Turns an {@code after} token into a keyset position over {@code createdOn} and the id property. An empty token
+     * starts from the first row.
+     */
+    public static KeysetScrollPosition decodeCursor(String after, String idProperty) {
+        if (after == null || after.isEmpty()) {
+            return ScrollPosition.keyset();
+        }
+
+        try {
+            String cursor = new String(Base64.getUrlDecoder().decode(after), StandardCharsets.UTF_8);
+            String[] keys = cursor.split(",");
+
+            Map<String, Object> position = new LinkedHashMap<>();
+            position.put(CURSOR_SORT_PROPERTY, LocalDate.parse(keys[0]));
+            position.put(idProperty, Long.parseLong(keys[1]));
+            return ScrollPosition.forward(position);
+        } catch (RuntimeException e) {
+            throw new ValidationException("Invalid cursor: " + after);
+        }
+    }
+
+    /**
+     * Every row has a created on date: the column is not null (see {@code V5__created_on_not_null.sql}) and is never
+     * updated.
+     */
+    static String encodeCursor(KeysetScrollPosition position, String idProperty) {
+        Map<String, Object> keys = position.getKeys();
+        String cursor = keys.get(CURSOR_SORT_PROPERTY) + "," + keys.get(idProperty);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
     private static String generateUri(String baseUrl, int page, int size) {
         return UriComponentsBuilder.fromUriString(baseUrl).queryParam("page", page).queryParam("size", size).toUriString();
     }
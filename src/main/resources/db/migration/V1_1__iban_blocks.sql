@@ -0,0 +1,6 @@
+-- The next account number to reserve for each branch code, see IbanAllocator.
+create table tbl_iban_blocks (
+    branch_code varchar(255) not null,
+    next_account_number bigint,
+    primary key (branch_code)
+);
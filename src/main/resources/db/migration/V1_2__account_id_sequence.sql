@@ -0,0 +1,8 @@
+-- Account ids come from a sequence instead of the identity column, so bulk inserts can be sent as jdbc batches.
+-- The sequence starts past the ids in use. Hibernate's pooled optimizer uses the 50 ids up to each value it reads, so
+-- the first block starts after this value.
+create sequence tbl_accounts_seq start with 1 increment by 50;
+
+select setval('tbl_accounts_seq', (select coalesce(max(account_id), 0) + 1 from tbl_accounts));
+
+alter table tbl_accounts alter column account_id drop identity if exists;
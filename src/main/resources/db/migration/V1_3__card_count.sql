@@ -0,0 +1,27 @@
+-- The number of cards of each account, which card issuance increments to reserve a slot under the account's row lock,
+-- and at most one card of each type per account.
+
+-- Before the constraint, an account could be given a second card of a type. Those cards are in customers' hands, so
+-- they are reported rather than deleted: cancel the extra cards and start again.
+do $$
+declare
+    duplicates text;
+begin
+    select string_agg(format('account %s has %s %s cards (%s)', account_id, cards, card_type, card_ids), '; ')
+    into duplicates
+    from (select account_id, card_type, count(*) as cards, string_agg(card_id::text, ', ' order by card_id) as card_ids
+          from tbl_cards
+          where account_id is not null
+          group by account_id, card_type
+          having count(*) > 1) d;
+    if duplicates is not null then
+        raise exception 'Accounts with more than one card of a type: %', duplicates;
+    end if;
+end
+$$;
+
+alter table tbl_accounts add column card_count integer default 0 not null;
+
+update tbl_accounts a set card_count = (select count(*) from tbl_cards c where c.account_id = a.account_id);
+
+alter table tbl_cards add constraint uk_cards_account_id_card_type unique (account_id, card_type);
@@ -0,0 +1,12 @@
+-- Changes to customers, accounts and cards, recorded in the transaction that makes them and relayed by OutboxRelay.
+create sequence tbl_outbox_seq start with 1 increment by 50;
+
+create table tbl_outbox (
+    event_id bigint not null,
+    aggregate_type varchar(255) not null check (aggregate_type in ('CUSTOMER', 'ACCOUNT', 'CARD')),
+    aggregate_id bigint not null,
+    change_type varchar(255) not null check (change_type in ('CREATED', 'UPDATED', 'DELETED')),
+    payload text,
+    created_at timestamp(6) not null,
+    primary key (event_id)
+);
@@ -0,0 +1,4 @@
+-- Optimistic locking versions, sent as ETags. Existing rows start at version 0.
+alter table tbl_customers add column version bigint default 0 not null;
+alter table tbl_accounts add column version bigint default 0 not null;
+alter table tbl_cards add column version bigint default 0 not null;
@@ -0,0 +1,3 @@
+-- One account per iban. Built concurrently so the accounts stay writable, which flyway runs outside a transaction; if
+-- it fails, for example on an iban used twice, drop the invalid index before running the migration again.
+create unique index concurrently if not exists uk_accounts_iban on tbl_accounts (iban);
@@ -0,0 +1,34 @@
+-- The schema as ddl-auto: update created it. Databases that already have it are baselined at this version
+-- (spring.flyway.baseline-on-migrate) and only get the migrations after it.
+
+create table tbl_customers (
+    customer_id bigint generated by default as identity,
+    first_name varchar(255),
+    last_name varchar(255),
+    other_name varchar(255),
+    created_on date,
+    updated_on date,
+    primary key (customer_id)
+);
+
+create table tbl_accounts (
+    account_id bigint generated by default as identity,
+    iban varchar(255),
+    bic_swift varchar(255),
+    customer_id bigint,
+    created_on date,
+    updated_on date,
+    primary key (account_id)
+);
+
+create table tbl_cards (
+    card_id bigint generated by default as identity,
+    card_alias varchar(255),
+    account_id bigint,
+    card_type varchar(255) check (card_type in ('VIRTUAL', 'PHYSICAL')),
+    pan varchar(255),
+    cvv varchar(255),
+    created_on date,
+    updated_on date,
+    primary key (card_id)
+);
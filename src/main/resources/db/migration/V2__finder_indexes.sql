@@ -0,0 +1,22 @@
+-- Indexes for the repository finders and search filters. They are built concurrently so that existing tables stay
+-- writable, which flyway runs outside a transaction. A build that fails leaves an invalid index behind: drop it
+-- before running the migration again.
+
+-- findOneByIban and findAllByIbanIn use the unique index on iban, findOneByCardTypeAndAccountId and
+-- countByAccountId the one on (account_id, card_type)
+
+-- findOneByPan, findAllMaskedByPanIn and the pan filter; also keeps a generated pan from being issued twice
+create unique index concurrently if not exists ux_cards_pan on tbl_cards (pan);
+
+-- the accounts of a customer, for the customer overview
+create index concurrently if not exists ix_accounts_customer_id on tbl_accounts (customer_id);
+
+-- customer search filters; several of them are combined with a bitmap and
+create index concurrently if not exists ix_customers_first_name on tbl_customers (first_name);
+create index concurrently if not exists ix_customers_last_name on tbl_customers (last_name);
+create index concurrently if not exists ix_customers_other_name on tbl_customers (other_name);
+
+-- created_on range filters and keyset pagination, which orders by created_on and the id
+create index concurrently if not exists ix_customers_created_on on tbl_customers (created_on, customer_id);
+create index concurrently if not exists ix_accounts_created_on on tbl_accounts (created_on, account_id);
+create index concurrently if not exists ix_cards_created_on on tbl_cards (created_on, card_id);
@@ -0,0 +1,29 @@
+alter table tbl_accounts add column balance numeric(19, 2) default 0 not null;
+
+create sequence tbl_transfers_seq start with 1 increment by 50;
+
+create table tbl_transfers (
+    transfer_id bigint not null,
+    reference varchar(255),
+    from_account_id bigint not null,
+    to_account_id bigint not null,
+    amount numeric(19, 2) not null,
+    created_at timestamp(6) not null,
+    primary key (transfer_id),
+    constraint uk_transfers_reference unique (reference)
+);
+
+create sequence tbl_pending_credits_seq start with 1 increment by 50;
+
+-- credits to hot accounts waiting to be swept into the balance
+create table tbl_pending_credits (
+    credit_id bigint not null,
+    account_id bigint not null,
+    amount numeric(19, 2) not null,
+    transfer_id bigint not null,
+    created_at timestamp(6) not null,
+    primary key (credit_id)
+);
+
+-- the pending balance of an account and the oldest credits to sweep
+create index ix_pending_credits_account_id on tbl_pending_credits (account_id, credit_id);
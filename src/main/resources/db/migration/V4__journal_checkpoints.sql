@@ -0,0 +1,7 @@
+-- how far each posting journal has been applied to the balances
+create table tbl_journal_checkpoints (
+    journal_name varchar(255) not null,
+    sequence bigint not null,
+    checkpointed_at timestamp(6) not null,
+    primary key (journal_name)
+);
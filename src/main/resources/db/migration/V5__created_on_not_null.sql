@@ -0,0 +1,9 @@
+-- Keyset pages are ordered by created_on, which rows written before it was set on every insert, or cleared by an update
+-- whose body left it out, do not have. Give them the day they were last updated, or today, and keep it set from now on.
+update tbl_customers set created_on = coalesce(updated_on, current_date) where created_on is null;
+update tbl_accounts set created_on = coalesce(updated_on, current_date) where created_on is null;
+update tbl_cards set created_on = coalesce(updated_on, current_date) where created_on is null;
+
+alter table tbl_customers alter column created_on set not null;
+alter table tbl_accounts alter column created_on set not null;
+alter table tbl_cards alter column created_on set not null;
@@ -0,0 +1,93 @@
+package tech.kitucode.banking.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import tech.kitucode.banking.web.filter.ReadYourWritesFilter;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.mockito.Mockito.mock;
+
+@Slf4j
+public class ReplicaRoutingDataSourceTest {
+    private ReplicaRoutingDataSource routingDataSource;
+
+    @BeforeEach
+    void setUp() {
+        Map<String, HikariDataSource> replicas = new LinkedHashMap<>();
+        replicas.put("replica-1", mock(HikariDataSource.class));
+        replicas.put("replica-2", mock(HikariDataSource.class));
+
+        routingDataSource = new ReplicaRoutingDataSource(mock(HikariDataSource.class), replicas);
+        routingDataSource.afterPropertiesSet();
+        routingDataSource.setLagging("replica-1", false);
+        routingDataSource.setLagging("replica-2", false);
+    }
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        ReplicaRoutingDataSource.unpin();
+    }
+
+    @Test
+    void testReadOnlyTransactionsGoToReplicas() {
+        assertEquals(ReplicaRoutingDataSource.PRIMARY, routingDataSource.determineCurrentLookupKey());
+
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        Set<Object> used = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            used.add(routingDataSource.determineCurrentLookupKey());
+        }
+
+        assertEquals(Set.of("replica-1", "replica-2"), used);
+    }
+
+    @Test
+    void testLaggingReplicasAreSkipped() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        routingDataSource.setLagging("replica-1", true);
+        assertEquals("replica-2", routingDataSource.determineCurrentLookupKey());
+        assertEquals("replica-2", routingDataSource.determineCurrentLookupKey());
+
+        routingDataSource.setLagging("replica-2", true);
+        assertEquals(ReplicaRoutingDataSource.PRIMARY, routingDataSource.determineCurrentLookupKey());
+    }
+
+    @Test
+    void testReadsStayOnPrimaryAfterAWriteByTheSameClient() throws Exception {
+        ReadYourWritesFilter filter = new ReadYourWritesFilter(Duration.ofMinutes(1));
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        filter.doFilter(request("PUT", "teller-1"), new MockHttpServletResponse(), (request, response) -> {
+        });
+
+        Object[] routedTo = new Object[2];
+        filter.doFilter(request("GET", "teller-1"), new MockHttpServletResponse(),
+                (request, response) -> routedTo[0] = routingDataSource.determineCurrentLookupKey());
+        filter.doFilter(request("GET", "teller-2"), new MockHttpServletResponse(),
+                (request, response) -> routedTo[1] = routingDataSource.determineCurrentLookupKey());
+
+        assertEquals(ReplicaRoutingDataSource.PRIMARY, routedTo[0]);
+        assertNotEquals(ReplicaRoutingDataSource.PRIMARY, routedTo[1]);
+    }
+
+    private MockHttpServletRequest request(String method, String clientId) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, "/api/customers");
+        request.addHeader(ReadYourWritesFilter.CLIENT_ID_HEADER, clientId);
+        return request;
+    }
+}
@@ -0,0 +1,219 @@
+package tech.kitucode.banking.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import tech.kitucode.banking.domain.enumerations.CardType;
+import tech.kitucode.banking.service.AccountService;
+import tech.kitucode.banking.service.CardService;
+import tech.kitucode.banking.service.CustomerService;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the repository finders and the search filters against a migrated postgres with large tables and fails if
+ * any of them reads one of those tables with a sequential scan. The scans are taken from the statistics postgres
+ * keeps for the current transaction, so each finder is checked with the plan postgres actually chose for real
+ * parameter values.
+ * <p>
+ * Exports and the unfiltered listings read whole tables on purpose and are not checked. Skipped without docker.
+ */
+@Slf4j
+@Testcontainers(disabledWithoutDocker = true)
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class QueryPlanTest {
+    private static final int ROWS = 200_000;
+    private static final List<String> LARGE_TABLES = List.of("tbl_customers", "tbl_accounts", "tbl_cards", "tbl_transfers", "tbl_pending_credits");
+    private static final LocalDate FIRST_DAY = LocalDate.of(2020, 1, 1);
+
+    @Container
+    private static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:17-alpine");
+
+    private static boolean seeded;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private CardRepository cardRepository;
+
+    @Autowired
+    private TransferRepository transferRepository;
+
+    @Autowired
+    private PendingCreditRepository pendingCreditRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final List<String> sequentialScans = new ArrayList<>();
+
+    @DynamicPropertySource
+    static void postgres(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", POSTGRES::getJdbcUrl);
+        registry.add("spring.datasource.username", POSTGRES::getUsername);
+        registry.add("spring.datasource.password", POSTGRES::getPassword);
+    }
+
+    @BeforeEach
+    void seed() {
+        if (seeded) {
+            return;
+        }
+
+        // one account per customer and one card per account, spread over 2000 days
+        jdbcTemplate.update("insert into tbl_customers (first_name, last_name, other_name, created_on, version) " +
+                "select 'first' || i, 'last' || i, 'other' || i, date '2020-01-01' + i % 2000, 0 from generate_series(1, ?) i", ROWS);
+        jdbcTemplate.update("insert into tbl_accounts (account_id, iban, bic_swift, customer_id, created_on, version, card_count) " +
+                "select i, 'KE' || lpad(i::text, 20, '0'), 'DTKEKENA', i, date '2020-01-01' + i % 2000, 0, 1 from generate_series(1, ?) i", ROWS);
+        jdbcTemplate.update("insert into tbl_cards (card_alias, account_id, card_type, pan, cvv, created_on, version) " +
+                "select 'card' || i, i, 'VIRTUAL', '4' || lpad(i::text, 15, '0'), '123', date '2020-01-01' + i % 2000, 0 from generate_series(1, ?) i", ROWS);
+        // one transfer per account to the next one, and its credit pending on every hundredth account
+        jdbcTemplate.update("insert into tbl_transfers (transfer_id, reference, from_account_id, to_account_id, amount, created_at) " +
+                "select i, 'ref' || i, i, i % ? + 1, 10, timestamp '2020-01-01' + i * interval '1 minute' from generate_series(1, ?) i", ROWS, ROWS);
+        jdbcTemplate.update("insert into tbl_pending_credits (credit_id, account_id, amount, transfer_id, created_at) " +
+                "select i, (i - 1) / 100 * 100 + 1, 10, i, timestamp '2020-01-01' + i * interval '1 minute' from generate_series(1, ?) i", ROWS);
+        jdbcTemplate.execute("analyze");
+        seeded = true;
+    }
+
+    @Test
+    void testCustomerFindersUseIndexes() {
+        CustomerService customerService = new CustomerService(customerRepository, null, null, null);
+        LocalDate day = FIRST_DAY.plusDays(42);
+
+        check("findExistingIds", () -> customerRepository.findExistingIds(List.of(1L, 2L, 3L)));
+        check("findOverviewRows", () -> customerRepository.findOverviewRows(42L));
+        check("findVersionById", () -> customerRepository.findVersionById(42L));
+        check("streamNamesAfter", () -> consume(customerRepository.streamNamesAfter(ROWS - 10L)));
+        check("findAll by first name", () -> customerService.findAll("first42", null, null, PageRequest.of(0, 20)));
+        check("findAll by first and last name", () -> customerService.findAll("first42 last42", null, null, PageRequest.of(0, 20)));
+        check("findAll by full name", () -> customerService.findAll("first42 last42 other42", null, null, PageRequest.of(0, 20)));
+        check("findAll by created on", () -> customerService.findAll(null, day, day, PageRequest.of(0, 20)));
+        check("findAll by name and created on", () -> customerService.findAll("first42", day, day.plusDays(30), PageRequest.of(0, 20)));
+        check("scroll", () -> customerService.findAll(null, null, null, ScrollPosition.keyset(), 20));
+        check("scroll by created on", () -> customerService.findAll(null, day, null, ScrollPosition.keyset(), 20));
+
+        assertNoSequentialScans();
+    }
+
+    @Test
+    void testAccountFindersUseIndexes() {
+        AccountService accountService = new AccountService(accountRepository, customerRepository, null, null, null, null, null);
+
+        check("findOneByIban", () -> accountRepository.findOneByIban("KE00000000000000000042"));
+        check("findAllByIbanIn", () -> accountRepository.findAllByIbanIn(List.of("KE00000000000000000042", "KE00000000000000000043")));
+        check("findIbansBetween", () -> accountRepository.findIbansBetween("KE00000000000000000042", "KE00000000000000001041"));
+        check("findVersionById", () -> accountRepository.findVersionById(42L));
+        check("incrementCardCount", () -> accountRepository.incrementCardCount(42L, 2));
+        check("decrementCardCount", () -> accountRepository.decrementCardCount(42L));
+        check("scroll", () -> accountService.findAll(null, null, null, ScrollPosition.keyset(), 20));
+
+        assertNoSequentialScans();
+    }
+
+    @Test
+    void testCardFindersUseIndexes() {
+        CardService cardService = new CardService(cardRepository, accountRepository, null, null, null, null, null);
+        String pan = "4000000000000042";
+
+        check("findOneByPan", () -> cardRepository.findOneByPan(pan));
+        check("existsByPan", () -> cardRepository.existsByPan(pan));
+        check("findOneByCardTypeAndAccountId", () -> cardRepository.findOneByCardTypeAndAccountId(CardType.VIRTUAL, 42L));
+        check("countByAccountId", () -> cardRepository.countByAccountId(42L));
+        check("findVersionById", () -> cardRepository.findVersionById(42L));
+        check("findAllMaskedByCardIdIn", () -> cardRepository.findAllMaskedByCardIdIn(List.of(42L, 43L)));
+        check("findAllMaskedByPanIn", () -> cardRepository.findAllMaskedByPanIn(List.of(pan, "4000000000000043")));
+        check("findAllMasked by pan", () -> cardRepository.findAllMasked(null, null, pan, PageRequest.of(0, 20)));
+        check("findAllMaskedAfter", () -> cardRepository.findAllMaskedAfter(null, null, null, FIRST_DAY.plusDays(42), 42L, Limit.of(21)));
+        check("findAllMaskedAfter by pan", () -> cardRepository.findAllMaskedAfter(null, null, pan, null, null, Limit.of(21)));
+        check("findAll by pan", () -> cardService.findAll(null, null, pan, PageRequest.of(0, 20)));
+        check("scroll", () -> cardService.findAll(null, null, null, ScrollPosition.keyset(), 20));
+
+        assertNoSequentialScans();
+    }
+
+    @Test
+    void testTransferFindersUseIndexes() {
+        BigDecimal amount = BigDecimal.TEN;
+
+        check("findOneByReference", () -> transferRepository.findOneByReference("ref42"));
+        check("findOldest", () -> pendingCreditRepository.findOldest(4201L, Limit.of(1000)));
+        check("deleteAllByCreditIdIn", () -> pendingCreditRepository.deleteAllByCreditIdIn(List.of(42L, 43L)));
+        check("lockById", () -> accountRepository.lockById(42L));
+        check("findBalanceById", () -> accountRepository.findBalanceById(42L));
+        check("findBalanceWithPendingCreditsById", () -> accountRepository.findBalanceWithPendingCreditsById(4201L));
+        check("debit", () -> accountRepository.debit(42L, amount));
+        check("credit", () -> accountRepository.credit(42L, amount));
+
+        assertNoSequentialScans();
+    }
+
+    /**
+     * Runs the query in a transaction that is rolled back and records the large tables it scanned sequentially.
+     */
+    private void check(String finder, Runnable query) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            Map<String, Long> before = sequentialScansByTable();
+            query.run();
+            Map<String, Long> after = sequentialScansByTable();
+            status.setRollbackOnly();
+
+            for (String table : LARGE_TABLES) {
+                if (after.getOrDefault(table, 0L) > before.getOrDefault(table, 0L)) {
+                    sequentialScans.add(finder + " scans " + table);
+                }
+            }
+        });
+    }
+
+    private Map<String, Long> sequentialScansByTable() {
+        Map<String, Long> scans = new HashMap<>();
+        jdbcTemplate.query("select relname, seq_scan from pg_stat_xact_user_tables",
+                resultSet -> {
+                    scans.put(resultSet.getString("relname"), resultSet.getLong("seq_scan"));
+                });
+        return scans;
+    }
+
+    private void assertNoSequentialScans() {
+        sequentialScans.forEach(scan -> log.error("Sequential scan: {}", scan));
+        assertTrue(sequentialScans.isEmpty(), "Sequential scans: " + sequentialScans);
+    }
+
+    private static void consume(Stream<?> stream) {
+        try (stream) {
+            stream.forEach(row -> {
+            });
+        }
+    }
+}
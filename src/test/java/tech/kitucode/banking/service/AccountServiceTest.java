@@ -3,24 +3,31 @@ package tech.kitucode.banking.service;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.domain.*;
+import org.springframework.transaction.PlatformTransactionManager;
+import tech.kitucode.banking.ApplicationProperties;
 import tech.kitucode.banking.domain.Account;
 import tech.kitucode.banking.domain.Customer;
 import tech.kitucode.banking.error.ValidationException;
 import tech.kitucode.banking.repository.AccountRepository;
 import tech.kitucode.banking.repository.CustomerRepository;
+import tech.kitucode.banking.service.dto.BulkAccountResultDTO;
 import tech.kitucode.banking.service.dto.CreateAccountDTO;
 
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertThrows;
-import static org.mockito.Mockito.when;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
 
 @Slf4j
 @ExtendWith(MockitoExtension.class)
@@ -31,6 +38,18 @@ public class AccountServiceTest {
     @Mock
     private CustomerRepository customerRepository;
 
+    @Mock
+    private IbanAllocator ibanAllocator;
+
+    @Mock
+    private ApplicationProperties applicationProperties;
+
+    @Mock
+    private OutboxService outboxService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
     @InjectMocks
     private AccountService accountService;
 
@@ -56,6 +75,9 @@ public class AccountServiceTest {
         probe.setIban(null);
         probe.setBicSwift(null);
         probe.setAccountId(null);
+        // accounts are found whatever number of cards and balance they have
+        probe.setCardCount(null);
+        probe.setBalance(null);
 
         ExampleMatcher matcher = ExampleMatcher.matching()
                 .withStringMatcher(ExampleMatcher.StringMatcher.EXACT);
@@ -97,7 +119,7 @@ public class AccountServiceTest {
         when(customerRepository.findById(createAccountDTO.getCustomerId())).thenReturn(Optional.empty());
 
         assertThrows(ValidationException.class, () -> {
-            accountService.save(createAccountDTO);
+            accountService.save(createAccountDTO, "DTKEKENA4651000000000");
         });
     }
 
@@ -113,7 +135,7 @@ public class AccountServiceTest {
         when(customerRepository.findById(createAccountDTO.getCustomerId())).thenReturn(Optional.of(mockCustomer));
 
         assertThrows(ValidationException.class, () -> {
-            accountService.save(createAccountDTO);
+            accountService.save(createAccountDTO, "DTKEKENA4651000000000");
         });
     }
 
@@ -144,4 +166,73 @@ public class AccountServiceTest {
         assertEquals(account.getCreatedOn(), LocalDate.now());
     }
 
+    @Test
+    void testCreateAccountAllocatesIbanWithoutLookup() {
+        CreateAccountDTO createAccountDTO = new CreateAccountDTO();
+        createAccountDTO.setBranchCode("465");
+        createAccountDTO.setCustomerId(1L);
+
+        Customer mockCustomer = new Customer();
+        mockCustomer.setCustomerId(1L);
+
+        when(customerRepository.findById(1L)).thenReturn(Optional.of(mockCustomer));
+        when(applicationProperties.getIbanPrefix()).thenReturn("DTKEKENA");
+        when(ibanAllocator.nextIban("465")).thenReturn("DTKEKENA4651000000000");
+        when(accountRepository.save(any(Account.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        Account account = accountService.save(createAccountDTO, accountService.allocateIban("465"));
+
+        assertEquals(account.getIban(), "DTKEKENA4651000000000");
+        assertEquals(account.getBicSwift(), "DTKEKENA465");
+        verify(accountRepository, never()).findOneByIban(anyString());
+    }
+
+    @Test
+    void testBulkCreateReportsPerRowResults() {
+        CreateAccountDTO valid = new CreateAccountDTO();
+        valid.setBranchCode("465");
+        valid.setCustomerId(1L);
+
+        CreateAccountDTO withoutBranchCode = new CreateAccountDTO();
+        withoutBranchCode.setCustomerId(1L);
+
+        CreateAccountDTO unknownCustomer = new CreateAccountDTO();
+        unknownCustomer.setBranchCode("465");
+        unknownCustomer.setCustomerId(100L);
+
+        when(applicationProperties.getMaxBulkAccounts()).thenReturn(10);
+        when(applicationProperties.getIbanPrefix()).thenReturn("DTKEKENA");
+        when(customerRepository.findExistingIds(Set.of(1L, 100L))).thenReturn(Set.of(1L));
+        when(ibanAllocator.nextIban("465")).thenReturn("DTKEKENA4651000000000");
+        when(accountRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<Account> accounts = invocation.getArgument(0);
+            accounts.forEach(account -> account.setAccountId(1L));
+            return accounts;
+        });
+
+        List<BulkAccountResultDTO> results = accountService.saveAll(List.of(valid, withoutBranchCode, unknownCustomer));
+
+        assertEquals(3, results.size());
+        assertEquals(1L, results.get(0).getAccount().getAccountId());
+        assertNull(results.get(0).getError());
+        assertNull(results.get(1).getAccount());
+        assertEquals("Branch code cannot be null or empty", results.get(1).getError());
+        assertNull(results.get(2).getAccount());
+        assertNotNull(results.get(2).getError());
+        verify(customerRepository, never()).findById(any());
+        // the ibans are allocated before the transaction starts
+        InOrder inOrder = inOrder(ibanAllocator, transactionManager);
+        inOrder.verify(ibanAllocator).nextIban("465");
+        inOrder.verify(transactionManager).getTransaction(any());
+        inOrder.verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void testBulkCreateAboveLimit() {
+        when(applicationProperties.getMaxBulkAccounts()).thenReturn(1);
+
+        assertThrows(ValidationException.class, () -> {
+            accountService.saveAll(List.of(new CreateAccountDTO(), new CreateAccountDTO()));
+        });
+    }
 }
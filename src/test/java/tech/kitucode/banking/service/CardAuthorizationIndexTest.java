@@ -0,0 +1,226 @@
+package tech.kitucode.banking.service;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.transaction.PlatformTransactionManager;
+import tech.kitucode.banking.ApplicationProperties;
+import tech.kitucode.banking.domain.Card;
+import tech.kitucode.banking.domain.enumerations.CardType;
+import tech.kitucode.banking.repository.CardRepository;
+import tech.kitucode.banking.service.cluster.ClusterNotifications;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CardAuthorizationIndexTest {
+
+    @Test
+    void testPutFindAndRemove() {
+        CardAuthorizationIndex index = new CardAuthorizationIndex(null, null, new ApplicationProperties(), clusterNotifications(null));
+        index.put("1882738818773737", 1L, 10L, CardType.VIRTUAL);
+        index.put("7474586876274757", 2L, 10L, CardType.PHYSICAL);
+
+        assertEquals(new CardAuthorizationIndex.Entry(1L, 10L, CardType.VIRTUAL, false), index.find("1882738818773737"));
+        assertEquals(new CardAuthorizationIndex.Entry(2L, 10L, CardType.PHYSICAL, false), index.find("7474586876274757"));
+        assertNull(index.find("4474586876274751"));
+
+        // another card's id leaves the entry alone
+        index.remove("1882738818773737", 2L);
+        assertNotNull(index.find("1882738818773737"));
+
+        index.remove("1882738818773737", 1L);
+        assertNull(index.find("1882738818773737"));
+        assertEquals(1, index.size());
+        assertFalse(index.isLoaded());
+    }
+
+    @Test
+    void testMatchesMapThroughGrowthAndRemovals() {
+        // every pan starts probing from the last slot, so probes run long and wrap around the end of the table
+        CardAuthorizationIndex index = new CardAuthorizationIndex(null, null, new ApplicationProperties(), clusterNotifications(null)) {
+            @Override
+            long hash(String pan) {
+                return Long.parseLong(pan) << 16 | 0xffff;
+            }
+        };
+        Map<String, Long> cards = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 20_000; i++) {
+            String pan = String.valueOf(1 + random.nextInt(3000));
+            if (random.nextInt(3) == 0) {
+                Long cardId = cards.remove(pan);
+                if (cardId != null) {
+                    index.remove(pan, cardId);
+                }
+            } else if (!cards.containsKey(pan)) {
+                long cardId = i + 1;
+                cards.put(pan, cardId);
+                index.put(pan, cardId, cardId * 10, CardType.values()[i % CardType.values().length]);
+            }
+        }
+
+        assertEquals(cards.size(), index.size());
+        for (int pan = 1; pan <= 3000; pan++) {
+            Long cardId = cards.get(String.valueOf(pan));
+            CardAuthorizationIndex.Entry entry = index.find(String.valueOf(pan));
+            if (cardId == null) {
+                assertNull(entry, "pan " + pan);
+            } else {
+                assertEquals(cardId, entry.cardId(), "pan " + pan);
+                assertEquals(cardId * 10, entry.accountId(), "pan " + pan);
+            }
+        }
+    }
+
+    @Test
+    void testCollidingPansAreLeftToTheDatabase() {
+        CardAuthorizationIndex index = new CardAuthorizationIndex(null, null, new ApplicationProperties(), clusterNotifications(null)) {
+            @Override
+            long hash(String pan) {
+                return 42;
+            }
+        };
+        index.put("1882738818773737", 1L, 10L, CardType.VIRTUAL);
+        index.put("7474586876274757", 2L, 20L, CardType.PHYSICAL);
+
+        assertTrue(index.find("1882738818773737").collided());
+        assertTrue(index.find("7474586876274757").collided());
+
+        // either card may still be there, so the slot is kept
+        index.remove("1882738818773737", 1L);
+        assertTrue(index.find("7474586876274757").collided());
+    }
+
+    @Test
+    void testLoadSkipsCardsDeletedWhileLoading() {
+        CardRepository cardRepository = mock(CardRepository.class);
+        CardAuthorizationIndex index = new CardAuthorizationIndex(cardRepository, mock(PlatformTransactionManager.class), new ApplicationProperties(), clusterNotifications(null));
+        Object[] first = {"1882738818773737", 1L, 10L, CardType.VIRTUAL};
+        Object[] second = {"7474586876274757", 2L, 10L, CardType.PHYSICAL};
+        Object[] third = {"4474586876274751", 3L, 20L, CardType.VIRTUAL};
+        when(cardRepository.count()).thenReturn(3L);
+        when(cardRepository.streamAuthorizationEntries()).thenReturn(Stream.of(first, second, third).peek(row -> {
+            if (row == first) {
+                // deleted after the load's query read it, before it reached the index
+                index.remove("7474586876274757", 2L);
+                // issued while loading and indexed by its commit
+                index.put("4474586876274751", 3L, 20L, CardType.VIRTUAL);
+            }
+        }));
+
+        index.load();
+
+        assertTrue(index.isLoaded());
+        assertEquals(2, index.size());
+        assertNotNull(index.find("1882738818773737"));
+        assertNull(index.find("7474586876274757"));
+        assertEquals(new CardAuthorizationIndex.Entry(3L, 20L, CardType.VIRTUAL, false), index.find("4474586876274751"));
+    }
+
+    @Test
+    void testReadersSeeStableCardsWhileWritersChurn() throws InterruptedException {
+        CardAuthorizationIndex index = new CardAuthorizationIndex(null, null, new ApplicationProperties(), clusterNotifications(null));
+        for (long cardId = 1; cardId <= 1000; cardId++) {
+            index.put(String.valueOf(1_000_000 + cardId), cardId, cardId * 10, CardType.VIRTUAL);
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        Set<String> failures = ConcurrentHashMap.newKeySet();
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread reader = new Thread(() -> {
+                Random random = new Random();
+                while (running.get()) {
+                    long cardId = 1 + random.nextInt(1000);
+                    CardAuthorizationIndex.Entry entry = index.find(String.valueOf(1_000_000 + cardId));
+                    if (entry == null || entry.cardId() != cardId || entry.accountId() != cardId * 10) {
+                        failures.add(cardId + " -> " + entry);
+                    }
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+
+        // adds and removes enough cards to grow the table several times
+        for (long cardId = 2000; cardId < 60_000; cardId++) {
+            index.put(String.valueOf(2_000_000 + cardId), cardId, cardId, CardType.PHYSICAL);
+            if (cardId % 2 == 0) {
+                index.remove(String.valueOf(2_000_000 + cardId - 1), cardId - 1);
+            }
+        }
+        running.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertTrue(failures.isEmpty(), "Lost cards: " + failures);
+    }
+
+    @Test
+    void testChangesArePublishedToAndAppliedFromOtherInstancesWithoutPans() {
+        String pan = "1882738818773737";
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.setCardIndexSeed(42L);
+        ClusterNotifications publisherNotifications = mock(ClusterNotifications.class);
+        ClusterNotifications receiverNotifications = mock(ClusterNotifications.class);
+        CardRepository cardRepository = mock(CardRepository.class);
+        when(cardRepository.findAuthorizationEntryById(1L)).thenReturn(List.<Object[]>of(new Object[]{pan, 1L, 10L, CardType.VIRTUAL}));
+
+        CardAuthorizationIndex publisher = new CardAuthorizationIndex(null, null, applicationProperties, clusterNotifications(publisherNotifications));
+        CardAuthorizationIndex receiver = new CardAuthorizationIndex(cardRepository, mock(PlatformTransactionManager.class), applicationProperties,
+                clusterNotifications(receiverNotifications));
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Consumer<String>> handler = ArgumentCaptor.forClass(Consumer.class);
+        verify(receiverNotifications).subscribe(eq(CardAuthorizationIndex.TOPIC), handler.capture(), any());
+
+        Card card = new Card();
+        card.setCardId(1L);
+        card.setAccountId(10L);
+        card.setCardType(CardType.VIRTUAL);
+        card.setPan(pan);
+        publisher.publishIndexed(card);
+        publisher.publishRemoved(pan, 1L);
+        ArgumentCaptor<String> messages = ArgumentCaptor.forClass(String.class);
+        verify(publisherNotifications, times(2)).publish(eq(CardAuthorizationIndex.TOPIC), messages.capture());
+        assertEquals("put:1", messages.getAllValues().get(0));
+        assertFalse(messages.getAllValues().get(1).contains(pan));
+
+        // the issued card is read from the database, the deleted one is found by its hash
+        handler.getValue().accept(messages.getAllValues().get(0));
+        assertEquals(new CardAuthorizationIndex.Entry(1L, 10L, CardType.VIRTUAL, false), receiver.find(pan));
+        handler.getValue().accept(messages.getAllValues().get(1));
+        assertNull(receiver.find(pan));
+    }
+
+    @Test
+    void testSeedIsRequiredWithClusterNotifications() {
+        assertThrows(IllegalStateException.class,
+                () -> new CardAuthorizationIndex(null, null, new ApplicationProperties(), clusterNotifications(mock(ClusterNotifications.class))));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ObjectProvider<ClusterNotifications> clusterNotifications(ClusterNotifications clusterNotifications) {
+        ObjectProvider<ClusterNotifications> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable()).thenReturn(clusterNotifications);
+        return provider;
+    }
+}
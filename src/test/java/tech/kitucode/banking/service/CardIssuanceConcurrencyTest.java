@@ -0,0 +1,190 @@
+package tech.kitucode.banking.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import tech.kitucode.banking.ApplicationProperties;
+import tech.kitucode.banking.domain.Account;
+import tech.kitucode.banking.domain.enumerations.CardType;
+import tech.kitucode.banking.error.ValidationException;
+import tech.kitucode.banking.repository.AccountRepository;
+import tech.kitucode.banking.repository.CardRepository;
+import tech.kitucode.banking.service.dto.CreateCardDTO;
+
+import java.time.LocalDate;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+/**
+ * Issues cards for one account from many threads against an in-memory database to check that the card limit and
+ * the one-card-per-type rule hold under contention.
+ */
+@Slf4j
+@DataJpaTest(properties = {
+        "spring.jpa.database=H2",
+        "spring.datasource.url=jdbc:h2:mem:card-issuance;LOCK_TIMEOUT=30000;DB_CLOSE_DELAY=-1",
+        // the migrations are written for postgres
+        "spring.flyway.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({CardService.class, CardAuthorizationIndex.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class CardIssuanceConcurrencyTest {
+    private static final int THREADS = 16;
+    private static final int REQUESTS = 200;
+    // the context, and the authorization index in it, is shared by the tests, so pans are never reused
+    private static final AtomicLong PANS = new AtomicLong(4598760000000000L);
+
+    @Autowired
+    private CardService cardService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private CardRepository cardRepository;
+
+    @Autowired
+    private CardAuthorizationIndex cardAuthorizationIndex;
+
+    @MockitoBean
+    private ApplicationProperties applicationProperties;
+
+    @MockitoBean
+    private NdjsonExporter ndjsonExporter;
+
+    @MockitoBean
+    private OutboxService outboxService;
+
+    @MockitoBean
+    private PanGenerator panGenerator;
+
+    @BeforeEach
+    void setUp() {
+        when(panGenerator.nextPan(any())).thenAnswer(invocation -> String.valueOf(PANS.incrementAndGet()));
+        when(panGenerator.nextCvv()).thenReturn("390");
+    }
+
+    @AfterEach
+    void tearDown() {
+        cardRepository.deleteAll();
+        accountRepository.deleteAll();
+    }
+
+    @Test
+    void testCardLimitHoldsUnderContention() throws InterruptedException {
+        when(applicationProperties.getMaxCardsPerAccount()).thenReturn(1);
+        Account account = createAccount("DTKEKENA4651000000001");
+
+        Result result = hammer(account.getAccountId());
+
+        assertEquals(1, result.issued.get());
+        assertEquals(REQUESTS - 1, result.rejected.get());
+        assertEquals(1, cardRepository.countByAccountId(account.getAccountId()));
+        assertEquals(1, accountRepository.findById(account.getAccountId()).orElseThrow().getCardCount());
+    }
+
+    @Test
+    void testOneCardPerTypeUnderContention() throws InterruptedException {
+        when(applicationProperties.getMaxCardsPerAccount()).thenReturn(5);
+        Account account = createAccount("DTKEKENA4651000000002");
+
+        Result result = hammer(account.getAccountId());
+
+        assertEquals(CardType.values().length, result.issued.get());
+        assertEquals(REQUESTS - CardType.values().length, result.rejected.get());
+        assertEquals(CardType.values().length, cardRepository.countByAccountId(account.getAccountId()));
+        assertEquals(CardType.values().length, accountRepository.findById(account.getAccountId()).orElseThrow().getCardCount());
+    }
+
+    @Test
+    void testDeleteReleasesCardSlot() {
+        when(applicationProperties.getMaxCardsPerAccount()).thenReturn(1);
+        Account account = createAccount("DTKEKENA4651000000003");
+
+        Long cardId = cardService.save(createCardDTO(account.getAccountId(), CardType.VIRTUAL)).getCardId();
+        String deletedPan = cardRepository.findById(cardId).orElseThrow().getPan();
+        cardService.delete(cardId);
+        Long reissuedCardId = cardService.save(createCardDTO(account.getAccountId(), CardType.PHYSICAL)).getCardId();
+        String reissuedPan = cardRepository.findById(reissuedCardId).orElseThrow().getPan();
+
+        assertEquals(1, accountRepository.findById(account.getAccountId()).orElseThrow().getCardCount());
+        // the authorization index follows the committed issuances and deletions
+        assertNull(cardAuthorizationIndex.find(deletedPan));
+        assertEquals(new CardAuthorizationIndex.Entry(reissuedCardId, account.getAccountId(), CardType.PHYSICAL, false), cardAuthorizationIndex.find(reissuedPan));
+    }
+
+    private Result hammer(Long accountId) throws InterruptedException {
+        Result result = new Result();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executorService = Executors.newFixedThreadPool(THREADS);
+
+        for (int i = 0; i < REQUESTS; i++) {
+            CardType cardType = CardType.values()[i % CardType.values().length];
+            executorService.submit(() -> {
+                try {
+                    start.await();
+                    cardService.save(createCardDTO(accountId, cardType));
+                    result.issued.incrementAndGet();
+                } catch (ValidationException e) {
+                    result.rejected.incrementAndGet();
+                } catch (Exception e) {
+                    log.error("Unexpected issuance failure", e);
+                    result.unexpected.add(e);
+                }
+                return null;
+            });
+        }
+
+        start.countDown();
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(60, TimeUnit.SECONDS));
+        assertTrue(result.unexpected.isEmpty(), "Unexpected failures: " + result.unexpected);
+
+        return result;
+    }
+
+    private Account createAccount(String iban) {
+        Account account = new Account();
+        account.setCustomerId(1L);
+        account.setIban(iban);
+        account.setBicSwift("DTKEKENA465");
+        account.setCreatedOn(LocalDate.now());
+        return accountRepository.save(account);
+    }
+
+    private CreateCardDTO createCardDTO(Long accountId, CardType cardType) {
+        CreateCardDTO createCardDTO = new CreateCardDTO();
+        createCardDTO.setAccountId(accountId);
+        createCardDTO.setCardType(cardType);
+        createCardDTO.setCardAlias("Brian Kitunda Kathukya");
+        return createCardDTO;
+    }
+
+    private static class Result {
+        private final AtomicInteger issued = new AtomicInteger();
+        private final AtomicInteger rejected = new AtomicInteger();
+        private final Set<Exception> unexpected = ConcurrentHashMap.newKeySet();
+    }
+}
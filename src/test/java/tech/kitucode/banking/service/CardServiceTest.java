@@ -6,15 +6,19 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.*;
 import tech.kitucode.banking.ApplicationProperties;
-import tech.kitucode.banking.domain.Account;
 import tech.kitucode.banking.domain.Card;
 import tech.kitucode.banking.domain.enumerations.CardType;
+import tech.kitucode.banking.error.DuplicatePanException;
 import tech.kitucode.banking.error.ValidationException;
 import tech.kitucode.banking.repository.AccountRepository;
 import tech.kitucode.banking.repository.CardRepository;
+import tech.kitucode.banking.service.dto.AuthorizeCardDTO;
+import tech.kitucode.banking.service.dto.CardAuthorizationDTO;
 import tech.kitucode.banking.service.dto.CreateCardDTO;
+import tech.kitucode.banking.service.dto.MaskedCardDTO;
 import tech.kitucode.banking.service.dto.UpdateCardDTO;
 
 import java.time.LocalDate;
@@ -22,7 +26,12 @@ import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @Slf4j
@@ -38,6 +47,15 @@ public class CardServiceTest {
     @Mock
     private ApplicationProperties applicationProperties;
 
+    @Mock
+    private OutboxService outboxService;
+
+    @Mock
+    private CardAuthorizationIndex cardAuthorizationIndex;
+
+    @Mock
+    private PanGenerator panGenerator;
+
     @InjectMocks
     private CardService cardService;
 
@@ -78,11 +96,14 @@ public class CardServiceTest {
         createCardDTO.setAccountId(1L);
         createCardDTO.setCardAlias("Brian Kitunda Kathukya");
 
-        when(accountRepository.findById(createCardDTO.getAccountId())).thenReturn(Optional.empty());
+        when(applicationProperties.getMaxCardsPerAccount()).thenReturn(2);
+        when(accountRepository.incrementCardCount(createCardDTO.getAccountId(), 2)).thenReturn(0);
+        when(accountRepository.existsById(createCardDTO.getAccountId())).thenReturn(false);
 
-        assertThrows(ValidationException.class, () -> {
+        ValidationException exception = assertThrows(ValidationException.class, () -> {
             cardService.save(createCardDTO);
         });
+        assertEquals("Account with id 1 does not exist", exception.getMessage());
     }
 
     @Test
@@ -92,21 +113,31 @@ public class CardServiceTest {
         createCardDTO.setAccountId(1L);
         createCardDTO.setCardAlias("Brian Kitunda Kathukya");
 
-        Card cardByTypeAndAccountId = new Card();
-        cardByTypeAndAccountId.setCardId(1L);
-        cardByTypeAndAccountId.setAccountId(createCardDTO.getAccountId());
-        cardByTypeAndAccountId.setCardType(createCardDTO.getCardType());
-        cardByTypeAndAccountId.setCardAlias(createCardDTO.getCardAlias());
+        when(applicationProperties.getMaxCardsPerAccount()).thenReturn(2);
+        when(accountRepository.incrementCardCount(createCardDTO.getAccountId(), 2)).thenReturn(1);
+        // the unique constraint on (account_id, card_type) rejects the insert
+        when(cardRepository.saveAndFlush(any(Card.class))).thenThrow(new DataIntegrityViolationException("uk_cards_account_id_card_type"));
 
-        when(cardRepository.findOneByCardTypeAndAccountId(createCardDTO.getCardType(), createCardDTO.getAccountId()))
-                .thenReturn(Optional.of(cardByTypeAndAccountId));
+        ValidationException exception = assertThrows(ValidationException.class, () -> {
+            cardService.save(createCardDTO);
+        });
+        assertEquals("Card of type: VIRTUAL and account id: 1 already exists", exception.getMessage());
+    }
+
+    @Test
+    void testPanIssuedElsewhereIsNotReportedAsDuplicateCardType() {
+        CreateCardDTO createCardDTO = new CreateCardDTO();
+        createCardDTO.setCardType(CardType.VIRTUAL);
+        createCardDTO.setAccountId(1L);
+        createCardDTO.setCardAlias("Brian Kitunda Kathukya");
 
-        Account account = new Account();
-        account.setAccountId(1L);
-        account.setCustomerId(1L);
-        when(accountRepository.findById(1L)).thenReturn(Optional.of(account));
+        when(applicationProperties.getMaxCardsPerAccount()).thenReturn(2);
+        when(accountRepository.incrementCardCount(createCardDTO.getAccountId(), 2)).thenReturn(1);
+        // another instance issued the same pan, which this instance's index has not seen
+        when(cardRepository.saveAndFlush(any(Card.class))).thenThrow(new DataIntegrityViolationException("could not execute statement",
+                new RuntimeException("duplicate key value violates unique constraint \"ux_cards_pan\"")));
 
-        assertThrows(ValidationException.class, () -> {
+        assertThrows(DuplicatePanException.class, () -> {
             cardService.save(createCardDTO);
         });
     }
@@ -118,17 +149,35 @@ public class CardServiceTest {
         createCardDTO.setAccountId(1L);
         createCardDTO.setCardAlias("Brian Kitunda Kathukya");
 
-        Account account = new Account();
-        account.setAccountId(1L);
-        account.setCustomerId(1L);
-        when(accountRepository.findById(1L)).thenReturn(Optional.of(account));
-
         when(applicationProperties.getMaxCardsPerAccount()).thenReturn(2);
-        when(cardRepository.countByAccountId(createCardDTO.getAccountId())).thenReturn(2);
+        when(accountRepository.incrementCardCount(createCardDTO.getAccountId(), 2)).thenReturn(0);
+        when(accountRepository.existsById(createCardDTO.getAccountId())).thenReturn(true);
 
-        assertThrows(ValidationException.class, () -> {
+        ValidationException exception = assertThrows(ValidationException.class, () -> {
             cardService.save(createCardDTO);
         });
+        assertEquals("A maximum of 2 cards is allowed for each account.", exception.getMessage());
+    }
+
+    @Test
+    void testValidateCreationWithoutWriting() {
+        CreateCardDTO createCardDTO = new CreateCardDTO();
+        createCardDTO.setCardType(CardType.VIRTUAL);
+        createCardDTO.setAccountId(1L);
+        createCardDTO.setCardAlias("Brian Kitunda Kathukya");
+
+        when(cardRepository.findOneByCardTypeAndAccountId(CardType.VIRTUAL, 1L)).thenReturn(Optional.empty());
+        when(applicationProperties.getMaxCardsPerAccount()).thenReturn(2);
+        when(cardRepository.countByAccountId(1L)).thenReturn(0);
+        when(accountRepository.existsById(1L)).thenReturn(false);
+        ValidationException exception = assertThrows(ValidationException.class, () -> cardService.validateCreation(createCardDTO));
+        assertEquals("Account with id 1 does not exist", exception.getMessage());
+
+        when(cardRepository.findOneByCardTypeAndAccountId(CardType.VIRTUAL, 1L)).thenReturn(Optional.of(new Card()));
+        exception = assertThrows(ValidationException.class, () -> cardService.validateCreation(createCardDTO));
+        assertEquals("Card of type: VIRTUAL and account id: 1 already exists", exception.getMessage());
+
+        verify(accountRepository, never()).incrementCardCount(any(), any());
     }
 
     @Test
@@ -186,7 +235,7 @@ public class CardServiceTest {
 
         when(cardRepository.findAll(Example.of(probe, matcher), Pageable.unpaged())).thenReturn(page);
 
-        Page<Card> cards = cardService.findAll(probe.getCardAlias(), probe.getCardType(), probe.getPan(), true, Pageable.unpaged());
+        Page<Card> cards = cardService.findAll(probe.getCardAlias(), probe.getCardType(), probe.getPan(), Pageable.unpaged());
 
         assert !cards.getContent().isEmpty();
         assert cards.getContent().size() == 2;
@@ -205,7 +254,7 @@ public class CardServiceTest {
 
         when(cardRepository.findById(mockCard.getCardId())).thenReturn(Optional.of(mockCard));
 
-        Card card = cardService.findById(mockCard.getCardId(), true);
+        Card card = cardService.findById(mockCard.getCardId());
 
         assert card != null;
         assertEquals(card.getCardId(), mockCard.getCardId());
@@ -223,4 +272,89 @@ public class CardServiceTest {
             cardService.update(updateCardDTO);
         });
     }
+
+    @Test
+    void testMaskingLeavesCachedCardUntouched() {
+        Card cachedCard = new Card();
+        cachedCard.setCardId(1L);
+        cachedCard.setPan("1882738818773737");
+        cachedCard.setCvv("390");
+
+        when(cardRepository.findById(1L)).thenReturn(Optional.of(cachedCard));
+
+        MaskedCardDTO maskedCard = cardService.findMaskedById(1L);
+
+        assertEquals("188273******3737", maskedCard.getPan());
+        assertEquals("***", maskedCard.getCvv());
+        assertEquals("1882738818773737", cachedCard.getPan());
+        assertEquals("390", cachedCard.getCvv());
+    }
+
+    @Test
+    void testMaskedWindowFetchesOneExtraRow() {
+        MaskedCardDTO card1 = new MaskedCardDTO(1L, "Brian Kitunda Kathukya", 1L, CardType.VIRTUAL, "1882738818773737", LocalDate.of(2025, 5, 1), null, 0L);
+        MaskedCardDTO card2 = new MaskedCardDTO(2L, "Brian Kitunda Kathukya", 1L, CardType.PHYSICAL, "7474586876274757", LocalDate.of(2025, 5, 1), null, 0L);
+        MaskedCardDTO card3 = new MaskedCardDTO(3L, "Jane Doe", 2L, CardType.VIRTUAL, "4474586876274751", LocalDate.of(2025, 5, 2), null, 0L);
+
+        when(cardRepository.findAllMaskedAfter(null, null, null, null, null, Limit.of(3))).thenReturn(List.of(card1, card2, card3));
+
+        Window<MaskedCardDTO> window = cardService.findAllMasked("", null, null, ScrollPosition.keyset(), 2);
+
+        assertEquals(2, window.size());
+        assertTrue(window.hasNext());
+        assertEquals("188273******3737", window.getContent().get(0).getPan());
+        assertEquals("***", window.getContent().get(0).getCvv());
+        KeysetScrollPosition next = (KeysetScrollPosition) window.positionAt(1);
+        assertEquals(LocalDate.of(2025, 5, 1), next.getKeys().get("createdOn"));
+        assertEquals(2L, next.getKeys().get("cardId"));
+    }
+
+    @Test
+    void testAuthorizeFromIndex() {
+        when(cardAuthorizationIndex.find("1882738818773737")).thenReturn(new CardAuthorizationIndex.Entry(1L, 2L, CardType.VIRTUAL, false));
+
+        CardAuthorizationDTO authorization = cardService.authorize(authorizeCardDTO("1882738818773737"));
+
+        assertEquals(CardAuthorizationDTO.approved(1L, 2L, CardType.VIRTUAL), authorization);
+        verify(cardRepository, never()).findOneByPan(any());
+    }
+
+    @Test
+    void testAuthorizeUnknownCard() {
+        when(cardAuthorizationIndex.isLoaded()).thenReturn(true);
+
+        CardAuthorizationDTO authorization = cardService.authorize(authorizeCardDTO("1882738818773737"));
+
+        assertFalse(authorization.isApproved());
+        assertEquals(CardAuthorizationDTO.UNKNOWN_CARD, authorization.getDeclineReason());
+        verify(cardRepository, never()).findOneByPan(any());
+    }
+
+    @Test
+    void testAuthorizeFallsBackToDatabase() {
+        Card card = new Card();
+        card.setCardId(1L);
+        card.setAccountId(2L);
+        card.setCardType(CardType.PHYSICAL);
+        card.setPan("1882738818773737");
+        when(cardAuthorizationIndex.find("1882738818773737")).thenReturn(new CardAuthorizationIndex.Entry(0, 0, null, true));
+        when(cardRepository.findOneByPan("1882738818773737")).thenReturn(Optional.of(card));
+        // not loaded yet, a pan missing from the index may still be a card
+        when(cardRepository.findOneByPan("7474586876274757")).thenReturn(Optional.empty());
+
+        assertEquals(CardAuthorizationDTO.approved(1L, 2L, CardType.PHYSICAL), cardService.authorize(authorizeCardDTO("1882738818773737")));
+        assertFalse(cardService.authorize(authorizeCardDTO("7474586876274757")).isApproved());
+    }
+
+    @Test
+    void testAuthorizeWithoutPan() {
+        assertThrows(ValidationException.class, () -> cardService.authorize(authorizeCardDTO(null)));
+        assertThrows(ValidationException.class, () -> cardService.authorize(authorizeCardDTO("")));
+    }
+
+    private AuthorizeCardDTO authorizeCardDTO(String pan) {
+        AuthorizeCardDTO authorizeCardDTO = new AuthorizeCardDTO();
+        authorizeCardDTO.setPan(pan);
+        return authorizeCardDTO;
+    }
 }
@@ -0,0 +1,209 @@
+package tech.kitucode.banking.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
+import tech.kitucode.banking.ApplicationProperties;
+import tech.kitucode.banking.domain.Customer;
+import tech.kitucode.banking.domain.enumerations.AggregateType;
+import tech.kitucode.banking.domain.enumerations.ChangeType;
+import tech.kitucode.banking.domain.enumerations.ImportJobStatus;
+import tech.kitucode.banking.error.ValidationException;
+import tech.kitucode.banking.repository.CustomerRepository;
+import tech.kitucode.banking.service.dto.ImportJobDTO;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@Slf4j
+@ExtendWith(MockitoExtension.class)
+public class CustomerImportServiceTest {
+
+    @Mock
+    private CustomerRepository customerRepository;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private ApplicationProperties applicationProperties;
+
+    @Mock
+    private CustomerNameIndex customerNameIndex;
+
+    @Mock
+    private OutboxService outboxService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private CustomerImportService customerImportService;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(applicationProperties.getImportBatchSize()).thenReturn(2);
+        lenient().when(applicationProperties.getImportWorkers()).thenReturn(2);
+        lenient().when(applicationProperties.getImportQueueCapacity()).thenReturn(4);
+        lenient().when(applicationProperties.getImportConcurrentJobs()).thenReturn(1);
+        lenient().when(applicationProperties.getImportQueuedJobs()).thenReturn(1);
+
+        CustomerService customerService = new CustomerService(customerRepository, null, customerNameIndex, outboxService);
+        customerImportService = new CustomerImportService(customerService, jdbcTemplate, applicationProperties, customerNameIndex, outboxService, transactionManager);
+    }
+
+    @AfterEach
+    void tearDown() {
+        customerImportService.shutdown();
+    }
+
+    @Test
+    void testEmptyFile() {
+        MockMultipartFile file = new MockMultipartFile("file", "customers.csv", "text/csv", new byte[0]);
+
+        assertThrows(ValidationException.class, () -> customerImportService.submit(file));
+    }
+
+    @Test
+    void testValidRowsAreBatchedAndInvalidRowsReported() throws Exception {
+        // ids as the insert generates them, continuing from existing customers
+        AtomicLong lastId = new AtomicLong(10);
+        when(jdbcTemplate.batchUpdate(any(PreparedStatementCreator.class), any(BatchPreparedStatementSetter.class), any(KeyHolder.class))).thenAnswer(invocation -> {
+            BatchPreparedStatementSetter setter = invocation.getArgument(1);
+            KeyHolder keyHolder = invocation.getArgument(2);
+            assertTrue(setter.getBatchSize() <= 2);
+            for (int i = 0; i < setter.getBatchSize(); i++) {
+                keyHolder.getKeyList().add(Map.of("customer_id", lastId.incrementAndGet()));
+            }
+            return new int[setter.getBatchSize()];
+        });
+
+        String csv = """
+                first_name,last_name,other_name
+                Brian,Kitunda,Kathukya
+                Jane,,Doe
+                "Mary, Ann",Wanjiru,
+                John,Otieno,
+                ,Mwangi,
+                """;
+        MockMultipartFile file = new MockMultipartFile("file", "customers.csv", "text/csv", csv.getBytes(StandardCharsets.UTF_8));
+
+        ImportJobDTO importJobDTO = awaitCompletion(customerImportService.submit(file).getJobId());
+
+        assertEquals(ImportJobStatus.COMPLETED, importJobDTO.getStatus());
+        assertEquals(5, importJobDTO.getRowsRead());
+        assertEquals(3, importJobDTO.getRowsImported());
+        assertEquals(2, importJobDTO.getRowsRejected());
+        assertEquals(13L, lastId.get());
+
+        List<String> errors = Files.readAllLines(customerImportService.findErrorReport(importJobDTO.getJobId()));
+        assertEquals(3, errors.size());
+        assertTrue(errors.stream().anyMatch(line -> line.startsWith("3,customer last name is required")));
+        assertTrue(errors.stream().anyMatch(line -> line.startsWith("6,customer first name is required")));
+        // each batch commits with the events of its own customers
+        verify(transactionManager, times(2)).commit(any());
+        for (long customerId = 11; customerId <= 13; customerId++) {
+            verify(outboxService).record(eq(AggregateType.CUSTOMER), eq(customerId), eq(ChangeType.CREATED), any(Customer.class));
+        }
+        verify(customerNameIndex, times(3)).index(any(Customer.class));
+        assertFalse(hasUpload(importJobDTO.getJobId()));
+    }
+
+    @Test
+    void testFinishedJobsExpireWithTheirErrorReports() throws Exception {
+        when(applicationProperties.getImportJobRetentionMinutes()).thenReturn(60L);
+        MockMultipartFile file = new MockMultipartFile("file", "customers.csv", "text/csv", ",Mwangi,\n".getBytes(StandardCharsets.UTF_8));
+        String jobId = awaitCompletion(customerImportService.submit(file).getJobId()).getJobId();
+        Path errorReport = customerImportService.findErrorReport(jobId);
+
+        customerImportService.expireFinishedJobs();
+        assertNotNull(customerImportService.findJob(jobId));
+        assertTrue(Files.exists(errorReport));
+
+        when(applicationProperties.getImportJobRetentionMinutes()).thenReturn(-1L);
+        customerImportService.expireFinishedJobs();
+        assertNull(customerImportService.findJob(jobId));
+        assertFalse(Files.exists(errorReport));
+    }
+
+    @Test
+    void testImportsBeyondTheQueueAreRefused() throws Exception {
+        // holds the running job in its first batch
+        CountDownLatch release = new CountDownLatch(1);
+        when(jdbcTemplate.batchUpdate(any(PreparedStatementCreator.class), any(BatchPreparedStatementSetter.class), any(KeyHolder.class))).thenAnswer(invocation -> {
+            release.await();
+            throw new IllegalStateException("database unavailable");
+        });
+        MockMultipartFile file = new MockMultipartFile("file", "customers.csv", "text/csv", "Brian,Kitunda,\n".getBytes(StandardCharsets.UTF_8));
+
+        String running = customerImportService.submit(file).getJobId();
+        String queued = customerImportService.submit(file).getJobId();
+        try {
+            assertThrows(ValidationException.class, () -> customerImportService.submit(file));
+        } finally {
+            release.countDown();
+        }
+
+        assertEquals(ImportJobStatus.FAILED, awaitCompletion(running).getStatus());
+        assertEquals(ImportJobStatus.FAILED, awaitCompletion(queued).getStatus());
+    }
+
+    @Test
+    void testWriteFailureFailsJob() throws Exception {
+        when(jdbcTemplate.batchUpdate(any(PreparedStatementCreator.class), any(BatchPreparedStatementSetter.class), any(KeyHolder.class)))
+                .thenThrow(new IllegalStateException("database unavailable"));
+
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            csv.append("Brian,Kitunda,").append(i).append('\n');
+        }
+        MockMultipartFile file = new MockMultipartFile("file", "customers.csv", "text/csv", csv.toString().getBytes(StandardCharsets.UTF_8));
+
+        ImportJobDTO importJobDTO = awaitCompletion(customerImportService.submit(file).getJobId());
+
+        assertEquals(ImportJobStatus.FAILED, importJobDTO.getStatus());
+        assertEquals("database unavailable", importJobDTO.getError());
+        verify(transactionManager).rollback(any());
+        verify(customerNameIndex, never()).index(any(Customer.class));
+    }
+
+    private static boolean hasUpload(String jobId) throws IOException {
+        try (Stream<Path> files = Files.list(Path.of(System.getProperty("java.io.tmpdir")))) {
+            return files.map(path -> path.getFileName().toString())
+                    .anyMatch(name -> name.startsWith("customer-import-" + jobId) && !name.contains("-errors"));
+        }
+    }
+
+    private ImportJobDTO awaitCompletion(String jobId) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            ImportJobDTO importJobDTO = customerImportService.findJob(jobId);
+            if (importJobDTO.getStatus() != ImportJobStatus.RUNNING) {
+                return importJobDTO;
+            }
+            Thread.sleep(50);
+        }
+        fail("Import job " + jobId + " did not finish");
+        return null;
+    }
+}
@@ -0,0 +1,102 @@
+package tech.kitucode.banking.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.ObjectProvider;
+import tech.kitucode.banking.domain.Customer;
+import tech.kitucode.banking.service.cluster.ClusterNotifications;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@Slf4j
+public class CustomerNameIndexTest {
+    private CustomerNameIndex customerNameIndex;
+
+    @BeforeEach
+    void setUp() {
+        customerNameIndex = new CustomerNameIndex(null, null, clusterNotifications(null));
+        customerNameIndex.index(1L, "Brian", "Kitunda", "Kathukya");
+        customerNameIndex.index(2L, "Brenda", "Kitunda", null);
+        customerNameIndex.index(3L, "José", "Otieno", null);
+    }
+
+    @Test
+    void testPrefixAndAnyOrderTokens() {
+        assertEquals(Set.of(1L, 2L), Set.copyOf(customerNameIndex.search("br", 10)));
+        assertEquals(List.of(1L), customerNameIndex.search("kit bri", 10));
+        assertEquals(List.of(1L), customerNameIndex.search("KATH", 10));
+        assertEquals(List.of(3L), customerNameIndex.search("jose", 10));
+        assertEquals(List.of(), customerNameIndex.search("brian otieno", 10));
+        assertEquals(List.of(), customerNameIndex.search("  ", 10));
+        assertEquals(1, customerNameIndex.search("kitunda", 1).size());
+    }
+
+    @Test
+    void testUpdateAndRemove() {
+        customerNameIndex.index(1L, "Bryan", "Kitunda", null);
+
+        assertEquals(List.of(), customerNameIndex.search("brian", 10));
+        assertEquals(List.of(1L), customerNameIndex.search("bry", 10));
+
+        customerNameIndex.remove(1L);
+
+        assertEquals(List.of(2L), customerNameIndex.search("kitunda", 10));
+        assertEquals(2, customerNameIndex.size());
+    }
+
+    @Test
+    void testChangesArePublishedToAndAppliedFromOtherInstances() {
+        ClusterNotifications clusterNotifications = mock(ClusterNotifications.class);
+        CustomerNameIndex sender = new CustomerNameIndex(null, null, clusterNotifications(clusterNotifications));
+        CustomerNameIndex receiver = new CustomerNameIndex(null, null, clusterNotifications(clusterNotifications));
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Consumer<String>> handlers = ArgumentCaptor.forClass(Consumer.class);
+        verify(clusterNotifications, times(2)).subscribe(eq(CustomerNameIndex.TOPIC), handlers.capture(), any());
+        Consumer<String> receive = handlers.getAllValues().get(1);
+
+        // an import batch big enough to need more than one notification
+        List<Customer> customers = new ArrayList<>();
+        for (long id = 1; id <= 1000; id++) {
+            customers.add(customer(id, "José", "Kitunda" + id));
+        }
+        sender.publishIndexed(customers);
+        sender.publishRemoved(1L);
+
+        ArgumentCaptor<String> messages = ArgumentCaptor.forClass(String.class);
+        verify(clusterNotifications, atLeast(3)).publish(eq(CustomerNameIndex.TOPIC), messages.capture());
+        for (String message : messages.getAllValues()) {
+            assertTrue(message.getBytes(StandardCharsets.UTF_8).length <= 7000, message);
+            receive.accept(message);
+        }
+
+        assertEquals(999, receiver.size());
+        assertEquals(List.of(2L), receiver.search("jose kitunda2", 1));
+        assertFalse(receiver.search("kitunda1", 1000).contains(1L));
+    }
+
+    private static Customer customer(Long id, String firstName, String lastName) {
+        Customer customer = new Customer();
+        customer.setCustomerId(id);
+        customer.setFirstName(firstName);
+        customer.setLastName(lastName);
+        return customer;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ObjectProvider<ClusterNotifications> clusterNotifications(ClusterNotifications clusterNotifications) {
+        ObjectProvider<ClusterNotifications> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable()).thenReturn(clusterNotifications);
+        return provider;
+    }
+}
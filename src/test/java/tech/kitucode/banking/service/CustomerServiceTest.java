@@ -7,14 +7,27 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import tech.kitucode.banking.domain.Customer;
+import tech.kitucode.banking.domain.enumerations.AggregateType;
+import tech.kitucode.banking.domain.enumerations.CardType;
+import tech.kitucode.banking.domain.enumerations.ChangeType;
 import tech.kitucode.banking.error.ValidationException;
 import tech.kitucode.banking.repository.CustomerRepository;
+import tech.kitucode.banking.service.dto.AccountOverviewDTO;
+import tech.kitucode.banking.service.dto.CustomerOverviewDTO;
+import tech.kitucode.banking.service.dto.CustomerOverviewRowDTO;
+import tech.kitucode.banking.service.dto.MaskedCardDTO;
 
 import java.time.LocalDate;
+import java.util.List;
 import java.util.Optional;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @Slf4j
@@ -24,6 +37,12 @@ public class CustomerServiceTest {
     @Mock
     private CustomerRepository customerRepository;
 
+    @Mock
+    private CustomerNameIndex customerNameIndex;
+
+    @Mock
+    private OutboxService outboxService;
+
     @InjectMocks
     private CustomerService customerService;
 
@@ -91,6 +110,8 @@ public class CustomerServiceTest {
         assertEquals(customer.getLastName(), "Kitunda");
         assertEquals(customer.getOtherName(), "Kathukya");
         assertEquals(customer.getCreatedOn(), LocalDate.now());
+        verify(outboxService).record(AggregateType.CUSTOMER, 1L, ChangeType.CREATED, savedCustomer);
+        verify(customerNameIndex).index(savedCustomer);
     }
 
     @Test
@@ -133,6 +154,11 @@ public class CustomerServiceTest {
         mockCustomer.setLastName("Kitush");
         mockCustomer.setOtherName("Kathukya");
 
+        Customer storedCustomer = new Customer();
+        storedCustomer.setCreatedOn(LocalDate.of(2025, 5, 1));
+
+        when(customerRepository.findById(1L)).thenReturn(Optional.of(storedCustomer));
+        when(customerRepository.findVersionById(1L)).thenReturn(Optional.of(3L));
         when(customerRepository.save(mockCustomer)).thenReturn(mockCustomer);
 
         Customer updatedCustomer = customerService.update(mockCustomer);
@@ -141,5 +167,86 @@ public class CustomerServiceTest {
         assertEquals(updatedCustomer.getFirstName(), "Brian");
         assertEquals(updatedCustomer.getLastName(), "Kitush");
         assertEquals(updatedCustomer.getOtherName(), "Kathukya");
+        // without a version from the client the update applies to the current one
+        assertEquals(3L, updatedCustomer.getVersion());
+        // the body has no created on date, the stored one is kept
+        assertEquals(LocalDate.of(2025, 5, 1), updatedCustomer.getCreatedOn());
+        verify(customerRepository).flush();
+    }
+
+    @Test
+    void testUpdateKeepsClientVersion() {
+        Customer mockCustomer = new Customer();
+        mockCustomer.setCustomerId(1L);
+        mockCustomer.setFirstName("Brian");
+        mockCustomer.setLastName("Kitush");
+        mockCustomer.setVersion(2L);
+
+        when(customerRepository.findById(1L)).thenReturn(Optional.of(new Customer()));
+        when(customerRepository.save(mockCustomer)).thenReturn(mockCustomer);
+
+        assertEquals(2L, customerService.update(mockCustomer).getVersion());
+        verify(customerRepository, never()).findVersionById(any());
+
+        mockCustomer.setCustomerId(2L);
+        mockCustomer.setVersion(null);
+        assertThrows(ValidationException.class, () -> customerService.update(mockCustomer));
+    }
+
+    @Test
+    void testFindOverviewNestsJoinedRows() {
+        LocalDate today = LocalDate.now();
+        when(customerRepository.findOverviewRows(1L)).thenReturn(List.of(
+                new CustomerOverviewRowDTO(1L, "Brian", "Kitunda", null, today, null, 0L, 10L, "DTKEKENA4651000000000", "DTKEKENA465", today, null, 0L,
+                        100L, "Brian", CardType.VIRTUAL, "1882738818773737", today, null, 0L),
+                new CustomerOverviewRowDTO(1L, "Brian", "Kitunda", null, today, null, 0L, 10L, "DTKEKENA4651000000000", "DTKEKENA465", today, null, 0L,
+                        101L, "Brian", CardType.PHYSICAL, "7474586876274757", today, null, 0L),
+                new CustomerOverviewRowDTO(1L, "Brian", "Kitunda", null, today, null, 0L, 11L, "DTKEKENA4651000000001", "DTKEKENA465", today, null, 0L,
+                        null, null, null, null, null, null, null)));
+
+        CustomerOverviewDTO overview = customerService.findOverview(1L);
+
+        assertEquals("Brian", overview.getFirstName());
+        assertEquals(List.of(10L, 11L), overview.getAccounts().stream().map(AccountOverviewDTO::getAccountId).toList());
+        assertEquals(List.of(100L, 101L), overview.getAccounts().get(0).getCards().stream().map(MaskedCardDTO::getCardId).toList());
+        assertEquals("188273******3737", overview.getAccounts().get(0).getCards().get(0).getPan());
+        assertEquals(List.of(), overview.getAccounts().get(1).getCards());
+    }
+
+    @Test
+    void testFindOverviewOfCustomerWithoutAccounts() {
+        when(customerRepository.findOverviewRows(1L)).thenReturn(List.of(
+                new CustomerOverviewRowDTO(1L, "Brian", "Kitunda", null, LocalDate.now(), null, 0L, null, null, null, null, null, null,
+                        null, null, null, null, null, null, null)));
+
+        assertEquals(List.of(), customerService.findOverview(1L).getAccounts());
+        assertNull(customerService.findOverview(2L));
+    }
+
+    @Test
+    void testSplitName() {
+        assertArrayEquals(new String[]{"Brian", null, null}, customerService.splitName(" Brian "));
+        assertArrayEquals(new String[]{"Brian", "Kitunda", "Kathukya"}, customerService.splitName("Brian Kitunda Kathukya"));
+        assertArrayEquals(new String[]{null, null, null}, customerService.splitName("Brian Kitunda Kathukya Other"));
+        assertArrayEquals(new String[]{null, null, null}, customerService.splitName(null));
+    }
+
+    @Test
+    void testTypeaheadKeepsIndexOrder() {
+        Customer brian = new Customer();
+        brian.setCustomerId(1L);
+        brian.setFirstName("Brian");
+
+        Customer brenda = new Customer();
+        brenda.setCustomerId(2L);
+        brenda.setFirstName("Brenda");
+
+        when(customerNameIndex.search("br", 10)).thenReturn(List.of(2L, 1L, 3L));
+        when(customerRepository.findAllById(List.of(2L, 1L, 3L))).thenReturn(List.of(brian, brenda));
+
+        List<Customer> customers = customerService.typeahead("br", 10);
+
+        assertEquals(List.of(brenda, brian), customers);
+        assertThrows(ValidationException.class, () -> customerService.typeahead("br", 500));
     }
 }
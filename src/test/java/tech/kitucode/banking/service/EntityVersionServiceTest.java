@@ -0,0 +1,74 @@
+package tech.kitucode.banking.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import tech.kitucode.banking.config.CacheConfiguration;
+import tech.kitucode.banking.domain.Customer;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Versions served for conditional requests against an in-memory database, with the entity caches in front of it.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.database=H2",
+        "spring.datasource.url=jdbc:h2:mem:entity-version;DB_CLOSE_DELAY=-1",
+        // the migrations are written for postgres
+        "spring.flyway.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({CacheConfiguration.class, CustomerService.class, EntityVersionService.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class EntityVersionServiceTest {
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private EntityVersionService entityVersionService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @MockitoBean
+    private NdjsonExporter ndjsonExporter;
+
+    @MockitoBean
+    private CustomerNameIndex customerNameIndex;
+
+    @MockitoBean
+    private OutboxService outboxService;
+
+    @Test
+    void testUpdatedVersionIsSeenOnceTheUpdateCommits() {
+        Customer customer = new Customer();
+        customer.setFirstName("Brian");
+        customer.setLastName("Kitunda");
+        customer.setCreatedOn(LocalDate.now());
+        Long customerId = customerService.save(customer).getCustomerId();
+
+        // cached by the lookup
+        Customer cached = customerService.findOne(customerId);
+        assertEquals(cached.getVersion(), entityVersionService.findCustomerVersion(customerId));
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            Customer update = customerService.findOne(customerId);
+            update.setFirstName("Brayo");
+            customerService.update(update);
+        });
+
+        assertEquals(cached.getVersion() + 1, entityVersionService.findCustomerVersion(customerId));
+        assertEquals(cached.getVersion() + 1, customerService.findOne(customerId).getVersion());
+    }
+}
@@ -0,0 +1,171 @@
+package tech.kitucode.banking.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import tech.kitucode.banking.ApplicationProperties;
+import tech.kitucode.banking.domain.IbanBlock;
+import tech.kitucode.banking.error.ValidationException;
+import tech.kitucode.banking.repository.AccountRepository;
+import tech.kitucode.banking.repository.IbanBlockRepository;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@Slf4j
+@ExtendWith(MockitoExtension.class)
+public class IbanAllocatorTest {
+
+    @Mock
+    private IbanBlockRepository ibanBlockRepository;
+
+    @Mock
+    private AccountRepository accountRepository;
+
+    @Mock
+    private ApplicationProperties applicationProperties;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private IbanAllocator ibanAllocator;
+
+    private final IbanBlock storedBlock = new IbanBlock();
+
+    @BeforeEach
+    void setUp() {
+        ibanAllocator = new IbanAllocator(ibanBlockRepository, accountRepository, applicationProperties, transactionManager);
+
+        lenient().when(applicationProperties.getIbanBlockSize()).thenReturn(10);
+        lenient().when(ibanBlockRepository.findOneByBranchCode("465")).thenAnswer(invocation ->
+                storedBlock.getBranchCode() == null ? Optional.empty() : Optional.of(storedBlock));
+        lenient().when(ibanBlockRepository.saveAndFlush(any(IbanBlock.class))).thenAnswer(invocation -> {
+            IbanBlock block = invocation.getArgument(0);
+            storedBlock.setBranchCode(block.getBranchCode());
+            storedBlock.setNextAccountNumber(block.getNextAccountNumber());
+            return storedBlock;
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        ibanAllocator.stop();
+    }
+
+    @Test
+    void testNumbersAreHandedOutFromReservedBlocks() {
+        Set<Long> accountNumbers = new HashSet<>();
+        for (int i = 0; i < 25; i++) {
+            accountNumbers.add(ibanAllocator.nextAccountNumber("465"));
+        }
+
+        assertEquals(25, accountNumbers.size());
+        assertTrue(accountNumbers.contains(IbanAllocator.FIRST_ACCOUNT_NUMBER));
+        assertEquals(IbanAllocator.FIRST_ACCOUNT_NUMBER + 30, storedBlock.getNextAccountNumber());
+        // one reservation per block of 10
+        verify(ibanBlockRepository, times(3)).saveAndFlush(any(IbanBlock.class));
+    }
+
+    @Test
+    void testIbanIsPrefixedWithBranch() {
+        when(applicationProperties.getIbanPrefix()).thenReturn("DTKEKENA");
+
+        String iban = ibanAllocator.nextIban("465");
+
+        assertEquals("DTKEKENA465" + IbanAllocator.FIRST_ACCOUNT_NUMBER, iban);
+    }
+
+    @Test
+    void testAccountNumbersTakenBeforeBlocksAreSkipped() {
+        long first = IbanAllocator.FIRST_ACCOUNT_NUMBER;
+        when(applicationProperties.getIbanPrefix()).thenReturn("DTKEKENA");
+        // accounts opened with random numbers, one of them at the middle of the block, and one of branch 4651
+        when(accountRepository.findIbansBetween("DTKEKENA465" + first, "DTKEKENA465" + (first + 9)))
+                .thenReturn(List.of("DTKEKENA465" + first, "DTKEKENA465" + (first + 5), "DTKEKENA4651" + (first + 2)));
+        lenient().when(accountRepository.findIbansBetween("DTKEKENA465" + (first + 10), "DTKEKENA465" + (first + 19))).thenReturn(List.of());
+
+        List<Long> accountNumbers = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            accountNumbers.add(ibanAllocator.nextAccountNumber("465"));
+        }
+
+        assertEquals(List.of(first + 1, first + 2, first + 3, first + 4, first + 6, first + 7, first + 8, first + 9), accountNumbers);
+        // the next block is still reserved once half of the block is handed out
+        verify(ibanBlockRepository, timeout(5000).times(2)).saveAndFlush(any(IbanBlock.class));
+    }
+
+    @Test
+    void testConcurrentAllocationNeverRepeats() throws InterruptedException {
+        Set<Long> accountNumbers = ConcurrentHashMap.newKeySet();
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 1000; i++) {
+            executorService.submit(() -> accountNumbers.add(ibanAllocator.nextAccountNumber("465")));
+        }
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(1000, accountNumbers.size());
+    }
+
+    @Test
+    void testExhaustedBranch() {
+        storedBlock.setBranchCode("465");
+        storedBlock.setNextAccountNumber(IbanAllocator.LAST_ACCOUNT_NUMBER + 1);
+
+        assertThrows(ValidationException.class, () -> ibanAllocator.nextAccountNumber("465"));
+    }
+
+    @Test
+    void testNextBlockIsReservedBeforeTheCurrentOneRunsOut() {
+        for (int i = 0; i < 6; i++) {
+            ibanAllocator.nextAccountNumber("465");
+        }
+
+        // half of the first block of 10 is handed out, the second is reserved in the background
+        verify(ibanBlockRepository, timeout(5000).times(2)).saveAndFlush(any(IbanBlock.class));
+        assertEquals(IbanAllocator.FIRST_ACCOUNT_NUMBER + 20, storedBlock.getNextAccountNumber());
+    }
+
+    @Test
+    void testBranchesRefillIndependently() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(ibanBlockRepository.findOneByBranchCode("465")).thenAnswer(invocation -> {
+            release.await();
+            return Optional.empty();
+        });
+        when(ibanBlockRepository.findOneByBranchCode("466")).thenReturn(Optional.empty());
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+        try {
+            Future<Long> stalled = executorService.submit(() -> ibanAllocator.nextAccountNumber("465"));
+
+            // the reservation for 465 is stuck, 466 gets its block regardless
+            assertEquals(IbanAllocator.FIRST_ACCOUNT_NUMBER, ibanAllocator.nextAccountNumber("466"));
+            assertFalse(stalled.isDone());
+
+            release.countDown();
+            assertEquals(IbanAllocator.FIRST_ACCOUNT_NUMBER, stalled.get(10, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            executorService.shutdownNow();
+        }
+    }
+}
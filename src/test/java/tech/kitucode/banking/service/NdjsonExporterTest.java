@@ -0,0 +1,56 @@
+package tech.kitucode.banking.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import tech.kitucode.banking.domain.Customer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.verify;
+
+@Slf4j
+@ExtendWith(MockitoExtension.class)
+public class NdjsonExporterTest {
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Test
+    void testWritesOneLinePerRowAndDetaches() throws IOException {
+        NdjsonExporter ndjsonExporter = new NdjsonExporter(new ObjectMapper().findAndRegisterModules(), entityManager);
+
+        Customer customer1 = new Customer();
+        customer1.setCustomerId(1L);
+        customer1.setFirstName("Brian");
+        customer1.setLastName("Kitunda");
+        customer1.setCreatedOn(LocalDate.of(2025, 5, 1));
+
+        Customer customer2 = new Customer();
+        customer2.setCustomerId(2L);
+        customer2.setFirstName("Jane");
+        customer2.setLastName("Doe");
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        long count = ndjsonExporter.export(Stream.of(customer1, customer2), Function.identity(), outputStream);
+
+        String[] lines = outputStream.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, count);
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].startsWith("{\"customerId\":1,"), lines[0]);
+        assertTrue(lines[1].startsWith("{\"customerId\":2,"), lines[1]);
+        verify(entityManager).detach(customer1);
+        verify(entityManager).detach(customer2);
+    }
+}
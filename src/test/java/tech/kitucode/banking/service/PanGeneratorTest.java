@@ -0,0 +1,120 @@
+package tech.kitucode.banking.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import tech.kitucode.banking.ApplicationProperties;
+import tech.kitucode.banking.domain.enumerations.CardType;
+import tech.kitucode.banking.repository.CardRepository;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class PanGeneratorTest {
+    private static final CardAuthorizationIndex.Entry INDEXED = new CardAuthorizationIndex.Entry(1L, 1L, CardType.VIRTUAL, false);
+
+    @Mock
+    private CardRepository cardRepository;
+
+    @Mock
+    private CardAuthorizationIndex cardAuthorizationIndex;
+
+    private final ApplicationProperties applicationProperties = new ApplicationProperties();
+
+    private PanGenerator panGenerator;
+
+    @BeforeEach
+    void setUp() {
+        applicationProperties.setVirtualCardBins(List.of("459876", "45987800"));
+        applicationProperties.setPhysicalCardBins(List.of("459877"));
+        panGenerator = new PanGenerator(applicationProperties, cardRepository, cardAuthorizationIndex);
+    }
+
+    @Test
+    void testLuhnCheck() {
+        assertTrue(PanGenerator.isLuhnValid("4111111111111111"));
+        assertTrue(PanGenerator.isLuhnValid("79927398713"));
+        assertTrue(PanGenerator.isLuhnValid("4598760000000009"));
+        assertFalse(PanGenerator.isLuhnValid("4111111111111112"));
+        assertFalse(PanGenerator.isLuhnValid("79927398710"));
+    }
+
+    @Test
+    void testPansAreLuhnValidUnderTheCardTypeBins() {
+        for (int i = 0; i < 1000; i++) {
+            String virtualPan = panGenerator.randomPan(CardType.VIRTUAL);
+            String physicalPan = panGenerator.randomPan(CardType.PHYSICAL);
+
+            assertTrue(virtualPan.matches("(459876|45987800)[0-9]+"), virtualPan);
+            assertTrue(physicalPan.startsWith("459877"), physicalPan);
+            assertEquals(PanGenerator.PAN_LENGTH, virtualPan.length());
+            assertEquals(PanGenerator.PAN_LENGTH, physicalPan.length());
+            assertTrue(PanGenerator.isLuhnValid(virtualPan), virtualPan);
+            assertTrue(PanGenerator.isLuhnValid(physicalPan), physicalPan);
+        }
+    }
+
+    @Test
+    void testPanMissingFromLoadedIndexIsNotLookedUp() {
+        when(cardAuthorizationIndex.isLoaded()).thenReturn(true);
+
+        panGenerator.nextPan(CardType.VIRTUAL);
+
+        verify(cardRepository, never()).existsByPan(any());
+    }
+
+    @Test
+    void testIssuedPanIsGeneratedAgain() {
+        when(cardAuthorizationIndex.isLoaded()).thenReturn(true);
+        when(cardAuthorizationIndex.find(any())).thenReturn(INDEXED, INDEXED, null);
+        // the first pan is issued, the second only shares its hash with an issued pan
+        when(cardRepository.existsByPan(any())).thenReturn(true, false);
+
+        assertNotNull(panGenerator.nextPan(CardType.PHYSICAL));
+
+        verify(cardRepository, times(2)).existsByPan(any());
+        verify(cardAuthorizationIndex, times(2)).find(any());
+    }
+
+    @Test
+    void testEveryPanIsLookedUpBeforeTheIndexIsLoaded() {
+        when(cardRepository.existsByPan(any())).thenReturn(false);
+
+        panGenerator.nextPan(CardType.VIRTUAL);
+
+        verify(cardRepository).existsByPan(any());
+        verify(cardAuthorizationIndex, never()).find(any());
+    }
+
+    @Test
+    void testGivesUpWhenEveryPanIsIssued() {
+        when(cardRepository.existsByPan(any())).thenReturn(true);
+
+        assertThrows(IllegalStateException.class, () -> panGenerator.nextPan(CardType.VIRTUAL));
+    }
+
+    @Test
+    void testInvalidBinsAreRejected() {
+        applicationProperties.setPhysicalCardBins(List.of());
+        assertThrows(IllegalStateException.class, () -> new PanGenerator(applicationProperties, cardRepository, cardAuthorizationIndex));
+
+        applicationProperties.setPhysicalCardBins(List.of("45987"));
+        assertThrows(IllegalStateException.class, () -> new PanGenerator(applicationProperties, cardRepository, cardAuthorizationIndex));
+
+        applicationProperties.setPhysicalCardBins(List.of("45987a"));
+        assertThrows(IllegalStateException.class, () -> new PanGenerator(applicationProperties, cardRepository, cardAuthorizationIndex));
+    }
+
+    @Test
+    void testCvvIsThreeDigits() {
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(panGenerator.nextCvv().matches("[0-9]{3}"));
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package tech.kitucode.banking.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import tech.kitucode.banking.ApplicationProperties;
+import tech.kitucode.banking.error.ValidationException;
+import tech.kitucode.banking.repository.AccountRepository;
+import tech.kitucode.banking.repository.JournalCheckpointRepository;
+import tech.kitucode.banking.service.journal.PostingJournal;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Posts to accounts in an in-memory database, restarts the posting service on the same journal as a crashed
+ * instance would, and checks that every posting ends up in the balances exactly once.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.database=H2",
+        "spring.datasource.url=jdbc:h2:mem:postings;LOCK_TIMEOUT=30000;DB_CLOSE_DELAY=-1",
+        // the migrations are written for postgres
+        "spring.flyway.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class PostingRecoveryTest {
+    private static final List<Long> ACCOUNTS = List.of(1L, 2L, 3L);
+    private static final int SEGMENT_BYTES = 100 * 40;
+
+    @TempDir
+    private Path directory;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private JournalCheckpointRepository journalCheckpointRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final ApplicationProperties applicationProperties = new ApplicationProperties();
+
+    @BeforeEach
+    void setUp() {
+        applicationProperties.setJournalCheckpointBatchSize(2);
+        for (Long accountId : ACCOUNTS) {
+            jdbcTemplate.update("insert into tbl_accounts (account_id, iban, bic_swift, customer_id, created_on, version, card_count, balance) " +
+                    "values (?, ?, 'DTKEKENA465', 1, current_date, 0, 0, 0)", accountId, "DTKEKENA465200000000" + accountId);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        journalCheckpointRepository.deleteAll();
+        jdbcTemplate.update("delete from tbl_accounts");
+    }
+
+    @Test
+    void testCheckpointAppliesPostings() throws IOException {
+        PostingService postingService = start();
+
+        postingService.post(1L, new BigDecimal("10.50"));
+        postingService.post(1L, new BigDecimal("4.50"));
+        postingService.post(3L, new BigDecimal("7"));
+
+        assertEquals(0, settled(1L).signum());
+        assertEquals(new BigDecimal("15.00"), postingService.readWithUnflushed(1L, unflushed -> unflushed));
+
+        assertEquals(3, postingService.checkpoint());
+
+        assertEquals(new BigDecimal("15.00"), settled(1L));
+        assertEquals(0, settled(2L).signum());
+        assertEquals(new BigDecimal("7.00"), settled(3L));
+        assertEquals(0, postingService.readWithUnflushed(1L, unflushed -> unflushed).signum());
+        assertEquals(3L, journalCheckpointRepository.findById(PostingService.JOURNAL_NAME).orElseThrow().getSequence());
+        assertEquals(0, postingService.checkpoint());
+    }
+
+    @Test
+    void testInvalidPostings() throws IOException {
+        PostingService postingService = start();
+
+        assertThrows(ValidationException.class, () -> postingService.post(1L, new BigDecimal("0")));
+        assertThrows(ValidationException.class, () -> postingService.post(1L, new BigDecimal("-1")));
+        assertThrows(ValidationException.class, () -> postingService.post(1L, new BigDecimal("0.001")));
+        assertThrows(ValidationException.class, () -> postingService.post(1L, new BigDecimal("1e17")));
+        assertThrows(ValidationException.class, () -> postingService.post(42L, new BigDecimal("1")));
+    }
+
+    @Test
+    void testRestartAppliesEachPostingOnce() throws IOException {
+        PostingService postingService = start();
+        postingService.post(1L, new BigDecimal("100"));
+        postingService.checkpoint();
+        postingService.post(1L, new BigDecimal("20"));
+        postingService.post(2L, new BigDecimal("3"));
+
+        // a crash before the next checkpoint: the first posting is applied, the others are only in the journal
+        start();
+
+        assertEquals(new BigDecimal("120.00"), settled(1L));
+        assertEquals(new BigDecimal("3.00"), settled(2L));
+        assertEquals(3L, journalCheckpointRepository.findById(PostingService.JOURNAL_NAME).orElseThrow().getSequence());
+
+        // and a crash right after that checkpoint
+        PostingService restarted = start();
+        assertEquals(new BigDecimal("120.00"), settled(1L));
+        assertEquals(4L, restarted.post(3L, BigDecimal.ONE).getSequence());
+    }
+
+    @Test
+    void testJournalContinuesAfterCheckpointWhenItsFilesAreGone() throws IOException {
+        PostingService postingService = start();
+        for (int i = 0; i < 150; i++) {
+            postingService.post(2L, BigDecimal.ONE);
+        }
+        postingService.checkpoint();
+
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+
+        PostingService restarted = start();
+        assertEquals(151L, restarted.post(2L, BigDecimal.ONE).getSequence());
+        restarted.checkpoint();
+        assertEquals(new BigDecimal("151.00"), settled(2L));
+    }
+
+    @Test
+    void testBalanceReadsDuringCheckpointsCountPostingsOnce() throws Exception {
+        PostingService postingService = start();
+        int threads = 4;
+        int postingsPerThread = 500;
+        AtomicBoolean posting = new AtomicBoolean(true);
+        Set<String> anomalies = ConcurrentHashMap.newKeySet();
+        ExecutorService executorService = Executors.newFixedThreadPool(threads + 2);
+
+        List<Future<?>> posters = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            posters.add(executorService.submit(() -> {
+                for (int i = 0; i < postingsPerThread; i++) {
+                    postingService.post(ACCOUNTS.get(i % ACCOUNTS.size()), BigDecimal.ONE);
+                }
+                return null;
+            }));
+        }
+        executorService.submit(() -> {
+            while (posting.get()) {
+                postingService.checkpoint();
+            }
+        });
+        // credits only, so a balance that goes down was counted twice or lost for a moment
+        executorService.submit(() -> {
+            BigDecimal previous = BigDecimal.ZERO;
+            while (posting.get()) {
+                BigDecimal balance = postingService.readWithUnflushed(1L, unflushed -> settled(1L).add(unflushed));
+                if (balance.compareTo(previous) < 0) {
+                    anomalies.add(previous + " then " + balance);
+                }
+                previous = balance;
+            }
+        });
+
+        for (Future<?> poster : posters) {
+            poster.get(60, TimeUnit.SECONDS);
+        }
+        posting.set(false);
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(60, TimeUnit.SECONDS));
+        postingService.checkpoint();
+
+        assertEquals(Set.of(), anomalies);
+        BigDecimal total = ACCOUNTS.stream().map(this::settled).reduce(BigDecimal.ZERO, BigDecimal::add);
+        assertEquals(0, BigDecimal.valueOf((long) threads * postingsPerThread).compareTo(total));
+    }
+
+    /**
+     * Opens the journal and starts a posting service on it, as a starting instance does.
+     */
+    private PostingService start() throws IOException {
+        PostingJournal postingJournal = new PostingJournal(directory, SEGMENT_BYTES);
+        PostingService postingService = new PostingService(postingJournal, accountRepository, journalCheckpointRepository, jdbcTemplate,
+                transactionManager, applicationProperties);
+        postingService.recover();
+        return postingService;
+    }
+
+    private BigDecimal settled(Long accountId) {
+        return accountRepository.findBalanceById(accountId).orElseThrow();
+    }
+}
@@ -0,0 +1,146 @@
+package tech.kitucode.banking.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import tech.kitucode.banking.ApplicationProperties;
+import tech.kitucode.banking.error.ValidationException;
+import tech.kitucode.banking.repository.PendingCreditRepository;
+import tech.kitucode.banking.repository.TransferRepository;
+import tech.kitucode.banking.service.dto.CreateTransferDTO;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs random transfers between a few accounts, one of them hot, from many threads against an in-memory database
+ * to check that no money is created or lost, no balance goes negative and opposite transfers do not deadlock.
+ */
+@Slf4j
+@DataJpaTest(properties = {
+        "spring.jpa.database=H2",
+        "spring.datasource.url=jdbc:h2:mem:transfers;LOCK_TIMEOUT=30000;DB_CLOSE_DELAY=-1",
+        // the migrations are written for postgres
+        "spring.flyway.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({TransferService.class, TransferConcurrencyTest.Configuration.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class TransferConcurrencyTest {
+    private static final int THREADS = 16;
+    private static final int REQUESTS = 2000;
+    private static final List<Long> ACCOUNTS = List.of(1L, 2L, 3L, 4L, 5L);
+    private static final Long HOT_ACCOUNT_ID = 3L;
+    private static final BigDecimal OPENING_BALANCE = new BigDecimal("100.00");
+
+    @Autowired
+    private TransferService transferService;
+
+    @Autowired
+    private TransferRepository transferRepository;
+
+    @Autowired
+    private PendingCreditRepository pendingCreditRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @TestConfiguration
+    static class Configuration {
+        @Bean
+        ApplicationProperties applicationProperties() {
+            ApplicationProperties applicationProperties = new ApplicationProperties();
+            applicationProperties.setHotAccounts(List.of(HOT_ACCOUNT_ID));
+            applicationProperties.setHotAccountSweepBatchSize(10);
+            return applicationProperties;
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        for (Long accountId : ACCOUNTS) {
+            jdbcTemplate.update("insert into tbl_accounts (account_id, iban, bic_swift, customer_id, created_on, version, card_count, balance) " +
+                    "values (?, ?, 'DTKEKENA465', 1, current_date, 0, 0, ?)", accountId, "DTKEKENA465100000000" + accountId, OPENING_BALANCE);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        pendingCreditRepository.deleteAll();
+        transferRepository.deleteAll();
+        jdbcTemplate.update("delete from tbl_accounts");
+    }
+
+    @Test
+    void testMoneyIsConservedUnderContention() throws InterruptedException {
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        Set<Exception> unexpected = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executorService = Executors.newFixedThreadPool(THREADS);
+
+        for (int i = 0; i < REQUESTS; i++) {
+            executorService.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                Long from = ACCOUNTS.get(random.nextInt(ACCOUNTS.size()));
+                Long to = ACCOUNTS.get(random.nextInt(ACCOUNTS.size()));
+                if (from.equals(to)) {
+                    return null;
+                }
+
+                CreateTransferDTO createTransferDTO = new CreateTransferDTO();
+                createTransferDTO.setFromAccountId(from);
+                createTransferDTO.setToAccountId(to);
+                createTransferDTO.setAmount(BigDecimal.valueOf(random.nextInt(1, 5000), 2));
+                try {
+                    start.await();
+                    transferService.transfer(createTransferDTO);
+                    completed.incrementAndGet();
+                } catch (ValidationException e) {
+                    rejected.incrementAndGet();
+                } catch (Exception e) {
+                    log.error("Unexpected transfer failure", e);
+                    unexpected.add(e);
+                }
+                return null;
+            });
+        }
+
+        start.countDown();
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(120, TimeUnit.SECONDS));
+        assertTrue(unexpected.isEmpty(), "Unexpected failures: " + unexpected);
+        log.info("{} transfers completed, {} rejected", completed.get(), rejected.get());
+
+        BigDecimal total = BigDecimal.ZERO;
+        for (Long accountId : ACCOUNTS) {
+            BigDecimal balance = transferService.findBalance(accountId).getBalance();
+            assertTrue(balance.signum() >= 0, "Negative balance of account " + accountId + ": " + balance);
+            total = total.add(balance);
+        }
+        assertEquals(0, OPENING_BALANCE.multiply(BigDecimal.valueOf(ACCOUNTS.size())).compareTo(total));
+        assertEquals(completed.get(), transferRepository.count());
+
+        while (transferService.sweep(HOT_ACCOUNT_ID) > 0) {
+        }
+        assertEquals(0, pendingCreditRepository.count());
+        assertEquals(0, transferService.findBalance(HOT_ACCOUNT_ID).getPendingCredits().signum());
+    }
+}
@@ -0,0 +1,205 @@
+package tech.kitucode.banking.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import tech.kitucode.banking.ApplicationProperties;
+import tech.kitucode.banking.domain.PendingCredit;
+import tech.kitucode.banking.domain.Transfer;
+import tech.kitucode.banking.error.ValidationException;
+import tech.kitucode.banking.repository.AccountRepository;
+import tech.kitucode.banking.repository.PendingCreditRepository;
+import tech.kitucode.banking.repository.TransferRepository;
+import tech.kitucode.banking.service.dto.BalanceDTO;
+import tech.kitucode.banking.service.dto.CreateTransferDTO;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class TransferServiceTest {
+    private static final Long HOT_ACCOUNT_ID = 100L;
+
+    @Mock
+    private AccountRepository accountRepository;
+
+    @Mock
+    private TransferRepository transferRepository;
+
+    @Mock
+    private PendingCreditRepository pendingCreditRepository;
+
+    @Mock
+    private ApplicationProperties applicationProperties;
+
+    @Mock
+    private ObjectProvider<PostingService> postingService;
+
+    private TransferService transferService;
+
+    @BeforeEach
+    void setUp() {
+        when(applicationProperties.getHotAccounts()).thenReturn(List.of(HOT_ACCOUNT_ID));
+        transferService = new TransferService(accountRepository, transferRepository, pendingCreditRepository, applicationProperties, postingService);
+    }
+
+    @Test
+    void testInvalidTransferRequest() {
+        assertThrows(ValidationException.class, () -> transferService.transfer(createTransferDTO(null, 2L, "10.00")));
+        assertThrows(ValidationException.class, () -> transferService.transfer(createTransferDTO(1L, 1L, "10.00")));
+        assertThrows(ValidationException.class, () -> transferService.transfer(createTransferDTO(1L, 2L, "0")));
+        assertThrows(ValidationException.class, () -> transferService.transfer(createTransferDTO(1L, 2L, "-5")));
+        assertThrows(ValidationException.class, () -> transferService.transfer(createTransferDTO(1L, 2L, "0.001")));
+        assertThrows(ValidationException.class, () -> transferService.transfer(createTransferDTO(1L, 2L, "1e18")));
+
+        verifyNoInteractions(accountRepository, transferRepository);
+    }
+
+    @Test
+    void testAccountsAreLockedInAscendingOrder() {
+        BigDecimal amount = new BigDecimal("10.00");
+        when(transferRepository.saveAndFlush(any(Transfer.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(accountRepository.debit(anyLong(), eq(amount))).thenReturn(1);
+        when(accountRepository.credit(anyLong(), eq(amount))).thenReturn(1);
+
+        transferService.transfer(createTransferDTO(1L, 2L, "10.00"));
+        transferService.transfer(createTransferDTO(2L, 1L, "10.00"));
+
+        InOrder inOrder = inOrder(accountRepository);
+        inOrder.verify(accountRepository).debit(1L, amount);
+        inOrder.verify(accountRepository).credit(2L, amount);
+        inOrder.verify(accountRepository).credit(1L, amount);
+        inOrder.verify(accountRepository).debit(2L, amount);
+    }
+
+    @Test
+    void testInsufficientFunds() {
+        when(transferRepository.saveAndFlush(any(Transfer.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(accountRepository.debit(1L, new BigDecimal("10.00"))).thenReturn(0);
+        when(accountRepository.existsById(1L)).thenReturn(true);
+
+        ValidationException exception = assertThrows(ValidationException.class, () -> transferService.transfer(createTransferDTO(1L, 2L, "10.00")));
+
+        assertEquals("Insufficient funds in account with id 1", exception.getMessage());
+        verify(accountRepository, never()).credit(anyLong(), any());
+    }
+
+    @Test
+    void testCreditToMissingAccount() {
+        when(transferRepository.saveAndFlush(any(Transfer.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(accountRepository.credit(1L, new BigDecimal("10.00"))).thenReturn(0);
+
+        assertThrows(ValidationException.class, () -> transferService.transfer(createTransferDTO(2L, 1L, "10.00")));
+
+        verify(accountRepository, never()).debit(anyLong(), any());
+    }
+
+    @Test
+    void testCreditToHotAccountIsPending() {
+        BigDecimal amount = new BigDecimal("10.00");
+        Transfer saved = new Transfer();
+        saved.setTransferId(7L);
+        when(transferRepository.saveAndFlush(any(Transfer.class))).thenReturn(saved);
+        when(accountRepository.debit(200L, amount)).thenReturn(1);
+
+        transferService.transfer(createTransferDTO(200L, HOT_ACCOUNT_ID, "10.00"));
+
+        verify(pendingCreditRepository).save(argThat(pendingCredit -> pendingCredit.getAccountId().equals(HOT_ACCOUNT_ID)
+                && pendingCredit.getAmount().equals(amount) && pendingCredit.getTransferId().equals(7L)));
+        verify(accountRepository, never()).credit(anyLong(), any());
+    }
+
+    @Test
+    void testDebitFromHotAccountSweepsPendingCredits() {
+        BigDecimal amount = new BigDecimal("25.00");
+        when(applicationProperties.getHotAccountSweepBatchSize()).thenReturn(2);
+        when(transferRepository.saveAndFlush(any(Transfer.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(accountRepository.debit(HOT_ACCOUNT_ID, amount)).thenReturn(0, 1);
+        when(accountRepository.credit(anyLong(), any())).thenReturn(1);
+        when(accountRepository.lockById(HOT_ACCOUNT_ID)).thenReturn(Optional.of(HOT_ACCOUNT_ID));
+        when(pendingCreditRepository.findOldest(HOT_ACCOUNT_ID, Limit.of(2)))
+                .thenReturn(List.of(pendingCredit(1L, "10.00"), pendingCredit(2L, "20.00")));
+
+        transferService.transfer(createTransferDTO(HOT_ACCOUNT_ID, 300L, "25.00"));
+
+        InOrder inOrder = inOrder(accountRepository, pendingCreditRepository);
+        inOrder.verify(accountRepository).debit(HOT_ACCOUNT_ID, amount);
+        inOrder.verify(accountRepository).lockById(HOT_ACCOUNT_ID);
+        inOrder.verify(pendingCreditRepository).deleteAllByCreditIdIn(List.of(1L, 2L));
+        inOrder.verify(accountRepository).credit(HOT_ACCOUNT_ID, new BigDecimal("30.00"));
+        inOrder.verify(accountRepository).debit(HOT_ACCOUNT_ID, amount);
+        inOrder.verify(accountRepository).credit(300L, amount);
+    }
+
+    @Test
+    void testRetryWithSameReferenceReturnsTransfer() {
+        Transfer existing = new Transfer();
+        existing.setTransferId(7L);
+        existing.setFromAccountId(1L);
+        existing.setToAccountId(2L);
+        existing.setAmount(new BigDecimal("10.00"));
+        when(transferRepository.findOneByReference("ref-1")).thenReturn(Optional.of(existing));
+
+        CreateTransferDTO retry = createTransferDTO(1L, 2L, "10");
+        retry.setReference("ref-1");
+        CreateTransferDTO different = createTransferDTO(1L, 2L, "11.00");
+        different.setReference("ref-1");
+
+        assertEquals(7L, transferService.transfer(retry).getTransferId());
+        assertThrows(ValidationException.class, () -> transferService.transfer(different));
+        verifyNoInteractions(accountRepository);
+    }
+
+    @Test
+    void testConcurrentRetryWithSameReference() {
+        when(transferRepository.findOneByReference("ref-1")).thenReturn(Optional.empty());
+        when(transferRepository.saveAndFlush(any(Transfer.class))).thenThrow(new DataIntegrityViolationException("uk_transfers_reference"));
+
+        CreateTransferDTO createTransferDTO = createTransferDTO(1L, 2L, "10.00");
+        createTransferDTO.setReference("ref-1");
+
+        assertThrows(ValidationException.class, () -> transferService.transfer(createTransferDTO));
+        verifyNoInteractions(accountRepository);
+    }
+
+    @Test
+    void testBalanceIncludesPendingCredits() {
+        when(accountRepository.findBalanceWithPendingCreditsById(HOT_ACCOUNT_ID))
+                .thenReturn(Optional.of(new BalanceDTO(HOT_ACCOUNT_ID, new BigDecimal("130.00"), new BigDecimal("30.00"))));
+        when(accountRepository.findBalanceById(1L)).thenReturn(Optional.empty());
+
+        BalanceDTO balance = transferService.findBalance(HOT_ACCOUNT_ID);
+
+        assertEquals(new BigDecimal("130.00"), balance.getBalance());
+        assertEquals(new BigDecimal("30.00"), balance.getPendingCredits());
+        assertNull(transferService.findBalance(1L));
+    }
+
+    private CreateTransferDTO createTransferDTO(Long fromAccountId, Long toAccountId, String amount) {
+        CreateTransferDTO createTransferDTO = new CreateTransferDTO();
+        createTransferDTO.setFromAccountId(fromAccountId);
+        createTransferDTO.setToAccountId(toAccountId);
+        createTransferDTO.setAmount(new BigDecimal(amount));
+        return createTransferDTO;
+    }
+
+    private PendingCredit pendingCredit(Long creditId, String amount) {
+        PendingCredit pendingCredit = new PendingCredit();
+        pendingCredit.setCreditId(creditId);
+        pendingCredit.setAccountId(HOT_ACCOUNT_ID);
+        pendingCredit.setAmount(new BigDecimal(amount));
+        return pendingCredit;
+    }
+}
@@ -0,0 +1,219 @@
+package tech.kitucode.banking.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import tech.kitucode.banking.ApplicationProperties;
+import tech.kitucode.banking.error.ValidationException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs writes through the coalescer against an in-memory database, with a transaction manager that counts commits.
+ * Batches are formed by a long linger and closed by reaching the maximum batch size, so each test knows which writes
+ * share a transaction.
+ */
+public class WriteCoalescerTest {
+    private static final int BATCH = 5;
+
+    private final AtomicInteger commits = new AtomicInteger();
+    private final AtomicInteger failingCommits = new AtomicInteger();
+    private final ApplicationProperties applicationProperties = new ApplicationProperties();
+    private final ExecutorService executorService = Executors.newFixedThreadPool(BATCH);
+    private JdbcTemplate jdbcTemplate;
+    private DataSourceTransactionManager transactionManager;
+    private WriteCoalescer writeCoalescer;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:writes;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table tbl_writes (name varchar(20) primary key)");
+        transactionManager = new DataSourceTransactionManager(dataSource) {
+            @Override
+            protected void doCommit(DefaultTransactionStatus status) {
+                if (failingCommits.getAndDecrement() > 0) {
+                    throw new TransactionSystemException("Connection reset");
+                }
+                commits.incrementAndGet();
+                super.doCommit(status);
+            }
+        };
+        transactionManager.setRollbackOnCommitFailure(true);
+
+        applicationProperties.setWriteCoalescingEnabled(true);
+        applicationProperties.setWriteCoalescingLingerMicros(TimeUnit.SECONDS.toMicros(10));
+        applicationProperties.setWriteCoalescingMaxBatch(BATCH);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        executorService.shutdownNow();
+        writeCoalescer.stop();
+        jdbcTemplate.execute("drop table tbl_writes");
+    }
+
+    @Test
+    void testConcurrentWritesShareOneCommit() throws Exception {
+        start();
+
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < BATCH; i++) {
+            results.add(submit(null, insert("write-" + i)));
+        }
+
+        for (int i = 0; i < BATCH; i++) {
+            assertEquals("write-" + i, results.get(i).get(30, TimeUnit.SECONDS));
+        }
+        assertEquals(1, commits.get());
+        assertEquals(BATCH, count());
+    }
+
+    @Test
+    void testFailedWriteDoesNotFailOthers() throws Exception {
+        start();
+
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < BATCH - 1; i++) {
+            results.add(submit(null, insert("write-" + i)));
+        }
+        // writes before failing, so its insert has to be rolled back without losing the others
+        Future<String> failing = submit(null, () -> {
+            insert("failing").get();
+            throw new ValidationException("Failing write");
+        });
+
+        for (int i = 0; i < BATCH - 1; i++) {
+            assertEquals("write-" + i, results.get(i).get(30, TimeUnit.SECONDS));
+        }
+        Exception exception = assertThrows(Exception.class, () -> failing.get(30, TimeUnit.SECONDS));
+        assertInstanceOf(ValidationException.class, exception.getCause());
+        assertEquals("Failing write", exception.getCause().getMessage());
+        assertEquals(BATCH - 1, count());
+        assertEquals(0, jdbcTemplate.queryForObject("select count(*) from tbl_writes where name = 'failing'", Integer.class));
+        assertEquals(1, commits.get());
+    }
+
+    @Test
+    void testInvalidWriteIsFailedBeforeItJoinsABatch() throws Exception {
+        start();
+        AtomicInteger runs = new AtomicInteger();
+
+        Future<String> invalid = executorService.submit(() -> writeCoalescer.write(null, () -> {
+            throw new ValidationException("Invalid write");
+        }, insert("invalid")));
+        Exception exception = assertThrows(Exception.class, () -> invalid.get(30, TimeUnit.SECONDS));
+        assertInstanceOf(ValidationException.class, exception.getCause());
+
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < BATCH; i++) {
+            Supplier<String> insert = insert("write-" + i);
+            results.add(submit(null, () -> {
+                runs.incrementAndGet();
+                return insert.get();
+            }));
+        }
+        for (int i = 0; i < BATCH; i++) {
+            assertEquals("write-" + i, results.get(i).get(30, TimeUnit.SECONDS));
+        }
+        // the batch was neither rolled back nor run again
+        assertEquals(BATCH, runs.get());
+        assertEquals(1, commits.get());
+        assertEquals(BATCH, count());
+    }
+
+    @Test
+    void testWritesRunInLockOrder() throws Exception {
+        start();
+        List<Long> order = Collections.synchronizedList(new ArrayList<>());
+
+        List<Future<Long>> results = new ArrayList<>();
+        for (Long lockKey : new Long[]{5L, 3L, null, 1L, 4L}) {
+            results.add(submit(lockKey, () -> {
+                order.add(lockKey);
+                return lockKey;
+            }));
+        }
+        for (Future<Long> result : results) {
+            result.get(30, TimeUnit.SECONDS);
+        }
+
+        assertEquals(Arrays.asList(null, 1L, 3L, 4L, 5L), order);
+    }
+
+    @Test
+    void testFailedCommitWritesOneByOne() throws Exception {
+        failingCommits.set(1);
+        start();
+
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < BATCH; i++) {
+            results.add(submit(null, insert("write-" + i)));
+        }
+
+        for (int i = 0; i < BATCH; i++) {
+            assertEquals("write-" + i, results.get(i).get(30, TimeUnit.SECONDS));
+        }
+        assertEquals(BATCH, commits.get());
+        assertEquals(BATCH, count());
+    }
+
+    @Test
+    void testDisabledWritesRunOnCallingThread() throws InterruptedException {
+        applicationProperties.setWriteCoalescingEnabled(false);
+        start();
+
+        assertEquals(Thread.currentThread().getName(), writeCoalescer.write(() -> Thread.currentThread().getName()));
+        assertThrows(ValidationException.class, () -> writeCoalescer.write(() -> {
+            throw new ValidationException("Failing write");
+        }));
+    }
+
+    @Test
+    void testWritesAfterStopRunOnCallingThread() throws Exception {
+        applicationProperties.setWriteCoalescingLingerMicros(0L);
+        start();
+        assertEquals("write-0", submit(null, insert("write-0")).get(30, TimeUnit.SECONDS));
+
+        writeCoalescer.stop();
+
+        assertEquals(Thread.currentThread().getName(), writeCoalescer.write(() -> Thread.currentThread().getName()));
+    }
+
+    private void start() {
+        writeCoalescer = new WriteCoalescer(transactionManager, applicationProperties, new SimpleMeterRegistry());
+        writeCoalescer.start();
+    }
+
+    private <T> Future<T> submit(Long lockKey, Supplier<T> work) {
+        return executorService.submit(() -> writeCoalescer.write(lockKey, work));
+    }
+
+    private Supplier<String> insert(String name) {
+        return () -> {
+            jdbcTemplate.update("insert into tbl_writes (name) values (?)", name);
+            return name;
+        };
+    }
+
+    private int count() {
+        return jdbcTemplate.queryForObject("select count(*) from tbl_writes", Integer.class);
+    }
+}
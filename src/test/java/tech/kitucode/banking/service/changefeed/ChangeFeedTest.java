@@ -0,0 +1,251 @@
+package tech.kitucode.banking.service.changefeed;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import tech.kitucode.banking.ApplicationProperties;
+import tech.kitucode.banking.domain.OutboxEvent;
+import tech.kitucode.banking.domain.enumerations.AggregateType;
+import tech.kitucode.banking.domain.enumerations.ChangeType;
+import tech.kitucode.banking.error.CursorExpiredException;
+import tech.kitucode.banking.error.ValidationException;
+import tech.kitucode.banking.service.cluster.ClusterNotifications;
+import tech.kitucode.banking.service.dto.ChangeBatchDTO;
+import tech.kitucode.banking.service.dto.ChangeEventDTO;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@Slf4j
+public class ChangeFeedTest {
+    private final List<ChangeFeed> feeds = new ArrayList<>();
+    private ChangeFeed changeFeed;
+    private long nextEventId = 100;
+
+    @BeforeEach
+    void setUp() {
+        changeFeed = changeFeed(null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        feeds.forEach(ChangeFeed::shutdown);
+    }
+
+    @Test
+    void testReadResumesFromCursorAndFilters() {
+        String start = changeFeed.resolveCursor(null);
+        changeFeed.append(List.of(event(AggregateType.CUSTOMER, 1L), event(AggregateType.CARD, 7L), event(AggregateType.CUSTOMER, 2L)));
+
+        ChangeBatchDTO first = changeFeed.read(start, null, 2);
+        assertEquals(List.of(1L, 7L), first.getEvents().stream().map(ChangeEventDTO::getAggregateId).toList());
+
+        ChangeBatchDTO second = changeFeed.read(first.getCursor(), null, 10);
+        assertEquals(List.of(3L), second.getEvents().stream().map(ChangeEventDTO::getSequence).toList());
+
+        // the cursor moves past the filtered out card change
+        ChangeBatchDTO customers = changeFeed.read(start, Set.of(AggregateType.CUSTOMER), 10);
+        assertEquals(List.of(1L, 2L), customers.getEvents().stream().map(ChangeEventDTO::getAggregateId).toList());
+        assertEquals(second.getCursor(), customers.getCursor());
+
+        // no cursor means from now on
+        assertTrue(changeFeed.read(null, null, 10).getEvents().isEmpty());
+    }
+
+    @Test
+    void testOverwrittenAndForeignCursorsExpire() {
+        String start = changeFeed.resolveCursor(null);
+        for (long i = 1; i <= 4; i++) {
+            changeFeed.append(List.of(event(AggregateType.ACCOUNT, i)));
+        }
+        assertEquals(4, changeFeed.read(start, null, 10).getEvents().size());
+
+        changeFeed.append(List.of(event(AggregateType.ACCOUNT, 5L)));
+
+        assertThrows(CursorExpiredException.class, () -> changeFeed.read(start, null, 10));
+        assertThrows(CursorExpiredException.class, () -> changeFeed.read("abc-1", null, 10));
+        assertThrows(ValidationException.class, () -> changeFeed.read("nonsense", null, 10));
+        assertThrows(ValidationException.class, () -> changeFeed.read(null, null, 0));
+    }
+
+    @Test
+    void testOnlyCommittedChangesAreAppended() {
+        String start = changeFeed.resolveCursor(null);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            changeFeed.appendAfterCommit(event(AggregateType.CUSTOMER, 1L));
+            changeFeed.appendAfterCommit(event(AggregateType.CUSTOMER, 2L));
+            assertTrue(changeFeed.read(start, null, 10).getEvents().isEmpty());
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertEquals(2, changeFeed.read(start, null, 10).getEvents().size());
+    }
+
+    @Test
+    void testSubscribersAreSignalledOnAppend() throws InterruptedException {
+        Semaphore signals = new Semaphore(0);
+        ChangeFeed.Subscription subscription = changeFeed.subscribe(signals::release);
+
+        // one signal straight away so a subscriber cannot miss a change made while it subscribed
+        assertTrue(signals.tryAcquire(5, TimeUnit.SECONDS));
+
+        changeFeed.append(List.of(event(AggregateType.CARD, 1L)));
+        assertTrue(signals.tryAcquire(5, TimeUnit.SECONDS));
+
+        subscription.cancel();
+        changeFeed.append(List.of(event(AggregateType.CARD, 2L)));
+        assertFalse(signals.tryAcquire(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void testChangesOfEveryInstanceAreAppendedInDeliveryOrderAndCursorsMoveBetweenInstances() {
+        // postgres delivers every committed notification to every instance, the sender included, in commit order
+        ClusterNotifications first = mock(ClusterNotifications.class);
+        ClusterNotifications second = mock(ClusterNotifications.class);
+        ChangeFeed firstFeed = changeFeed(first);
+        ChangeFeed secondFeed = changeFeed(second);
+        List<Consumer<String>> handlers = List.of(handler(first), handler(second));
+        String start = firstFeed.resolveCursor(null);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            firstFeed.appendAfterCommit(event(AggregateType.CUSTOMER, 1L));
+            firstFeed.appendAfterCommit(event(AggregateType.CARD, 2L));
+            TransactionSynchronizationManager.getSynchronizations().forEach(synchronization -> synchronization.beforeCommit(false));
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        // nothing is appended before it comes back from the database
+        assertTrue(firstFeed.read(start, null, 10).getEvents().isEmpty());
+        secondFeed.appendAfterCommit(event(AggregateType.ACCOUNT, 3L));
+
+        ArgumentCaptor<List<String>> firstMessages = ArgumentCaptor.forClass(List.class);
+        verify(first).publish(eq(ChangeFeed.TOPIC), firstMessages.capture());
+        ArgumentCaptor<List<String>> secondMessages = ArgumentCaptor.forClass(List.class);
+        verify(second).publish(eq(ChangeFeed.TOPIC), secondMessages.capture());
+        // one statement for the whole transaction
+        assertEquals(2, firstMessages.getValue().size());
+
+        List<String> delivered = new ArrayList<>(secondMessages.getValue());
+        delivered.addAll(firstMessages.getValue());
+        for (String message : delivered) {
+            handlers.forEach(handler -> handler.accept(message));
+        }
+
+        ChangeBatchDTO onFirst = firstFeed.read(start, null, 1);
+        assertEquals(List.of(3L), onFirst.getEvents().stream().map(ChangeEventDTO::getAggregateId).toList());
+        assertNull(onFirst.getEvents().get(0).getPayload());
+
+        // the rest is read from the other instance, which hands out a cursor of its own
+        ChangeBatchDTO onSecond = secondFeed.read(onFirst.getCursor(), null, 10);
+        assertEquals(List.of(1L, 2L), onSecond.getEvents().stream().map(ChangeEventDTO::getAggregateId).toList());
+        assertEquals("{\"customerId\": 1}", onSecond.getEvents().get(0).getPayload());
+        assertEquals(AggregateType.CARD, onSecond.getEvents().get(1).getAggregateType());
+        assertTrue(secondFeed.read(onSecond.getCursor(), null, 10).getEvents().isEmpty());
+        assertEquals(onSecond.getCursor(), secondFeed.resolveCursor(firstFeed.read(start, null, 10).getCursor()));
+    }
+
+    @Test
+    void testCursorFromAnotherInstanceWaitsForItsChange() throws InterruptedException {
+        ClusterNotifications first = mock(ClusterNotifications.class);
+        ClusterNotifications second = mock(ClusterNotifications.class);
+        ChangeFeed firstFeed = changeFeed(first);
+        ChangeFeed secondFeed = changeFeed(second);
+        String message = ChangeFeed.encode(event(AggregateType.CUSTOMER, 1L));
+
+        handler(first).accept(message);
+        String cursor = firstFeed.resolveCursor(null);
+        // not yet delivered to the second instance
+        assertThrows(CursorExpiredException.class, () -> secondFeed.read(cursor, null, 10));
+
+        Thread delivery = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                return;
+            }
+            handler(second).accept(message);
+            handler(second).accept(ChangeFeed.encode(event(AggregateType.CUSTOMER, 2L)));
+        });
+        delivery.start();
+        ChangeBatchDTO batch = secondFeed.read(cursor, null, 10);
+        delivery.join();
+        // the batch may have been read before the second change arrived
+        assertTrue(batch.getEvents().stream().allMatch(event -> event.getAggregateId() == 2L));
+        assertEquals(2L, secondFeed.read(cursor, null, 10).getEvents().get(0).getAggregateId());
+
+        // a cursor from another instance that has no change to resume after, or from an instance without cluster notifications
+        assertThrows(CursorExpiredException.class, () -> secondFeed.read("abc-0", null, 10));
+        assertThrows(CursorExpiredException.class, () -> changeFeed.read(cursor, null, 10));
+    }
+
+    @Test
+    void testCursorsExpireWhenChangesMayHaveBeenMissed() {
+        ClusterNotifications clusterNotifications = mock(ClusterNotifications.class);
+        ChangeFeed feed = changeFeed(clusterNotifications);
+        ArgumentCaptor<Runnable> resync = ArgumentCaptor.forClass(Runnable.class);
+        verify(clusterNotifications).subscribeIncludingOwn(eq(ChangeFeed.TOPIC), any(), resync.capture());
+
+        handler(clusterNotifications).accept(ChangeFeed.encode(event(AggregateType.CUSTOMER, 1L)));
+        String cursor = feed.resolveCursor(null);
+        resync.getValue().run();
+        handler(clusterNotifications).accept(ChangeFeed.encode(event(AggregateType.CUSTOMER, 2L)));
+
+        assertThrows(CursorExpiredException.class, () -> feed.read(cursor, null, 10));
+        String resumed = feed.resolveCursor(null);
+        handler(clusterNotifications).accept(ChangeFeed.encode(event(AggregateType.CUSTOMER, 3L)));
+        assertEquals(1, feed.read(resumed, null, 10).getEvents().size());
+    }
+
+    private ChangeFeed changeFeed(ClusterNotifications clusterNotifications) {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.setChangeFeedCapacity(4);
+        applicationProperties.setChangeFeedDispatchers(1);
+        ObjectProvider<ClusterNotifications> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable()).thenReturn(clusterNotifications);
+        ChangeFeed feed = new ChangeFeed(applicationProperties, new SimpleMeterRegistry(), provider);
+        feeds.add(feed);
+        return feed;
+    }
+
+    private static Consumer<String> handler(ClusterNotifications clusterNotifications) {
+        ArgumentCaptor<Consumer<String>> handler = ArgumentCaptor.forClass(Consumer.class);
+        verify(clusterNotifications).subscribeIncludingOwn(eq(ChangeFeed.TOPIC), handler.capture(), any());
+        return handler.getValue();
+    }
+
+    private OutboxEvent event(AggregateType aggregateType, Long aggregateId) {
+        OutboxEvent outboxEvent = new OutboxEvent();
+        outboxEvent.setEventId(nextEventId++);
+        outboxEvent.setAggregateType(aggregateType);
+        outboxEvent.setAggregateId(aggregateId);
+        outboxEvent.setChangeType(ChangeType.UPDATED);
+        outboxEvent.setPayload(aggregateType == AggregateType.ACCOUNT ? null : "{\"customerId\": " + aggregateId + "}");
+        outboxEvent.setCreatedAt(LocalDateTime.now());
+        return outboxEvent;
+    }
+}
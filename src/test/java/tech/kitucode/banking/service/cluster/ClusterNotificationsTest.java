@@ -0,0 +1,123 @@
+package tech.kitucode.banking.service.cluster;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Two instances sharing a postgres database. Skipped without docker.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+public class ClusterNotificationsTest {
+
+    @Container
+    private static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:17-alpine");
+
+    private final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+    private final AtomicInteger resyncs = new AtomicInteger();
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private ClusterNotifications sender;
+    private ClusterNotifications receiver;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(POSTGRES.getJdbcUrl(), POSTGRES.getUsername(), POSTGRES.getPassword());
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        DataSourceProperties dataSourceProperties = new DataSourceProperties();
+        dataSourceProperties.setUrl(POSTGRES.getJdbcUrl());
+        dataSourceProperties.setUsername(POSTGRES.getUsername());
+        dataSourceProperties.setPassword(POSTGRES.getPassword());
+
+        sender = new ClusterNotifications(jdbcTemplate, dataSourceProperties);
+        sender.subscribe("test", received::add, resyncs::incrementAndGet);
+        sender.start();
+        receiver = new ClusterNotifications(jdbcTemplate, dataSourceProperties);
+        receiver.subscribe("test", received::add, resyncs::incrementAndGet);
+        receiver.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        sender.stop();
+        receiver.stop();
+    }
+
+    @Test
+    void testOnlyCommittedNotificationsReachTheOtherInstance() throws InterruptedException {
+        transactionTemplate.executeWithoutResult(status -> {
+            sender.publish("test", "rolled-back");
+            status.setRollbackOnly();
+        });
+        transactionTemplate.executeWithoutResult(status -> {
+            sender.publish("test", "customers:1");
+            // not delivered before the commit
+            try {
+                assertNull(received.poll(200, TimeUnit.MILLISECONDS));
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        sender.publish("other-topic", "ignored");
+        sender.publish("test", "customers:2");
+
+        assertEquals("customers:1", received.poll(5, TimeUnit.SECONDS));
+        assertEquals("customers:2", received.poll(5, TimeUnit.SECONDS));
+        // the sender does not receive its own notifications
+        assertNull(received.poll(200, TimeUnit.MILLISECONDS));
+        assertEquals(0, resyncs.get());
+    }
+
+    @Test
+    void testBatchesArriveInOrderOnEveryInstanceWhenOwnMessagesAreIncluded() throws InterruptedException {
+        BlockingQueue<String> senderReceived = new LinkedBlockingQueue<>();
+        BlockingQueue<String> receiverReceived = new LinkedBlockingQueue<>();
+        sender.subscribeIncludingOwn("ordered", senderReceived::add, resyncs::incrementAndGet);
+        receiver.subscribeIncludingOwn("ordered", receiverReceived::add, resyncs::incrementAndGet);
+
+        transactionTemplate.executeWithoutResult(status -> sender.publish("ordered", List.of("1", "2")));
+        receiver.publish("ordered", List.of("3"));
+        transactionTemplate.executeWithoutResult(status -> sender.publish("ordered", List.of("4 with spaces", "5")));
+
+        for (BlockingQueue<String> queue : List.of(senderReceived, receiverReceived)) {
+            for (String expected : List.of("1", "2", "3", "4 with spaces", "5")) {
+                assertEquals(expected, queue.poll(5, TimeUnit.SECONDS));
+            }
+        }
+    }
+
+    @Test
+    void testResyncsAfterTheListeningConnectionIsLost() throws InterruptedException {
+        List<Integer> listeners = jdbcTemplate.queryForList("select pid from pg_stat_activity where query = 'listen " + ClusterNotifications.CHANNEL + "'", Integer.class);
+        assertEquals(2, listeners.size());
+        for (Integer pid : listeners) {
+            jdbcTemplate.queryForObject("select pg_terminate_backend(?)", Boolean.class, pid);
+        }
+
+        for (int i = 0; i < 50 && resyncs.get() < 2; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(2, resyncs.get());
+
+        sender.publish("test", "cards:1");
+        assertEquals("cards:1", received.poll(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,109 @@
+package tech.kitucode.banking.service.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Kills a process that is posting to the journal from several threads and checks that every posting it had
+ * acknowledged is found, intact and in sequence, when the journal is opened again. The kill loses the process but
+ * not the page cache, so this covers a crashed instance rather than a lost machine.
+ */
+public class PostingJournalCrashTest {
+    private static final int SEGMENT_BYTES = 4096 * PostingJournal.RECORD_BYTES;
+    private static final int THREADS = 4;
+    private static final String ACKNOWLEDGED = "acknowledged ";
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void testAcknowledgedPostingsSurviveKill() throws Exception {
+        for (int round = 0; round < 3; round++) {
+            long acknowledged = crashWhilePosting(1000 + ThreadLocalRandom.current().nextInt(5000));
+
+            try (PostingJournal journal = new PostingJournal(directory, SEGMENT_BYTES)) {
+                assertTrue(journal.lastSequence() >= acknowledged, "Posting " + acknowledged + " was acknowledged but the journal ends at " + journal.lastSequence());
+
+                // each thread posts its own count, so the postings of an account must replay as 1, 2, 3...
+                long[] lastCount = new long[THREADS];
+                List<Long> outOfOrder = new ArrayList<>();
+                journal.replay(0, journal.lastSequence(), (sequence, accountId, amount, timestamp) -> {
+                    if (amount != lastCount[(int) accountId] + 1) {
+                        outOfOrder.add(sequence);
+                    }
+                    lastCount[(int) accountId] = amount;
+                });
+                assertEquals(List.of(), outOfOrder);
+            }
+        }
+    }
+
+    /**
+     * Starts a process that posts until it is killed once {@code postings} postings were acknowledged, and returns
+     * the highest acknowledged sequence.
+     */
+    private long crashWhilePosting(int postings) throws Exception {
+        Process process = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"), Writer.class.getName(), directory.toString())
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+
+        long acknowledged = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            int read = 0;
+            while (read < postings && (line = reader.readLine()) != null) {
+                // the process logs to the same output
+                if (line.startsWith(ACKNOWLEDGED)) {
+                    acknowledged = Math.max(acknowledged, Long.parseLong(line.substring(ACKNOWLEDGED.length())));
+                    read++;
+                }
+            }
+        } finally {
+            process.destroyForcibly();
+            process.waitFor();
+        }
+        return acknowledged;
+    }
+
+    /**
+     * Posts from several threads and prints each sequence once it is durable. After a crash the threads continue
+     * from the counts they find in the journal.
+     */
+    public static class Writer {
+        public static void main(String[] args) throws Exception {
+            PostingJournal journal = new PostingJournal(Path.of(args[0]), SEGMENT_BYTES);
+            PrintStream out = new PrintStream(System.out, false, StandardCharsets.UTF_8);
+            long[] lastCount = new long[THREADS];
+            journal.replay(0, journal.lastSequence(), (sequence, accountId, amount, timestamp) -> lastCount[(int) accountId] = amount);
+
+            for (int t = 0; t < THREADS; t++) {
+                long accountId = t;
+                long firstCount = lastCount[t] + 1;
+                Thread thread = new Thread(() -> {
+                    for (long count = firstCount; ; count++) {
+                        long sequence = journal.append(accountId, count, System.currentTimeMillis());
+                        journal.sync(sequence);
+                        synchronized (out) {
+                            out.println(ACKNOWLEDGED + sequence);
+                            out.flush();
+                        }
+                    }
+                });
+                thread.start();
+            }
+        }
+    }
+}
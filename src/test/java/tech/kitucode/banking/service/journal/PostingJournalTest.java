@@ -0,0 +1,231 @@
+package tech.kitucode.banking.service.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PostingJournalTest {
+    private static final int SEGMENT_BYTES = 10 * PostingJournal.RECORD_BYTES;
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void testAppendAndReplay() throws IOException {
+        try (PostingJournal journal = new PostingJournal(directory, SEGMENT_BYTES)) {
+            for (long i = 1; i <= 25; i++) {
+                assertEquals(i, journal.append(i % 3, i * 100, 1000 + i));
+            }
+            journal.sync(25);
+
+            List<long[]> postings = replay(journal, 0, 25);
+            assertEquals(25, postings.size());
+            for (int i = 0; i < postings.size(); i++) {
+                long sequence = i + 1;
+                assertArrayEquals(new long[]{sequence, sequence % 3, sequence * 100, 1000 + sequence}, postings.get(i));
+            }
+            assertEquals(List.of(11L, 12L), replay(journal, 10, 12).stream().map(posting -> posting[0]).toList());
+            assertEquals(3, segmentFiles().size());
+        }
+    }
+
+    @Test
+    void testOnlyDurablePostingsAreReplayed() throws IOException {
+        try (PostingJournal journal = new PostingJournal(directory, SEGMENT_BYTES)) {
+            journal.append(1, 100, 0);
+            journal.append(1, 100, 0);
+            journal.sync(1);
+
+            assertEquals(2, journal.durableSequence());
+            journal.append(1, 100, 0);
+            assertThrows(IllegalArgumentException.class, () -> replay(journal, 0, 3));
+        }
+    }
+
+    @Test
+    void testReopenContinuesAfterLastPosting() throws IOException {
+        try (PostingJournal journal = new PostingJournal(directory, SEGMENT_BYTES)) {
+            for (int i = 0; i < 15; i++) {
+                journal.append(1, 100, 0);
+            }
+        }
+
+        try (PostingJournal journal = new PostingJournal(directory, SEGMENT_BYTES)) {
+            assertEquals(15, journal.lastSequence());
+            assertEquals(15, journal.durableSequence());
+            assertEquals(16, journal.append(2, 200, 0));
+            journal.sync(16);
+            assertEquals(16, replay(journal, 0, 16).size());
+        }
+    }
+
+    @Test
+    void testIncompletePostingIsDiscarded() throws IOException {
+        try (PostingJournal journal = new PostingJournal(directory, SEGMENT_BYTES)) {
+            for (int i = 0; i < 5; i++) {
+                journal.append(1, 100, 0);
+            }
+        }
+
+        // posting 4 is torn; posting 5 reached the disk but was never acknowledged
+        Path segment = segmentFiles().get(0);
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.seek(3L * PostingJournal.RECORD_BYTES + 20);
+            file.writeInt(0xdeadbeef);
+        }
+
+        try (PostingJournal journal = new PostingJournal(directory, SEGMENT_BYTES)) {
+            assertEquals(3, journal.lastSequence());
+            assertEquals(4, journal.append(1, 400, 0));
+            assertEquals(5, journal.append(1, 500, 0));
+            journal.sync(5);
+        }
+
+        try (PostingJournal journal = new PostingJournal(directory, SEGMENT_BYTES)) {
+            assertEquals(5, journal.lastSequence());
+            List<long[]> postings = replay(journal, 3, 5);
+            assertEquals(400, postings.get(0)[2]);
+            assertEquals(500, postings.get(1)[2]);
+        }
+    }
+
+    @Test
+    void testUnsyncedTailOfEarlierSegmentEndsTheJournal() throws IOException {
+        try (PostingJournal journal = new PostingJournal(directory, SEGMENT_BYTES)) {
+            for (int i = 0; i < 25; i++) {
+                journal.append(1, 100, 0);
+            }
+        }
+
+        // the power went out after the third segment was created, before the tail of the second one was forced
+        Path second = segmentFiles().get(1);
+        try (RandomAccessFile file = new RandomAccessFile(second.toFile(), "rw")) {
+            file.seek(7L * PostingJournal.RECORD_BYTES);
+            file.write(new byte[3 * PostingJournal.RECORD_BYTES]);
+        }
+
+        try (PostingJournal journal = new PostingJournal(directory, SEGMENT_BYTES)) {
+            assertEquals(17, journal.lastSequence());
+            assertEquals(2, segmentFiles().size());
+            assertEquals(18, journal.append(1, 1800, 0));
+            journal.sync(18);
+        }
+
+        try (PostingJournal journal = new PostingJournal(directory, SEGMENT_BYTES)) {
+            assertEquals(18, journal.lastSequence());
+            assertEquals(1800, replay(journal, 17, 18).get(0)[2]);
+        }
+    }
+
+    @Test
+    void testStalePostingAfterTheEndIsZeroed() throws IOException {
+        try (PostingJournal journal = new PostingJournal(directory, SEGMENT_BYTES)) {
+            for (int i = 0; i < 3; i++) {
+                journal.append(1, 100, 0);
+            }
+        }
+
+        // posting 2 never reached the disk, so postings 2 and 3 are lost; posting 3 must not come back after 2 is rewritten
+        Path segment = segmentFiles().get(0);
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.seek(PostingJournal.RECORD_BYTES);
+            file.write(new byte[PostingJournal.RECORD_BYTES]);
+        }
+
+        try (PostingJournal journal = new PostingJournal(directory, SEGMENT_BYTES)) {
+            assertEquals(1, journal.lastSequence());
+            journal.append(1, 200, 0);
+        }
+
+        try (PostingJournal journal = new PostingJournal(directory, SEGMENT_BYTES)) {
+            assertEquals(2, journal.lastSequence());
+        }
+    }
+
+    @Test
+    void testReleaseDeletesAppliedSegments() throws IOException {
+        try (PostingJournal journal = new PostingJournal(directory, SEGMENT_BYTES)) {
+            for (int i = 0; i < 25; i++) {
+                journal.append(1, 100, 0);
+            }
+            journal.sync(25);
+
+            journal.release(15);
+            assertEquals(2, segmentFiles().size());
+            assertThrows(IllegalStateException.class, () -> replay(journal, 0, 25));
+            assertEquals(15, replay(journal, 10, 25).size());
+
+            journal.release(25);
+            assertEquals(1, segmentFiles().size());
+        }
+
+        try (PostingJournal journal = new PostingJournal(directory, SEGMENT_BYTES)) {
+            assertEquals(25, journal.lastSequence());
+        }
+    }
+
+    @Test
+    void testStartAfterCheckpoint() throws IOException {
+        try (PostingJournal journal = new PostingJournal(directory, SEGMENT_BYTES)) {
+            journal.startAfter(41);
+            assertEquals(42, journal.append(1, 100, 0));
+        }
+
+        try (PostingJournal journal = new PostingJournal(directory, SEGMENT_BYTES)) {
+            assertEquals(42, journal.lastSequence());
+            assertThrows(IllegalStateException.class, () -> journal.startAfter(50));
+        }
+    }
+
+    @Test
+    void testConcurrentPostingsGetEverySequenceOnce() throws Exception {
+        int threads = 8;
+        int postingsPerThread = 2000;
+
+        try (PostingJournal journal = new PostingJournal(directory, 1000 * PostingJournal.RECORD_BYTES)) {
+            ExecutorService executorService = Executors.newFixedThreadPool(threads);
+            for (int t = 0; t < threads; t++) {
+                long accountId = t;
+                executorService.submit(() -> {
+                    for (int i = 0; i < postingsPerThread; i++) {
+                        journal.sync(journal.append(accountId, 1, 0));
+                    }
+                });
+            }
+            executorService.shutdown();
+            assertTrue(executorService.awaitTermination(60, TimeUnit.SECONDS));
+
+            long total = threads * postingsPerThread;
+            assertEquals(total, journal.durableSequence());
+            long[] perAccount = new long[threads];
+            journal.replay(0, total, (sequence, accountId, amount, timestamp) -> perAccount[(int) accountId] += amount);
+            for (long postings : perAccount) {
+                assertEquals(postingsPerThread, postings);
+            }
+        }
+    }
+
+    private static List<long[]> replay(PostingJournal journal, long after, long upTo) {
+        List<long[]> postings = new ArrayList<>();
+        journal.replay(after, upTo, (sequence, accountId, amount, timestamp) -> postings.add(new long[]{sequence, accountId, amount, timestamp}));
+        return postings;
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().toList();
+        }
+    }
+}
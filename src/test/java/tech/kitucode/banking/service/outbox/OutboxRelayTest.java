@@ -0,0 +1,103 @@
+package tech.kitucode.banking.service.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+import tech.kitucode.banking.ApplicationProperties;
+import tech.kitucode.banking.domain.OutboxEvent;
+import tech.kitucode.banking.domain.enumerations.AggregateType;
+import tech.kitucode.banking.domain.enumerations.ChangeType;
+import tech.kitucode.banking.repository.OutboxEventRepository;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@Slf4j
+@ExtendWith(MockitoExtension.class)
+public class OutboxRelayTest {
+
+    @Mock
+    private OutboxEventRepository outboxEventRepository;
+
+    @Mock
+    private OutboxSink outboxSink;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private OutboxRelay outboxRelay;
+
+    @BeforeEach
+    void setUp() {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.setOutboxBatchSize(2);
+
+        outboxRelay = new OutboxRelay(outboxEventRepository, outboxSink, applicationProperties, transactionManager, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void testFullBatchesAreDrainedAndDeleted() throws Exception {
+        List<OutboxEvent> first = List.of(event(1L), event(2L));
+        List<OutboxEvent> second = List.of(event(3L));
+        when(outboxEventRepository.findNextBatch(Limit.of(2))).thenReturn(first, second);
+
+        outboxRelay.relay();
+
+        verify(outboxSink).publish(first);
+        verify(outboxSink).publish(second);
+        verify(outboxEventRepository).deleteAllInBatch(first);
+        verify(outboxEventRepository).deleteAllInBatch(second);
+        verify(outboxEventRepository, times(2)).findNextBatch(any());
+    }
+
+    @Test
+    void testFailedBatchIsKept() throws Exception {
+        List<OutboxEvent> batch = List.of(event(1L), event(2L));
+        when(outboxEventRepository.findNextBatch(Limit.of(2))).thenReturn(batch);
+        doThrow(new IllegalStateException("receiver unavailable")).when(outboxSink).publish(batch);
+
+        outboxRelay.relay();
+
+        verify(outboxEventRepository, never()).deleteAllInBatch(any());
+    }
+
+    @Test
+    void testFileSinkAppendsOneLinePerEvent(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("outbox/events.ndjson");
+        FileOutboxSink fileOutboxSink = new FileOutboxSink(file, new ObjectMapper().findAndRegisterModules());
+
+        fileOutboxSink.publish(List.of(event(1L), event(2L)));
+        fileOutboxSink.publish(List.of(event(3L)));
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).startsWith("{\"eventId\":1,"), lines.get(0));
+        assertTrue(lines.get(0).contains("\"payload\":{\"customerId\":1}"), lines.get(0));
+    }
+
+    private OutboxEvent event(Long id) {
+        OutboxEvent outboxEvent = new OutboxEvent();
+        outboxEvent.setEventId(id);
+        outboxEvent.setAggregateType(AggregateType.CUSTOMER);
+        outboxEvent.setAggregateId(id);
+        outboxEvent.setChangeType(ChangeType.CREATED);
+        outboxEvent.setPayload("{\"customerId\":" + id + "}");
+        outboxEvent.setCreatedAt(LocalDateTime.now());
+        return outboxEvent;
+    }
+}
@@ -0,0 +1,59 @@
+package tech.kitucode.banking.service.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import tech.kitucode.banking.error.ValidationException;
+import tech.kitucode.banking.service.dto.BatchLookupDTO;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Slf4j
+public class BatchLookupUtilTest {
+
+    @Test
+    void testKeepsRequestOrderAndReportsMissing() {
+        List<List<Long>> queries = new ArrayList<>();
+        // even keys exist; the "database" returns them in reverse order
+        Function<List<Long>, List<Long>> query = keys -> {
+            queries.add(List.copyOf(keys));
+            List<Long> found = new ArrayList<>(keys.stream().filter(key -> key % 2 == 0).toList());
+            Collections.reverse(found);
+            return found;
+        };
+
+        BatchLookupDTO<Long, Long> result = BatchLookupUtil.lookup(List.of(4L, 3L, 2L, 4L, 7L), query, Function.identity());
+
+        assertEquals(List.of(4L, 2L), result.getFound());
+        assertEquals(List.of(3L, 7L), result.getMissing());
+        assertEquals(List.of(List.of(4L, 3L, 2L, 7L)), queries);
+    }
+
+    @Test
+    void testChunksLargeLookups() {
+        List<Long> keys = LongStream.rangeClosed(1, 600).boxed().toList();
+        List<Integer> chunkSizes = new ArrayList<>();
+
+        BatchLookupDTO<Long, Long> result = BatchLookupUtil.lookup(keys, chunk -> {
+            chunkSizes.add(chunk.size());
+            return chunk;
+        }, Function.identity());
+
+        assertEquals(keys, result.getFound());
+        assertEquals(List.of(256, 256, 88), chunkSizes);
+    }
+
+    @Test
+    void testRejectsEmptyAndOversizedLookups() {
+        assertThrows(ValidationException.class, () -> BatchLookupUtil.lookup(List.<Long>of(), List::copyOf, Function.identity()));
+        assertThrows(ValidationException.class, () -> BatchLookupUtil.lookup(null, List::copyOf, Function.<Long>identity()));
+
+        List<Long> tooMany = LongStream.rangeClosed(1, BatchLookupUtil.MAX_KEYS + 1).boxed().toList();
+        assertThrows(ValidationException.class, () -> BatchLookupUtil.lookup(tooMany, List::copyOf, Function.identity()));
+    }
+}
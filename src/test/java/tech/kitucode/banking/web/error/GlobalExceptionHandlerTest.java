@@ -0,0 +1,30 @@
+package tech.kitucode.banking.web.error;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import tech.kitucode.banking.error.ValidationException;
+import tech.kitucode.banking.web.util.PaginationUtil;
+import tech.kitucode.banking.web.vm.ErrorResponse;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GlobalExceptionHandlerTest {
+
+    @Test
+    void testValidationFailuresAreCountedBySource() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        GlobalExceptionHandler globalExceptionHandler = new GlobalExceptionHandler(meterRegistry);
+
+        ValidationException ex = assertThrows(ValidationException.class, () -> PaginationUtil.decodeCursor("not a cursor", "customerId"));
+        ResponseEntity<ErrorResponse> response = globalExceptionHandler.handleValidationException(ex);
+        globalExceptionHandler.handleValidationException(ex);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals(2.0, meterRegistry.get("banking.validation.failures")
+                .tag("source", "PaginationUtil.decodeCursor")
+                .counter()
+                .count());
+    }
+}
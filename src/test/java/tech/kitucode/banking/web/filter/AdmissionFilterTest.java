@@ -0,0 +1,149 @@
+package tech.kitucode.banking.web.filter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import tech.kitucode.banking.web.filter.AdmissionFilter.EndpointClass;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Slf4j
+public class AdmissionFilterTest {
+    private final AtomicInteger poolWaiters = new AtomicInteger();
+
+    @Test
+    void testRateLimiterAllowsBurstThenSustainedRate() {
+        RateLimiter rateLimiter = new RateLimiter(10, 3);
+        long now = TimeUnit.SECONDS.toNanos(100);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, rateLimiter.tryAcquire("partner", now));
+        }
+        long wait = rateLimiter.tryAcquire("partner", now);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), wait);
+
+        // other clients have their own bucket
+        assertEquals(0, rateLimiter.tryAcquire("other", now));
+
+        assertEquals(0, rateLimiter.tryAcquire("partner", now + wait));
+        assertTrue(rateLimiter.tryAcquire("partner", now + wait) > 0);
+    }
+
+    @Test
+    void testReadsAndWritesHaveSeparateQuotas() throws Exception {
+        AdmissionFilter admissionFilter = admissionFilter(new RateLimiter(1, 1), new RateLimiter(1, 1), 10);
+
+        assertEquals(200, execute(admissionFilter, "GET", "/api/cards").getStatus());
+
+        MockHttpServletResponse rejected = execute(admissionFilter, "GET", "/api/cards");
+        assertEquals(429, rejected.getStatus());
+        assertEquals("1", rejected.getHeader("Retry-After"));
+
+        assertEquals(200, execute(admissionFilter, "POST", "/api/cards").getStatus());
+        // batch lookups are posted but count as reads
+        assertEquals(429, execute(admissionFilter, "POST", "/api/cards/_batch").getStatus());
+    }
+
+    @Test
+    void testClientsAreNotToldApartByTheirClientId() throws Exception {
+        AdmissionFilter admissionFilter = admissionFilter(new RateLimiter(1, 1), new RateLimiter(1, 1), 10);
+
+        assertEquals(200, execute(admissionFilter, "GET", "/api/cards").getStatus());
+
+        // a new client id does not get a new quota
+        MockHttpServletRequest renamed = request("GET", "/api/cards");
+        renamed.removeHeader(ReadYourWritesFilter.CLIENT_ID_HEADER);
+        renamed.addHeader(ReadYourWritesFilter.CLIENT_ID_HEADER, "someone-else");
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        admissionFilter.doFilter(renamed, rejected, (request, response) -> {
+        });
+        assertEquals(429, rejected.getStatus());
+
+        // another address does
+        MockHttpServletRequest otherAddress = request("GET", "/api/cards");
+        otherAddress.setRemoteAddr("10.0.0.2");
+        MockHttpServletResponse admitted = new MockHttpServletResponse();
+        admissionFilter.doFilter(otherAddress, admitted, (request, response) -> {
+        });
+        assertEquals(200, admitted.getStatus());
+    }
+
+    @Test
+    void testAuthenticatedClientsAreToldApartByPrincipal() {
+        MockHttpServletRequest request = request("GET", "/api/cards");
+        assertEquals("127.0.0.1", AdmissionFilter.clientOf(request));
+
+        request.setUserPrincipal(() -> "partner");
+        assertEquals("principal:partner", AdmissionFilter.clientOf(request));
+    }
+
+    @Test
+    void testConcurrencyLimitPerEndpointClass() throws Exception {
+        AdmissionFilter admissionFilter = admissionFilter(new RateLimiter(1000, 1000), new RateLimiter(1000, 1000), 1);
+        MockHttpServletResponse nested = new MockHttpServletResponse();
+        MockHttpServletResponse otherClass = new MockHttpServletResponse();
+
+        admissionFilter.doFilter(request("GET", "/api/customers"), new MockHttpServletResponse(), (request, response) -> {
+            // a second read while the first is in flight is turned away, a write is not
+            admissionFilter.doFilter(request("GET", "/api/customers/1"), nested, (nestedRequest, nestedResponse) -> {
+            });
+            admissionFilter.doFilter(request("PUT", "/api/customers"), otherClass, (nestedRequest, nestedResponse) -> {
+            });
+        });
+
+        assertEquals(429, nested.getStatus());
+        assertEquals(200, otherClass.getStatus());
+        assertEquals(200, execute(admissionFilter, "GET", "/api/customers").getStatus());
+    }
+
+    @Test
+    void testShedsReadsBeforeWritesWhenPoolIsSaturated() throws Exception {
+        AdmissionFilter admissionFilter = admissionFilter(new RateLimiter(1000, 1000), new RateLimiter(1000, 1000), 10);
+
+        poolWaiters.set(5);
+        assertEquals(429, execute(admissionFilter, "GET", "/api/accounts").getStatus());
+        assertEquals(429, execute(admissionFilter, "GET", "/api/accounts/_export").getStatus());
+        assertEquals(200, execute(admissionFilter, "POST", "/api/accounts").getStatus());
+
+        poolWaiters.set(10);
+        assertEquals(429, execute(admissionFilter, "POST", "/api/accounts").getStatus());
+
+        poolWaiters.set(0);
+        assertEquals(200, execute(admissionFilter, "GET", "/api/accounts").getStatus());
+    }
+
+    @Test
+    void testClassify() {
+        assertEquals(EndpointClass.BULK, AdmissionFilter.classify("/api/customers/_export", false));
+        assertEquals(EndpointClass.BULK, AdmissionFilter.classify("/api/customers/_import", true));
+        assertEquals(EndpointClass.BULK, AdmissionFilter.classify("/api/accounts/_bulk", true));
+        assertEquals(EndpointClass.READ, AdmissionFilter.classify("/api/customers/_import/abc", false));
+        assertEquals(EndpointClass.WRITE, AdmissionFilter.classify("/api/cards/1", true));
+    }
+
+    private AdmissionFilter admissionFilter(RateLimiter readLimiter, RateLimiter writeLimiter, int maxInFlight) {
+        return new AdmissionFilter(readLimiter, writeLimiter,
+                Map.of(EndpointClass.READ, maxInFlight, EndpointClass.WRITE, maxInFlight, EndpointClass.BULK, maxInFlight),
+                poolWaiters::get, 5, new ObjectMapper(), new SimpleMeterRegistry());
+    }
+
+    private MockHttpServletResponse execute(AdmissionFilter admissionFilter, String method, String uri) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        admissionFilter.doFilter(request(method, uri), response, (request, servletResponse) -> {
+        });
+        return response;
+    }
+
+    private MockHttpServletRequest request(String method, String uri) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, uri);
+        request.addHeader(ReadYourWritesFilter.CLIENT_ID_HEADER, "partner");
+        return request;
+    }
+}
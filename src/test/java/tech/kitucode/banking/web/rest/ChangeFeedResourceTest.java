@@ -0,0 +1,107 @@
+package tech.kitucode.banking.web.rest;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import tech.kitucode.banking.ApplicationProperties;
+import tech.kitucode.banking.domain.OutboxEvent;
+import tech.kitucode.banking.domain.enumerations.AggregateType;
+import tech.kitucode.banking.domain.enumerations.ChangeType;
+import tech.kitucode.banking.service.changefeed.ChangeFeed;
+import tech.kitucode.banking.service.dto.ChangeBatchDTO;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+public class ChangeFeedResourceTest {
+    private final CountDownLatch unblock = new CountDownLatch(1);
+    private final BlockingQueue<SseEmitter.SseEventBuilder> sent = new LinkedBlockingQueue<>();
+    private ChangeFeed changeFeed;
+    private ChangeFeedResource changeFeedResource;
+    private boolean nextEmitterBlocks;
+
+    @BeforeEach
+    void setUp() {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.setChangeFeedCapacity(16);
+        // one dispatcher, so a subscriber that blocked it would stall every other one
+        applicationProperties.setChangeFeedDispatchers(1);
+        applicationProperties.setChangeFeedPollTimeoutMillis(5000L);
+        applicationProperties.setChangeFeedStreamTimeoutMillis(5000L);
+        changeFeed = new ChangeFeed(applicationProperties, new SimpleMeterRegistry(), mock(ObjectProvider.class));
+
+        changeFeedResource = new ChangeFeedResource(changeFeed, applicationProperties) {
+            @Override
+            SseEmitter createEmitter(long timeoutMillis) {
+                boolean blocks = nextEmitterBlocks;
+                return new SseEmitter(timeoutMillis) {
+                    @Override
+                    public void send(SseEventBuilder builder) throws IOException {
+                        if (blocks) {
+                            // a client that has stopped reading
+                            try {
+                                unblock.await();
+                            } catch (InterruptedException e) {
+                                throw new IOException(e);
+                            }
+                        } else {
+                            sent.add(builder);
+                        }
+                    }
+                };
+            }
+        };
+    }
+
+    @AfterEach
+    void tearDown() {
+        unblock.countDown();
+        changeFeedResource.shutdown();
+        changeFeed.shutdown();
+    }
+
+    @Test
+    void testSlowStreamDoesNotStallOtherSubscribers() throws InterruptedException {
+        String start = changeFeed.resolveCursor(null);
+        nextEmitterBlocks = true;
+        changeFeedResource.stream(start, null, null);
+        nextEmitterBlocks = false;
+        changeFeedResource.stream(start, null, null);
+
+        changeFeed.appendAfterCommit(event(1L));
+        assertNotNull(sent.poll(5, TimeUnit.SECONDS));
+
+        // the blocked stream is still sending the first change, the others keep receiving
+        DeferredResult<ResponseEntity<ChangeBatchDTO>> poll = changeFeedResource.poll(changeFeed.resolveCursor(null), null, 10);
+        changeFeed.appendAfterCommit(event(2L));
+        assertNotNull(sent.poll(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 50 && !poll.hasResult(); i++) {
+            Thread.sleep(100);
+        }
+        assertTrue(poll.hasResult());
+        ResponseEntity<?> response = (ResponseEntity<?>) poll.getResult();
+        assertEquals(2L, ((ChangeBatchDTO) response.getBody()).getEvents().get(0).getAggregateId());
+    }
+
+    private static OutboxEvent event(Long aggregateId) {
+        OutboxEvent event = new OutboxEvent();
+        event.setAggregateType(AggregateType.CUSTOMER);
+        event.setAggregateId(aggregateId);
+        event.setChangeType(ChangeType.CREATED);
+        event.setPayload("{}");
+        event.setCreatedAt(LocalDateTime.now());
+        return event;
+    }
+}
@@ -0,0 +1,160 @@
+package tech.kitucode.banking.web.rest;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import tech.kitucode.banking.domain.Card;
+import tech.kitucode.banking.domain.Customer;
+import tech.kitucode.banking.domain.enumerations.CardType;
+import tech.kitucode.banking.service.CardService;
+import tech.kitucode.banking.service.CustomerImportService;
+import tech.kitucode.banking.service.CustomerService;
+import tech.kitucode.banking.service.EntityVersionService;
+import tech.kitucode.banking.service.WriteCoalescer;
+import tech.kitucode.banking.service.dto.MaskedCardDTO;
+
+import java.time.LocalDate;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * {@code ETag}, {@code If-None-Match} and {@code If-Match} handling of the customer and card endpoints.
+ */
+@WebMvcTest(controllers = {CustomerResource.class, CardResource.class})
+@Import(SimpleMeterRegistry.class)
+public class ConditionalRequestTest {
+    private static final String CUSTOMER = "{\"customerId\": 1, \"firstName\": \"Brian\", \"lastName\": \"Kitunda\"}";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private CustomerService customerService;
+
+    @MockitoBean
+    private CustomerImportService customerImportService;
+
+    @MockitoBean
+    private CardService cardService;
+
+    @MockitoBean
+    private EntityVersionService entityVersionService;
+
+    @MockitoBean
+    private WriteCoalescer writeCoalescer;
+
+    @Test
+    void testMatchingIfNoneMatchIsNotModifiedWithoutLoadingTheEntity() throws Exception {
+        when(entityVersionService.findCustomerVersion(1L)).thenReturn(3L);
+
+        mockMvc.perform(get("/api/customers/1").header(HttpHeaders.IF_NONE_MATCH, "\"3\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"3\""))
+                .andExpect(content().string(""));
+
+        verify(customerService, never()).findOne(any());
+    }
+
+    @Test
+    void testStaleIfNoneMatchGetsTheEntity() throws Exception {
+        when(entityVersionService.findCustomerVersion(1L)).thenReturn(4L);
+        when(customerService.findOne(1L)).thenReturn(customer(4L));
+
+        mockMvc.perform(get("/api/customers/1").header(HttpHeaders.IF_NONE_MATCH, "\"3\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"4\""))
+                .andExpect(jsonPath("$.version").value(4));
+    }
+
+    @Test
+    void testMaskedAndUnmaskedCardsHaveTheirOwnEtags() throws Exception {
+        when(entityVersionService.findCardVersion(1L)).thenReturn(3L);
+        when(cardService.findMaskedById(1L)).thenReturn(MaskedCardDTO.of(card()));
+        when(cardService.findById(1L)).thenReturn(card());
+
+        mockMvc.perform(get("/api/cards/1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"3\""))
+                .andExpect(jsonPath("$.pan").value("459876******0009"));
+        mockMvc.perform(get("/api/cards/1").param("masked", "false"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"3-unmasked\""))
+                .andExpect(jsonPath("$.pan").value("4598760000000009"));
+
+        // a cached masked card does not validate the unmasked one, nor the other way round
+        mockMvc.perform(get("/api/cards/1").param("masked", "false").header(HttpHeaders.IF_NONE_MATCH, "\"3\""))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.pan").value("4598760000000009"));
+        mockMvc.perform(get("/api/cards/1").header(HttpHeaders.IF_NONE_MATCH, "\"3-unmasked\""))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.pan").value("459876******0009"));
+
+        mockMvc.perform(get("/api/cards/1").param("masked", "false").header(HttpHeaders.IF_NONE_MATCH, "\"3-unmasked\""))
+                .andExpect(status().isNotModified());
+        mockMvc.perform(get("/api/cards/1").header(HttpHeaders.IF_NONE_MATCH, "\"3\""))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void testStaleIfMatchIsPreconditionFailed() throws Exception {
+        when(customerService.update(any(Customer.class))).thenAnswer(invocation -> {
+            Customer customer = invocation.getArgument(0);
+            if (customer.getVersion() != 4L) {
+                throw new OptimisticLockingFailureException("stale");
+            }
+            Customer updated = customer(5L);
+            return updated;
+        });
+
+        mockMvc.perform(put("/api/customers").header(HttpHeaders.IF_MATCH, "\"3\"").contentType(MediaType.APPLICATION_JSON).content(CUSTOMER))
+                .andExpect(status().isPreconditionFailed());
+
+        mockMvc.perform(put("/api/customers").header(HttpHeaders.IF_MATCH, "\"4\"").contentType(MediaType.APPLICATION_JSON).content(CUSTOMER))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"5\""));
+    }
+
+    @Test
+    void testWeakAndListIfMatchAreRejected() throws Exception {
+        mockMvc.perform(put("/api/customers").header(HttpHeaders.IF_MATCH, "W/\"3\"").contentType(MediaType.APPLICATION_JSON).content(CUSTOMER))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(put("/api/customers").header(HttpHeaders.IF_MATCH, "\"3\", \"4\"").contentType(MediaType.APPLICATION_JSON).content(CUSTOMER))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(put("/api/customers").header(HttpHeaders.IF_MATCH, "\"3-unmasked\", \"4\"").contentType(MediaType.APPLICATION_JSON).content(CUSTOMER))
+                .andExpect(status().isBadRequest());
+
+        verify(customerService, never()).update(any());
+    }
+
+    private static Customer customer(Long version) {
+        Customer customer = new Customer();
+        customer.setCustomerId(1L);
+        customer.setFirstName("Brian");
+        customer.setLastName("Kitunda");
+        customer.setVersion(version);
+        return customer;
+    }
+
+    private static Card card() {
+        Card card = new Card();
+        card.setCardId(1L);
+        card.setAccountId(10L);
+        card.setCardType(CardType.VIRTUAL);
+        card.setPan("4598760000000009");
+        card.setCvv("123");
+        card.setCreatedOn(LocalDate.of(2025, 1, 1));
+        card.setVersion(3L);
+        return card;
+    }
+}
@@ -0,0 +1,74 @@
+package tech.kitucode.banking.web.util;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.util.UriComponentsBuilder;
+import tech.kitucode.banking.error.ValidationException;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PaginationUtilTest {
+
+    @Test
+    void testEmptyCursorStartsFromFirstRow() {
+        ScrollPosition position = PaginationUtil.decodeCursor("", "customerId");
+
+        assertTrue(position.isInitial());
+    }
+
+    @Test
+    void testCursorRoundTrip() {
+        Map<String, Object> keys = new LinkedHashMap<>();
+        keys.put("createdOn", LocalDate.of(2025, 5, 1));
+        keys.put("customerId", 42L);
+
+        String after = PaginationUtil.encodeCursor(ScrollPosition.forward(keys), "customerId");
+        KeysetScrollPosition position = (KeysetScrollPosition) PaginationUtil.decodeCursor(after, "customerId");
+
+        assertEquals(keys, position.getKeys());
+    }
+
+    @Test
+    void testInvalidCursor() {
+        assertThrows(ValidationException.class, () -> PaginationUtil.decodeCursor("not-a-cursor", "customerId"));
+    }
+
+    @Test
+    void testNextLinkOnlyWhenMoreRowsExist() {
+        Map<String, Object> keys = new LinkedHashMap<>();
+        keys.put("createdOn", LocalDate.of(2025, 5, 1));
+        keys.put("accountId", 7L);
+
+        Window<String> lastWindow = Window.from(List.of("a"), index -> ScrollPosition.forward(keys));
+        Window<String> window = Window.from(List.of("a"), index -> ScrollPosition.forward(keys), true);
+
+        HttpHeaders lastHeaders = PaginationUtil.generateCursorHttpHeaders(lastWindow, UriComponentsBuilder.fromUriString("/api/accounts"), "accountId", 1);
+        HttpHeaders headers = PaginationUtil.generateCursorHttpHeaders(window, UriComponentsBuilder.fromUriString("/api/accounts"), "accountId", 1);
+
+        assertNull(lastHeaders.getFirst(HttpHeaders.LINK));
+        assertTrue(headers.getFirst(HttpHeaders.LINK).startsWith("</api/accounts?after="));
+        assertFalse(headers.containsKey("X-Total-Items"));
+    }
+
+    @Test
+    void testNextLinkKeepsFilters() {
+        Map<String, Object> keys = new LinkedHashMap<>();
+        keys.put("createdOn", LocalDate.of(2025, 5, 1));
+        keys.put("customerId", 7L);
+        Window<String> window = Window.from(List.of("a"), index -> ScrollPosition.forward(keys), true);
+        UriComponentsBuilder request = UriComponentsBuilder.fromUriString("/api/customers?name=brian&startDate=2025-01-01&after=old&size=1");
+
+        HttpHeaders headers = PaginationUtil.generateCursorHttpHeaders(window, request, "customerId", 1);
+
+        String after = PaginationUtil.encodeCursor(ScrollPosition.forward(keys), "customerId");
+        assertEquals("</api/customers?name=brian&startDate=2025-01-01&after=" + after + "&size=1>; rel=\"next\",", headers.getFirst(HttpHeaders.LINK));
+    }
+}